@@ -46,6 +46,7 @@ sqlite3 FilesHub.db "select length(canonical_path), * from Trash order by length
 
 Assuming 100 MB of heap memory and average Document size = 400 bytes(largest = 493 bytes).
 Number of possible in heap=100*1024*1024/400 = 262,144
+Only for code still using Shelf.getDocs(). Manager.update(), -s similar search and upgrades read documents one at a time through DocumentCursor.
 
 # Display number of entry without size.
 sqlite3 FilesHub.db "select count(*) from Shelf where size < 1;"
@@ -1,6 +1,7 @@
 #!/bin/bash
 set -e
 # Description: Copy FilesHub.db to RAM filesystem / local filesystem.
+# Deprecated: Use fh --db-memory or -DFilesHub.db.memory=true. FilesHub saves the database in RAM to disk at checkpoints.
 script_name=$(basename "$0")
 
 action=$1
@@ -0,0 +1,63 @@
+-- Parent directories are stored once in Directory: Shelf and Trash keep dir_id and the last name of canonical_path.
+--  canonical_path = Directory.path || filename. Directory.path ends with its separator, '/' or '\' (char(92)).
+--  link_filename keeps the old filename when it is not the last name of canonical_path, e.g. symbolic link.
+-- Tables are rebuilt because SQLite 3.8 can't drop columns. Free pages are reclaimed by Version0010.java.
+CREATE TABLE Directory (  dir_id         INTEGER PRIMARY KEY,
+                          path           TEXT NOT NULL UNIQUE);
+
+-- rtrim() removes the characters of the last name: everything but the separators.
+INSERT INTO Directory (path)
+  SELECT DISTINCT rtrim(canonical_path, replace(replace(canonical_path, '/', ''), char(92), '')) FROM Shelf
+  UNION
+  SELECT DISTINCT rtrim(canonical_path, replace(replace(canonical_path, '/', ''), char(92), '')) FROM Trash;
+
+CREATE TABLE ShelfNew (  uid            INTEGER PRIMARY KEY AUTOINCREMENT,
+                         dir_id         INTEGER NOT NULL,
+                         filename       TEXT NOT NULL,
+                         link_filename  TEXT,
+                         last_modified  INTEGER NOT NULL,
+                         hash           TEXT,
+                         comment        TEXT,
+                         size           INTEGER DEFAULT 0,
+                         quick_hash     TEXT,
+                         hash_algo      TEXT);
+INSERT INTO ShelfNew (uid, dir_id, filename, link_filename, last_modified, hash, comment, size, quick_hash, hash_algo)
+  SELECT uid, dir_id, name, CASE WHEN filename=name THEN NULL ELSE filename END, last_modified, hash, comment, size, quick_hash, hash_algo
+    FROM (SELECT Shelf.*, Directory.dir_id, substr(canonical_path, length(Directory.path)+1) AS name
+            FROM Shelf JOIN Directory ON Directory.path=rtrim(canonical_path, replace(replace(canonical_path, '/', ''), char(92), '')));
+
+CREATE TABLE TrashNew (  uid            INTEGER PRIMARY KEY AUTOINCREMENT,
+                         duid           INTEGER NOT NULL,
+                         dir_id         INTEGER NOT NULL,
+                         filename       TEXT NOT NULL,
+                         link_filename  TEXT,
+                         last_modified  INTEGER NOT NULL,
+                         hash           TEXT,
+                         comment        TEXT,
+                         size           INTEGER DEFAULT 0,
+                         quick_hash     TEXT,
+                         hash_algo      TEXT);
+INSERT INTO TrashNew (uid, duid, dir_id, filename, link_filename, last_modified, hash, comment, size, quick_hash, hash_algo)
+  SELECT uid, duid, dir_id, name, CASE WHEN filename=name THEN NULL ELSE filename END, last_modified, hash, comment, size, quick_hash, hash_algo
+    FROM (SELECT Trash.*, Directory.dir_id, substr(canonical_path, length(Directory.path)+1) AS name
+            FROM Trash JOIN Directory ON Directory.path=rtrim(canonical_path, replace(replace(canonical_path, '/', ''), char(92), '')));
+
+-- Keep AUTOINCREMENT counters: uid of deleted documents are not reused.
+UPDATE sqlite_sequence SET seq=(SELECT seq FROM sqlite_sequence WHERE name='Shelf') WHERE name='ShelfNew' AND EXISTS (SELECT 1 FROM sqlite_sequence WHERE name='Shelf');
+UPDATE sqlite_sequence SET seq=(SELECT seq FROM sqlite_sequence WHERE name='Trash') WHERE name='TrashNew' AND EXISTS (SELECT 1 FROM sqlite_sequence WHERE name='Trash');
+
+DROP TABLE Shelf;
+DROP TABLE Trash;
+ALTER TABLE ShelfNew RENAME TO Shelf;
+ALTER TABLE TrashNew RENAME TO Trash;
+
+-- A document is looked up by filename first: the name is more selective than its directory.
+CREATE INDEX shelf_hash ON Shelf (hash);
+CREATE INDEX shelf_filename_dir_id ON Shelf (filename, dir_id);
+CREATE INDEX shelf_size_quick_hash ON Shelf (size, quick_hash);
+CREATE INDEX trash_hash ON Trash (hash);
+CREATE INDEX trash_filename_dir_id ON Trash (filename, dir_id);
+CREATE INDEX trash_size_quick_hash ON Trash (size, quick_hash);
+CREATE INDEX trash_duid ON Trash (duid);
+
+ANALYZE;
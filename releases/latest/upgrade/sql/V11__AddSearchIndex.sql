@@ -0,0 +1,72 @@
+-- Full-text index of filenames for search --filename and --path: LIKE '%...%' can't use B-tree indexes.
+--  SQLite 3.8 has FTS4 but neither FTS5 nor its trigram tokenizer. Therefore, each filename is indexed
+--  as its trigrams, written as hexadecimal tokens: the default tokenizer keeps them whole. See SearchIndex.java.
+--  Trigrams are computed by the views below. ShelfSearch and TrashSearch only store the index: docid is uid.
+--  Raw filename and link_filename are both indexed.
+CREATE TABLE Numbers (  n              INTEGER PRIMARY KEY);
+WITH RECURSIVE Sequence(n) AS (SELECT 1 UNION ALL SELECT n+1 FROM Sequence WHERE n<1024)
+  INSERT INTO Numbers (n) SELECT n FROM Sequence;
+
+CREATE VIEW ShelfSearchContent AS
+  SELECT uid AS rowid, (SELECT group_concat(hex(lower(substr(Shelf.filename||IFNULL('/'||Shelf.link_filename, ''), n, 3))), ' ')
+                          FROM Numbers WHERE n<=length(Shelf.filename||IFNULL('/'||Shelf.link_filename, ''))-2) AS grams
+    FROM Shelf;
+CREATE VIRTUAL TABLE ShelfSearch USING fts4(content="ShelfSearchContent", matchinfo=fts3, grams);
+
+CREATE VIEW TrashSearchContent AS
+  SELECT uid AS rowid, (SELECT group_concat(hex(lower(substr(Trash.filename||IFNULL('/'||Trash.link_filename, ''), n, 3))), ' ')
+                          FROM Numbers WHERE n<=length(Trash.filename||IFNULL('/'||Trash.link_filename, ''))-2) AS grams
+    FROM Trash;
+CREATE VIRTUAL TABLE TrashSearch USING fts4(content="TrashSearchContent", matchinfo=fts3, grams);
+
+-- Old trigrams are read from the view: they are removed before the row changes.
+CREATE TRIGGER shelf_search_insert AFTER INSERT ON Shelf
+BEGIN
+  INSERT INTO ShelfSearch (docid, grams) SELECT rowid, grams FROM ShelfSearchContent WHERE rowid=new.uid;
+END;
+CREATE TRIGGER shelf_search_delete BEFORE DELETE ON Shelf
+BEGIN
+  DELETE FROM ShelfSearch WHERE docid=old.uid;
+END;
+CREATE TRIGGER shelf_search_before_update BEFORE UPDATE OF uid, filename, link_filename ON Shelf
+  WHEN old.uid<>new.uid OR old.filename<>new.filename OR old.link_filename IS NOT new.link_filename
+BEGIN
+  DELETE FROM ShelfSearch WHERE docid=old.uid;
+END;
+CREATE TRIGGER shelf_search_after_update AFTER UPDATE OF uid, filename, link_filename ON Shelf
+  WHEN old.uid<>new.uid OR old.filename<>new.filename OR old.link_filename IS NOT new.link_filename
+BEGIN
+  INSERT INTO ShelfSearch (docid, grams) SELECT rowid, grams FROM ShelfSearchContent WHERE rowid=new.uid;
+END;
+
+CREATE TRIGGER trash_search_insert AFTER INSERT ON Trash
+BEGIN
+  INSERT INTO TrashSearch (docid, grams) SELECT rowid, grams FROM TrashSearchContent WHERE rowid=new.uid;
+END;
+CREATE TRIGGER trash_search_delete BEFORE DELETE ON Trash
+BEGIN
+  DELETE FROM TrashSearch WHERE docid=old.uid;
+END;
+CREATE TRIGGER trash_search_before_update BEFORE UPDATE OF uid, filename, link_filename ON Trash
+  WHEN old.uid<>new.uid OR old.filename<>new.filename OR old.link_filename IS NOT new.link_filename
+BEGIN
+  DELETE FROM TrashSearch WHERE docid=old.uid;
+END;
+CREATE TRIGGER trash_search_after_update AFTER UPDATE OF uid, filename, link_filename ON Trash
+  WHEN old.uid<>new.uid OR old.filename<>new.filename OR old.link_filename IS NOT new.link_filename
+BEGIN
+  INSERT INTO TrashSearch (docid, grams) SELECT rowid, grams FROM TrashSearchContent WHERE rowid=new.uid;
+END;
+
+INSERT INTO ShelfSearch (ShelfSearch) VALUES('rebuild');
+INSERT INTO ShelfSearch (ShelfSearch) VALUES('optimize');
+INSERT INTO TrashSearch (TrashSearch) VALUES('rebuild');
+INSERT INTO TrashSearch (TrashSearch) VALUES('optimize');
+
+-- Search by path selects the directories first: dir_id leads the index. It is still used to look up a filename in its directory.
+DROP INDEX shelf_filename_dir_id;
+DROP INDEX trash_filename_dir_id;
+CREATE INDEX shelf_dir_id_filename ON Shelf (dir_id, filename);
+CREATE INDEX trash_dir_id_filename ON Trash (dir_id, filename);
+
+ANALYZE;
@@ -0,0 +1,10 @@
+-- Filename compared by search --similar: lowercase, without the terms of words.lst. See CommonTerms.
+--  Shelf computes it on insert and update. All rows are computed again by search --similar when
+--  the checksum of words.lst is not the one saved in Setting table: rows migrated start as NULL.
+--  Not indexed: documents are read in rowid order and never looked up by it.
+ALTER TABLE Shelf ADD COLUMN clean_filename TEXT;
+
+CREATE TABLE Setting (
+  name           TEXT PRIMARY KEY,
+  value          TEXT NOT NULL
+);
@@ -0,0 +1,5 @@
+-- Trigrams of inserted rows are computed in Java and inserted with the rows, by JDBC batch: see SearchIndex.java.
+--  The insert triggers read them from the views: a correlated subquery over Numbers per row made bulk inserts 3 times slower.
+--  Updates and deletes keep their triggers. The views are still the content of ShelfSearch and TrashSearch, e.g. for 'rebuild'.
+DROP TRIGGER shelf_search_insert;
+DROP TRIGGER trash_search_insert;
@@ -0,0 +1,2 @@
+CREATE INDEX shelf_size ON Shelf (size);
+CREATE INDEX trash_size ON Trash (size);
\ No newline at end of file
@@ -0,0 +1,8 @@
+ALTER TABLE Shelf ADD COLUMN quick_hash TEXT;
+ALTER TABLE Trash ADD COLUMN quick_hash TEXT;
+
+-- Replace size indexes: size is always looked up first.
+DROP INDEX shelf_size;
+DROP INDEX trash_size;
+CREATE INDEX shelf_size_quick_hash ON Shelf (size, quick_hash);
+CREATE INDEX trash_size_quick_hash ON Trash (size, quick_hash);
\ No newline at end of file
@@ -0,0 +1,4 @@
+ALTER TABLE Shelf ADD COLUMN hash_algo TEXT;
+ALTER TABLE Trash ADD COLUMN hash_algo TEXT;
+
+-- Existing hashes are labelled by Version0006.java because the spot hash frequency is only known at runtime.
\ No newline at end of file
@@ -0,0 +1,3 @@
+-- Hashes are converted to BLOB by Version0007.java: SQLite 3.8 doesn't have unhex().
+-- Indexes on hash are kept: Version0002 looks up Trash by hash.
+ANALYZE;
\ No newline at end of file
@@ -0,0 +1,7 @@
+CREATE TABLE HashCache (  file_key       TEXT PRIMARY KEY,
+                          size           INTEGER NOT NULL,
+                          last_modified  INTEGER NOT NULL,
+                          hash_algo      TEXT NOT NULL,
+                          hash           BLOB NOT NULL);
+
+-- Hashes of files already hashed, keyed by device and inode. See HashCache.java.
\ No newline at end of file
@@ -0,0 +1,3 @@
+-- Trash is looked up by duid: documents of a Shelf uid, changeDuid(), removeDocByDuid() and orphans.
+--  Orphans are counted from this index only: SCAN Trash USING COVERING INDEX trash_duid.
+CREATE INDEX trash_duid ON Trash (duid);
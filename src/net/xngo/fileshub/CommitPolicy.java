@@ -0,0 +1,160 @@
+package net.xngo.fileshub;
+
+import java.sql.SQLException;
+
+/**
+ * Decide when to commit while adding files. The number of files per commit adapts to the throughput
+ *  measured on the previous commits so that a commit happens about every COMMIT_LATENCY milliseconds.
+ *  Regardless of the target, commit when the uncommitted work reaches COMMIT_MAX_SECONDS, COMMIT_MAX_MB or COMMIT_MAX_FILES.
+ * Usage:
+ *    commitPolicy.add(file.length());
+ *    if(commitPolicy.isCommitDue())
+ *      commitPolicy.commit();
+ * @author Xuan Ngo
+ *
+ */
+public class CommitPolicy
+{
+  private static final int INITIAL_BATCH_SIZE = 17; // Same as Utils.getUpdateFrequency() for small runs.
+
+  private final long latencyMillis;
+  private final long maxMillis;
+  private final long maxBytes;
+  private final int  maxFiles;
+
+  private int  batchSize = INITIAL_BATCH_SIZE;
+  private long batchStart = System.currentTimeMillis();
+  private int  uncommittedFiles = 0;
+  private long uncommittedBytes = 0;
+
+  // Statistics of the batch sizes committed.
+  private int  commits = 0;
+  private long committedFiles = 0;
+  private int  minBatch = 0;
+  private int  maxBatch = 0;
+
+  public CommitPolicy()
+  {
+    this(Config.COMMIT_LATENCY, Config.COMMIT_MAX_SECONDS*1000L, Config.COMMIT_MAX_MB*1024L*1024L, Config.COMMIT_MAX_FILES);
+  }
+
+  /**
+   * @param latencyMillis Targeted milliseconds between 2 commits.
+   * @param maxMillis Commit when the first uncommitted file is older than maxMillis.
+   * @param maxBytes Commit when the uncommitted files add up to maxBytes.
+   * @param maxFiles Maximum number of files per commit.
+   */
+  public CommitPolicy(long latencyMillis, long maxMillis, long maxBytes, int maxFiles)
+  {
+    this.latencyMillis = Math.max(1, latencyMillis);
+    this.maxMillis     = maxMillis;
+    this.maxBytes      = maxBytes;
+    this.maxFiles      = Math.max(1, maxFiles);
+    this.batchSize     = Math.min(this.batchSize, this.maxFiles);
+  }
+
+  /**
+   * Record a file added to the database but not committed yet.
+   * @param bytes Size of the file.
+   */
+  public void add(long bytes)
+  {
+    this.uncommittedFiles++;
+    this.uncommittedBytes += bytes;
+  }
+
+  /**
+   * @return true if the uncommitted files reach the batch size or one of the upper bounds.
+   */
+  public boolean isCommitDue()
+  {
+    if(this.uncommittedFiles==0)
+      return false;
+
+    return this.uncommittedFiles >= this.batchSize
+            || this.uncommittedBytes >= this.maxBytes
+            || this.getUncommittedMillis() >= this.maxMillis;
+  }
+
+  /**
+   * Commit Main.connection and adapt the batch size to the throughput of this batch, commit included.
+   * @throws SQLException
+   */
+  public void commit() throws SQLException
+  {
+    Main.connection.commit();
+
+    if(this.uncommittedFiles>0)
+    {
+      this.record(this.uncommittedFiles);
+      this.adapt(this.uncommittedFiles, this.getUncommittedMillis());
+    }
+
+    this.uncommittedFiles = 0;
+    this.uncommittedBytes = 0;
+    this.batchStart = System.currentTimeMillis();
+  }
+
+  /**
+   * @return Number of files lost on rollback.
+   */
+  public int getUncommittedFiles()
+  {
+    return this.uncommittedFiles;
+  }
+
+  public long getUncommittedBytes()
+  {
+    return this.uncommittedBytes;
+  }
+
+  /**
+   * @return Number of files that triggers the next commit.
+   */
+  public int getBatchSize()
+  {
+    return this.batchSize;
+  }
+
+  public int getCommits()
+  {
+    return this.commits;
+  }
+
+  /**
+   * @return Batch sizes committed so far, e.g. 12 commits of 17 to 2,048 files, 530 on average.
+   */
+  public String getSummary()
+  {
+    if(this.commits==0)
+      return "0 commit";
+
+    return String.format("%,d commits of %,d to %,d files, %,d on average", this.commits, this.minBatch, this.maxBatch, this.committedFiles/this.commits);
+  }
+
+  private long getUncommittedMillis()
+  {
+    return System.currentTimeMillis()-this.batchStart;
+  }
+
+  private void record(int files)
+  {
+    if(this.commits==0 || files<this.minBatch)
+      this.minBatch = files;
+    if(files>this.maxBatch)
+      this.maxBatch = files;
+    this.committedFiles += files;
+    this.commits++;
+  }
+
+  /**
+   * Move halfway to the number of files that would have taken latencyMillis at the throughput of this batch.
+   *  Halfway smooths out files that are slow to hash.
+   */
+  private void adapt(int files, long millis)
+  {
+    long target = (millis>0)? files*this.latencyMillis/millis : (long)this.batchSize*2;
+    long next = (this.batchSize+target+1)/2; // Round up: a batch of 1 file can grow.
+    this.batchSize = (int)Math.max(1, Math.min(next, this.maxFiles));
+  }
+}
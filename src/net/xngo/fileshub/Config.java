@@ -2,6 +2,9 @@ package net.xngo.fileshub;
 
 import java.io.File;
 
+import net.xngo.fileshub.db.DbProfile;
+import net.xngo.fileshub.hash.HashAlgorithm;
+
 public class Config
 {
   // Mandatory.
@@ -17,5 +20,22 @@ public class Config
   public static final String WORD_LIST          = HOME_DIR+File.separator+"words.lst";
   
   public static final int    HASH_FREQUENCY    = Integer.parseInt(System.getProperty(NAME+".hash.frequency")); // HASH_FREQUENCY=0 means hash the whole file.
+  public static final int    HASH_THREADS      = Integer.parseInt(System.getProperty(NAME+".hash.threads", "1")); // HASH_THREADS>1 means hash files in parallel ahead of the database writer.
+  public static final boolean HASH_LAZY        = Boolean.parseBoolean(System.getProperty(NAME+".hash.lazy", "false")); // HASH_LAZY=true means only hash files having the same size as another file.
+  public static final HashAlgorithm HASH_ALGORITHM = HashAlgorithm.get(System.getProperty(NAME+".hash.algorithm", "md5")); // Algorithm used to hash new files: md5, sha256 or xxhash64.
+  public static final int    HASH_CACHE_SIZE   = Integer.parseInt(System.getProperty(NAME+".hash.cache.size", "1000000")); // Maximum number of hashes kept in HashCache table. HASH_CACHE_SIZE=0 disables the cache.
+  public static final int    WALK_THREADS      = Integer.parseInt(System.getProperty(NAME+".walk.threads", "1")); // WALK_THREADS>1 means list subdirectories in parallel. Helps on network and FUSE mounts.
+  public static final int    SIMILAR_THREADS   = Integer.parseInt(System.getProperty(NAME+".similar.threads", String.valueOf(Runtime.getRuntime().availableProcessors()))); // Threads comparing filenames in search --similar. Default is 1 per core.
+  public static final DbProfile DB_PROFILE    = DbProfile.get(System.getProperty(NAME+".db.profile", "safe")); // SQLite PRAGMAs applied at connect time: safe, fast or bulk-import. See DbProfile.
+  public static final boolean DB_MEMORY        = Boolean.parseBoolean(System.getProperty(NAME+".db.memory", "false")); // DB_MEMORY=true means work on a copy of the database in RAM, saved to disk at checkpoints.
+  public static final int    DB_CHECKPOINT_INTERVAL = Integer.parseInt(System.getProperty(NAME+".db.checkpoint.interval", "300")); // Seconds between 2 saves of the database in RAM, on commit. DB_CHECKPOINT_INTERVAL=0 means only save at exit.
+  public static final int    DB_FETCH_SIZE     = Integer.parseInt(System.getProperty(NAME+".db.fetch.size", "1000")); // Rows fetched at a time by DocumentCursor while reading whole tables.
+  public static final boolean DB_INDEX         = Boolean.parseBoolean(System.getProperty(NAME+".db.index", "false")); // DB_INDEX=true means keep paths and hashes in memory while adding files: lookups of new files don't query the database. See DocIndex.
+  public static final boolean DB_BLOOM         = Boolean.parseBoolean(System.getProperty(NAME+".db.bloom", "true")); // DB_BLOOM=true means skip lookups of hashes that are not in the database while adding files. See HashFilter.
+  public static final double DB_BLOOM_FPP      = Double.parseDouble(System.getProperty(NAME+".db.bloom.fpp", "0.01")); // False positive rate of the filter of hashes when it is built.
+  public static final int    COMMIT_LATENCY    = Integer.parseInt(System.getProperty(NAME+".commit.latency", "1000")); // Milliseconds between 2 commits targeted by CommitPolicy while adding files.
+  public static final int    COMMIT_MAX_SECONDS = Integer.parseInt(System.getProperty(NAME+".commit.max.seconds", "10")); // Upper bound on the uncommitted work in seconds: commit even if the target is not reached.
+  public static final int    COMMIT_MAX_MB     = Integer.parseInt(System.getProperty(NAME+".commit.max.mb", "1024")); // Upper bound on the uncommitted work in MB of files added.
+  public static final int    COMMIT_MAX_FILES  = Integer.parseInt(System.getProperty(NAME+".commit.max.files", "10000")); // Upper bound on the number of files added per commit.
   
 }
@@ -0,0 +1,369 @@
+package net.xngo.fileshub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stream all files under the given paths while they are processed.
+ * A background thread walks the directories and queues regular files as they are discovered:
+ *  the first file can be processed before the walk is done and the whole list of files is never held in memory.
+ * Sizes come from the attributes read by the walk: files are not stat'ed a second time to get the total size.
+ * The totals grow while the walk is running. See {@link #isDone()}.
+ * With more than 1 thread, subdirectories are listed concurrently by a ForkJoinPool: it hides the latency
+ *  of each directory listing on network and FUSE mounts. Files are then streamed in no particular order.
+ *  Use {@link #listFiles(List)} to get them sorted.
+ * @author Xuan Ngo
+ *
+ */
+public class FileWalker implements Iterator<File>
+{
+  final static Logger log = LoggerFactory.getLogger(FileWalker.class);
+
+  private static final int QUEUE_SIZE = 100000; // Maximum number of files discovered ahead of the consumer.
+  private static final File END = new File(""); // Marks the end of the walk in the queue.
+
+  private final BlockingQueue<File> queue = new LinkedBlockingQueue<File>(QUEUE_SIZE);
+  private final Set<Object> visitedDirectories = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>()); // Directory keys: device and inode on Unix.
+  private final Thread walker;
+  private final ForkJoinPool pool; // Null if directories are walked by 1 thread.
+
+  private final AtomicInteger totalFiles = new AtomicInteger(0);
+  private final AtomicLong    totalSize  = new AtomicLong(0);
+  private volatile boolean    done       = false;
+
+  private File nextFile = null;
+
+  public FileWalker(final List<File> paths)
+  {
+    this(paths, Config.WALK_THREADS);
+  }
+
+  /**
+   * @param paths Files and directories.
+   * @param threads Number of threads listing directories.
+   */
+  public FileWalker(final List<File> paths, int threads)
+  {
+    this.pool = (threads>1)? new ForkJoinPool(threads) : null;
+    this.walker = new Thread(new Runnable()
+                              {
+                                public void run()
+                                {
+                                  FileWalker.this.walk(paths);
+                                }
+                              }, "FileWalker");
+    this.walker.setDaemon(true);
+    this.walker.start();
+  }
+
+  public boolean hasNext()
+  {
+    if(this.nextFile==null)
+      this.nextFile = this.take();
+    return this.nextFile!=END;
+  }
+
+  public File next()
+  {
+    if(!this.hasNext())
+      throw new NoSuchElementException();
+
+    File file = this.nextFile;
+    this.nextFile = null;
+    return file;
+  }
+
+  public void remove()
+  {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * @return Number of files discovered so far.
+   */
+  public int getTotalFiles()
+  {
+    return this.totalFiles.get();
+  }
+
+  /**
+   * @return Size of the files discovered so far.
+   */
+  public long getTotalSize()
+  {
+    return this.totalSize.get();
+  }
+
+  /**
+   * @return true if all files are discovered: totals are final.
+   */
+  public boolean isDone()
+  {
+    return this.done;
+  }
+
+  /**
+   * Stop the walk. Files not consumed yet are discarded.
+   */
+  public void close()
+  {
+    this.walker.interrupt();
+    if(this.pool!=null)
+      this.pool.shutdownNow();
+    this.queue.clear();
+  }
+
+  /**
+   * Same as net.xngo.utils.java.io.FileUtils.listFiles() but directories are listed
+   *  with Config.WALK_THREADS threads.
+   * @param paths Files and directories.
+   * @return All files sorted by path: same order whatever the number of threads.
+   */
+  public static Set<File> listFiles(List<File> paths)
+  {
+    FileWalker fileWalker = new FileWalker(paths);
+    Set<File> files = new TreeSet<File>();
+    while(fileWalker.hasNext())
+      files.add(fileWalker.next());
+    return files;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private File take()
+  {
+    try
+    {
+      return this.queue.take();
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      return END;
+    }
+  }
+
+  /**
+   * Same rules as net.xngo.utils.java.io.FileUtils.listFiles():
+   *  -Paths are canonicalized.
+   *  -Symbolic links given as paths are ignored. Symbolic links found in directories are followed.
+   *  -A directory is only walked once, even if paths overlap.
+   */
+  private void walk(List<File> paths)
+  {
+    try
+    {
+      for(File path: paths)
+      {
+        if(Thread.currentThread().isInterrupted())
+          break;
+
+        if(Files.isSymbolicLink(path.toPath()))
+        {
+          System.out.println(String.format("[Warning] -> [%s] is a symbolic link. Ignore it.", path.getAbsolutePath()));
+        }
+        else if(!path.exists())
+        {
+          System.out.println(String.format("[Warning] -> [%s] doesn't exist.", path.getAbsolutePath()));
+        }
+        else
+        {
+          try
+          {
+            if(this.pool==null)
+              Files.walkFileTree(path.getCanonicalFile().toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new Visitor());
+            else
+              this.walkParallel(path.getCanonicalFile().toPath());
+          }
+          catch(IOException ex)
+          {
+            log.error("Can't walk {}.", path.getAbsolutePath(), ex);
+            ex.printStackTrace();
+          }
+        }
+      }
+    }
+    finally
+    {
+      if(this.pool!=null)
+        this.pool.shutdown();
+      this.done = true;
+      if(!this.queue.offer(END))
+      {// Queue is full.
+        try
+        {
+          this.queue.put(END);
+        }
+        catch(InterruptedException ex)
+        {
+          log.debug("Walk is stopped.");
+        }
+      }
+    }
+  }
+
+  private void walkParallel(Path root) throws IOException
+  {
+    BasicFileAttributes attributes = Files.readAttributes(root, BasicFileAttributes.class);
+    if(attributes.isDirectory())
+    {
+      if(this.visit(root, attributes))
+        this.pool.invoke(new DirectoryTask(root));
+    }
+    else if(attributes.isRegularFile())
+      this.add(root, attributes);
+  }
+
+  /**
+   * @return false if the directory is already walked: overlapping paths or loop of symbolic links.
+   */
+  private boolean visit(Path dir, BasicFileAttributes attributes)
+  {
+    Object key = (attributes.fileKey()==null)? dir : attributes.fileKey();
+    return this.visitedDirectories.add(key);
+  }
+
+  /**
+   * Queue the file for the consumer. Wait if the queue is full.
+   */
+  private void add(Path file, BasicFileAttributes attributes)
+  {
+    try
+    {
+      this.queue.put(file.toFile());
+    }
+    catch(InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    this.totalSize.addAndGet(attributes.size());
+    this.totalFiles.incrementAndGet();
+  }
+
+  private void warn(Path file, IOException ex)
+  {
+    log.warn("Can't walk {}. Ignore it.", file, ex);
+    System.out.println(String.format("Warning: %s Ignore %s.", ex.getMessage(), file));
+  }
+
+  /**
+   * Walk with 1 thread.
+   */
+  private class Visitor extends SimpleFileVisitor<Path>
+  {
+    @Override
+    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes)
+    {
+      return FileWalker.this.visit(dir, attributes)? FileVisitResult.CONTINUE : FileVisitResult.SKIP_SUBTREE;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attributes)
+    {
+      if(attributes.isRegularFile()) // Ignore broken symbolic links, devices, pipes, ...
+        FileWalker.this.add(file, attributes);
+      return Thread.currentThread().isInterrupted()? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException ex)
+    {
+      FileWalker.this.warn(file, ex);
+      return FileVisitResult.CONTINUE;
+    }
+  }
+
+  /**
+   * List a directory and fork a task for each subdirectory.
+   */
+  private class DirectoryTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final Path dir;
+
+    public DirectoryTask(Path dir)
+    {
+      this.dir = dir;
+    }
+
+    @Override
+    protected void compute()
+    {
+      List<DirectoryTask> subTasks = new ArrayList<DirectoryTask>();
+      DirectoryStream<Path> entries = null;
+      try
+      {
+        entries = Files.newDirectoryStream(this.dir);
+        for(Path entry: entries)
+        {
+          if(Thread.currentThread().isInterrupted())
+            return;
+
+          BasicFileAttributes attributes = null;
+          try
+          {
+            attributes = Files.readAttributes(entry, BasicFileAttributes.class); // Follow symbolic links.
+          }
+          catch(IOException ex)
+          {
+            if(!Files.isSymbolicLink(entry)) // Same as 1 thread: broken symbolic links are ignored silently.
+              FileWalker.this.warn(entry, ex);
+            continue;
+          }
+
+          if(attributes.isDirectory())
+          {
+            if(FileWalker.this.visit(entry, attributes))
+              subTasks.add(new DirectoryTask(entry));
+          }
+          else if(attributes.isRegularFile())
+            FileWalker.this.add(entry, attributes);
+        }
+      }
+      catch(IOException ex)
+      {
+        FileWalker.this.warn(this.dir, ex);
+      }
+      finally
+      {
+        if(entries!=null)
+        {
+          try{ entries.close(); } catch(IOException ex) { ex.printStackTrace(); }
+        }
+      }
+
+      RecursiveAction.invokeAll(subTasks);
+    }
+  }
+}
@@ -0,0 +1,198 @@
+package net.xngo.fileshub;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import net.xngo.fileshub.db.HashCache;
+import net.xngo.fileshub.struct.FileStat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hash files ahead of the database writer.
+ * A pool of worker threads hashes the files while the calling thread, the only one
+ *  allowed to use Main.connection, consumes the files in the exact order they were given.
+ * With 1 thread or less, nothing is hashed ahead and {@link #getHash()} returns null.
+ * Hashes found in the HashCache are not computed again. The cache is only read
+ *  and written by the calling thread.
+ * Files that the {@link Filter} doesn't need hashed are not hashed ahead either, e.g. files already in the database.
+ * @author Xuan Ngo
+ *
+ */
+public class HashPipeline
+{
+  final static Logger log = LoggerFactory.getLogger(HashPipeline.class);
+
+  /**
+   * Tells which files need a hash. Called by the calling thread: it can use Main.connection.
+   */
+  public interface Filter
+  {
+    boolean isHashNeeded(File file);
+  }
+
+  private final Iterator<File> files;
+  private final ExecutorService executor;
+  private final int window; // Maximum number of files hashed ahead of the writer.
+  private final HashCache hashCache;
+  private final Filter filter;
+
+  private final LinkedList<File> pendingFiles = new LinkedList<File>();
+  private final LinkedList<Future<String>> pendingHashes = new LinkedList<Future<String>>();
+  private final LinkedList<FileStat> pendingStats = new LinkedList<FileStat>(); // Null if the hash is not to be cached.
+
+  private Future<String> currentHash = null;
+  private FileStat currentStat = null;
+
+  public HashPipeline(Iterator<File> files, int threads)
+  {
+    this(files, threads, null);
+  }
+
+  public HashPipeline(Iterator<File> files, int threads, HashCache hashCache)
+  {
+    this(files, threads, hashCache, null);
+  }
+
+  /**
+   * @param files
+   * @param threads
+   * @param hashCache Null to not use the cache.
+   * @param filter Null to hash all files ahead.
+   */
+  public HashPipeline(Iterator<File> files, int threads, HashCache hashCache, Filter filter)
+  {
+    this.files = files;
+    this.filter = filter;
+    this.hashCache = (hashCache!=null && hashCache.isEnabled())? hashCache : null;
+    if(threads>1)
+    {
+      this.executor = Executors.newFixedThreadPool(threads);
+      this.window   = threads*4;
+      log.info("Hash files with {} threads.", threads);
+    }
+    else
+    {
+      this.executor = null;
+      this.window   = 0;
+    }
+  }
+
+  public boolean hasNext()
+  {
+    return !this.pendingFiles.isEmpty() || this.files.hasNext();
+  }
+
+  /**
+   * @return Next file to process. Its hash is available from {@link #getHash()}.
+   */
+  public File next()
+  {
+    if(this.executor==null)
+      return this.files.next();
+
+    this.cacheCurrentHash();
+
+    // Keep the workers busy: hash ahead up to the window size.
+    while(this.pendingFiles.size()<this.window && this.files.hasNext())
+    {
+      final File file = this.files.next();
+      if(this.filter!=null && !this.filter.isHashNeeded(file))
+      {
+        this.pendingFiles.add(file);
+        this.pendingHashes.add(null); // Hashed by the caller if it turns out to be needed.
+        this.pendingStats.add(null);
+        continue;
+      }
+
+      FileStat stat = null;
+      String cachedHash = null;
+      if(this.hashCache!=null)
+      {
+        stat = this.hashCache.stat(file);
+        if(stat!=null)
+          cachedHash = this.hashCache.getHash(stat);
+      }
+
+      this.pendingFiles.add(file);
+      if(cachedHash==null)
+      {
+        this.pendingHashes.add(this.executor.submit(new Callable<String>()
+                                                    {
+                                                      public String call()
+                                                      {
+                                                        return Utils.getHash(file);
+                                                      }
+                                                    }));
+        this.pendingStats.add(stat);
+      }
+      else
+      {
+        final String hash = cachedHash;
+        FutureTask<String> cached = new FutureTask<String>(new Callable<String>()
+                                                            {
+                                                              public String call()
+                                                              {
+                                                                return hash;
+                                                              }
+                                                            });
+        cached.run(); // Already done.
+        this.pendingHashes.add(cached);
+        this.pendingStats.add(null); // Already cached.
+      }
+    }
+
+    this.currentHash = this.pendingHashes.removeFirst();
+    this.currentStat = this.pendingStats.removeFirst();
+    return this.pendingFiles.removeFirst();
+  }
+
+  /**
+   * @return Hash of the file returned by the last {@link #next()}.
+   *          Null if files are not hashed ahead or the filter doesn't need its hash.
+   */
+  public Future<String> getHash()
+  {
+    return this.currentHash;
+  }
+
+  /**
+   * Stop all workers. Hashes not consumed yet are discarded.
+   */
+  public void close()
+  {
+    this.cacheCurrentHash();
+    if(this.executor!=null)
+      this.executor.shutdownNow();
+  }
+
+  /**
+   * Cache the hash of the file returned by the last {@link #next()}, once it is consumed.
+   *  Failed hashes are not cached.
+   */
+  private void cacheCurrentHash()
+  {
+    if(this.currentStat==null || !this.currentHash.isDone() || this.currentHash.isCancelled())
+      return;
+
+    try
+    {
+      this.hashCache.addHash(this.currentStat, this.currentHash.get());
+    }
+    catch(Exception ex)
+    {
+      log.debug("Hash is not cached: {}", this.currentStat.file_key, ex);
+    }
+    finally
+    {
+      this.currentStat = null;
+    }
+  }
+}
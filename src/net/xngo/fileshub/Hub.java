@@ -8,6 +8,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
+import net.xngo.fileshub.db.DocIndex;
+import net.xngo.fileshub.db.HashFilter;
+import net.xngo.fileshub.db.HashCache;
 import net.xngo.fileshub.db.Manager;
 import net.xngo.fileshub.db.Repair;
 import net.xngo.fileshub.report.ReportDuplicate;
@@ -35,6 +38,7 @@ public class Hub
   final static Logger log = LoggerFactory.getLogger(Hub.class);
   
   private Manager manager = new Manager();
+  private HashCache hashCache = new HashCache();
   
   
   public Hub()
@@ -42,165 +46,216 @@ public class Hub
     this.manager.createDbStructure();
   }
   
+  /**
+   * Add all files under addPaths. Files are processed while directories are walked.
+   * @param addPaths Files and directories.
+   */
+  public void addFiles(List<File> addPaths)
+  {
+    this.addFiles(new FileWalker(addPaths), addPaths);
+  }
+  
+  /**
+   * @deprecated Use {@link #addFiles(List)}: listOfFiles has to be built before anything is processed.
+   */
+  @Deprecated
   public void addFiles(Set<File> listOfFiles, List<File> addPaths)
+  {
+    this.addFiles(new FileWalker(new ArrayList<File>(listOfFiles)), addPaths);
+  }
+  
+  private void addFiles(FileWalker fileWalker, List<File> addPaths)
   {
     
     ReportDuplicate reportDuplicate = new ReportDuplicate(new File(String.format("./results_%s.html", this.getResultsSuffix(addPaths))));
     
-    Main.chrono.stop("Get all files to process");
-    
-    // Display total number of files to process.
-    int numberOfFilesToProcess = listOfFiles.size();
-    reportDuplicate.addTotalFilesToProcess(numberOfFilesToProcess);
-    System.out.println(String.format("File(s) to process = %,d", numberOfFilesToProcess));
-
-    // Prepare to display the progress.
-    long totalFileSize = FileUtils.totalSize(listOfFiles);
-    String totalReadableSize = FileUtils.readableSize(totalFileSize);
+    // Prepare to display the progress: totals are a running estimate until all files are discovered.
     long accumulateFileSize = 0;
-    final int updateFrequency = Utils.getUpdateFrequency(numberOfFilesToProcess);
+    CommitPolicy commitPolicy = new CommitPolicy();
     
     List<Duplicate> duplicates = new ArrayList<Duplicate>();
-    Main.chrono.stop("Get total file size");
     int filesProcessed=0;
-    for (File file : listOfFiles) 
+    if(Config.DB_INDEX)
     {
-      try
+      Main.connection.setDocIndex(DocIndex.load());
+      Main.chrono.stop("Index paths and hashes");
+    }
+    HashFilter hashFilter = null;
+    if(Config.DB_BLOOM)
+    {
+      hashFilter = HashFilter.load();
+      Main.connection.setHashFilter(hashFilter);
+      Main.chrono.stop(hashFilter.isRebuilt()? "Build hash filter" : "Load hash filter");
+    }
+    // Don't hash ahead with lazy hashing: most files are not hashed at all.
+    HashPipeline hashPipeline = new HashPipeline(fileWalker, Config.HASH_LAZY? 1 : Config.HASH_THREADS, this.hashCache,  // Only this thread writes to the database.
+                                                  new HashPipeline.Filter()
+                                                  {
+                                                    public boolean isHashNeeded(File file)
+                                                    {
+                                                      return Hub.this.manager.isHashNeeded(file);
+                                                    }
+                                                  });
+    try
+    {
+      while(hashPipeline.hasNext())
       {
-        //*** Add file to database.
-        Document conflictDoc = this.manager.addFile(file);
-        
-        //*** Collect duplicate entries for report.
-        if(conflictDoc!=null)
+        File file = hashPipeline.next();
+        try
         {
-          if(conflictDoc.canonical_path.compareTo(Utils.getCanonicalPath(file))!=0) // Ignore if users add the exact same file and the same path.
+          //*** Add file to database.
+          Document conflictDoc = this.manager.addFile(file, hashPipeline.getHash());
+        
+          //*** Collect duplicate entries for report.
+          if(conflictDoc!=null)
           {
-            File conflictFile = new File(conflictDoc.canonical_path);
-            
-            if(file.exists() && conflictFile.exists() && conflictFile.isFile())
-            {// Ensure both files exist before adding them to the report as duplicate.
-              duplicates.add(new Duplicate(new Document(file), conflictDoc));
-            }
-            else
+            if(conflictDoc.canonical_path.compareTo(Utils.getCanonicalPath(file))!=0) // Ignore if users add the exact same file and the same path.
             {
-              String msg = String.format("Warning: Duplicate pair not added. Both files should exists. Currently: "
-                                                                            + "\n  To add: [exists = %b] %s"
-                                                                            + "\n   In DB: [exists = %b] %s", 
-                                                                            file.exists(), file.getAbsolutePath(), 
-                                                                            conflictFile.exists(), conflictDoc.canonical_path);
-              System.out.println(msg);
+              File conflictFile = new File(conflictDoc.canonical_path);
+            
+              if(file.exists() && conflictFile.exists() && conflictFile.isFile())
+              {// Ensure both files exist before adding them to the report as duplicate.
+                duplicates.add(new Duplicate(new Document(file), conflictDoc));
+              }
+              else
+              {
+                String msg = String.format("Warning: Duplicate pair not added. Both files should exists. Currently: "
+                                                                              + "\n  To add: [exists = %b] %s"
+                                                                              + "\n   In DB: [exists = %b] %s", 
+                                                                              file.exists(), file.getAbsolutePath(), 
+                                                                              conflictFile.exists(), conflictDoc.canonical_path);
+                System.out.println(msg);
+              }
             }
           }
-        }
         
-        //*** Print progress to console.      
-        accumulateFileSize += file.length();
-        filesProcessed++;
-        if( (filesProcessed%updateFrequency)==0 )
-        {
-          Main.connection.commit();
-          Main.console.printProgress(String.format("%s [%s] [%d/%d] %s", Math.getReadablePercentage(accumulateFileSize, totalFileSize), 
-                                                                            totalReadableSize, 
-                                                                            filesProcessed, 
-                                                                            numberOfFilesToProcess,
-                                                                            Utils.getRAMUsage()));
-        }
+          //*** Print progress to console.      
+          final long fileSize = file.length();
+          accumulateFileSize += fileSize;
+          filesProcessed++;
+          commitPolicy.add(fileSize);
+          if(commitPolicy.isCommitDue())
+          {
+            commitPolicy.commit();
+            Main.console.printProgress(String.format("%s [%s] [%d/%d%s] %s", Math.getReadablePercentage(accumulateFileSize, fileWalker.getTotalSize()), 
+                                                                              FileUtils.readableSize(fileWalker.getTotalSize()), 
+                                                                              filesProcessed, 
+                                                                              fileWalker.getTotalFiles(),
+                                                                              fileWalker.isDone()? "" : "+", // Still discovering files.
+                                                                              Utils.getRAMUsage()));
+          }
         
-      }
-      catch(Exception e)
-      {//@TODO: Exception handling is messy here. Need rework.
+        }
+        catch(Exception e)
+        {//@TODO: Exception handling is messy here. Need rework.
         
-        String[] ignoreMessages = {
-                                    "The process cannot access the file because another process has locked a portion of the file", // win32
-                                    "The system cannot find the file specified",
-                                    "Too many levels of symbolic links", // linux
-                                    "Access is denied", // Win32
-                                    "The process cannot access the file because it is being used by another process", // Win32
-                                    "Hash is null",
-                                    "Invalid argument. Caused by /proc", // Linux: RuntimeException: Invalid argument. Caused by /proc/3672/attr/prev.
+          String[] ignoreMessages = {
+                                      "The process cannot access the file because another process has locked a portion of the file", // win32
+                                      "The system cannot find the file specified",
+                                      "Too many levels of symbolic links", // linux
+                                      "Access is denied", // Win32
+                                      "The process cannot access the file because it is being used by another process", // Win32
+                                      "Hash is null",
+                                      "Invalid argument. Caused by /proc", // Linux: RuntimeException: Invalid argument. Caused by /proc/3672/attr/prev.
                                     
-                                    };
-        int msgIndex = -1;  // Default to Not found.
+                                      };
+          int msgIndex = -1;  // Default to Not found.
         
-        if(e.getMessage()==null)
-        {
-          log.error("Unknown exception: Exception.getMessage() is null. Caused by {}.", file.getAbsolutePath(), e);
-          RuntimeException rException = new RuntimeException("Unknown exception: Exception.getMessage() is null. Caused by "+file.getAbsolutePath());
-          throw rException;          
-        }
-        else if(e.getMessage().indexOf("No such file or directory")!=-1)
-        {// For filename with different encoding.
-          if(file.getName().indexOf('\uFFFD')!=-1)
+          if(e.getMessage()==null)
           {
-            /**
-             * Rename invalid filename with a valid filename. All invalid characters in the filename will be replaced
-             *  with a hyphen(-).
-             * Note: It is assumed invalid characters are occurring only in the filename.
-             * This will not handle case where directory name has invalid characters.
-             */
-            final String sourcePath = file.getAbsolutePath();
-            final String destinationPath = file.getParent()+File.separator+file.getName().replace("\uFFFD", "_");
-            File newFile = new File(destinationPath);
-            //if(file.renameTo(newFile))
-            if(this.renameInvalidFilename(sourcePath, destinationPath))
+            log.error("Unknown exception: Exception.getMessage() is null. Caused by {}.", file.getAbsolutePath(), e);
+            RuntimeException rException = new RuntimeException("Unknown exception: Exception.getMessage() is null. Caused by "+file.getAbsolutePath());
+            throw rException;          
+          }
+          else if(e.getMessage().indexOf("No such file or directory")!=-1)
+          {// For filename with different encoding.
+            if(file.getName().indexOf('\uFFFD')!=-1)
             {
-              log.warn("Invalid charaters in filename. Rename {} to {}.", file.getAbsolutePath(), newFile.getAbsolutePath());
-              System.out.println(String.format("Warning: No such file or directory: %s.", file.getAbsolutePath()));
-              System.out.println(String.format("   Renamed file from\n"
-                                             + "     %s to\n"
-                                             + "     %s", file.getAbsolutePath(), newFile.getAbsolutePath()));
-              this.manager.addFile(newFile); // Add renamed file to the database. This might render duplicate report not accurate but it is ok.
+              /**
+               * Rename invalid filename with a valid filename. All invalid characters in the filename will be replaced
+               *  with a hyphen(-).
+               * Note: It is assumed invalid characters are occurring only in the filename.
+               * This will not handle case where directory name has invalid characters.
+               */
+              final String sourcePath = file.getAbsolutePath();
+              final String destinationPath = file.getParent()+File.separator+file.getName().replace("\uFFFD", "_");
+              File newFile = new File(destinationPath);
+              //if(file.renameTo(newFile))
+              if(this.renameInvalidFilename(sourcePath, destinationPath))
+              {
+                log.warn("Invalid charaters in filename. Rename {} to {}.", file.getAbsolutePath(), newFile.getAbsolutePath());
+                System.out.println(String.format("Warning: No such file or directory: %s.", file.getAbsolutePath()));
+                System.out.println(String.format("   Renamed file from\n"
+                                               + "     %s to\n"
+                                               + "     %s", file.getAbsolutePath(), newFile.getAbsolutePath()));
+                this.manager.addFile(newFile); // Add renamed file to the database. This might render duplicate report not accurate but it is ok.
+              }
+              else
+              {
+                log.error("Invalid charaters in filename. Failed rename {} to {}.", file.getAbsolutePath(), newFile.getAbsolutePath());
+                System.out.println(String.format("Error: Failed to rename file from\n"
+                                                  + "   %s to\n"
+                                                  + "   %s", file.getAbsolutePath(), newFile.getAbsolutePath()));
+              }
+
             }
             else
             {
-              log.error("Invalid charaters in filename. Failed rename {} to {}.", file.getAbsolutePath(), newFile.getAbsolutePath());
-              System.out.println(String.format("Error: Failed to rename file from\n"
-                                                + "   %s to\n"
-                                                + "   %s", file.getAbsolutePath(), newFile.getAbsolutePath()));
+              log.warn("No such file or directory: Ignore {}.", file.getAbsolutePath());
+              System.out.println(String.format("Warning: No such file or directory: Ignore %s.", file.getAbsolutePath()));
             }
-
           }
-          else
+          else if((msgIndex=StringUtils.indexOfKeywords(e.getMessage(), ignoreMessages))!=-1)
           {
-            log.warn("No such file or directory: Ignore {}.", file.getAbsolutePath());
-            System.out.println(String.format("Warning: No such file or directory: Ignore %s.", file.getAbsolutePath()));
-          }
-        }
-        else if((msgIndex=StringUtils.indexOfKeywords(e.getMessage(), ignoreMessages))!=-1)
-        {
-          String warnMsg = String.format("Warning: %s Ignore %s.", e.getMessage(), file.getAbsolutePath());
-          log.warn(warnMsg);
-          System.out.println(warnMsg);
-        }        
-        else
-        {
-          // Unknown error, roll back up to 'updateFrequency' commits.
-          try
-          {
-            Main.connection.rollback();
-          }
-          catch(SQLException ex)
+            String warnMsg = String.format("Warning: %s Ignore %s.", e.getMessage(), file.getAbsolutePath());
+            log.warn(warnMsg);
+            System.out.println(warnMsg);
+          }        
+          else
           {
-            ex.printStackTrace();
-          }
+            // Unknown error, roll back the files added since the last commit.
+            try
+            {
+              Main.connection.rollback();
+            }
+            catch(SQLException ex)
+            {
+              ex.printStackTrace();
+            }
 
-          System.out.println(String.format("Rollback up to the last %d potential commits. Issue is in %s", updateFrequency, file.getAbsolutePath()));
-          log.error("Unknown error. Rollback up to the last {} potential commits. Issue is in {}.", updateFrequency, file.getAbsolutePath(), e);
+            System.out.println(String.format("Rollback the last %d files added since the last commit. Issue is in %s", commitPolicy.getUncommittedFiles(), file.getAbsolutePath()));
+            log.error("Unknown error. Rollback the last {} files added since the last commit. Issue is in {}.", commitPolicy.getUncommittedFiles(), file.getAbsolutePath(), e);
           
-          RuntimeException rException = new RuntimeException(e.getMessage());
-          rException.setStackTrace(e.getStackTrace());
-          throw rException;
+            RuntimeException rException = new RuntimeException(e.getMessage());
+            rException.setStackTrace(e.getStackTrace());
+            throw rException;
+          }
         }
       }
-      
-
-      
     }
-    try{ Main.connection.commit(); } catch(SQLException ex) { ex.printStackTrace(); }// Last commit() because of the remainder of modulus.
-    Main.console.printProgress(String.format("100.00%% [%s] [%d/%d]", totalReadableSize, numberOfFilesToProcess, numberOfFilesToProcess));// Last display because of the remainder of modulus.
+    finally
+    {
+      hashPipeline.close();
+      fileWalker.close();
+      if(Main.connection.getDocIndex()!=null)
+      {
+        log.info("{} lookups answered by the index of {} rows.", Main.connection.getDocIndex().getSkippedQueries(), Main.connection.getDocIndex().getRows());
+        Main.connection.setDocIndex(null);
+      }
+      Main.connection.setHashFilter(null);
+    }
+    try{ commitPolicy.commit(); } catch(SQLException ex) { ex.printStackTrace(); }// Last commit() for the files of the last batch.
+    String addSummary = commitPolicy.getSummary();
+    if(hashFilter!=null)
+    {
+      hashFilter.save(); // After the last commit: it has the hashes of the rows saved with it.
+      addSummary += String.format("; hash filter: %s", hashFilter.getSummary());
+    }
+    Main.console.printProgress(String.format("100.00%% [%s] [%d/%d]", FileUtils.readableSize(fileWalker.getTotalSize()), filesProcessed, fileWalker.getTotalFiles()));// Last display for the files of the last batch.
     
     System.out.println();
-    Main.chrono.stop("Add files");
+    Main.chrono.stop(String.format("Add files (%s)", addSummary));
+    reportDuplicate.addTotalFilesToProcess(fileWalker.getTotalFiles());
 
     reportDuplicate.addDirectoriesProcessed(this.getDirectoriesProcessed(addPaths));
     reportDuplicate.setData(duplicates);
@@ -260,7 +315,7 @@ public class Hub
     Collections.sort(sortedFiles);
     for(File file: sortedFiles)
     {
-      String hash = Utils.getHash(file);
+      String hash = this.hashCache.getHash(file);
       try
       {
         System.out.println(String.format("%12s %s", hash, file.getCanonicalPath()));
@@ -270,6 +325,7 @@ public class Hub
         ex.printStackTrace();
       }
     }
+    try{ Main.connection.commit(); } catch(SQLException ex) { ex.printStackTrace(); } // Save cached hashes.
   }
   
   public void searchById(int id)
@@ -295,6 +351,7 @@ public class Hub
   public void searchSimilarFilename(int fuzzyRate)
   {
     List<PairFile> pairFileList = this.manager.searchSimilarFilenameFromCurrentDirectory(fuzzyRate);
+    try{ Main.connection.commit(); } catch(SQLException ex) { ex.printStackTrace(); } // Save clean filenames computed again.
     
     Collections.sort(pairFileList);
     
@@ -307,6 +364,19 @@ public class Hub
     System.out.println("Done!");
   }
   
+  public void searchSimilarFilenameInDatabase(int fuzzyRate)
+  {
+    ReportSimilar reportSimilar = new ReportSimilar(new File("./potentialDuplicates.html"));
+    this.manager.searchSimilarFilenameInDatabase(fuzzyRate, reportSimilar);
+    try{ Main.connection.commit(); } catch(SQLException ex) { ex.printStackTrace(); } // Save clean filenames computed again.
+    
+    reportSimilar.generate();
+    
+    Main.chrono.display("Runtime breakdown"); 
+    
+    System.out.println("Done!");
+  }
+  
   public void upgrade()
   {
     Upgrade upgrade = new Upgrade();
@@ -7,8 +7,8 @@ import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.util.List;
 
+import net.xngo.fileshub.hash.HashEngine;
 import net.xngo.utils.java.io.FileUtils;
-import net.xngo.utils.java.math.Hash;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,6 +23,8 @@ public class Utils
 {
   final static Logger log = LoggerFactory.getLogger(Utils.class);
   
+  public static final long SPOT_HASH_MIN_SIZE = 4194304; // 4MB=4*1024*1024: bigger files are spot hashed. See getHashAlgo().
+  
   /**
    * Always get canonical(complete and fully expanded) path of file.
    * Beware of symbolic link.
@@ -59,6 +61,7 @@ public class Utils
    * Get the hash(ID) of the file.
    * Choose hash algorithm that has low probability of collisions and
    *    its distribution is uniform.
+   * The algorithm is Config.HASH_ALGORITHM. See {@link #getHashAlgo(long)}.
    * @param file
    * @return      the hash as string
    */
@@ -66,23 +69,87 @@ public class Utils
   {
     log.debug("Hashing {} ...", file.getAbsolutePath());
     
-    final int fileSizeThreshold = 4194304; // 4MB=4*1024*1024;
-    
-    // When Config.HASH_FREQUENCY==0, then hash the whole file.
-    if(Config.HASH_FREQUENCY==0)
+    if(Utils.isSpotHashed(file.length()))
     {
-      return Hash.md5(file);
+      return HashEngine.fingerPrint(file, Config.HASH_ALGORITHM, Config.HASH_FREQUENCY);
     }
     else
+      return HashEngine.hash(file, Config.HASH_ALGORITHM);
+  }
+  
+  /**
+   * Get how {@link #getHash(File)} hashes a file of this size.
+   *  Hashes can only be compared if they have the same hash_algo.
+   * @param size
+   * @return  Algorithm name, followed by the spot hash frequency if the file is spot hashed, e.g. md5 or md5:13.
+   */
+  public static final String getHashAlgo(long size)
+  {
+    if(Utils.isSpotHashed(size))
+      return Config.HASH_ALGORITHM.getName()+":"+Config.HASH_FREQUENCY;
+    else
+      return Config.HASH_ALGORITHM.getName();
+  }
+
+  /**
+   * When Config.HASH_FREQUENCY==0, then hash the whole file.
+   *  Otherwise, spot hash if the file is bigger than SPOT_HASH_MIN_SIZE.
+   */
+  private static boolean isSpotHashed(long size)
+  {
+    return Config.HASH_FREQUENCY!=0 && size>Utils.SPOT_HASH_MIN_SIZE;
+  }
+  
+  /**
+   * Get a cheap hash of the file: md5 of its first and last 64 KB.
+   * It is only meaningful to compare quick hashes of files having the same size.
+   *  If quick hashes are equal, files still have to be compared with {@link #getHash(File)}.
+   * @param file
+   * @return      the quick hash as string
+   */
+  public static final String getQuickHash(File file)
+  {
+    log.debug("Quick hashing {} ...", file.getAbsolutePath());
+    
+    final int blockSize = 65536; // 64KB=64*1024;
+    return HashEngine.md5HeadTail(file, blockSize);
+  }
+  
+  /**
+   * @param bytes
+   * @return Lowercase hexadecimal string of bytes.
+   */
+  public static String toHex(byte[] bytes)
+  {
+    final char[] hexDigits = "0123456789abcdef".toCharArray();
+    char[] hex = new char[bytes.length*2];
+    for(int i=0; i<bytes.length; i++)
     {
-      // Spot hash if the file is bigger than 4MB.
-      if(file.length()>fileSizeThreshold)
-      {
-        return Hash.md5FingerPrint(file, Config.HASH_FREQUENCY);
-      }
-      else
-        return Hash.md5(file);
+      hex[i*2]   = hexDigits[(bytes[i]>>4) & 0xF];
+      hex[i*2+1] = hexDigits[bytes[i] & 0xF];
+    }
+    return new String(hex);
+  }
+  
+  /**
+   * @param hex Hexadecimal string. Lowercase or uppercase.
+   * @return Bytes of hex. Null if hex is empty, has an odd length or is not hexadecimal.
+   */
+  public static byte[] fromHex(String hex)
+  {
+    if(hex==null || hex.isEmpty() || hex.length()%2!=0)
+      return null;
+    
+    byte[] bytes = new byte[hex.length()/2];
+    for(int i=0; i<bytes.length; i++)
+    {
+      int high = Character.digit(hex.charAt(i*2),   16);
+      int low  = Character.digit(hex.charAt(i*2+1), 16);
+      if(high==-1 || low==-1)
+        return null;
+      bytes[i] = (byte)((high<<4) | low);
     }
+    return bytes;
   }
   
   public static boolean isFileLocked(File f)
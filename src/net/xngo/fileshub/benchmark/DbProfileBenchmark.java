@@ -0,0 +1,120 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.xngo.fileshub.FileWalker;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DbProfile;
+import net.xngo.fileshub.db.Manager;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compare the throughput of adding files(-a) under each database profile, and with the database in RAM(--db-memory).
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.DbProfileBenchmark [files] [releaseDir] [directory]
+ *  -files: Number of files to add, up to 64 KB. 1 file out of 10 is a duplicate. Default is 20,000.
+ *  -releaseDir: Directory containing upgrade/sql. Default is releases/latest.
+ *  -directory: Where to create the files and the database. Default is the temporary directory.
+ *    Use a directory on a hard disk to measure the cost of syncing.
+ * Each run starts with a new empty database. Files are added like Hub.addFiles() but commit every 117 files: same batches for all runs.
+ *  In RAM, the time includes loading the database and saving it to disk at the end.
+ * @author Xuan Ngo
+ *
+ */
+public class DbProfileBenchmark
+{
+  private static final int COMMIT_FREQUENCY = 117; // Fixed instead of CommitPolicy.
+
+  public static void main(String[] args) throws IOException, SQLException
+  {
+    int files       = (args.length>0)? Integer.parseInt(args[0]) : 20000;
+    File releaseDir = (args.length>1)? new File(args[1]) : new File("releases/latest");
+    File directory  = (args.length>2)? new File(args[2]) : new File(System.getProperty("java.io.tmpdir"));
+
+    // Config is only loaded after the properties are set.
+    File home = Files.createTempDirectory(directory.toPath(), "FHBenchmark_").toFile();
+    FileUtils.copyDirectory(new File(releaseDir, "upgrade"), new File(home, "upgrade"));
+    System.setProperty("FilesHub.home", home.getAbsolutePath());
+    if(System.getProperty("FilesHub.hash.frequency")==null)
+      System.setProperty("FilesHub.hash.frequency", "13");
+
+    try
+    {
+      File dataDir = new File(home, "data");
+      DbProfileBenchmark.createFiles(dataDir, files);
+      List<File> paths = new ArrayList<File>();
+      paths.add(dataDir);
+
+      System.out.println(String.format("Add %,d files, commit every %d.", files, COMMIT_FREQUENCY));
+      System.out.println(String.format("%-12s | %-6s | %12s | %s", "<PROFILE>", "<DB>", "<FILES/s>", "<PRAGMAS>"));
+      for(DbProfile profile: DbProfile.values())
+        DbProfileBenchmark.run(home, paths, profile, false);
+      DbProfileBenchmark.run(home, paths, DbProfile.SAFE, true);
+    }
+    finally
+    {
+      Main.connection.close();
+      FileUtils.deleteDirectory(home);
+    }
+  }
+
+  private static void run(File home, List<File> paths, DbProfile profile, boolean inMemory) throws SQLException
+  {
+    // Start with an empty database.
+    Main.connection.close();
+    for(String suffix: new String[]{ "", "-wal", "-shm", "-journal" })
+      new File(home, "FilesHub.db"+suffix).delete();
+    Connection.setDefaultProfile(profile);
+    Connection.setDefaultInMemory(false);
+    Main.connection = new Connection();
+    Manager manager = new Manager();
+    manager.createDbStructure();
+
+    final long start = System.nanoTime();
+    if(inMemory)
+    {
+      Main.connection.close();
+      Connection.setDefaultInMemory(true);
+      Main.connection = new Connection();
+    }
+    Main.connection.setAutoCommit(false);
+    FileWalker fileWalker = new FileWalker(paths);
+    int files = 0;
+    while(fileWalker.hasNext())
+    {
+      manager.addFile(fileWalker.next());
+      files++;
+      if(files%COMMIT_FREQUENCY==0)
+        Main.connection.commit();
+    }
+    Main.connection.commit();
+    Main.connection.checkpoint();
+    final double seconds = (System.nanoTime()-start)/1000000000.0;
+
+    System.out.println(String.format("%-12s | %-6s | %,12.0f | %s", profile.getName(), inMemory? "RAM" : "disk", files/seconds, Main.connection.getPragmas()));
+  }
+
+  private static void createFiles(File dataDir, int files) throws IOException
+  {
+    Random random = new Random(files);
+    byte[] content = new byte[0];
+    for(int i=0; i<files; i++)
+    {
+      File subDir = new File(dataDir, String.format("dir_%03d", i/1000));
+      subDir.mkdirs();
+      if(i%10!=0)
+      {// Otherwise, same content as the previous file.
+        content = new byte[1+random.nextInt(64*1024)]; // Various sizes: files of the same size are compared.
+        random.nextBytes(content);
+      }
+      Files.write(new File(subDir, String.format("file_%06d.dat", i)).toPath(), content);
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.Random;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DocIndex;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compare the lookups of new files done by Manager.addFile() with and without DocIndex(-DFilesHub.db.index=true).
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.DocIndexBenchmark [rows] [files] [releaseDir]
+ *  -rows: Number of documents already in Shelf. 1 out of 10 is also in Trash. Default is 1,000,000.
+ *  -files: Number of new files to add. Default is 50,000.
+ *  -releaseDir: Directory containing upgrade/sql. Default is releases/latest.
+ * For each new file: lookups by path and by hash in Shelf and Trash, then insert in Shelf by batch. Commit every 117 files.
+ *  FILES/s includes loading the index. LOOKUPS us is the time of the 4 lookups per file.
+ * @author Xuan Ngo
+ *
+ */
+public class DocIndexBenchmark
+{
+  private static final int COMMIT_FREQUENCY = 117; // Fixed instead of CommitPolicy.
+
+  public static void main(String[] args) throws IOException, SQLException
+  {
+    int rows            = (args.length>0)? Integer.parseInt(args[0]) : 1000000;
+    int files           = (args.length>1)? Integer.parseInt(args[1]) : 50000;
+    File releaseDir     = (args.length>2)? new File(args[2]) : new File("releases/latest");
+
+    // Config is only loaded after the properties are set.
+    File home = Files.createTempDirectory("FHBenchmark_").toFile();
+    FileUtils.copyDirectory(new File(releaseDir, "upgrade"), new File(home, "upgrade"));
+    System.setProperty("FilesHub.home", home.getAbsolutePath());
+    if(System.getProperty("FilesHub.hash.frequency")==null)
+      System.setProperty("FilesHub.hash.frequency", "13");
+
+    try
+    {
+      DocIndexBenchmark.createDatabase(home, rows);
+      System.out.println(String.format("%,d documents in Shelf, %,d in Trash. Add %,d new files.", rows, rows/10, files));
+      System.out.println(String.format("%-8s | %12s | %14s | %10s | %14s | %12s", "<INDEX>", "<FILES/s>", "<LOOKUPS us>", "<LOAD ms>", "<INDEX BYTES>", "<BYTES/ROW>"));
+      DocIndexBenchmark.run(home, rows, files, false);
+      DocIndexBenchmark.run(home, rows, files, true);
+    }
+    finally
+    {
+      Main.connection.close();
+      FileUtils.deleteDirectory(home);
+    }
+  }
+
+  private static void run(File home, int rows, int files, boolean index) throws IOException, SQLException
+  {
+    // Start from the same database.
+    Main.connection.close();
+    Files.copy(new File(home, "FilesHub.db.orig").toPath(), new File(home, "FilesHub.db").toPath(), StandardCopyOption.REPLACE_EXISTING);
+    Main.connection = new Connection();
+    Main.connection.setAutoCommit(false);
+
+    Shelf shelf = new Shelf();
+    Trash trash = new Trash();
+    Random random = new Random(files);
+    byte[] md5 = new byte[16];
+
+    final long start = System.nanoTime();
+    long loadMillis = 0;
+    DocIndex docIndex = null;
+    long lookupNanos = 0;
+    if(index)
+    {
+      docIndex = DocIndex.load();
+      Main.connection.setDocIndex(docIndex);
+      loadMillis = (System.nanoTime()-start)/1000000;
+    }
+
+    for(int i=0; i<files; i++)
+    {
+      random.nextBytes(md5);
+      Document doc = DocIndexBenchmark.newDoc(String.format("/home/user/new/%03d/new_%08d.dat", i%1000, i), i, md5);
+
+      // Same as Manager.addFile() for a new file.
+      final long lookupStart = System.nanoTime();
+      shelf.getDocByCanonicalPath(doc.canonical_path);
+      trash.getDocsByCanonicalPath(doc.canonical_path);
+      shelf.getDocByHash(doc.hash, doc.hash_algo);
+      trash.getDocsByHash(doc.hash, doc.hash_algo);
+      lookupNanos += System.nanoTime()-lookupStart;
+      shelf.addDocInBatch(doc);
+
+      if((i+1)%COMMIT_FREQUENCY==0)
+        Main.connection.commit();
+    }
+    Main.connection.commit();
+    final double seconds = (System.nanoTime()-start)/1000000000.0;
+    Main.connection.setDocIndex(null);
+
+    final long bytes = (docIndex==null)? 0 : docIndex.getMemoryUsage();
+    System.out.println(String.format("%-8s | %,12.0f | %,14.1f | %,10d | %,14d | %,12.1f", index? "on" : "off", files/seconds, lookupNanos/1000.0/files, loadMillis, bytes, bytes/(double)(rows+rows/10)));
+  }
+
+  /**
+   * Create a database with rows documents in Shelf and rows/10 in Trash, copied for each run.
+   */
+  private static void createDatabase(File home, int rows) throws IOException, SQLException
+  {
+    Main.connection.close();
+    new File(home, "FilesHub.db").delete();
+    Main.connection = new Connection();
+    new Manager().createDbStructure();
+    Main.connection.setAutoCommit(false);
+
+    Shelf shelf = new Shelf();
+    Trash trash = new Trash();
+    Random random = new Random(rows);
+    byte[] md5 = new byte[16];
+    for(int i=0; i<rows; i++)
+    {
+      random.nextBytes(md5);
+      shelf.addDocInBatch(DocIndexBenchmark.newDoc(String.format("/home/user/files/%03d/file_%08d.dat", i%1000, i), i, md5));
+      if(i%10==0)
+      {
+        random.nextBytes(md5);
+        Document trashDoc = DocIndexBenchmark.newDoc(String.format("/home/user/old/%03d/file_%08d.dat", i%1000, i), i, md5);
+        trashDoc.uid = i+1;
+        trash.addDocInBatch(trashDoc);
+      }
+    }
+    Main.connection.commit();
+    Main.connection.close();
+    Files.copy(new File(home, "FilesHub.db").toPath(), new File(home, "FilesHub.db.orig").toPath());
+  }
+
+  private static Document newDoc(String canonicalPath, int i, byte[] md5)
+  {
+    Document doc = new Document();
+    doc.canonical_path = canonicalPath;
+    doc.filename       = new File(canonicalPath).getName();
+    doc.last_modified  = 1400000000000L+i;
+    doc.size           = 1+i;
+    doc.hash           = Utils.toHex(md5);
+    doc.hash_algo      = "md5";
+    return doc;
+  }
+}
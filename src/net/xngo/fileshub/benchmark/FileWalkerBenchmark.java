@@ -0,0 +1,116 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.xngo.fileshub.FileWalker;
+import net.xngo.utils.java.io.FileUtils;
+
+/**
+ * Compare FileUtils.listFiles() against FileWalker with 1 or more threads on a synthetic deep tree.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.FileWalkerBenchmark [depth] [fanOut] [filesPerDir] [directory]
+ *  -depth: Levels of subdirectories. Default is 5.
+ *  -fanOut: Subdirectories per directory. Default is 4.
+ *  -filesPerDir: Files per directory. Default is 10.
+ *  -directory: Where to create the tree. Default is the temporary directory.
+ *    Use a network or FUSE mount to measure the latency of directory listings.
+ * Each method walks the tree once to warm up, then the best of 3 walks is kept.
+ * @author Xuan Ngo
+ *
+ */
+public class FileWalkerBenchmark
+{
+  private static final int RUNS = 3;
+
+  public static void main(String[] args) throws IOException
+  {
+    int depth       = (args.length>0)? Integer.parseInt(args[0]) : 5;
+    int fanOut      = (args.length>1)? Integer.parseInt(args[1]) : 4;
+    int filesPerDir = (args.length>2)? Integer.parseInt(args[2]) : 10;
+    File directory  = (args.length>3)? new File(args[3]) : new File(System.getProperty("java.io.tmpdir"));
+
+    final File root = Files.createTempDirectory(directory.toPath(), "FHBenchmark_").toFile();
+    try
+    {
+      final int totalFiles = FileWalkerBenchmark.createTree(root, depth, fanOut, filesPerDir);
+      final List<File> paths = new ArrayList<File>();
+      paths.add(root);
+      System.out.println(String.format("Tree: depth=%d, fanOut=%d, filesPerDir=%d => %,d files.", depth, fanOut, filesPerDir, totalFiles));
+      System.out.println(String.format("%-22s | %10s | %12s", "<METHOD>", "<FILES>", "<BEST ms>"));
+
+      FileWalkerBenchmark.run("FileUtils.listFiles", new Walk() { public int run() { return FileUtils.listFiles(paths).size(); } });
+      for(int threads=1; threads<=16; threads*=2)
+      {
+        final int walkThreads = threads;
+        FileWalkerBenchmark.run(String.format("FileWalker(%d threads)", walkThreads), new Walk()
+                                                                                     {
+                                                                                       public int run()
+                                                                                       {
+                                                                                         FileWalker fileWalker = new FileWalker(paths, walkThreads);
+                                                                                         int files = 0;
+                                                                                         while(fileWalker.hasNext())
+                                                                                         {
+                                                                                           fileWalker.next();
+                                                                                           files++;
+                                                                                         }
+                                                                                         return files;
+                                                                                       }
+                                                                                     });
+      }
+    }
+    finally
+    {
+      org.apache.commons.io.FileUtils.deleteDirectory(root);
+    }
+  }
+
+  private interface Walk
+  {
+    /**
+     * @return Number of files found.
+     */
+    int run();
+  }
+
+  private static void run(String method, Walk walk)
+  {
+    walk.run(); // Warm up: page cache and JIT.
+
+    int files = 0;
+    long best = Long.MAX_VALUE;
+    for(int i=0; i<RUNS; i++)
+    {
+      final long start = System.nanoTime();
+      files = walk.run();
+      best = Math.min(best, System.nanoTime()-start);
+    }
+    System.out.println(String.format("%-22s | %,10d | %,12.1f", method, files, best/1000000.0));
+  }
+
+  /**
+   * @return Number of files created.
+   */
+  private static int createTree(File dir, int depth, int fanOut, int filesPerDir) throws IOException
+  {
+    int totalFiles = 0;
+    for(int i=0; i<filesPerDir; i++)
+    {
+      new File(dir, String.format("file_%03d.dat", i)).createNewFile();
+      totalFiles++;
+    }
+
+    if(depth>0)
+    {
+      for(int i=0; i<fanOut; i++)
+      {
+        File subDir = new File(dir, String.format("dir_%03d", i));
+        subDir.mkdir();
+        totalFiles += FileWalkerBenchmark.createTree(subDir, depth-1, fanOut, filesPerDir);
+      }
+    }
+    return totalFiles;
+  }
+}
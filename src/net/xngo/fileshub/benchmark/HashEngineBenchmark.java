@@ -0,0 +1,117 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import net.xngo.fileshub.hash.HashAlgorithm;
+import net.xngo.fileshub.hash.HashEngine;
+import net.xngo.utils.java.math.Hash;
+
+/**
+ * Compare HashEngine against net.xngo.utils.java.math.Hash, and the hash algorithms against each other.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.HashEngineBenchmark [maxSizeInMB] [directory]
+ *  -maxSizeInMB: Biggest file to generate. Default is 1024(1GB). Use 10240 for 10GB.
+ *    Files are 1KB, 8KB, 64KB, ... growing 8 times up to maxSizeInMB, which is always the last one.
+ *  -directory: Where to generate the files. Default is the temporary directory.
+ * Each method runs for 1 second to warm up the page cache and the JIT, then it is timed.
+ *  Therefore, it measures CPU and memory copies, not disk speed.
+ * @author Xuan Ngo
+ *
+ */
+public class HashEngineBenchmark
+{
+  private static final long WARMUP_NANOS          = 1000000000L; // 1 second.
+  private static final long MEASURE_NANOS         = 2000000000L; // 2 seconds.
+  private static final int  MIN_ITERATIONS        = 3;
+  private static final int  FREQUENCY             = 13;          // Same as fh.bat.
+  private static final long FINGERPRINT_THRESHOLD = 4194304;     // 4MB: Same as Utils.getHash().
+  private static final int  SIZE_STEP             = 8;
+
+  public static void main(String[] args) throws IOException
+  {
+    long maxSize = 1024L*1024*1024; // 1GB
+    if(args.length>0)
+      maxSize = Long.parseLong(args[0])*1024*1024;
+
+    File directory = new File(System.getProperty("java.io.tmpdir"));
+    if(args.length>1)
+      directory = new File(args[1]);
+
+    System.out.println(String.format("%14s | %-25s | %12s | %12s", "<SIZE>", "<METHOD>", "<AVG ms>", "<MB/s>"));
+    for(long size=Math.min(1024, maxSize); size>0; size=HashEngineBenchmark.getNextSize(size, maxSize))
+    {
+      final File file = HashEngineBenchmark.createFile(directory, size);
+      try
+      {
+        HashEngineBenchmark.run(file, "Hash.md5",                  new Runnable() { public void run() { Hash.md5(file); } });
+        HashEngineBenchmark.run(file, "HashEngine.md5",            new Runnable() { public void run() { HashEngine.md5(file); } });
+        HashEngineBenchmark.run(file, "HashEngine.hash(sha256)",   new Runnable() { public void run() { HashEngine.hash(file, HashAlgorithm.SHA256); } });
+        HashEngineBenchmark.run(file, "HashEngine.hash(xxhash64)", new Runnable() { public void run() { HashEngine.hash(file, HashAlgorithm.XXHASH64); } });
+        if(size>FINGERPRINT_THRESHOLD)
+        {// Same as Utils.getHash(): Only spot hash files bigger than 4MB.
+          HashEngineBenchmark.run(file, "Hash.md5FingerPrint",       new Runnable() { public void run() { Hash.md5FingerPrint(file, FREQUENCY); } });
+          HashEngineBenchmark.run(file, "HashEngine.md5FingerPrint", new Runnable() { public void run() { HashEngine.md5FingerPrint(file, FREQUENCY); } });
+        }
+      }
+      finally
+      {
+        file.delete();
+      }
+    }
+  }
+
+  /**
+   * @return Next size to benchmark: maxSize is never skipped. 0 after maxSize.
+   */
+  private static long getNextSize(long size, long maxSize)
+  {
+    if(size>=maxSize)
+      return 0;
+    return Math.min(size*SIZE_STEP, maxSize);
+  }
+
+  private static void run(File file, String method, Runnable hashing)
+  {
+    // Warm up: Let the JIT compile the hashing code.
+    long start = System.nanoTime();
+    do
+      hashing.run();
+    while(System.nanoTime()-start<WARMUP_NANOS);
+
+    // Measure.
+    int iterations = 0;
+    start = System.nanoTime();
+    do
+    {
+      hashing.run();
+      iterations++;
+    }
+    while(System.nanoTime()-start<MEASURE_NANOS || iterations<MIN_ITERATIONS);
+    double avgMs = (System.nanoTime()-start)/1000000.0/iterations;
+
+    double mbPerSecond = (file.length()/1024.0/1024.0)/(avgMs/1000.0);
+    System.out.println(String.format("%,14d | %-25s | %12.3f | %12.1f", file.length(), method, avgMs, mbPerSecond));
+  }
+
+  private static File createFile(File directory, long size) throws IOException
+  {
+    File file = File.createTempFile("FHBenchmark_", ".tmp", directory);
+
+    byte[] block = new byte[1024*1024];
+    new Random(size).nextBytes(block);
+
+    FileOutputStream out = new FileOutputStream(file);
+    try
+    {
+      for(long written=0; written<size; written+=block.length)
+        out.write(block, 0, (int)Math.min(block.length, size-written));
+    }
+    finally
+    {
+      out.close();
+    }
+    return file;
+  }
+}
@@ -0,0 +1,139 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.utils.java.io.FileUtils;
+
+/**
+ * Compare hashes stored as hexadecimal TEXT against hashes stored as BLOB.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.HashStorageBenchmark [rows] [directory]
+ *  -rows: Number of rows in Shelf table. Default is 1,000,000.
+ *  -directory: Where to create the databases. Default is the temporary directory.
+ * Both databases have the same rows and the same schema as Shelf table.
+ *  Lookups are the same as Shelf.getDocByHash(), including the conversion from and to hexadecimal.
+ * @author Xuan Ngo
+ *
+ */
+public class HashStorageBenchmark
+{
+  private static final int LOOKUPS = 200000;
+
+  public static void main(String[] args) throws Exception
+  {
+    int rows = 1000000;
+    if(args.length>0)
+      rows = Integer.parseInt(args[0]);
+
+    File directory = new File(System.getProperty("java.io.tmpdir"));
+    if(args.length>1)
+      directory = new File(args[1]);
+
+    Class.forName("org.sqlite.JDBC");
+    System.out.println(String.format("%,d rows, %,d lookups by hash.", rows, LOOKUPS));
+    System.out.println(String.format("%-6s | %12s | %14s", "<HASH>", "<DB SIZE>", "<AVG us/lookup>"));
+    HashStorageBenchmark.run(directory, rows, false);
+    HashStorageBenchmark.run(directory, rows, true);
+  }
+
+  private static void run(File directory, int rows, boolean blob) throws SQLException, IOException
+  {
+    File dbFile = File.createTempFile("FHBenchmark_", ".db", directory);
+    Connection connection = DriverManager.getConnection("jdbc:sqlite:"+dbFile.getAbsolutePath());
+    try
+    {
+      String[] hashes = HashStorageBenchmark.createShelf(connection, rows, blob);
+      connection.close();
+      final long dbSize = dbFile.length();
+
+      // Reopen the database: start with a cold SQLite page cache.
+      connection = DriverManager.getConnection("jdbc:sqlite:"+dbFile.getAbsolutePath());
+      PreparedStatement select = connection.prepareStatement("SELECT uid, canonical_path, filename, last_modified, size, hash, comment, quick_hash, hash_algo FROM Shelf WHERE hash = ?");
+      Random random = new Random(rows);
+
+      // Warm up: Let the JIT compile the lookup code.
+      for(int i=0; i<LOOKUPS/4; i++)
+        HashStorageBenchmark.lookup(select, hashes[random.nextInt(rows)], blob);
+
+      final long start = System.nanoTime();
+      for(int i=0; i<LOOKUPS; i++)
+        HashStorageBenchmark.lookup(select, hashes[random.nextInt(rows)], blob);
+      final double avgMicros = (System.nanoTime()-start)/1000.0/LOOKUPS;
+
+      select.close();
+      System.out.println(String.format("%-6s | %12s | %14.2f", blob? "BLOB" : "TEXT", FileUtils.readableSize(dbSize), avgMicros));
+    }
+    finally
+    {
+      connection.close();
+      dbFile.delete();
+    }
+  }
+
+  /**
+   * @return Hexadecimal hashes of all rows.
+   */
+  private static String[] createShelf(Connection connection, int rows, boolean blob) throws SQLException
+  {
+    Statement statement = connection.createStatement();
+    statement.executeUpdate("CREATE TABLE Shelf (  uid            INTEGER PRIMARY KEY AUTOINCREMENT,"
+                                              + "  canonical_path TEXT NOT NULL,"
+                                              + "  filename       TEXT NOT NULL,"
+                                              + "  last_modified  INTEGER NOT NULL,"
+                                              + "  hash           TEXT,"
+                                              + "  comment        TEXT,"
+                                              + "  size           INTEGER DEFAULT 0,"
+                                              + "  quick_hash     TEXT,"
+                                              + "  hash_algo      TEXT)");
+    statement.executeUpdate("CREATE INDEX shelf_hash ON Shelf (hash)");
+    statement.close();
+
+    connection.setAutoCommit(false);
+    PreparedStatement insert = connection.prepareStatement("INSERT INTO Shelf(canonical_path, filename, last_modified, size, hash, comment, hash_algo) VALUES(?, ?, ?, ?, ?, ?, ?)");
+    Random random = new Random(rows); // Same rows for TEXT and BLOB.
+    String[] hashes = new String[rows];
+    byte[] md5 = new byte[16];
+    for(int i=0; i<rows; i++)
+    {
+      random.nextBytes(md5);
+      hashes[i] = Utils.toHex(md5);
+
+      String filename = String.format("file_%08d.dat", i);
+      int j=1;
+      insert.setString(j++, String.format("/home/user/files/%03d/%s", i%1000, filename));
+      insert.setString(j++, filename);
+      insert.setLong  (j++, 1400000000000L+i);
+      insert.setLong  (j++, random.nextInt(Integer.MAX_VALUE));
+      insert.setObject(j++, blob? Document.toDbHash(hashes[i]) : hashes[i]);
+      insert.setString(j++, "");
+      insert.setString(j++, "md5");
+      insert.addBatch();
+      if(i%10000==0)
+        insert.executeBatch();
+    }
+    insert.executeBatch();
+    insert.close();
+    connection.commit();
+    return hashes;
+  }
+
+  private static String lookup(PreparedStatement select, String hash, boolean blob) throws SQLException
+  {
+    select.setObject(1, blob? Document.toDbHash(hash) : hash);
+    ResultSet resultSet = select.executeQuery();
+    String found = null;
+    if(resultSet.next())
+      found = Document.fromDbHash(resultSet.getObject(6));
+    resultSet.close();
+    return found;
+  }
+}
@@ -0,0 +1,116 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Random;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compare inserting new documents row by row against JDBC batches, on an empty database.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.InsertBatchBenchmark [rows] [releaseDir]
+ *  -rows: Number of new documents. Default is 100,000.
+ *  -releaseDir: Directory containing upgrade/sql. Default is releases/latest.
+ * Each run starts with a new empty database in a temporary FilesHub home.
+ *  "insert" only inserts in Shelf. "addFile" does the same queries as Manager.addFile() for a new file:
+ *  lookups by path and by hash in Shelf and Trash, then insert in Shelf.
+ *  Both commit every 117 documents: same batches for all runs.
+ * @author Xuan Ngo
+ *
+ */
+public class InsertBatchBenchmark
+{
+  private static final int COMMIT_FREQUENCY = 117; // Fixed instead of CommitPolicy.
+
+  public static void main(String[] args) throws IOException, SQLException
+  {
+    int rows = 100000;
+    if(args.length>0)
+      rows = Integer.parseInt(args[0]);
+
+    File releaseDir = new File("releases/latest");
+    if(args.length>1)
+      releaseDir = new File(args[1]);
+
+    // Config is only loaded after the properties are set.
+    File home = Files.createTempDirectory("FHBenchmark_").toFile();
+    FileUtils.copyDirectory(new File(releaseDir, "upgrade"), new File(home, "upgrade"));
+    System.setProperty("FilesHub.home", home.getAbsolutePath());
+    if(System.getProperty("FilesHub.hash.frequency")==null)
+      System.setProperty("FilesHub.hash.frequency", "13");
+
+    try
+    {
+      System.out.println(String.format("%,d new documents, commit every %d.", rows, COMMIT_FREQUENCY));
+      System.out.println(String.format("%-8s | %-7s | %12s", "<QUERY>", "<MODE>", "<ROWS/s>"));
+      for(boolean lookup: new boolean[]{ false, true })
+      {
+        InsertBatchBenchmark.run(home, rows, lookup, false);
+        InsertBatchBenchmark.run(home, rows, lookup, true);
+      }
+    }
+    finally
+    {
+      Main.connection.close();
+      FileUtils.deleteDirectory(home);
+    }
+  }
+
+  private static void run(File home, int rows, boolean lookup, boolean batch) throws SQLException
+  {
+    // Start with an empty database.
+    Main.connection.close();
+    new File(home, "FilesHub.db").delete();
+    Main.connection = new Connection();
+    new Manager().createDbStructure();
+    Main.connection.setAutoCommit(false);
+
+    Shelf shelf = new Shelf();
+    Trash trash = new Trash();
+    Random random = new Random(rows); // Same documents for all runs.
+    byte[] md5 = new byte[16];
+
+    final long start = System.nanoTime();
+    for(int i=0; i<rows; i++)
+    {
+      random.nextBytes(md5);
+      Document doc = new Document();
+      doc.filename       = String.format("file_%08d.dat", i);
+      doc.canonical_path = String.format("/home/user/files/%03d/%s", i%1000, doc.filename);
+      doc.last_modified  = 1400000000000L+i;
+      doc.size           = random.nextInt(Integer.MAX_VALUE);
+      doc.hash           = Utils.toHex(md5);
+      doc.hash_algo      = "md5";
+
+      if(lookup)
+      {// Same as Manager.addFile() for a new file.
+        shelf.getDocByCanonicalPath(doc.canonical_path);
+        trash.getDocsByCanonicalPath(doc.canonical_path);
+        shelf.getDocByHash(doc.hash, doc.hash_algo);
+        trash.getDocsByHash(doc.hash, doc.hash_algo);
+      }
+
+      if(batch)
+        shelf.addDocInBatch(doc);
+      else
+        shelf.addDoc(doc);
+
+      if((i+1)%COMMIT_FREQUENCY==0)
+        Main.connection.commit();
+    }
+    Main.connection.commit();
+    final double seconds = (System.nanoTime()-start)/1000000000.0;
+
+    System.out.println(String.format("%-8s | %-7s | %,12.0f", lookup? "addFile" : "insert", batch? "batch" : "per-row", rows/seconds));
+  }
+}
@@ -0,0 +1,175 @@
+package net.xngo.fileshub.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.struct.Document;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Compare search --filename and --path using the full-text index(ShelfSearch) with LIKE on all rows.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.SearchBenchmark [rows] [releaseDir]
+ *  -rows: Number of documents in Shelf. Filenames are 3 to 5 random words. Default is 2,000,000.
+ *  -releaseDir: Directory containing upgrade/sql. Default is releases/latest.
+ * Each search runs 3 times: the best time is kept. Both return the same number of documents.
+ * @author Xuan Ngo
+ *
+ */
+public class SearchBenchmark
+{
+  private static final String[] WORDS = { "summer", "holiday", "paris", "beach", "family", "birthday", "wedding", "concert", "report", "invoice",
+                                          "scan", "draft", "final", "backup", "photo", "video", "music", "album", "track", "mountain",
+                                          "river", "garden", "party", "school", "office", "project", "meeting", "notes", "budget", "travel" };
+  private static final String[] EXTENSIONS = { ".jpg", ".png", ".mp4", ".mp3", ".pdf", ".doc", ".txt", ".zip" };
+
+  private static final String COLUMNS = "uid, (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename, IFNULL(Shelf.link_filename, Shelf.filename), last_modified, size, hash, comment, quick_hash, hash_algo";
+
+  private static final String[][] SEARCHES = {
+                                              { "filename", "Prefix",       "concert*" },
+                                              { "filename", "Infix",        "*oliday*" },
+                                              { "filename", "Multiple",     "*paris*beach*2013*" },
+                                              { "filename", "Rare infix",   "*ncert_budg*" },
+                                              { "filename", "Exact",        "wedding_track_river_1999.mp3" },
+                                              { "path",     "Directory",    "*/2013/06/*" },
+                                              { "path",     "Infix",        "*oliday*" },
+                                              { "path",     "Dir+filename", "*/2014/*invoice*.pdf" },
+                                            };
+
+  public static void main(String[] args) throws IOException, SQLException
+  {
+    int rows            = (args.length>0)? Integer.parseInt(args[0]) : 2000000;
+    File releaseDir     = (args.length>1)? new File(args[1]) : new File("releases/latest");
+
+    // Config is only loaded after the properties are set.
+    File home = Files.createTempDirectory("FHBenchmark_").toFile();
+    FileUtils.copyDirectory(new File(releaseDir, "upgrade"), new File(home, "upgrade"));
+    System.setProperty("FilesHub.home", home.getAbsolutePath());
+    if(System.getProperty("FilesHub.hash.frequency")==null)
+      System.setProperty("FilesHub.hash.frequency", "13");
+
+    try
+    {
+      final long start = System.nanoTime();
+      SearchBenchmark.createDatabase(home, rows);
+      System.out.println(String.format("%,d documents in Shelf added in %,d s. Database: %,d bytes, full-text index: %,d bytes.",
+                                          rows, (System.nanoTime()-start)/1000000000L, new File(home, "FilesHub.db").length(), SearchBenchmark.getIndexSize()));
+      System.out.println(String.format("%-8s | %-12s | %-28s | %10s | %12s | %12s | %8s", "<SEARCH>", "<TYPE>", "<VALUE>", "<DOCS>", "<LIKE ms>", "<INDEX ms>", "<SPEEDUP>"));
+      Shelf shelf = new Shelf();
+      for(String[] search: SEARCHES)
+      {
+        final boolean path  = search[0].equals("path");
+        final String column = path? "(SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename" : "IFNULL(Shelf.link_filename, Shelf.filename)";
+        long likeNanos  = Long.MAX_VALUE;
+        long indexNanos = Long.MAX_VALUE;
+        int likeDocs    = 0;
+        int indexDocs   = 0;
+        for(int i=0; i<3; i++)
+        {
+          long t = System.nanoTime();
+          likeDocs = SearchBenchmark.scan(column, search[2]);
+          likeNanos = Math.min(likeNanos, System.nanoTime()-t);
+
+          t = System.nanoTime();
+          indexDocs = (path? shelf.searchDocsByFilepath(search[2]) : shelf.searchDocsByFilename(search[2])).size();
+          indexNanos = Math.min(indexNanos, System.nanoTime()-t);
+        }
+        if(likeDocs!=indexDocs)
+          throw new RuntimeException(String.format("%s: %d documents with LIKE but %d with the index.", search[2], likeDocs, indexDocs));
+        System.out.println(String.format("%-8s | %-12s | %-28s | %,10d | %,12.1f | %,12.1f | %7.0fx", search[0], search[1], search[2], indexDocs,
+                                                  likeNanos/1000000.0, indexNanos/1000000.0, likeNanos/(double)indexNanos));
+      }
+    }
+    finally
+    {
+      Main.connection.close();
+      FileUtils.deleteDirectory(home);
+    }
+  }
+
+  /**
+   * @return Number of documents found by LIKE or = on all rows: same as before the index.
+   */
+  private static int scan(String column, String value) throws SQLException
+  {
+    final String operator = (value.indexOf('*')==-1)? "=" : "LIKE";
+    ResultSet resultSet = Main.connection.executeForwardQuery(String.format("SELECT %s FROM Shelf WHERE %s %s ?", COLUMNS, column, operator), value.replace('*', '%'));
+    try
+    {
+      int docs = 0;
+      while(resultSet.next())
+      {
+        for(int i=1; i<=9; i++)
+          resultSet.getObject(i); // Same columns read as Shelf.
+        docs++;
+      }
+      return docs;
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  private static long getIndexSize() throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery("SELECT (SELECT IFNULL(SUM(length(block)), 0) FROM ShelfSearch_segments)+(SELECT IFNULL(SUM(length(root)), 0) FROM ShelfSearch_segdir)");
+    try
+    {
+      return resultSet.next()? resultSet.getLong(1) : 0;
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  /**
+   * Files are in /home/user/<year>/<month>/<day>/. Filenames are random words joined by _, with a year.
+   */
+  private static void createDatabase(File home, int rows) throws IOException, SQLException
+  {
+    Main.connection.close();
+    new File(home, "FilesHub.db").delete();
+    Main.connection = new Connection();
+    new Manager().createDbStructure();
+    Main.connection.setAutoCommit(false);
+
+    Shelf shelf = new Shelf();
+    Random random = new Random(rows);
+    for(int i=0; i<rows; i++)
+    {
+      StringBuilder filename = new StringBuilder();
+      final int words = 3+random.nextInt(3);
+      for(int w=0; w<words; w++)
+        filename.append(WORDS[random.nextInt(WORDS.length)]).append('_');
+      filename.append(1990+random.nextInt(30)).append(EXTENSIONS[random.nextInt(EXTENSIONS.length)]);
+
+      Document doc = new Document();
+      doc.canonical_path = String.format("/home/user/%d/%02d/%02d/%s", 2000+random.nextInt(20), 1+random.nextInt(12), 1+random.nextInt(28), filename);
+      doc.filename       = filename.toString();
+      doc.last_modified  = 1400000000000L+i;
+      doc.size           = 1+i;
+      doc.hash           = String.format("%032x", i);
+      doc.hash_algo      = "md5";
+      shelf.addDocInBatch(doc);
+      if((i+1)%10000==0)
+        Main.connection.commit();
+    }
+    Main.connection.commit();
+    Main.connection.setAutoCommit(true);
+  }
+}
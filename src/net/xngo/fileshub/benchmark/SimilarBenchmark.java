@@ -0,0 +1,93 @@
+package net.xngo.fileshub.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.xngo.fileshub.similar.SimilarSearch;
+
+/**
+ * Compare files against documents with a similar filename, like search --similar, from 1 thread to 1 thread per core.
+ * Usage: java -cp "bin:releases/latest/libs/*:releases/latest/libs/slf4j/*" net.xngo.fileshub.benchmark.SimilarBenchmark [files] [docs] [fuzzyRate] [maxThreads]
+ *  -files: Number of files in the current directory. Default is 1,000.
+ *  -docs: Number of documents in Shelf. Default is 20,000.
+ *  -fuzzyRate: Default is 80, same as search --similar.
+ *  -maxThreads: Default is the number of cores.
+ * Filenames are 2 to 4 random words and a year. Documents are generated in memory: the database is not read.
+ * Each number of threads runs once after a warm up. All of them find the same pairs.
+ * @author Xuan Ngo
+ *
+ */
+public class SimilarBenchmark
+{
+  private static final String[] WORDS = { "summer", "holiday", "paris", "beach", "family", "birthday", "wedding", "concert", "report", "invoice",
+                                          "scan", "draft", "final", "backup", "photo", "video", "music", "album", "track", "mountain",
+                                          "river", "garden", "party", "school", "office", "project", "meeting", "notes", "budget", "travel" };
+
+  public static void main(String[] args)
+  {
+    int files       = (args.length>0)? Integer.parseInt(args[0]) : 1000;
+    int docs        = (args.length>1)? Integer.parseInt(args[1]) : 20000;
+    int fuzzyRate   = (args.length>2)? Integer.parseInt(args[2]) : 80;
+    int maxThreads  = (args.length>3)? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+    Random random = new Random(files);
+    List<String> paths = new ArrayList<String>(files);
+    List<String> filenames = new ArrayList<String>(files);
+    for(int i=0; i<files; i++)
+    {
+      paths.add("/current/"+i);
+      filenames.add(SimilarBenchmark.getFilename(random));
+    }
+    List<String> docFilenames = new ArrayList<String>(docs);
+    for(int i=0; i<docs; i++)
+      docFilenames.add(SimilarBenchmark.getFilename(random));
+
+    System.out.println(String.format("%,d files x %,d documents, fuzzyRate=%d, %d cores.", files, docs, fuzzyRate, Runtime.getRuntime().availableProcessors()));
+    System.out.println(String.format("%-10s | %10s | %12s | %8s", "<THREADS>", "<PAIRS>", "<ms>", "<SPEEDUP>"));
+    SimilarBenchmark.run(paths, filenames, docFilenames, fuzzyRate, 1); // Warm up: JIT.
+    long oneThreadNanos = 0;
+    int onePairs = 0;
+    for(int threads=1; threads<=maxThreads; threads=(threads*2>maxThreads && threads<maxThreads)? maxThreads : threads*2)
+    {
+      final long start = System.nanoTime();
+      final int pairs = SimilarBenchmark.run(paths, filenames, docFilenames, fuzzyRate, threads);
+      final long nanos = System.nanoTime()-start;
+      if(threads==1)
+      {
+        oneThreadNanos = nanos;
+        onePairs = pairs;
+      }
+      else if(pairs!=onePairs)
+        throw new RuntimeException(String.format("%d pairs with 1 thread but %d with %d threads.", onePairs, pairs, threads));
+      System.out.println(String.format("%-10d | %,10d | %,12.1f | %7.2fx", threads, pairs, nanos/1000000.0, oneThreadNanos/(double)nanos));
+    }
+  }
+
+  /**
+   * @return Number of pairs found.
+   */
+  private static int run(List<String> paths, List<String> filenames, List<String> docFilenames, int fuzzyRate, int threads)
+  {
+    SimilarSearch similarSearch = new SimilarSearch(paths, filenames, fuzzyRate, threads);
+    try
+    {
+      for(int i=0; i<docFilenames.size(); i++)
+        similarSearch.add("/shelf/"+i, docFilenames.get(i));
+      return similarSearch.getPairFiles().size();
+    }
+    finally
+    {
+      similarSearch.close();
+    }
+  }
+
+  private static String getFilename(Random random)
+  {
+    StringBuilder filename = new StringBuilder();
+    final int words = 2+random.nextInt(3);
+    for(int w=0; w<words; w++)
+      filename.append(WORDS[random.nextInt(WORDS.length)]).append('_');
+    return filename.append(1990+random.nextInt(30)).append(".jpg").toString();
+  }
+}
@@ -1,8 +1,12 @@
 package net.xngo.fileshub.cmd;
 
+import java.sql.SQLException;
+
 import net.xngo.fileshub.Config;
 import net.xngo.fileshub.Hub;
-import net.xngo.utils.java.io.FileUtils;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DbProfile;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
@@ -31,9 +35,19 @@ public class Cmd
     {
       jc.parse(args);
       
+      if(options.dbMemory && !Main.connection.isInMemory())
+      {
+        this.loadDbInMemory();
+      }
+      
+      if(options.dbProfile!=null)
+      {
+        this.applyDbProfile(options.dbProfile);
+      }
+      
       if(options.addPaths!=null)
       {
-        hub.addFiles(FileUtils.listFiles(options.addPaths), options.addPaths);
+        hub.addFiles(options.addPaths);
       }
       else if(options.update)
       {
@@ -85,6 +99,10 @@ public class Cmd
             {
               hub.searchByFilepath(cmdSearch.filepath);
             }
+            else if(cmdSearch.allFuzzyRate!=0)
+            {
+              hub.searchSimilarFilenameInDatabase(cmdSearch.allFuzzyRate);
+            }
             else if(cmdSearch.fuzzyRate!=0)
             {
               hub.searchSimilarFilename(cmdSearch.fuzzyRate);
@@ -116,6 +134,36 @@ public class Cmd
     }
   }
 
+  private void loadDbInMemory()
+  {
+    Connection.setDefaultInMemory(true);
+    Main.connection.close();
+    Main.connection = new Connection();
+  }
+  
+  private void applyDbProfile(String name)
+  {
+    DbProfile dbProfile;
+    try
+    {
+      dbProfile = DbProfile.get(name);
+    }
+    catch(RuntimeException e)
+    {
+      throw new ParameterException(e.getMessage());
+    }
+    
+    try
+    {
+      Connection.setDefaultProfile(dbProfile);
+      Main.connection.applyProfile(dbProfile);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+  }
+  
   private void displayUsage(JCommander jc)
   {
     System.out.println("\nError: Wrong usage!\n");
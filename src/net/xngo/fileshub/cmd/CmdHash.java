@@ -4,7 +4,7 @@ import java.io.File;
 import java.util.List;
 import java.util.Set;
 
-import net.xngo.utils.java.io.FileUtils;
+import net.xngo.fileshub.FileWalker;
 
 import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
@@ -19,6 +19,6 @@ public class CmdHash
   
   public final Set<File> getAllUniqueFiles()
   {
-    return FileUtils.listFiles(this.paths);
+    return FileWalker.listFiles(this.paths);
   }    
 }
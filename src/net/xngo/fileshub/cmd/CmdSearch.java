@@ -27,4 +27,9 @@ public class CmdSearch
                                                           + "E.g. 80 means return filenames that are 80% similar or more.")
   public int fuzzyRate=80;
   
+  @Parameter(names = {"-sa", "--similar-all"}, description = "Search groups of similar filenames among all documents of the database. "
+                                                              + "Use number(0-100) as the similarity rate. "
+                                                              + "Approximate: some similar filenames might not be grouped.", arity = 1)
+  public int allFuzzyRate;
+  
 }
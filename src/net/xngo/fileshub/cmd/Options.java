@@ -19,4 +19,10 @@ public class Options
   
   @Parameter(names = {"-g", "--upgrade"}, description = "Upgrade the database.")
   public boolean upgrade;    
+  
+  @Parameter(names = {"--db-profile"}, description = "SQLite performance profile: safe, fast or bulk-import. Overrides -DFilesHub.db.profile.")
+  public String dbProfile;
+  
+  @Parameter(names = {"--db-memory"}, description = "Work on a copy of the database in RAM. It is saved to disk every -DFilesHub.db.checkpoint.interval seconds and at exit.")
+  public boolean dbMemory;
 }
@@ -1,13 +1,24 @@
 package net.xngo.fileshub.db;
 
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.xngo.fileshub.Config;
+import net.xngo.fileshub.Utils;
 
 /**
  * All database connection settings initialized.
@@ -18,25 +29,539 @@ public class Connection extends net.xngo.utils.java.db.Connection
 {
   final static Logger log = LoggerFactory.getLogger(net.xngo.fileshub.db.Connection.class);
   
+  private static final int BATCH_SIZE = 1000; // Maximum number of rows waiting in a batch.
+  private static final int STATEMENT_CACHE_SIZE = 100; // Maximum number of compiled statements kept.
+  private static final int DIRECTORY_CACHE_SIZE = 10000; // Maximum number of dir_id kept.
+  
+  private final Map<String, InsertBatch> batches = new LinkedHashMap<String, InsertBatch>(); // Keyed by INSERT query.
+  private static DbProfile defaultProfile = Config.DB_PROFILE; // Applied by new connections.
+  private static boolean defaultInMemory = Config.DB_MEMORY;   // Used by new connections.
+  
+  private boolean autoCommit = true;
+  private DbProfile profile = null;
+  
+  // RAM-resident database: See Config.DB_MEMORY.
+  private boolean inMemory = false;
+  private long lastCheckpoint = 0;
+  private int checkpoints = 0;
+  
+  // Compiled statements keyed by query, least recently used first.
+  private final Map<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true)
+                                                              {
+                                                                private static final long serialVersionUID = 1L;
+                                                                
+                                                                @Override
+                                                                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest)
+                                                                {
+                                                                  if(this.size()<=STATEMENT_CACHE_SIZE)
+                                                                    return false;
+                                                                  
+                                                                  Connection.closeStatement(eldest.getValue()); // Never the current statement: it is the most recently used.
+                                                                  return true;
+                                                                }
+                                                              };
+  private boolean isCachedStatement = false; // True if the current statement is in the cache.
+  private int statementHits   = 0;
+  private int statementMisses = 0;
+  
+  // dir_id of Directory table keyed by path, least recently used first. See Directory.
+  private final Map<String, Integer> dirIds = new LinkedHashMap<String, Integer>(16, 0.75f, true)
+                                                {
+                                                  private static final long serialVersionUID = 1L;
+                                                  
+                                                  @Override
+                                                  protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest)
+                                                  {
+                                                    return this.size()>DIRECTORY_CACHE_SIZE;
+                                                  }
+                                                };
+  
+  private DocIndex docIndex = null; // Paths and hashes in memory. See setDocIndex().
+  private HashFilter hashFilter = null; // Bloom filter of hashes. See setHashFilter().
+  
+  // The current query and its values, for getQueryString().
+  private String query = "";
+  private final List<String> values = new ArrayList<String>();
+  
   public Connection()
   {
-    super.connect(Config.JDBC_CLASSLOADER, Config.DB_URL);
+    // Database is created by Upgrade: PRAGMAs like journal_mode=WAL would write in the file
+    //  and Manager.createDbStructure() would think that it already exists.
+    final File dbFile = new File(Config.DB_FILE_PATH);
+    final boolean isNewDatabase = !dbFile.exists() || dbFile.length()<1;
+    
+    if(Connection.defaultInMemory && !isNewDatabase)
+    {
+      super.connect(Config.JDBC_CLASSLOADER, "jdbc:sqlite::memory:");
+      this.load();
+    }
+    else
+      super.connect(Config.JDBC_CLASSLOADER, Config.DB_URL);
+    
+    if(isNewDatabase)
+      return;
+    
+    try
+    {
+      this.applyProfile(Connection.defaultProfile);
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't apply database profile {}.", Connection.defaultProfile.getName(), ex);
+      ex.printStackTrace();
+    }
+  }
+  
+  /**
+   * Set whether new connections work on a copy of the database in RAM.
+   *  Default is {@link Config#DB_MEMORY}.
+   * @param inMemory
+   */
+  public static void setDefaultInMemory(boolean inMemory)
+  {
+    Connection.defaultInMemory = inMemory;
+  }
+  
+  public static boolean isDefaultInMemory()
+  {
+    return Connection.defaultInMemory;
+  }
+  
+  /**
+   * @return True if this connection works on a copy of the database in RAM.
+   */
+  public boolean isInMemory()
+  {
+    return this.inMemory;
+  }
+  
+  /**
+   * @return Number of times the database in RAM is saved to disk.
+   */
+  public int getCheckpoints()
+  {
+    return this.checkpoints;
+  }
+  
+  /**
+   * Save the committed content of the database in RAM to disk.
+   *  It is written in a temporary file that then replaces FilesHub.db: FilesHub.db is always complete.
+   *  Does nothing if the database is on disk.
+   * @throws SQLException
+   */
+  public void checkpoint() throws SQLException
+  {
+    if(!this.inMemory)
+      return;
+    
+    final long start = System.currentTimeMillis();
+    final File dbFile = new File(Config.DB_FILE_PATH);
+    final File tmpFile = new File(Config.DB_FILE_PATH+".checkpoint");
+    tmpFile.delete();
+    
+    Statement statement = this.connection.createStatement();
+    try
+    {
+      statement.executeUpdate(String.format("backup to \"%s\"", tmpFile.getAbsolutePath()));
+    }
+    finally
+    {
+      statement.close();
+    }
+    
+    try
+    {
+      Files.move(tmpFile.toPath(), dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch(IOException ex)
+    {
+      throw new SQLException(String.format("Can't replace %s with %s.", dbFile.getAbsolutePath(), tmpFile.getAbsolutePath()), ex);
+    }
+    
+    this.lastCheckpoint = System.currentTimeMillis();
+    this.checkpoints++;
+    log.info("Database in RAM saved to {} in {} ms.", dbFile.getAbsolutePath(), this.lastCheckpoint-start);
+  }
+  
+  /**
+   * Apply the PRAGMAs of a performance profile.
+   *  Pending changes are committed first: journal_mode can't be changed within a transaction.
+   * @param profile
+   * @throws SQLException
+   */
+  public void applyProfile(DbProfile profile) throws SQLException
+  {
+    final boolean autoCommit = this.autoCommit;
+    this.setAutoCommit(true);
+    
+    Statement statement = this.connection.createStatement();
+    try
+    {
+      for(String pragma: profile.getPragmas())
+        statement.execute("PRAGMA "+pragma);
+    }
+    finally
+    {
+      statement.close();
+      this.setAutoCommit(autoCommit);
+    }
+    
+    this.profile = profile;
+    log.info("Database profile {} applied: {}", profile.getName(), this.getPragmas());
+  }
+  
+  /**
+   * Set the profile applied by new connections, e.g. the one opened after an upgrade.
+   *  Default is {@link Config#DB_PROFILE}.
+   * @param profile
+   */
+  public static void setDefaultProfile(DbProfile profile)
+  {
+    Connection.defaultProfile = profile;
+  }
+  
+  public static DbProfile getDefaultProfile()
+  {
+    return Connection.defaultProfile;
+  }
+  
+  /**
+   * @return Profile applied at last.
+   */
+  public DbProfile getProfile()
+  {
+    return this.profile;
+  }
+  
+  /**
+   * @return Current values of the PRAGMAs set by profiles, e.g. page_size=4096, journal_mode=wal, synchronous=1.
+   * @throws SQLException
+   */
+  public String getPragmas() throws SQLException
+  {
+    StringBuilder pragmas = new StringBuilder();
+    Statement statement = this.connection.createStatement();
+    try
+    {
+      List<String> names = new ArrayList<String>();
+      names.add("page_size");
+      for(String pragma: DbProfile.SAFE.getPragmas())
+        names.add(pragma.substring(0, pragma.indexOf('=')));
+      
+      for(String name: names)
+      {
+        if(!statement.execute("PRAGMA "+name))
+          continue; // Not supported, e.g. mmap_size of a database in RAM.
+        
+        ResultSet resultSet = statement.getResultSet();
+        if(resultSet.next())
+        {
+          if(pragmas.length()>0)
+            pragmas.append(", ");
+          pragmas.append(name).append('=').append(resultSet.getString(1));
+        }
+        resultSet.close();
+      }
+    }
+    finally
+    {
+      statement.close();
+    }
+    return pragmas.toString();
   }
   
+  @Override
+  public void setAutoCommit(boolean autoCommit) throws SQLException
+  {
+    if(autoCommit)
+      this.flushBatches();
+    super.setAutoCommit(autoCommit);
+    this.autoCommit = autoCommit;
+  }
+  
+  /**
+   * Rows waiting in batches are inserted first.
+   *  Database in RAM is saved to disk if the last checkpoint is older than {@link Config#DB_CHECKPOINT_INTERVAL}.
+   */
   @Override
   public void commit() throws SQLException
   {
     long start = System.currentTimeMillis();
+    this.flushBatches();
     super.commit();
     long end = System.currentTimeMillis()-start;
     long MAX_TIME = 2000; // 2 seconds
     if(end > MAX_TIME)
     {
-      log.warn("Commit() is too slow. It took {} milliseconds. Last Query={}", end, super.getQueryString());
-      System.out.println(String.format("Commit() is too slow. It took %,d milliseconds. Last Query=%s", end, super.getQueryString()));
+      log.warn("Commit() is too slow. It took {} milliseconds. Last Query={}", end, this.getQueryString());
+      System.out.println(String.format("Commit() is too slow. It took %,d milliseconds. Last Query=%s", end, this.getQueryString()));
+    }
+    
+    if(this.inMemory && Config.DB_CHECKPOINT_INTERVAL>0 && System.currentTimeMillis()-this.lastCheckpoint>=Config.DB_CHECKPOINT_INTERVAL*1000L)
+      this.checkpoint();
+  }
+  
+  /**
+   * Rows waiting in batches are discarded: they are part of the transaction.
+   */
+  @Override
+  public void rollback() throws SQLException
+  {
+    for(InsertBatch batch: this.batches.values())
+      batch.clear();
+    this.dirIds.clear(); // Directories inserted in the transaction are gone too.
+    super.rollback();
+  }
+  
+  /**
+   * Rows waiting in batches are discarded, like everything not committed.
+   *  Database in RAM is saved to disk.
+   */
+  @Override
+  public void close()
+  {
+    if(this.inMemory)
+    {
+      try
+      {
+        if(!this.autoCommit)
+          this.rollback();
+        this.checkpoint();
+      }
+      catch(SQLException ex)
+      {
+        log.error("Can't save database in RAM to disk.", ex);
+        ex.printStackTrace();
+      }
+      this.inMemory = false; // Only once.
+    }
+    
+    for(InsertBatch batch: this.batches.values())
+    {
+      try{ batch.close(); } catch(SQLException ex) { ex.printStackTrace(); }
+    }
+    this.batches.clear();
+    
+    for(PreparedStatement statement: this.statements.values())
+      Connection.closeStatement(statement);
+    this.statements.clear();
+    if(this.isCachedStatement)
+    {// Already closed.
+      this.preparedStatement = null;
+      this.isCachedStatement = false;
+    }
+    
+    super.close();
+  }
+  
+  /**
+   * Rows waiting in batches of tables used by the query are inserted first.
+   */
+  @Override
+  public PreparedStatement prepareStatement(String query) throws SQLException
+  {
+    this.flushBatchesUsedBy(query);
+    return this.prepare(query, false);
+  }
+  
+  /**
+   * Same as {@link #prepareStatement(String)} but the compiled statement is kept and reused by the next call with the same query.
+   *  Use it for queries that run many times, e.g. once per file.
+   *  {@link #closePreparedStatement()} only resets it. It is closed with the connection.
+   * @param query
+   * @return PreparedStatement
+   * @throws SQLException
+   */
+  public PreparedStatement prepareCachedStatement(String query) throws SQLException
+  {
+    this.flushBatchesUsedBy(query);
+    return this.prepare(query, true);
+  }
+  
+  /**
+   * Same as {@link #prepareCachedStatement(String)} for a query looking up rows of 1 table by column=value.
+   *  Rows waiting in batches are only inserted first if one of them has column=value.
+   *  Otherwise, they can't be in the result and they keep waiting.
+   * @param query
+   * @param column
+   * @param value Same value as the one bound to the query.
+   * @return PreparedStatement
+   * @throws SQLException
+   */
+  public PreparedStatement prepareLookup(String query, String column, Object value) throws SQLException
+  {
+    for(InsertBatch batch: this.batches.values())
+    {
+      if(batch.size()>0 && batch.isUsedBy(query) && batch.contains(column, value))
+        batch.flush();
+    }
+    return this.prepare(query, true);
+  }
+  
+  /**
+   * Cached statement is reset and kept for the next call. Other statement is closed.
+   */
+  @Override
+  public void closePreparedStatement()
+  {
+    if(this.isCachedStatement)
+    {
+      try
+      {
+        this.preparedStatement.clearParameters();
+      }
+      catch(SQLException ex)
+      {
+        ex.printStackTrace();
+      }
+    }
+    else
+      super.closePreparedStatement();
+  }
+  
+  /**
+   * Run a query on its own forward-only statement: rows are read as the ResultSet moves forward instead of all at once.
+   *  It doesn't replace the current statement, so other queries can run while the ResultSet is read.
+   *  Rows waiting in batches of tables used by the query are inserted first.
+   * @param query
+   * @param values Values bound in order.
+   * @return ResultSet fetching {@link Config#DB_FETCH_SIZE} rows at a time. Close it with its statement.
+   * @throws SQLException
+   */
+  public ResultSet executeForwardQuery(String query, Object... values) throws SQLException
+  {
+    this.flushBatchesUsedBy(query);
+    
+    PreparedStatement statement = this.connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    try
+    {
+      statement.setFetchSize(Config.DB_FETCH_SIZE);
+      for(int i=0; i<values.length; i++)
+        statement.setObject(i+1, values[i]);
+      return statement.executeQuery();
+    }
+    catch(SQLException ex)
+    {
+      statement.close();
+      throw ex;
     }
   }
   
+  /**
+   * Insert a row by JDBC batch: statement preparation and round trips are shared by all rows of the batch.
+   *  The batch is inserted on commit, when it is full or before a query using its table.
+   *  In auto-commit mode, the row is inserted now.
+   * @param query INSERT INTO table(column1, column2, ...) VALUES(?, ?, ...)
+   * @param values Values bound in the same order as the columns.
+   * @throws SQLException
+   */
+  public void batchInsert(String query, Object... values) throws SQLException
+  {
+    this.batchInsert(query, (InsertBatch.Listener)null, values);
+  }
+  
+  /**
+   * Same as {@link #batchInsert(String, Object...)} with a listener called each time the rows of the batch are inserted.
+   * @param query
+   * @param listener Set when the batch of the query is created: use the same one for all rows of the query.
+   * @param values
+   * @throws SQLException
+   */
+  void batchInsert(String query, InsertBatch.Listener listener, Object... values) throws SQLException
+  {
+    InsertBatch batch = this.batches.get(query);
+    if(batch==null)
+    {
+      batch = new InsertBatch(this.connection, query, listener);
+      this.batches.put(query, batch);
+    }
+    
+    batch.add(values);
+    if(this.autoCommit || batch.size()>=BATCH_SIZE)
+      batch.flush();
+  }
+  
+  /**
+   * @return Number of rows waiting in batches.
+   */
+  public int getBatchedRows()
+  {
+    int rows = 0;
+    for(InsertBatch batch: this.batches.values())
+      rows += batch.size();
+    return rows;
+  }
+  
+  /**
+   * Insert all rows waiting in batches.
+   * @throws SQLException
+   */
+  public void flushBatches() throws SQLException
+  {
+    for(InsertBatch batch: this.batches.values())
+      batch.flush();
+  }
+  
+  /**
+   * Set the index used by Shelf and Trash to skip lookups of paths and hashes that are not in the database.
+   *  While it is set, they also add the paths and hashes they write to it.
+   * @param docIndex null to stop using it.
+   */
+  public void setDocIndex(DocIndex docIndex)
+  {
+    this.docIndex = docIndex;
+  }
+  
+  /**
+   * @return {@link DocIndex} or null if there is none.
+   */
+  public DocIndex getDocIndex()
+  {
+    return this.docIndex;
+  }
+  
+  /**
+   * Use a {@link HashFilter} to skip lookups of hashes that are not in the database.
+   *  Shelf and Trash add the hashes they write to it.
+   * @param hashFilter null to stop using it.
+   */
+  public void setHashFilter(HashFilter hashFilter)
+  {
+    this.hashFilter = hashFilter;
+  }
+  
+  /**
+   * @return {@link HashFilter} or null if there is none.
+   */
+  public HashFilter getHashFilter()
+  {
+    return this.hashFilter;
+  }
+  
+  /**
+   * @return dir_id already looked up, keyed by directory path. See {@link Directory}.
+   */
+  Map<String, Integer> getDirIds()
+  {
+    return this.dirIds;
+  }
+  
+  /**
+   * @return Number of times a compiled statement is reused.
+   */
+  public int getStatementHits()
+  {
+    return this.statementHits;
+  }
+  
+  /**
+   * @return Number of times a cached statement is compiled.
+   */
+  public int getStatementMisses()
+  {
+    return this.statementMisses;
+  }
+  
   /**
    * Time execution.
    * Executes the SQL query in this PreparedStatement object and returns the ResultSet object generated by the query.
@@ -52,8 +577,8 @@ public class Connection extends net.xngo.utils.java.db.Connection
     long MAX_TIME = 2000; // 2 seconds
     if(end > MAX_TIME)
     {
-      log.warn("SQL query is too slow. It took {} milliseconds. Query={}", end, super.getQueryString());
-      System.out.println(String.format("SQL query is too slow. It took %,d milliseconds. Query=%s", end, super.getQueryString()));
+      log.warn("SQL query is too slow. It took {} milliseconds. Query={}", end, this.getQueryString());
+      System.out.println(String.format("SQL query is too slow. It took %,d milliseconds. Query=%s", end, this.getQueryString()));
     }
     
     return resultSet;
@@ -76,10 +601,184 @@ public class Connection extends net.xngo.utils.java.db.Connection
     long MAX_TIME = 2000; // 2 seconds
     if(end > MAX_TIME)
     {
-      log.warn("SQL query is too slow. It took {} milliseconds. Query={}", end, super.getQueryString());
-      System.out.println(String.format("SQL query is too slow. It took %,d milliseconds. Query=%s", end, super.getQueryString()));
+      log.warn("SQL query is too slow. It took {} milliseconds. Query={}", end, this.getQueryString());
+      System.out.println(String.format("SQL query is too slow. It took %,d milliseconds. Query=%s", end, this.getQueryString()));
     }
     
     return updateResult;
-  }  
+  }
+  
+  /**
+   * Bind bytes as BLOB. They are shown in hexadecimal in getQueryString().
+   * @param parameterIndex
+   * @param bytes
+   * @throws SQLException
+   */
+  public void setBytes(int parameterIndex, byte[] bytes) throws SQLException
+  {
+    this.addValue((bytes==null)? null : "x'"+Utils.toHex(bytes)+"'");
+    this.preparedStatement.setBytes(parameterIndex, bytes);
+  }
+  
+  @Override
+  public void setString(int parameterIndex, String x) throws SQLException
+  {
+    this.addValue(x);
+    this.preparedStatement.setString(parameterIndex, x);
+  }
+  
+  @Override
+  public void setInt(int parameterIndex, int x) throws SQLException
+  {
+    this.addValue(x+"");
+    this.preparedStatement.setInt(parameterIndex, x);
+  }
+  
+  @Override
+  public void setLong(int parameterIndex, long x) throws SQLException
+  {
+    this.addValue(x+"");
+    this.preparedStatement.setLong(parameterIndex, x);
+  }
+  
+  /**
+   * Same as net.xngo.utils.java.db.Connection.setObject() but it also accepts NULL and byte[].
+   */
+  @Override
+  public void setObject(int parameterIndex, Object x) throws SQLException
+  {
+    if(x==null)
+      this.setString(parameterIndex, null);
+    else if(x instanceof byte[])
+      this.setBytes(parameterIndex, (byte[])x);
+    else
+    {
+      this.addValue(x.toString());
+      this.preparedStatement.setObject(parameterIndex, x);
+    }
+  }
+  
+  /**
+   * Same format as net.xngo.utils.java.db.Connection.getQueryString().
+   * @return Current query with its values.
+   */
+  @Override
+  public String getQueryString()
+  {
+    if(this.values.isEmpty())
+      return this.query;
+    
+    StringBuilder joinedValues = new StringBuilder();
+    for(int i=0; i<this.values.size(); i++)
+    {
+      if(i>0)
+        joinedValues.append(", ");
+      joinedValues.append(this.values.get(i));
+    }
+    return String.format("%s : %s", this.query, joinedValues);
+  }
+  
+  /****************************************************************************
+   * 
+   *                             PRIVATE FUNCTIONS
+   * 
+   ****************************************************************************/
+  
+  /**
+   * Copy FilesHub.db in RAM.
+   *  If it fails, nothing is saved back to disk.
+   */
+  private void load()
+  {
+    final long start = System.currentTimeMillis();
+    try
+    {
+      Statement statement = this.connection.createStatement();
+      try
+      {
+        statement.executeUpdate(String.format("restore from \"%s\"", new File(Config.DB_FILE_PATH).getAbsolutePath()));
+      }
+      finally
+      {
+        statement.close();
+      }
+    }
+    catch(SQLException ex)
+    {
+      RuntimeException rException = new RuntimeException(String.format("Can't load %s in RAM.", Config.DB_FILE_PATH), ex);
+      log.error(rException.getMessage(), ex);
+      throw rException;
+    }
+    
+    this.inMemory = true;
+    this.lastCheckpoint = System.currentTimeMillis();
+    log.info("Database {} loaded in RAM in {} ms.", Config.DB_FILE_PATH, this.lastCheckpoint-start);
+  }
+  
+  private void flushBatchesUsedBy(String query) throws SQLException
+  {
+    for(InsertBatch batch: this.batches.values())
+    {
+      if(batch.size()>0 && batch.isUsedBy(query))
+        batch.flush();
+    }
+  }
+  
+  /**
+   * @param query
+   * @param cache True to reuse the compiled statement of the same query.
+   * @return Current statement.
+   * @throws SQLException
+   */
+  private PreparedStatement prepare(String query, boolean cache) throws SQLException
+  {
+    this.query = query;
+    this.values.clear();
+    
+    if(!cache)
+    {
+      this.preparedStatement = this.connection.prepareStatement(query);
+      this.isCachedStatement = false;
+      return this.preparedStatement;
+    }
+    
+    PreparedStatement statement = this.statements.get(query);
+    if(statement==null || statement.isClosed())
+    {
+      statement = this.connection.prepareStatement(query);
+      this.statements.put(query, statement);
+      this.statementMisses++;
+    }
+    else
+      this.statementHits++;
+    
+    this.preparedStatement = statement;
+    this.isCachedStatement = true;
+    return statement;
+  }
+  
+  /**
+   * Keep the value for getQueryString().
+   */
+  private void addValue(String value)
+  {
+    if(value==null)
+      this.values.add("<null>");
+    else if(value.isEmpty())
+      this.values.add("<empty>");
+    else
+      this.values.add(value);
+  }
+  
+  private static void closeStatement(PreparedStatement statement)
+  {
+    try
+    {
+      statement.close();
+    }
+    catch(SQLException ex)
+    {
+      ex.printStackTrace();
+    }
+  }
 }
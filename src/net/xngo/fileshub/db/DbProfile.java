@@ -0,0 +1,66 @@
+package net.xngo.fileshub.db;
+
+/**
+ * SQLite performance profiles applied as PRAGMAs by {@link Connection#applyProfile(DbProfile)}.
+ *  safe: Driver defaults. Rollback journal and full synchronous.
+ *  fast: Write-ahead log, 64 MB of page cache and 256 MB memory-mapped.
+ *        A power loss can lose the last commits but never corrupts the database.
+ *  bulk-import: No sync and journal in memory, 256 MB of page cache and 1 GB memory-mapped.
+ *        A crash of the OS or a power loss can corrupt the database: back up FilesHub.db first.
+ *  Page size only applies when the database is created. See {@link #getPageSize()}.
+ * @author Xuan Ngo
+ *
+ */
+public enum DbProfile
+{
+  SAFE        ("safe",        1024, new String[]{ "journal_mode=DELETE", "synchronous=FULL",   "cache_size=-2000",    "mmap_size=0",          "temp_store=DEFAULT" }),
+  FAST        ("fast",        4096, new String[]{ "journal_mode=WAL",    "synchronous=NORMAL", "cache_size=-65536",   "mmap_size=268435456",  "temp_store=MEMORY"  }),
+  BULK_IMPORT ("bulk-import", 4096, new String[]{ "journal_mode=MEMORY", "synchronous=OFF",    "cache_size=-262144",  "mmap_size=1073741824", "temp_store=MEMORY"  });
+
+  private final String name;
+  private final int pageSize;
+  private final String[] pragmas;
+
+  private DbProfile(String name, int pageSize, String[] pragmas)
+  {
+    this.name     = name;
+    this.pageSize = pageSize;
+    this.pragmas  = pragmas;
+  }
+
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * @return page_size of a new database. Existing database keeps its page size.
+   */
+  public int getPageSize()
+  {
+    return this.pageSize;
+  }
+
+  /**
+   * @return PRAGMAs applied to each connection, e.g. journal_mode=WAL.
+   */
+  public String[] getPragmas()
+  {
+    return this.pragmas.clone();
+  }
+
+  /**
+   * @param name Name of the profile, e.g. safe, fast or bulk-import.
+   * @return DbProfile matching the name.
+   */
+  public static DbProfile get(String name)
+  {
+    for(DbProfile dbProfile: DbProfile.values())
+    {
+      if(dbProfile.name.compareToIgnoreCase(name)==0)
+        return dbProfile;
+    }
+
+    throw new RuntimeException(String.format("Unknown database profile: %s. Valid values are safe, fast and bulk-import.", name));
+  }
+}
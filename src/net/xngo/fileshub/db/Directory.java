@@ -0,0 +1,170 @@
+package net.xngo.fileshub.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.utils.java.db.DbUtils;
+
+/**
+ * Parent directories of the documents of Shelf and Trash tables, stored once in Directory table.
+ *  Documents only keep dir_id and the last name of their canonical path in filename:
+ *    canonical_path = Directory.path || filename
+ *  Directory.path ends with its separator, '/' or '\', so that the name is appended as it is.
+ *  link_filename keeps {@link Document#filename} when it is not the last name of the canonical path, e.g. symbolic link.
+ * Directories are never deleted: a directory without documents only costs its row.
+ * @author Xuan Ngo
+ *
+ */
+class Directory
+{
+  /**
+   * @param tablename Shelf or Trash.
+   * @return SQL expression of canonical_path.
+   */
+  static String getPathColumn(String tablename)
+  {
+    return String.format("(SELECT path FROM Directory WHERE Directory.dir_id=%1$s.dir_id)||%1$s.filename", tablename);
+  }
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @return SQL expression of {@link Document#filename}.
+   */
+  static String getFilenameColumn(String tablename)
+  {
+    return String.format("IFNULL(%1$s.link_filename, %1$s.filename)", tablename);
+  }
+
+  /**
+   * @param canonicalPath
+   * @return Directory of the canonical path with its separator. Empty if there is none.
+   */
+  static String getPath(String canonicalPath)
+  {
+    return canonicalPath.substring(0, Directory.getNameIndex(canonicalPath));
+  }
+
+  /**
+   * @param canonicalPath
+   * @return Last name of the canonical path: value of the filename column.
+   */
+  static String getName(String canonicalPath)
+  {
+    return canonicalPath.substring(Directory.getNameIndex(canonicalPath));
+  }
+
+  /**
+   * @param doc
+   * @return Value of the link_filename column: null if the filename is the last name of the canonical path.
+   */
+  static String getLinkFilename(Document doc)
+  {
+    return Directory.getName(doc.canonical_path).equals(doc.filename)? null : doc.filename;
+  }
+
+  /**
+   * Use it to write a document.
+   * @param canonicalPath
+   * @return dir_id of the directory of the canonical path. It is added if it doesn't exist.
+   */
+  static int getDirId(String canonicalPath)
+  {
+    final String path = Directory.getPath(canonicalPath);
+    Integer dirId = Directory.findDirId(canonicalPath);
+    if(dirId==null)
+    {
+      dirId = Directory.insert(path);
+      Main.connection.getDirIds().put(path, dirId);
+    }
+    return dirId;
+  }
+
+  /**
+   * Use it to look up a document.
+   * @param canonicalPath
+   * @return dir_id of the directory of the canonical path or null if no document was ever in this directory.
+   */
+  static Integer findDirId(String canonicalPath)
+  {
+    final String path = Directory.getPath(canonicalPath);
+    Integer dirId = Main.connection.getDirIds().get(path);
+    if(dirId==null)
+    {
+      dirId = Directory.select(path);
+      if(dirId!=null)
+        Main.connection.getDirIds().put(path, dirId);
+    }
+    return dirId;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * Same separators as the migration to version 10: last '/' or '\'.
+   */
+  private static int getNameIndex(String canonicalPath)
+  {
+    return Math.max(canonicalPath.lastIndexOf('/'), canonicalPath.lastIndexOf('\\'))+1;
+  }
+
+  private static Integer select(String path)
+  {
+    final String query = "SELECT dir_id FROM Directory WHERE path = ?";
+    Integer dirId = null;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setString(1, path);
+      ResultSet resultSet = Main.connection.executeQuery();
+      if(resultSet.next())
+        dirId = resultSet.getInt(1);
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      throw new RuntimeException(String.format("Can't look up directory %s.", path), e);
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return dirId;
+  }
+
+  private static int insert(String path)
+  {
+    final String query = "INSERT INTO Directory(path) VALUES(?)";
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setString(1, path);
+      if(Main.connection.executeUpdate()!=1)
+        throw new SQLException(String.format("Not inserted: %s", Main.connection.getQueryString()));
+      ResultSet resultSet = Main.connection.getGeneratedKeys();
+      try
+      {
+        if(!resultSet.next())
+          throw new SQLException("No dir_id generated.");
+        return resultSet.getInt(1);
+      }
+      finally
+      {
+        DbUtils.close(resultSet);
+      }
+    }
+    catch(SQLException e)
+    {
+      throw new RuntimeException(String.format("Can't add directory %s.", path), e);
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+}
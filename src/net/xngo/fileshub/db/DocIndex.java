@@ -0,0 +1,210 @@
+package net.xngo.fileshub.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.xngo.fileshub.Main;
+
+/**
+ * Paths and hashes of Shelf and Trash tables kept in memory, so that lookups of paths and hashes
+ *  that are not in the database don't query it. When adding new files, most lookups are like that.
+ *  Only fingerprints are kept: see {@link FingerprintSet}. A path or hash that might be in a table is still looked up
+ *  in the database, so a false positive only costs the query it would have cost without the index.
+ * Shelf and Trash add the paths and hashes they write while the index is set on {@link Connection#setDocIndex(DocIndex)}.
+ *  Removed documents are not removed from the index: they are false positives.
+ * @author Xuan Ngo
+ *
+ */
+public class DocIndex
+{
+  final static Logger log = LoggerFactory.getLogger(DocIndex.class);
+
+  private static final String SHELF = "Shelf";
+  private static final String TRASH = "Trash";
+
+  private final FingerprintSet shelfPaths;
+  private final FingerprintSet shelfHashes;
+  private final FingerprintSet trashPaths;
+  private final FingerprintSet trashHashes;
+
+  private int rows = 0;
+  private int skippedQueries = 0;
+
+  private DocIndex(int shelfRows, int trashRows)
+  {
+    this.shelfPaths  = new FingerprintSet(shelfRows);
+    this.shelfHashes = new FingerprintSet(shelfRows);
+    this.trashPaths  = new FingerprintSet(trashRows);
+    this.trashHashes = new FingerprintSet(trashRows);
+  }
+
+  /**
+   * Read the paths and hashes of Shelf and Trash tables.
+   * @return DocIndex of the database of Main.connection.
+   */
+  public static DocIndex load()
+  {
+    final long start = System.currentTimeMillis();
+    try
+    {
+      DocIndex docIndex = new DocIndex(DocIndex.count(SHELF), DocIndex.count(TRASH));
+      docIndex.read(SHELF);
+      docIndex.read(TRASH);
+      log.info("{} rows indexed in {} ms: {} bytes.", docIndex.rows, System.currentTimeMillis()-start, docIndex.getMemoryUsage());
+      return docIndex;
+    }
+    catch(SQLException ex)
+    {
+      RuntimeException rException = new RuntimeException("Can't index paths and hashes of Shelf and Trash tables.", ex);
+      log.error(rException.getMessage(), ex);
+      throw rException;
+    }
+  }
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @param canonicalPath
+   * @return false if no document of the table has this path.
+   */
+  public boolean mightContainPath(String tablename, String canonicalPath)
+  {
+    FingerprintSet paths = this.getPaths(tablename);
+    if(paths==null || canonicalPath==null || paths.contains(canonicalPath))
+      return true;
+
+    this.skippedQueries++;
+    return false;
+  }
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @param dbHash Hash as stored in the database. See {@link net.xngo.fileshub.struct.Document#toDbHash(String)}.
+   * @return false if no document of the table has this hash.
+   */
+  public boolean mightContainHash(String tablename, Object dbHash)
+  {
+    FingerprintSet hashes = this.getHashes(tablename);
+    if(hashes==null || dbHash==null || DocIndex.contains(hashes, dbHash))
+      return true;
+
+    this.skippedQueries++;
+    return false;
+  }
+
+  /**
+   * Index the path and the hash of a document inserted or updated.
+   * @param tablename Shelf or Trash.
+   * @param canonicalPath
+   * @param dbHash Hash as stored in the database.
+   */
+  public void add(String tablename, String canonicalPath, Object dbHash)
+  {
+    FingerprintSet paths = this.getPaths(tablename);
+    if(paths!=null && canonicalPath!=null)
+      paths.add(canonicalPath);
+
+    FingerprintSet hashes = this.getHashes(tablename);
+    if(hashes!=null && dbHash!=null)
+    {
+      if(dbHash instanceof byte[])
+        hashes.add((byte[])dbHash);
+      else
+        hashes.add(dbHash.toString());
+    }
+  }
+
+  /**
+   * @return Number of rows read by load().
+   */
+  public int getRows()
+  {
+    return this.rows;
+  }
+
+  /**
+   * @return Number of lookups answered without querying the database.
+   */
+  public int getSkippedQueries()
+  {
+    return this.skippedQueries;
+  }
+
+  /**
+   * @return Bytes used by the fingerprints.
+   */
+  public long getMemoryUsage()
+  {
+    return this.shelfPaths.getMemoryUsage() + this.shelfHashes.getMemoryUsage()
+            + this.trashPaths.getMemoryUsage() + this.trashHashes.getMemoryUsage();
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private void read(String tablename) throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery(String.format("SELECT %s, hash FROM %s", Directory.getPathColumn(tablename), tablename));
+    try
+    {
+      while(resultSet.next())
+      {
+        this.add(tablename, resultSet.getString(1), resultSet.getObject(2));
+        this.rows++;
+      }
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  private static int count(String tablename) throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery(String.format("SELECT COUNT(*) FROM %s", tablename));
+    try
+    {
+      return resultSet.next()? resultSet.getInt(1) : 0;
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  private static boolean contains(FingerprintSet hashes, Object dbHash)
+  {
+    if(dbHash instanceof byte[])
+      return hashes.contains((byte[])dbHash);
+    else
+      return hashes.contains(dbHash.toString());
+  }
+
+  private FingerprintSet getPaths(String tablename)
+  {
+    if(SHELF.equals(tablename))
+      return this.shelfPaths;
+    if(TRASH.equals(tablename))
+      return this.trashPaths;
+    return null; // Not indexed.
+  }
+
+  private FingerprintSet getHashes(String tablename)
+  {
+    if(SHELF.equals(tablename))
+      return this.shelfHashes;
+    if(TRASH.equals(tablename))
+      return this.trashHashes;
+    return null; // Not indexed.
+  }
+}
@@ -0,0 +1,199 @@
+package net.xngo.fileshub.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.struct.Document;
+
+/**
+ * Documents read one at a time from a forward-only ResultSet: memory usage doesn't grow with the table.
+ *  Rows are fetched {@link net.xngo.fileshub.Config#DB_FETCH_SIZE} at a time, in rowid order.
+ *  Documents can be changed and committed while they are read. A rollback aborts the ResultSet:
+ *  it is run again from the last rowid read.
+ *  Always close() it: the statement stays open until then.
+ * Usage:
+ *    DocumentCursor cursor = shelf.openDocs();
+ *    try
+ *    {
+ *      for(Document doc: cursor)
+ *        ...
+ *    }
+ *    finally
+ *    {
+ *      cursor.close();
+ *    }
+ * @author Xuan Ngo
+ *
+ */
+public class DocumentCursor implements Iterator<Document>, Iterable<Document>
+{
+  final static Logger log = LoggerFactory.getLogger(DocumentCursor.class);
+
+  private static final int SQLITE_ABORT = 4; // Error code of a statement aborted by a rollback.
+
+  private final String query;
+  private final Object[] values;
+
+  private ResultSet resultSet = null;
+  private long lastRowid = Long.MIN_VALUE;
+  private Document next = null;
+  private boolean closed = false;
+
+  /**
+   * @param columns uid(duid in Trash), canonical_path, filename, last_modified, size, hash, comment, quick_hash, hash_algo.
+   * @param tablename
+   * @param where Condition without WHERE or empty, e.g. size < ?
+   * @param values Values bound to the condition.
+   */
+  DocumentCursor(String columns, String tablename, String where, Object... values)
+  {
+    this.query = String.format("SELECT %s, rowid FROM %s WHERE rowid > ?%s ORDER BY rowid", columns, tablename, where.isEmpty()? "" : " AND "+where);
+    this.values = new Object[values.length+1];
+    System.arraycopy(values, 0, this.values, 1, values.length);
+
+    try
+    {
+      this.execute();
+    }
+    catch(SQLException ex)
+    {
+      RuntimeException rException = new RuntimeException(String.format("Can't read documents: %s", this.query), ex);
+      log.error(rException.getMessage(), ex);
+      throw rException;
+    }
+  }
+
+  /**
+   * The cursor can only be walked once.
+   */
+  @Override
+  public Iterator<Document> iterator()
+  {
+    return this;
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    if(this.next==null && !this.closed)
+      this.next = this.read();
+    return this.next!=null;
+  }
+
+  @Override
+  public Document next()
+  {
+    if(!this.hasNext())
+      throw new NoSuchElementException();
+
+    Document doc = this.next;
+    this.next = null;
+    return doc;
+  }
+
+  @Override
+  public void remove()
+  {
+    throw new UnsupportedOperationException("Documents can't be removed through a cursor.");
+  }
+
+  /**
+   * Close the ResultSet and its statement. Can be called more than once.
+   */
+  public void close()
+  {
+    if(this.closed)
+      return;
+
+    this.closed = true;
+    this.next = null;
+    this.closeResultSet();
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * Run the query for the rows after the last rowid read.
+   */
+  private void execute() throws SQLException
+  {
+    this.values[0] = this.lastRowid;
+    this.resultSet = Main.connection.executeForwardQuery(this.query, this.values);
+  }
+
+  /**
+   * @return Next document or null at the end. Cursor is closed at the end.
+   */
+  private Document read()
+  {
+    try
+    {
+      boolean hasRow;
+      try
+      {
+        hasRow = this.resultSet.next();
+      }
+      catch(SQLException ex)
+      {
+        if(ex.getErrorCode()!=SQLITE_ABORT)
+          throw ex;
+
+        log.debug("Read documents again after rowid {}: {}", this.lastRowid, ex.getMessage());
+        this.closeResultSet();
+        this.execute();
+        hasRow = this.resultSet.next();
+      }
+
+      if(!hasRow)
+      {
+        this.close();
+        return null;
+      }
+
+      Document doc = new Document();
+      int j=1;
+      doc.uid             = this.resultSet.getInt(j++);
+      doc.canonical_path  = this.resultSet.getString(j++);
+      doc.filename        = this.resultSet.getString(j++);
+      doc.last_modified   = this.resultSet.getLong(j++);
+      doc.size            = this.resultSet.getLong(j++);
+      doc.hash            = Document.fromDbHash(this.resultSet.getObject(j++));
+      doc.comment         = this.resultSet.getString(j++);
+      doc.quick_hash      = Document.fromDbHash(this.resultSet.getObject(j++));
+      doc.hash_algo       = Document.fromDbHashAlgo(this.resultSet.getString(j++));
+      this.lastRowid      = this.resultSet.getLong(j++);
+      return doc;
+    }
+    catch(SQLException ex)
+    {
+      this.close();
+      throw new RuntimeException(String.format("Can't read the document after rowid %d: %s", this.lastRowid, this.query), ex);
+    }
+  }
+
+  private void closeResultSet()
+  {
+    try
+    {
+      Statement statement = this.resultSet.getStatement();
+      this.resultSet.close();
+      if(statement!=null)
+        statement.close();
+    }
+    catch(SQLException ex)
+    {
+      ex.printStackTrace();
+    }
+  }
+}
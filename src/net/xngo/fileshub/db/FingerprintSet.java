@@ -0,0 +1,163 @@
+package net.xngo.fileshub.db;
+
+/**
+ * Set of 64 bits fingerprints of strings and bytes, stored in a single long[] by open addressing.
+ *  11 to 21 bytes per value instead of about 100 bytes for a String in a HashSet.
+ *  2 different values can have the same fingerprint: contains() means "maybe", never "no" by mistake.
+ * @author Xuan Ngo
+ *
+ */
+public class FingerprintSet
+{
+  private static final long EMPTY = 0; // Fingerprint 0 is stored as 1.
+  private static final int  MIN_CAPACITY = 1024;
+  private static final int  MAX_LOAD_PERCENT = 75; // Grow when more slots are used.
+
+  private long[] slots;
+  private int size = 0;
+
+  /**
+   * @param expectedSize Number of values expected. The set grows if there are more.
+   */
+  public FingerprintSet(int expectedSize)
+  {
+    this.slots = new long[FingerprintSet.getCapacity(expectedSize)];
+  }
+
+  /**
+   * @param expectedSize Number of values expected.
+   * @return Number of slots allocated for them: the smallest power of 2 holding them under MAX_LOAD_PERCENT.
+   */
+  public static int getCapacity(int expectedSize)
+  {
+    int capacity = MIN_CAPACITY;
+    while(capacity*(long)MAX_LOAD_PERCENT/100 < expectedSize && capacity < (1<<30))
+      capacity <<= 1;
+    return capacity;
+  }
+
+  public void add(String value)
+  {
+    this.addFingerprint(FingerprintSet.fingerprint(value));
+  }
+
+  public void add(byte[] value)
+  {
+    this.addFingerprint(FingerprintSet.fingerprint(value));
+  }
+
+  /**
+   * @return false if the value was never added. True if it was added or if another value has the same fingerprint.
+   */
+  public boolean contains(String value)
+  {
+    return this.containsFingerprint(FingerprintSet.fingerprint(value));
+  }
+
+  public boolean contains(byte[] value)
+  {
+    return this.containsFingerprint(FingerprintSet.fingerprint(value));
+  }
+
+  /**
+   * @return Number of different fingerprints.
+   */
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return Bytes used by the slots.
+   */
+  public long getMemoryUsage()
+  {
+    return this.slots.length*8L;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private void addFingerprint(long fingerprint)
+  {
+    if((this.size+1)*100L > this.slots.length*(long)MAX_LOAD_PERCENT)
+      this.grow();
+
+    final int mask = this.slots.length-1;
+    int i = (int)fingerprint & mask;
+    while(this.slots[i]!=EMPTY)
+    {
+      if(this.slots[i]==fingerprint)
+        return;
+      i = (i+1) & mask;
+    }
+    this.slots[i] = fingerprint;
+    this.size++;
+  }
+
+  private boolean containsFingerprint(long fingerprint)
+  {
+    final int mask = this.slots.length-1;
+    int i = (int)fingerprint & mask;
+    while(this.slots[i]!=EMPTY)
+    {
+      if(this.slots[i]==fingerprint)
+        return true;
+      i = (i+1) & mask;
+    }
+    return false;
+  }
+
+  private void grow()
+  {
+    long[] oldSlots = this.slots;
+    this.slots = new long[oldSlots.length*2];
+    this.size = 0;
+    for(long fingerprint: oldSlots)
+    {
+      if(fingerprint!=EMPTY)
+        this.addFingerprint(fingerprint);
+    }
+  }
+
+  /**
+   * FNV-1a 64 bits over the characters, then mixed so that the low bits used as slot index are spread.
+   */
+  static long fingerprint(String value)
+  {
+    long hash = 0xcbf29ce484222325L;
+    for(int i=0; i<value.length(); i++)
+    {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return FingerprintSet.mix(hash);
+  }
+
+  static long fingerprint(byte[] value)
+  {
+    long hash = 0xcbf29ce484222325L;
+    for(byte b: value)
+    {
+      hash ^= (b & 0xff);
+      hash *= 0x100000001b3L;
+    }
+    return FingerprintSet.mix(~hash); // Not the same fingerprint as the String of the same characters.
+  }
+
+  /**
+   * Finalizer of MurmurHash3. 0 is reserved for empty slots.
+   */
+  static long mix(long hash)
+  {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return (hash==EMPTY)? 1 : hash;
+  }
+}
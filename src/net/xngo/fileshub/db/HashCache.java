@@ -0,0 +1,242 @@
+package net.xngo.fileshub.db;
+
+import java.io.File;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.xngo.fileshub.Config;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.struct.FileStat;
+import net.xngo.utils.java.db.DbUtils;
+
+/**
+ * Persistent cache of hashes keyed by device, inode, size and last modified time.
+ *  Unchanged files are not read again by the hash command or when they are added again.
+ * Rules:
+ *  -Only the latest hash of a file is kept.
+ *  -Hashes are only valid for the same hash_algo. See {@link Utils#getHashAlgo(long)}.
+ *  -The table has at most Config.HASH_CACHE_SIZE entries. The oldest entries are evicted first.
+ *  -Like Shelf and Trash, it uses Main.connection: only the database writer thread can use it.
+ * @author Xuan Ngo
+ *
+ */
+public class HashCache
+{
+  final static Logger log = LoggerFactory.getLogger(HashCache.class);
+
+  protected final String tablename  = "HashCache";
+
+  private static final int EVICTION_FREQUENCY = 1000; // Check the size of the cache every 1000 added hashes.
+
+  private final int maxSize;
+  private int addedHashes = 0;
+
+  public HashCache()
+  {
+    this(Config.HASH_CACHE_SIZE);
+  }
+
+  /**
+   * @param maxSize Maximum number of entries. 0 disables the cache.
+   */
+  public HashCache(int maxSize)
+  {
+    this.maxSize = maxSize;
+  }
+
+  public boolean isEnabled()
+  {
+    return this.maxSize>0;
+  }
+
+  /**
+   * Get the cached hash of the file. Otherwise, hash the file and cache it.
+   * @param file
+   * @return the hash as string. Same as {@link Utils#getHash(File)}.
+   */
+  public String getHash(File file)
+  {
+    if(!this.isEnabled())
+      return Utils.getHash(file);
+
+    FileStat stat = this.stat(file);
+    if(stat==null)
+      return Utils.getHash(file);
+
+    String hash = this.getHash(stat);
+    if(hash==null)
+    {
+      hash = Utils.getHash(file);
+      this.addHash(stat, hash); // Stat is taken before hashing: a file changed while hashing is hashed again next time.
+    }
+    return hash;
+  }
+
+  /**
+   * @param stat
+   * @return Cached hash of this version of the file. Null if it is not cached.
+   */
+  public String getHash(FileStat stat)
+  {
+    if(!this.isEnabled())
+      return null;
+
+    final String query = String.format("SELECT hash FROM %s WHERE file_key=? AND size=? AND last_modified=? AND hash_algo=?", this.tablename);
+
+    String hash = null;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+
+      int i=1; // Order must match with query.
+      Main.connection.setString(i++, stat.file_key);
+      Main.connection.setLong  (i++, stat.size);
+      Main.connection.setLong  (i++, stat.last_modified);
+      Main.connection.setString(i++, Utils.getHashAlgo(stat.size));
+
+      ResultSet resultSet = Main.connection.executeQuery();
+      if(resultSet.next())
+        hash = Document.fromDbHash(resultSet.getObject(1));
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      log.error("Can't get cached hash: {}", Main.connection.getQueryString(), e);
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+
+    return hash;
+  }
+
+  /**
+   * Add or replace the hash of a file.
+   * @param stat Taken before the file is hashed.
+   * @param hash
+   * @return Number of rows affected.
+   */
+  public int addHash(FileStat stat, String hash)
+  {
+    if(!this.isEnabled())
+      return 0;
+
+    final String query = String.format("INSERT OR REPLACE INTO %s(file_key, size, last_modified, hash_algo, hash) VALUES(?, ?, ?, ?, ?)", this.tablename);
+
+    int rowsAffected = 0;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+
+      int i=1; // Order must match with query.
+      Main.connection.setString(i++, stat.file_key);
+      Main.connection.setLong  (i++, stat.size);
+      Main.connection.setLong  (i++, stat.last_modified);
+      Main.connection.setString(i++, Utils.getHashAlgo(stat.size));
+      Main.connection.setObject(i++, Document.toDbHash(hash));
+
+      rowsAffected = Main.connection.executeUpdate();
+    }
+    catch(SQLException e)
+    {
+      log.error("Can't cache hash: {}", Main.connection.getQueryString(), e);
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+
+    this.addedHashes++;
+    if(this.addedHashes%EVICTION_FREQUENCY==0)
+      this.evict();
+
+    return rowsAffected;
+  }
+
+  /**
+   * Remove the oldest entries above the maximum size.
+   *  INSERT OR REPLACE gives a new rowid to replaced entries: the smallest rowids are the oldest entries.
+   * @return Number of entries removed.
+   */
+  public int evict()
+  {
+    final int excess = this.getTotalHashes()-this.maxSize;
+    if(excess<=0)
+      return 0;
+
+    final String query = String.format("DELETE FROM %1$s WHERE rowid IN (SELECT rowid FROM %1$s ORDER BY rowid LIMIT ?)", this.tablename);
+
+    int rowsAffected = 0;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setInt(1, excess);
+      rowsAffected = Main.connection.executeUpdate();
+      log.info("Evicted {} hashes from the cache.", rowsAffected);
+    }
+    catch(SQLException e)
+    {
+      log.error("Can't evict hashes: {}", Main.connection.getQueryString(), e);
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+
+    return rowsAffected;
+  }
+
+  public int getTotalHashes()
+  {
+    final String query = String.format("SELECT COUNT(*) FROM %s", this.tablename);
+
+    int total = 0;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      ResultSet resultSet = Main.connection.executeQuery();
+      if(resultSet.next())
+        total = resultSet.getInt(1);
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+
+    return total;
+  }
+
+  /**
+   * @param file
+   * @return Null if attributes of the file can't be read. The file is then hashed without the cache.
+   */
+  public FileStat stat(File file)
+  {
+    if(!this.isEnabled())
+      return null;
+
+    try
+    {
+      return new FileStat(file);
+    }
+    catch(RuntimeException ex)
+    {
+      log.warn("Hash of {} is not cached.", file.getAbsolutePath(), ex);
+      return null;
+    }
+  }
+}
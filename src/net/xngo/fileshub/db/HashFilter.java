@@ -0,0 +1,395 @@
+package net.xngo.fileshub.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.xngo.fileshub.Config;
+import net.xngo.fileshub.Main;
+
+/**
+ * Bloom filter of the hashes of Shelf and Trash tables: Manager.addFile() doesn't look up a hash
+ *  that is definitely not in the database. Most files added are new, so both lookups would miss.
+ *  A hash that might be in the database is still looked up: a false positive only costs the lookups.
+ * It is saved in FilesHub.db.bloom next to the database with the number of rows and the last rowid of both tables.
+ *  It is rebuilt from the database if they changed, e.g. by another version of FilesHub.
+ *  Shelf and Trash add the hashes they write while it is set on {@link Connection#setHashFilter(HashFilter)}.
+ *  If they write a hash while it isn't, the saved file is deleted: it can't be trusted anymore.
+ *  The file is also deleted once read: the signature misses hashes rewritten in place, so only save() writes it again.
+ *  If the run stops before save(), the next one builds it again.
+ * @author Xuan Ngo
+ *
+ */
+public class HashFilter
+{
+  final static Logger log = LoggerFactory.getLogger(HashFilter.class);
+
+  private static final int MAGIC = 0x46484246; // FHBF
+  private static final int MIN_CAPACITY = 100000;
+  private static final String SHELF = "Shelf";
+  private static final String TRASH = "Trash";
+
+  private static boolean saved = true; // false once the file is deleted, by load() or invalidate(), until the next save().
+
+  private final long[] bits;
+  private final long bitSize;
+  private final int hashFunctions;
+  private final long capacity;
+  private long hashes = 0;
+
+  private boolean rebuilt = false;
+  private long checks = 0;
+  private long negatives = 0;
+  private long falsePositives = 0;
+
+  /**
+   * @param capacity Number of hashes expected. The false positive rate is higher if there are more.
+   * @param falsePositiveProbability False positive rate expected at capacity, e.g. 0.01.
+   */
+  public HashFilter(long capacity, double falsePositiveProbability)
+  {
+    this(capacity,
+          (long)Math.ceil(-capacity*Math.log(falsePositiveProbability)/(Math.log(2)*Math.log(2))),
+          (int)Math.max(1, Math.round(-Math.log(falsePositiveProbability)/Math.log(2))));
+  }
+
+  private HashFilter(long capacity, long bitSize, int hashFunctions)
+  {
+    this.capacity = capacity;
+    this.bits = new long[(int)((bitSize+63)/64)];
+    this.bitSize = this.bits.length*64L;
+    this.hashFunctions = hashFunctions;
+  }
+
+  /**
+   * Read FilesHub.db.bloom, then delete it until {@link #save()}. Build it from the hashes of Shelf and Trash tables
+   *  if it doesn't exist, is full or doesn't match the database.
+   * @return HashFilter of the database of Main.connection.
+   */
+  public static HashFilter load()
+  {
+    final long start = System.currentTimeMillis();
+    try
+    {
+      final long[] signature = HashFilter.getSignature();
+      HashFilter hashFilter = HashFilter.read(signature);
+      if(hashFilter==null)
+      {
+        hashFilter = new HashFilter(Math.max(MIN_CAPACITY, 2*(signature[0]+signature[2])), Config.DB_BLOOM_FPP);
+        hashFilter.rebuilt = true;
+        hashFilter.addHashes(SHELF);
+        hashFilter.addHashes(TRASH);
+      }
+      HashFilter.delete(); // Hashes can be rewritten in place without changing the signature.
+      log.info("{} hashes {} in {} ms: {} bytes.", hashFilter.hashes, hashFilter.rebuilt? "added to the filter" : "read from "+HashFilter.getFile().getName(),
+                                                  System.currentTimeMillis()-start, hashFilter.getMemoryUsage());
+      return hashFilter;
+    }
+    catch(SQLException ex)
+    {
+      RuntimeException rException = new RuntimeException("Can't build the filter of hashes of Shelf and Trash tables.", ex);
+      log.error(rException.getMessage(), ex);
+      throw rException;
+    }
+  }
+
+  /**
+   * Write FilesHub.db.bloom. Call it after the last commit: the number of rows saved is the one of the database.
+   *  It is written in a temporary file that then replaces FilesHub.db.bloom.
+   */
+  public void save()
+  {
+    final File file = HashFilter.getFile();
+    final File tmpFile = new File(file.getAbsolutePath()+".tmp");
+    try
+    {
+      final long[] signature = HashFilter.getSignature();
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+      try
+      {
+        out.writeInt(MAGIC);
+        for(long value: signature)
+          out.writeLong(value);
+        out.writeLong(this.capacity);
+        out.writeLong(this.hashes);
+        out.writeInt(this.hashFunctions);
+        out.writeInt(this.bits.length);
+        for(long word: this.bits)
+          out.writeLong(word);
+      }
+      finally
+      {
+        out.close();
+      }
+      Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      HashFilter.saved = true;
+    }
+    catch(IOException | SQLException ex)
+    {
+      tmpFile.delete();
+      HashFilter.invalidate();
+      log.error("Can't save the filter of hashes in {}.", file.getAbsolutePath(), ex);
+    }
+  }
+
+  /**
+   * Delete FilesHub.db.bloom because hashes were written without updating it.
+   */
+  public static void invalidate()
+  {
+    if(!HashFilter.saved)
+      return;
+
+    HashFilter.delete();
+  }
+
+  /**
+   * @return FilesHub.db.bloom, next to the database file.
+   */
+  public static File getFile()
+  {
+    return new File(Config.DB_FILE_PATH+".bloom");
+  }
+
+  /**
+   * @param dbHash Hash as stored in the database. See {@link net.xngo.fileshub.struct.Document#toDbHash(String)}.
+   * @return false if no document of Shelf and Trash has this hash.
+   */
+  public boolean mightContain(Object dbHash)
+  {
+    if(dbHash==null)
+      return true;
+
+    this.checks++;
+    final long hash1 = HashFilter.fingerprint(dbHash);
+    final long hash2 = FingerprintSet.mix(hash1 ^ 0x9e3779b97f4a7c15L);
+    for(int i=0; i<this.hashFunctions; i++)
+    {
+      final long bit = ((hash1 + i*hash2) & Long.MAX_VALUE) % this.bitSize;
+      if((this.bits[(int)(bit>>>6)] & (1L<<bit))==0)
+      {
+        this.negatives++;
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param dbHash Hash as stored in the database, written in Shelf or Trash.
+   */
+  public void add(Object dbHash)
+  {
+    if(dbHash==null)
+      return;
+
+    final long hash1 = HashFilter.fingerprint(dbHash);
+    final long hash2 = FingerprintSet.mix(hash1 ^ 0x9e3779b97f4a7c15L);
+    for(int i=0; i<this.hashFunctions; i++)
+    {
+      final long bit = ((hash1 + i*hash2) & Long.MAX_VALUE) % this.bitSize;
+      this.bits[(int)(bit>>>6)] |= 1L<<bit;
+    }
+    this.hashes++;
+  }
+
+  /**
+   * Count a hash that mightContain() accepted but that is in neither Shelf nor Trash.
+   */
+  public void addFalsePositive()
+  {
+    this.falsePositives++;
+  }
+
+  /**
+   * @return Number of hashes added, duplicates included.
+   */
+  public long getHashes()
+  {
+    return this.hashes;
+  }
+
+  /**
+   * @return Bytes used by the bits, about the size of FilesHub.db.bloom.
+   */
+  public long getMemoryUsage()
+  {
+    return this.bits.length*8L;
+  }
+
+  /**
+   * @return true if the hashes were read from the database instead of FilesHub.db.bloom.
+   */
+  public boolean isRebuilt()
+  {
+    return this.rebuilt;
+  }
+
+  /**
+   * @return Number of lookups of hashes not done because mightContain() returned false.
+   */
+  public long getSkippedLookups()
+  {
+    return this.negatives;
+  }
+
+  /**
+   * @return False positives counted among the hashes not in the database. 0 if there was none.
+   */
+  public double getFalsePositiveRate()
+  {
+    final long absent = this.negatives+this.falsePositives;
+    return (absent==0)? 0 : this.falsePositives/(double)absent;
+  }
+
+  /**
+   * @return False positive rate expected from the proportion of bits set.
+   */
+  public double getExpectedFalsePositiveRate()
+  {
+    long bitsSet = 0;
+    for(long word: this.bits)
+      bitsSet += Long.bitCount(word);
+    return Math.pow(bitsSet/(double)this.bitSize, this.hashFunctions);
+  }
+
+  /**
+   * @return Size and false positive rate to display.
+   */
+  public String getSummary()
+  {
+    return String.format("%,d bytes for %,d hashes, %,d of %,d lookups skipped, false positive rate %.2f%% (expected %.2f%%)",
+                            this.getMemoryUsage(), this.hashes, this.negatives, this.checks,
+                            this.getFalsePositiveRate()*100, this.getExpectedFalsePositiveRate()*100);
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * @return null if the file doesn't exist, can't be read, is full or was saved with other rows.
+   */
+  private static HashFilter read(long[] signature)
+  {
+    final File file = HashFilter.getFile();
+    if(!file.exists())
+      return null;
+
+    try
+    {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try
+      {
+        if(in.readInt()!=MAGIC)
+        {
+          log.warn("{} is not a filter of hashes. Build it again.", file.getAbsolutePath());
+          return null;
+        }
+        for(long value: signature)
+        {
+          if(in.readLong()!=value)
+          {
+            log.info("Rows of Shelf and Trash changed since {} was saved. Build it again.", file.getName());
+            return null;
+          }
+        }
+        final long capacity = in.readLong();
+        final long hashes = in.readLong();
+        final int hashFunctions = in.readInt();
+        if(hashes>capacity)
+        {
+          log.info("{} has {} hashes for a capacity of {}. Build it bigger.", file.getName(), hashes, capacity);
+          return null;
+        }
+
+        HashFilter hashFilter = new HashFilter(capacity, in.readInt()*64L, hashFunctions);
+        for(int i=0; i<hashFilter.bits.length; i++)
+          hashFilter.bits[i] = in.readLong();
+        hashFilter.hashes = hashes;
+        return hashFilter;
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch(IOException ex)
+    {
+      log.warn("Can't read {}. Build it again.", file.getAbsolutePath(), ex);
+      return null;
+    }
+  }
+
+  private static void delete()
+  {
+    HashFilter.saved = false;
+    File file = HashFilter.getFile();
+    if(file.exists() && !file.delete())
+      log.warn("Can't delete {}. Delete it by hand: it doesn't have the last hashes.", file.getAbsolutePath());
+  }
+
+  private void addHashes(String tablename) throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery(String.format("SELECT hash FROM %s WHERE hash IS NOT NULL", tablename));
+    try
+    {
+      while(resultSet.next())
+        this.add(resultSet.getObject(1));
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  /**
+   * @return Number of rows and last rowid of Shelf, then of Trash.
+   */
+  private static long[] getSignature() throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery(
+        String.format("SELECT (SELECT COUNT(*) FROM %1$s), (SELECT IFNULL(MAX(rowid), 0) FROM %1$s), (SELECT COUNT(*) FROM %2$s), (SELECT IFNULL(MAX(rowid), 0) FROM %2$s)", SHELF, TRASH));
+    try
+    {
+      long[] signature = new long[4];
+      if(resultSet.next())
+      {
+        for(int i=0; i<signature.length; i++)
+          signature[i] = resultSet.getLong(i+1);
+      }
+      return signature;
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+
+  private static long fingerprint(Object dbHash)
+  {
+    if(dbHash instanceof byte[])
+      return FingerprintSet.fingerprint((byte[])dbHash);
+    else
+      return FingerprintSet.fingerprint(dbHash.toString());
+  }
+}
@@ -0,0 +1,178 @@
+package net.xngo.fileshub.db;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rows waiting to be inserted with the same INSERT query, by JDBC batch.
+ *  Rows are kept in memory so that lookups can tell if they have to be flushed first.
+ * @author Xuan Ngo
+ *
+ */
+class InsertBatch
+{
+  private static final Pattern INSERT_PATTERN = Pattern.compile("INSERT INTO\\s+(\\w+)\\s*\\(([^)]*)\\)", Pattern.CASE_INSENSITIVE);
+
+  /**
+   * Writes what depends on the rowid of the rows, e.g. {@link SearchIndex}, once they are inserted.
+   */
+  interface Listener
+  {
+    /**
+     * Called in the same transaction, before the rows are discarded.
+     * @param connection
+     * @param rows Values of the rows inserted, in order.
+     * @param lastRowid rowid of the last row. The query doesn't set the rowid: rows of a batch have consecutive rowids.
+     * @throws SQLException
+     */
+    void onInsert(java.sql.Connection connection, List<Object[]> rows, long lastRowid) throws SQLException;
+  }
+
+  private final java.sql.Connection connection;
+  private final Listener listener;
+  private final String tablename;
+  private final Pattern tablePattern;
+  private final List<String> columns = new ArrayList<String>();
+  private final PreparedStatement preparedStatement;
+  private final List<Object[]> rows = new ArrayList<Object[]>();
+
+  /**
+   * @param connection
+   * @param query INSERT INTO table(column1, column2, ...) VALUES(?, ?, ...)
+   * @param listener Called after each flush(). Can be null.
+   * @throws SQLException
+   */
+  public InsertBatch(java.sql.Connection connection, String query, Listener listener) throws SQLException
+  {
+    Matcher matcher = INSERT_PATTERN.matcher(query);
+    if(!matcher.find())
+      throw new RuntimeException(String.format("Only INSERT INTO table(columns...) can be batched: %s", query));
+
+    this.tablename    = matcher.group(1);
+    this.tablePattern = Pattern.compile("\\b"+this.tablename+"\\b");
+    for(String column: matcher.group(2).split(","))
+      this.columns.add(column.trim());
+
+    this.connection = connection;
+    this.listener = listener;
+    this.preparedStatement = connection.prepareStatement(query);
+  }
+
+  public String getTablename()
+  {
+    return this.tablename;
+  }
+
+  public void add(Object[] values) throws SQLException
+  {
+    for(int i=0; i<values.length; i++)
+      this.preparedStatement.setObject(i+1, values[i]);
+    this.preparedStatement.addBatch();
+    this.rows.add(values);
+  }
+
+  public int size()
+  {
+    return this.rows.size();
+  }
+
+  /**
+   * @param query
+   * @return true if the query uses the table of this batch.
+   */
+  public boolean isUsedBy(String query)
+  {
+    return this.tablePattern.matcher(query).find();
+  }
+
+  /**
+   * @param column
+   * @param value
+   * @return true if a row waiting to be inserted has column=value.
+   *          Also true if the column is not inserted by this batch: it can't be known.
+   */
+  public boolean contains(String column, Object value)
+  {
+    final int index = this.columns.indexOf(column);
+    if(index==-1)
+      return !this.rows.isEmpty();
+
+    for(Object[] row: this.rows)
+    {
+      if(InsertBatch.isEqual(row[index], value))
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * Insert all rows.
+   * @return Number of rows inserted.
+   * @throws SQLException
+   */
+  public int flush() throws SQLException
+  {
+    if(this.rows.isEmpty())
+      return 0;
+
+    try
+    {
+      this.preparedStatement.executeBatch();
+      if(this.listener!=null)
+        this.listener.onInsert(this.connection, this.rows, this.getLastRowid());
+      return this.rows.size();
+    }
+    finally
+    {
+      this.rows.clear();
+    }
+  }
+
+  /**
+   * Discard all rows, e.g. on rollback.
+   */
+  public void clear() throws SQLException
+  {
+    this.preparedStatement.clearBatch();
+    this.rows.clear();
+  }
+
+  public void close() throws SQLException
+  {
+    this.rows.clear();
+    this.preparedStatement.close();
+  }
+
+  private long getLastRowid() throws SQLException
+  {
+    Statement statement = this.connection.createStatement();
+    try
+    {
+      ResultSet resultSet = statement.executeQuery("SELECT last_insert_rowid()");
+      return resultSet.next()? resultSet.getLong(1) : 0;
+    }
+    finally
+    {
+      statement.close();
+    }
+  }
+
+  /**
+   * Same comparison as SQLite: 12 is equal to '12' for INTEGER columns.
+   */
+  private static boolean isEqual(Object rowValue, Object value)
+  {
+    if(rowValue==null || value==null)
+      return false; // NULL is never equal.
+    if(rowValue instanceof byte[] || value instanceof byte[])
+      return (rowValue instanceof byte[]) && (value instanceof byte[]) && Arrays.equals((byte[])rowValue, (byte[])value);
+    return rowValue.toString().equals(value.toString());
+  }
+}
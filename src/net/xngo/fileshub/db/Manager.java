@@ -1,18 +1,23 @@
 package net.xngo.fileshub.db;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import net.xngo.fileshub.Config;
+import net.xngo.fileshub.FileWalker;
 import net.xngo.fileshub.Main;
 import net.xngo.fileshub.Utils;
-import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.report.ReportSimilar;
+import net.xngo.fileshub.similar.CommonTerms;
+import net.xngo.fileshub.similar.SimilarClusters;
+import net.xngo.fileshub.similar.SimilarSearch;
 import net.xngo.fileshub.struct.Document;
 import net.xngo.fileshub.struct.PairFile;
 import net.xngo.fileshub.upgrade.Upgrade;
@@ -33,6 +38,11 @@ public class Manager
   
   private Shelf shelf = new Shelf();
   private Trash trash = new Trash();
+  private HashCache hashCache = new HashCache();
+  
+  private boolean lazyHash = Config.HASH_LAZY;
+  private Boolean hashesToResolve = null; // true if Shelf or Trash has deferred or stale hashes. null until checked. See resolveSameSizeHashes().
+  private final Map<String, Document[]> pathDocs = new HashMap<String, Document[]>(); // Shelf and Trash documents of the paths looked up by isHashNeeded(), until addFile().
   
   public void createDbStructure()
   {
@@ -58,6 +68,20 @@ public class Manager
   }
   
 
+  /**
+   * Size-first lazy hashing: a file can only have the same hash as another file
+   *  if they have the same size. When enabled, a new file with a unique size is
+   *  stored with a deferred hash. Its hash is computed when a second file
+   *  of the same size is added and both have the same quick hash: md5 of
+   *  the first and last 64KB.
+   * @param lazyHash
+   */
+  public void setLazyHash(boolean lazyHash)
+  {
+    this.lazyHash = lazyHash;
+    this.hashesToResolve = null; // Lazy hashing might have deferred hashes.
+  }
+  
   /**
    * Add a file in database. A file is identified by its hash.
    * For optimization, check the path first and then the hash.
@@ -100,16 +124,47 @@ public class Manager
    * @return  Conflicting document.
    */
   public Document addFile(File file)
+  {
+    return this.addFile(file, null);
+  }
+  
+  /**
+   * Same lookups of the path as {@link #addFile(File)}, without adding anything.
+   *  Documents found are kept for the next {@link #addFile(File, Future)} of the file: it doesn't look them up again.
+   * @param file
+   * @return false if {@link #addFile(File)} doesn't hash the file: its path is in Shelf and the file
+   *          hasn't changed since, or its path is in Trash.
+   */
+  public boolean isHashNeeded(File file)
+  {
+    final String canonicalPath = Utils.getCanonicalPath(file);
+    Document[] docs = this.lookUpPath(canonicalPath);
+    this.pathDocs.put(canonicalPath, docs);
+    if(docs[0]!=null)
+      return FileUtils.isPotentiallyChanged(file, docs[0].size, docs[0].last_modified);
+    return docs[1]==null;
+  }
+  
+  /**
+   * Same as {@link #addFile(File)} but use the hash already computed by {@link net.xngo.fileshub.HashPipeline}.
+   * @param file
+   * @param futureHash Hash of the file computed ahead. If null, the file is hashed when needed.
+   * @return  Conflicting document.
+   */
+  public Document addFile(File file, Future<String> futureHash)
   {
     log.debug("Adding {} ...", file.getAbsolutePath());
     
     Document doc = new Document(file);
     
-    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+    Document[] pathDocs = this.pathDocs.remove(doc.canonical_path); // Already looked up by isHashNeeded().
+    if(pathDocs==null)
+      pathDocs = this.lookUpPath(doc.canonical_path);
+    Document shelfDoc = pathDocs[0];
     if(shelfDoc == null)
     {// Path not found in Shelf.
       
-      Document trashDoc = this.trash.getDocByCanonicalPath(doc.canonical_path);
+      Document trashDoc = pathDocs[1];
       if(trashDoc != null)
       {// Path found in Trash.
         
@@ -126,12 +181,20 @@ public class Manager
                                         //    have exact same path. It will save hash time.
           this.trash.removeDoc(trashDoc); // Remove from Trash because it is moved to Shelf.
           this.trash.addDoc(originalDoc); // Move original doc from Shelf to Trash because it doesn't exist anymore.
+          this.pathDocs.remove(originalDoc.canonical_path);
           return null;
         }
       }
       else
       {// Path not in Shelf nor in Trash.
-          doc.hash = Utils.getHash(file);
+          if(this.lazyHash && this.deferHash(doc))
+          {// No other document has the same size and quick hash.
+            doc.hash = Document.HASH_DEFERRED;
+            this.shelf.addDocInBatch(doc);
+            return null; // New file.
+          }
+          
+          doc.hash = this.getHash(file, futureHash);
           if(doc.hash==null)
           {
             RuntimeException rException = new RuntimeException(String.format("RuntimeException: Hash is null: %s", file.getAbsolutePath()));
@@ -140,7 +203,17 @@ public class Manager
           }
           else
           {
-            shelfDoc = this.shelf.getDocByHash(doc.hash);
+            if(!this.lazyHash)
+              this.resolveSameSizeHashes(doc.size); // Lazy hashing resolves them only if quick hashes are the same.
+            
+            HashFilter hashFilter = Main.connection.getHashFilter();
+            if(hashFilter!=null && !hashFilter.mightContain(Document.toDbHash(doc.hash)))
+            {// Hash is definitely in neither Shelf nor Trash.
+              this.shelf.addDocInBatch(doc);
+              return null; // New file.
+            }
+            
+            shelfDoc = this.shelf.getDocByHash(doc.hash, doc.hash_algo);
             if(shelfDoc != null)
             {// Hash found in Shelf.
               
@@ -148,7 +221,7 @@ public class Manager
               if(shelfDocFile.exists() && shelfDocFile.isFile())
               {// Shelf file still exists
                 doc.uid = shelfDoc.uid;
-                this.trash.addDoc(doc);
+                this.trash.addDocInBatch(doc);
                 return shelfDoc;
               }
               else
@@ -156,6 +229,7 @@ public class Manager
                 
                 // Move non-existing file to Trash.
                 this.trash.addDoc(shelfDoc);
+                this.pathDocs.remove(shelfDoc.canonical_path);
                 
                 // Update current document in Shelf.
                 doc.uid = shelfDoc.uid;
@@ -167,7 +241,7 @@ public class Manager
             else
             {// Hash not found in Shelf.
 
-              List<Document> trashDocsList = this.trash.getDocsByHash(doc.hash);
+              List<Document> trashDocsList = this.trash.getDocsByHash(doc.hash, doc.hash_algo);
               if(trashDocsList.size()>0)
               {// Hash found in Trash.
                 shelfDoc = this.shelf.getDocByUid(trashDocsList.get(0).uid);
@@ -187,7 +261,7 @@ public class Manager
                   if(shelfDocFile.exists() && shelfDocFile.isFile())
                   {
                     doc.uid = shelfDoc.uid;
-                    trash.addDoc(doc);
+                    this.trash.addDocInBatch(doc);
                     return shelfDoc;                    
                   }
                   else
@@ -199,6 +273,7 @@ public class Manager
                     
                     // Move Shelf document to trash.
                     this.trash.addDoc(shelfDoc);        // Add non-existing file to Trash.
+                    this.pathDocs.remove(shelfDoc.canonical_path);
                     
                     return null;// No duplicate. 'to add file' becomes main file.                    
                   }
@@ -206,7 +281,9 @@ public class Manager
               }
               else
               {
-                this.shelf.addDoc(doc);
+                if(hashFilter!=null)
+                  hashFilter.addFalsePositive();
+                this.shelf.addDocInBatch(doc);
                 return null; // New file.
               }
             }
@@ -238,18 +315,21 @@ public class Manager
       
       if(FileUtils.isPotentiallyChanged(file, shelfDoc.size, shelfDoc.last_modified))
       {
-        String newHash = Utils.getHash(file);
+        String newHash = this.getHash(file, futureHash);
         if(shelfDoc.hash.compareTo(newHash)!=0)
         {// Hash is different.
           
-          Document hashShelfDoc = this.shelf.getDocByHash(newHash);
+          final String newHashAlgo = Utils.getHashAlgo(file.length());
+          this.resolveSameSizeHashes(file.length());
+          
+          Document hashShelfDoc = this.shelf.getDocByHash(newHash, newHashAlgo);
           if(hashShelfDoc==null)
           {// New hash not found in Shelf
             
             /**
              * Processing in Trash table. 
              */
-            List<Document> hashTrashDocList = this.trash.getDocsByHash(newHash);
+            List<Document> hashTrashDocList = this.trash.getDocsByHash(newHash, newHashAlgo);
             if(hashTrashDocList.size()==0)
             {// New hash not found in Trash
               // Update database entry.
@@ -370,43 +450,50 @@ public class Manager
    */
   public List<Document> update()
   {
-    List<Document> docList = this.shelf.getDocs();
     List<Document> missingFileList = new ArrayList<Document>();
     
-    System.out.println(String.format("File(s) to process = %,d", docList.size())); // displayTotalFilesToProcess
-    
     // Variables for print progress.
     int whenToDisplay = 100;
     int i=1;
-    int totalFiles = docList.size();
+    int totalFiles = this.shelf.getTotalDocs();
     
-    for(Document doc: docList)
+    System.out.println(String.format("File(s) to process = %,d", totalFiles)); // displayTotalFilesToProcess
+    
+    DocumentCursor docCursor = this.shelf.openDocs(); // Documents are read one at a time: memory usage doesn't grow with Shelf table.
+    try
     {
-      File file = new File(doc.canonical_path);
-      if(file.exists() && file.isFile())
+      for(Document doc: docCursor)
       {
-        if(file.lastModified()!=doc.last_modified)
-        {// File has changed.
-          // Copy old file info in Trash table.
-          this.trash.addDoc(doc);
-          
-          // Update changed file to Shelf table.
-          String hash = Utils.getHash(file);
-          Document newDoc = new Document(file);
-          newDoc.uid = doc.uid;
-          newDoc.hash = hash;
-          this.shelf.saveDoc(newDoc);
+        File file = new File(doc.canonical_path);
+        if(file.exists() && file.isFile())
+        {
+          if(file.lastModified()!=doc.last_modified)
+          {// File has changed.
+            // Copy old file info in Trash table.
+            this.trash.addDoc(doc);
+            
+            // Update changed file to Shelf table.
+            String hash = this.hashCache.getHash(file);
+            Document newDoc = new Document(file);
+            newDoc.uid = doc.uid;
+            newDoc.hash = hash;
+            this.shelf.saveDoc(newDoc);
+          }
         }
+        else
+          missingFileList.add(doc);
+        
+        // Print progress
+        i++;
+        if( (i%whenToDisplay)==0)
+        {
+          Main.console.printProgress(String.format("[%d/%d]", i, totalFiles));
+        }      
       }
-      else
-        missingFileList.add(doc);
-      
-      // Print progress
-      i++;
-      if( (i%whenToDisplay)==0)
-      {
-        Main.console.printProgress(String.format("[%d/%d]", i, totalFiles));
-      }      
+    }
+    finally
+    {
+      docCursor.close();
     }
     Main.console.printProgress(String.format("[%d/%d]", totalFiles, totalFiles)); // Print last result.
 
@@ -646,6 +733,7 @@ public class Manager
     Document trashDoc = new Document(shelfDocFrom);
     trashDoc.uid = toUid;
     this.trash.addDoc(trashDoc);
+    this.pathDocs.remove(trashDoc.canonical_path);
   }
   
   private void moveTrashDocToShelf(final Document trashDocFrom, int toUid)
@@ -659,6 +747,7 @@ public class Manager
     
     // Remove the document entry from Trash.
     this.trash.removeDoc(trashDocFrom);
+    this.pathDocs.remove(trashDocFrom.canonical_path);
   }
   
   public void searchById(int id)
@@ -760,7 +849,7 @@ public class Manager
   {
     ArrayList<File> currentDirList = new ArrayList<File>();
     currentDirList.add(new File("."));
-    Set<File> files = FileUtils.listFiles(currentDirList);
+    Set<File> files = FileWalker.listFiles(currentDirList);
     Main.chrono.stop("Get all files to process");
     
     Console console = new Console();
@@ -769,42 +858,56 @@ public class Manager
     if(files.size()>1)
     {
       
-      ArrayList<String> commonTerms = this.getCommonTerms();
-      List<Document> cleanDocsList = this.cleanFilenames(this.shelf.getDocs(), commonTerms);
+      if(!new File(Config.WORD_LIST).exists())
+        System.out.println(String.format("Warning: %s is missing!", Config.WORD_LIST));
+      CommonTerms commonTerms = CommonTerms.get();
+      final int totalDocs = this.shelf.getTotalDocs();
       
-      if(cleanDocsList.size()==0)
+      if(totalDocs==0)
       {
         System.out.println("There is no data in your database. Therefore, nothing to process.");
       }
       else
       {
-        long totalCombinations = files.size()*cleanDocsList.size();
-        long combination = 0;
-        System.out.println(String.format("Comparing %,d files against %,d from the database for a total of %,d combinations.", files.size(), cleanDocsList.size(), totalCombinations));
+        long totalCombinations = (long)files.size()*totalDocs;
+        System.out.println(String.format("Comparing %,d files against %,d from the database for a total of %,d combinations.", files.size(), totalDocs, totalCombinations));
         
-        final int updateFrequency = Utils.getUpdateFrequency((int)totalCombinations);
+        // Clean the filenames of the files once. Documents are read one at a time with their clean filename
+        //  and compared against the files by Config.SIMILAR_THREADS threads.
+        List<String> paths = new ArrayList<String>(files.size());
+        List<String> cleanFilenames = new ArrayList<String>(files.size());
         for(File file: files)
         {
-          for(int j=0; j<cleanDocsList.size()-1; j++)
+          paths.add(file.getAbsolutePath());
+          cleanFilenames.add(commonTerms.clean(file.getName()));
+        }
+        SimilarSearch similarSearch = new SimilarSearch(paths, cleanFilenames, fuzzyRate, Config.SIMILAR_THREADS);
+        
+        final int updateFrequency = Utils.getUpdateFrequency((int)Math.min(totalCombinations, Integer.MAX_VALUE));
+        long nextProgress = 0;
+        final int updatedDocs = this.shelf.updateCleanFilenames();
+        if(updatedDocs>0)
+          Main.chrono.stop(String.format("Clean %,d filenames with the terms of %s", updatedDocs, Config.WORD_LIST));
+        DocumentCursor docCursor = this.shelf.openDocsWithCleanFilename();
+        try
+        {
+          for(Document doc: docCursor)
           {
-            if(file.getAbsolutePath().compareTo(cleanDocsList.get(j).canonical_path)!=0)
+            similarSearch.add(doc.canonical_path, doc.filename);
+            
+            final long combination = similarSearch.getProcessed();
+            if(combination>=nextProgress)
             {
-              Difference diff = new Difference(this.cleanFilename(file.getName(), commonTerms), cleanDocsList.get(j).filename);
-              if(diff.getSimilarRate()>fuzzyRate)
-              {
-                //System.out.println(String.format("[%d] %s ?= %s ", diff.getSimilarRate(), docsList.get(i).filename, docsList.get(j).filename));
-                PairFile pairFile = new PairFile();
-                pairFile.similarRate = diff.getSimilarRate();
-                pairFile.fileA = file.getAbsolutePath();
-                pairFile.fileB = cleanDocsList.get(j).canonical_path;
-                pairFileList.add(pairFile);
-              }
-              
-              if(combination%updateFrequency==0)
-                console.printProgress(String.format("Processed %,d / %,d", combination, totalCombinations));
-              combination++;
+              console.printProgress(String.format("Processed %,d / %,d", combination, totalCombinations));
+              nextProgress = combination+updateFrequency;
             }
           }
+          pairFileList.addAll(similarSearch.getPairFiles());
+        }
+        finally
+        {
+          docCursor.close();
+          similarSearch.close();
         }
         console.printProgress(String.format("Processed %,d / %,d", totalCombinations, totalCombinations));
       }
@@ -813,61 +916,276 @@ public class Manager
     return pairFileList;
   }  
   
+  /**
+   * Search groups of similar filenames among all documents of the database, without comparing all pairs.
+   *  Only the MinHash signatures of the documents are kept in memory. See {@link SimilarClusters}.
+   * @param fuzzyRate
+   * @param reportSimilar Receives each group as soon as it is read: pairs of the leader of the group
+   *                        with each other document, sorted by similar rate.
+   * @return Number of groups.
+   */
+  public int searchSimilarFilenameInDatabase(int fuzzyRate, ReportSimilar reportSimilar)
+  {
+    final Console console = new Console();
+    
+    if(!new File(Config.WORD_LIST).exists())
+      System.out.println(String.format("Warning: %s is missing!", Config.WORD_LIST));
+    final int updatedDocs = this.shelf.updateCleanFilenames();
+    if(updatedDocs>0)
+      Main.chrono.stop(String.format("Clean %,d filenames with the terms of %s", updatedDocs, Config.WORD_LIST));
+    
+    final int totalDocs = this.shelf.getTotalDocs();
+    if(totalDocs<2)
+    {
+      System.out.println("There is not enough data in your database. Therefore, nothing to process.");
+      return 0;
+    }
+    System.out.println(String.format("Grouping similar filenames of %,d documents from the database.", totalDocs));
+    
+    // Signatures of all documents.
+    SimilarClusters similarClusters = new SimilarClusters(fuzzyRate);
+    final int updateFrequency = Utils.getUpdateFrequency(totalDocs);
+    int signed = 0;
+    DocumentCursor docCursor = this.shelf.openDocsWithCleanFilename();
+    try
+    {
+      for(Document doc: docCursor)
+      {
+        similarClusters.add(doc.uid, doc.filename);
+        signed++;
+        if(signed%updateFrequency==0)
+          console.printProgress(String.format("Signed %,d / %,d", signed, totalDocs));
+      }
+    }
+    finally
+    {
+      docCursor.close();
+    }
+    console.printProgress(String.format("Signed %,d / %,d", totalDocs, totalDocs));
+    Main.chrono.stop("Compute MinHash signatures");
+    
+    // Verify the candidates of each band.
+    similarClusters.group(new SimilarClusters.Filenames()
+                            {
+                              @Override public String get(int uid)
+                              {
+                                return Manager.this.shelf.getCleanFilename(uid);
+                              }
+                            },
+                          new Runnable()
+                            {
+                              private int band = 0;
+                              @Override public void run()
+                              {
+                                this.band++;
+                                console.printProgress(String.format("Grouped band %d / %d", this.band, SimilarClusters.BANDS));
+                              }
+                            });
+    System.out.println(String.format("\n%,d pairs of filenames compared.", similarClusters.getComparisons()));
+    Main.chrono.stop("Group similar files");
+    
+    // Stream the groups to the report. Similar rates are the ones of the verification: only paths are read.
+    final int[] groups = { 0 };
+    final ReportSimilar report = reportSimilar;
+    similarClusters.forEachGroup(new SimilarClusters.GroupListener()
+                                  {
+                                    @Override public void onGroup(int[] uids, int[] similarRates)
+                                    {
+                                      Map<Integer, String> canonicalPaths = Manager.this.shelf.getCanonicalPaths(uids);
+                                      List<PairFile> group = new ArrayList<PairFile>(uids.length-1);
+                                      for(int i=1; i<uids.length; i++)
+                                      {
+                                        PairFile pairFile = new PairFile();
+                                        pairFile.fileA = canonicalPaths.get(uids[0]);
+                                        pairFile.fileB = canonicalPaths.get(uids[i]);
+                                        pairFile.similarRate = similarRates[i];
+                                        group.add(pairFile);
+                                      }
+                                      Collections.sort(group);
+                                      report.addGroup(group);
+                                      groups[0]++;
+                                    }
+                                  });
+    System.out.println(String.format("%,d groups of similar filenames found.", groups[0]));
+    Main.chrono.stop("Read groups of similar files");
+    return groups[0];
+  }
+  
 
   /****************************************************************************
    * 
    *                             PRIVATE FUNCTIONS
    * 
    ****************************************************************************/
-  private List<Document> cleanFilenames(List<Document> docsList, ArrayList<String> commonTerms)
+  
+  /**
+   * Get the hash computed ahead if there is one. Otherwise, get it from the cache or hash the file now.
+   * Exceptions thrown while hashing ahead are rethrown as they would have been
+   *  thrown by {@link Utils#getHash(File)}.
+   * @param file
+   * @param futureHash
+   * @return the hash as string
+   */
+  private String getHash(File file, Future<String> futureHash)
   {
-    ArrayList<Document> resultDocs = new ArrayList<Document>();
-    for(Document doc: docsList)
+    if(futureHash==null)
+      return this.hashCache.getHash(file);
+    
+    try
+    {
+      return futureHash.get();
+    }
+    catch(InterruptedException ex)
     {
-      doc.filename = this.cleanFilename(doc.filename, commonTerms);
-      resultDocs.add(doc);
+      Thread.currentThread().interrupt();
+      RuntimeException rException = new RuntimeException(String.format("Interrupted while waiting for the hash of %s.", file.getAbsolutePath()));
+      rException.setStackTrace(ex.getStackTrace());
+      throw rException;
+    }
+    catch(ExecutionException ex)
+    {
+      Throwable cause = ex.getCause();
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      
+      RuntimeException rException = new RuntimeException(cause.getMessage());
+      rException.setStackTrace(cause.getStackTrace());
+      throw rException;
+    }
+  }
+  
+  /**
+   * Tiered hashing: files are compared by size, then by quick hash and then by hash.
+   *  A tier is only computed when the previous tier collides. Deferred hashes of
+   *  documents colliding with the new document are computed now so that
+   *  the new document can be compared by hash against them.
+   * @param doc New document. Its quick hash is computed if another document has the same size.
+   * @return true if the hash of the new document can be deferred.
+   */
+  private boolean deferHash(Document doc)
+  {
+    List<Document> shelfDocsList = this.shelf.getDocsBySize(doc.size);
+    List<Document> trashDocsList = this.trash.getDocsBySize(doc.size);
+    if(shelfDocsList.size()==0 && trashDocsList.size()==0)
+      return true; // No other document has the same size.
+    
+    doc.quick_hash = Utils.getQuickHash(new File(doc.canonical_path));
+    
+    boolean collision = false;
+    for(Document shelfDoc: shelfDocsList)
+    {
+      if(this.resolveHashes(shelfDoc, doc.quick_hash))
+        this.shelf.saveDoc(shelfDoc);
+      collision = collision || this.isHashCollision(shelfDoc, doc.quick_hash);
     }
     
-    return resultDocs;
+    for(Document trashDoc: trashDocsList)
+    {
+      if(this.resolveHashes(trashDoc, doc.quick_hash))
+        this.trash.saveHashes(trashDoc);
+      collision = collision || this.isHashCollision(trashDoc, doc.quick_hash);
+    }
+    
+    return !collision;
   }
-  private String cleanFilename(String filename, ArrayList<String> commonTerms)
+  
+  /**
+   * Compute the deferred quick hash of a document of the same size. If it is
+   *  the same as the quick hash of the new document, compute its deferred hash too.
+   *  Nothing is computed if the file is gone or has changed since it was added:
+   *  it will be hashed when its path is added again.
+   * @param sameSizeDoc Document having the same size as the new document.
+   * @param quickHash Quick hash of the new document. null to compute the deferred hash without comparing quick hashes.
+   * @return true if a hash is computed and the document has to be saved.
+   */
+  private boolean resolveHashes(Document sameSizeDoc, String quickHash)
   {
-    StringBuilder cleanFilename = new StringBuilder(filename.toLowerCase());
-    for(String term: commonTerms)
+    final boolean rehash = sameSizeDoc.isHashDeferred() || !sameSizeDoc.isHashAlgoCurrent(); // Hash of another algorithm is as good as deferred.
+    if((quickHash==null || !sameSizeDoc.isQuickHashDeferred()) && !rehash)
+      return false; // Nothing to compute.
+    
+    File file = new File(sameSizeDoc.canonical_path);
+    if(!file.exists() || !file.isFile() || FileUtils.isPotentiallyChanged(file, sameSizeDoc.size, sameSizeDoc.last_modified))
+      return false;
+    
+    boolean resolved = false;
+    if(quickHash!=null && sameSizeDoc.isQuickHashDeferred())
     {
-      int start = cleanFilename.indexOf(term);
-      if(start!=-1)
-      {
-        int end = start + term.length();
-        cleanFilename.replace(start, end, "");
-      }
+      sameSizeDoc.quick_hash = Utils.getQuickHash(file);
+      resolved = true;
     }
-    return cleanFilename.toString();    
+    
+    if(rehash && (quickHash==null || sameSizeDoc.quick_hash.compareTo(quickHash)==0))
+    {
+      sameSizeDoc.hash      = this.hashCache.getHash(file);
+      sameSizeDoc.hash_algo = Utils.getHashAlgo(sameSizeDoc.size);
+      resolved = true;
+    }
+    
+    return resolved;
   }
-  private ArrayList<String> getCommonTerms()
+  
+  /**
+   * @param sameSizeDoc Document having the same size as the new document.
+   * @param quickHash Quick hash of the new document.
+   * @return true if the hash of the new document is needed to compare it with sameSizeDoc.
+   */
+  private boolean isHashCollision(Document sameSizeDoc, String quickHash)
   {
-    ArrayList<String> strList = new ArrayList<String>();
-    try 
+    if(sameSizeDoc.isHashDeferred() || !sameSizeDoc.isHashAlgoCurrent())
+      return false; // Can't be compared by hash.
+    
+    if(sameSizeDoc.isQuickHashDeferred())
+      return true;  // Only its hash is known, e.g. added before lazy hashing or its file is gone.
+    
+    return sameSizeDoc.quick_hash.compareTo(quickHash)==0;
+  }
+  
+  /**
+   * Hash documents of this size that have a deferred hash, e.g. added with lazy hashing,
+   *  or a hash of another algorithm, e.g. before Config.HASH_ALGORITHM was changed.
+   *  Otherwise, they can't be found by hash. They are resolved only when a file of the same size is added.
+   *  Documents of this size are only read if the database has such documents: it is checked once per run.
+   * @param size
+   */
+  private void resolveSameSizeHashes(long size)
+  {
+    if(this.hashesToResolve==null)
+      this.hashesToResolve = this.shelf.hasHashesToResolve() || this.trash.hasHashesToResolve();
+    if(!this.hashesToResolve)
+      return;
+    
+    for(Document shelfDoc: this.shelf.getDocsBySize(size))
     {
-      BufferedReader in = new BufferedReader(new FileReader(Config.WORD_LIST));
-      String line;
-      while ((line = in.readLine()) != null)
+      if(this.resolveHashes(shelfDoc, null))
       {
-        strList.add(line.toLowerCase());
+        this.shelf.saveDoc(shelfDoc);
+        this.pathDocs.remove(shelfDoc.canonical_path); // Looked up again by addFile().
       }
-      in.close();
-  
     }
-    catch (FileNotFoundException ex)
-    {
-      System.out.println(String.format("Warning: %s is missing!", Config.WORD_LIST));
-    }
-    catch (IOException ex) 
+    
+    for(Document trashDoc: this.trash.getDocsBySize(size))
     {
-      ex.printStackTrace();
+      if(this.resolveHashes(trashDoc, null))
+      {
+        this.trash.saveHashes(trashDoc);
+        this.pathDocs.remove(trashDoc.canonical_path);
+      }
     }
+  }
+  
+  /**
+   * @param canonicalPath
+   * @return Document of Shelf having the path, then the one of Trash if none is in Shelf. null if not found.
+   */
+  private Document[] lookUpPath(String canonicalPath)
+  {
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(canonicalPath);
+    if(shelfDoc!=null)
+      return new Document[]{ shelfDoc, null };
     
-    return strList;
+    List<Document> trashDocs = this.trash.getDocsByCanonicalPath(canonicalPath);
+    return new Document[]{ null, trashDocs.isEmpty()? null : trashDocs.get(0) };
   }
   
   /**
@@ -0,0 +1,256 @@
+package net.xngo.fileshub.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.xngo.fileshub.Main;
+
+/**
+ * Full-text index of the filenames of Shelf and Trash tables: ShelfSearch and TrashSearch FTS4 tables.
+ *  Each filename is indexed as its trigrams: 3 characters in lowercase, written as hexadecimal of their UTF-8 bytes.
+ *  Same as V11__AddSearchIndex.sql: hex(lower(substr(filename, n, 3))).
+ *  Trigrams of inserted rows are computed here and inserted with the rows: see {@link #getInserter(String, int, int)}.
+ *  V13__DropSearchInsertTriggers.sql dropped the triggers computing them in SQL: bulk inserts were 3 times slower.
+ *  Updates and deletes are still maintained by triggers, with the trigrams of the views.
+ * A search adds a condition on candidates before its own = or LIKE:
+ *    -Filename: uid of the filenames having all the trigrams of the value.
+ *    -Path: dir_id of the directories having the parts with a separator. Other parts are in the directory or in the filename.
+ *  The condition only drops rows that can't match. Therefore, results are the same as without it.
+ *  Parts split by wildcards(% and _) that are shorter than 3 characters have no trigram: they are not used.
+ * @author Xuan Ngo
+ *
+ */
+class SearchIndex
+{
+  private static final int GRAM_LENGTH = 3;
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @param filenameIndex Index of filename in the values of the rows inserted.
+   * @param linkFilenameIndex Index of link_filename in the values of the rows inserted.
+   * @return Listener of the batch of rows inserted in the table: inserts their trigrams in ShelfSearch or TrashSearch.
+   */
+  static InsertBatch.Listener getInserter(final String tablename, final int filenameIndex, final int linkFilenameIndex)
+  {
+    return new InsertBatch.Listener()
+            {
+              @Override
+              public void onInsert(java.sql.Connection connection, List<Object[]> rows, long lastRowid) throws SQLException
+              {
+                PreparedStatement preparedStatement = connection.prepareStatement(SearchIndex.getInsertQuery(tablename));
+                try
+                {
+                  long uid = lastRowid-rows.size()+1;
+                  for(Object[] row: rows)
+                  {
+                    preparedStatement.setLong(1, uid++);
+                    preparedStatement.setString(2, SearchIndex.getTokens((String)row[filenameIndex], (String)row[linkFilenameIndex]));
+                    preparedStatement.addBatch();
+                  }
+                  preparedStatement.executeBatch();
+                }
+                finally
+                {
+                  preparedStatement.close();
+                }
+              }
+            };
+  }
+
+  /**
+   * Insert the trigrams of a row inserted in Shelf or Trash.
+   * @param tablename Shelf or Trash.
+   * @param uid
+   * @param filename
+   * @param linkFilename Can be null.
+   * @throws SQLException
+   */
+  static void insert(String tablename, int uid, String filename, String linkFilename) throws SQLException
+  {
+    try
+    {
+      Main.connection.prepareCachedStatement(SearchIndex.getInsertQuery(tablename));
+      Main.connection.setInt   (1, uid);
+      Main.connection.setString(2, SearchIndex.getTokens(filename, linkFilename));
+      Main.connection.executeUpdate();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+  /**
+   * Same trigrams as the ShelfSearchContent and TrashSearchContent views of V11__AddSearchIndex.sql:
+   *  all of them, in order, of the filename followed by '/' and link_filename.
+   * @param filename
+   * @param linkFilename Can be null.
+   * @return Tokens separated by spaces. null if there is no trigram, like group_concat() of no row.
+   */
+  static String getTokens(String filename, String linkFilename)
+  {
+    final String text = (linkFilename==null)? filename : filename+"/"+linkFilename;
+    final int length = text.codePointCount(0, text.length());
+    if(length<GRAM_LENGTH)
+      return null;
+
+    StringBuilder tokens = new StringBuilder(length*GRAM_LENGTH*3);
+    int begin = 0;
+    for(int i=0; i+GRAM_LENGTH<=length; i++)
+    {
+      if(i>0)
+        tokens.append(' ');
+      SearchIndex.appendToken(tokens, text.substring(begin, text.offsetByCodePoints(begin, GRAM_LENGTH)));
+      begin = text.offsetByCodePoints(begin, 1);
+    }
+    return tokens.toString();
+  }
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @param value Filename compared with = or LIKE.
+   * @param values Values of the condition are added to it, in order.
+   * @return Condition followed by AND. Empty if the value has no trigram: the table is scanned.
+   */
+  static String getFilenameCondition(String tablename, String value, List<Object> values)
+  {
+    Set<String> grams = new LinkedHashSet<String>();
+    for(String part: SearchIndex.getParts(value))
+      grams.addAll(SearchIndex.getGrams(part));
+    if(grams.isEmpty())
+      return "";
+
+    values.add(SearchIndex.getMatch(grams));
+    return String.format("%1$s.uid IN (SELECT docid FROM %1$sSearch WHERE %1$sSearch MATCH ?) AND ", tablename);
+  }
+
+  /**
+   * @param tablename Shelf or Trash.
+   * @param value Canonical path compared with LIKE.
+   * @param values Values of the condition are added to it, in order.
+   * @return Condition followed by AND. Empty if no part can be used: the table is scanned.
+   */
+  static String getPathCondition(String tablename, String value, List<Object> values)
+  {
+    StringBuilder condition = new StringBuilder();
+    for(String part: SearchIndex.getParts(value))
+    {
+      final int separator = Math.max(part.lastIndexOf('/'), part.lastIndexOf('\\'));
+      if(separator!=-1)
+      {// Up to the separator, the part is in the directory: the filename has no separator.
+        values.add("%"+part.substring(0, separator+1)+"%");
+        condition.append(String.format("%s.dir_id IN (SELECT dir_id FROM Directory WHERE path LIKE ?) AND ", tablename));
+      }
+      else
+      {
+        Set<String> grams = SearchIndex.getGrams(part);
+        if(grams.isEmpty())
+          continue;
+        values.add("%"+part+"%");
+        values.add(SearchIndex.getMatch(grams));
+        condition.append(String.format("(%1$s.dir_id IN (SELECT dir_id FROM Directory WHERE path LIKE ?) OR %1$s.uid IN (SELECT docid FROM %1$sSearch WHERE %1$sSearch MATCH ?)) AND ", tablename));
+      }
+    }
+    return condition.toString();
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * @param grams Trigrams.
+   * @return Value of MATCH: all the tokens of the trigrams.
+   */
+  private static String getMatch(Set<String> grams)
+  {
+    StringBuilder match = new StringBuilder();
+    for(String gram: grams)
+    {
+      if(match.length()>0)
+        match.append(' ');
+      match.append(SearchIndex.getToken(gram));
+    }
+    return match.toString();
+  }
+
+  /**
+   * @param gram 3 characters.
+   * @return Token of the trigram: hexadecimal of its UTF-8 bytes, after ASCII letters are in lowercase like SQLite lower().
+   */
+  private static String getToken(String gram)
+  {
+    StringBuilder token = new StringBuilder();
+    SearchIndex.appendToken(token, gram);
+    return token.toString();
+  }
+
+  private static void appendToken(StringBuilder tokens, String gram)
+  {
+    for(byte b: SearchIndex.toLowerAscii(gram).getBytes(StandardCharsets.UTF_8))
+      tokens.append(HEX[(b>>4) & 0xf]).append(HEX[b & 0xf]);
+  }
+
+  private static String getInsertQuery(String tablename)
+  {
+    return String.format("INSERT INTO %sSearch(docid, grams) VALUES(?, ?)", tablename);
+  }
+
+  /**
+   * @return Parts of the value between the wildcards of LIKE: % and _.
+   */
+  private static List<String> getParts(String value)
+  {
+    List<String> parts = new ArrayList<String>();
+    for(String part: value.split("[%_]+"))
+    {
+      if(!part.isEmpty())
+        parts.add(part);
+    }
+    return parts;
+  }
+
+  /**
+   * Trigrams that don't overlap, and the last one: they cover the part with 3 times fewer tokens to intersect.
+   *  Rows having all trigrams of the part also have these ones.
+   * @return Trigrams of the part, in characters(code points) like SQLite substr().
+   */
+  private static Set<String> getGrams(String part)
+  {
+    Set<String> grams = new LinkedHashSet<String>();
+    final int length = part.codePointCount(0, part.length());
+    for(int i=0; i+GRAM_LENGTH<=length; i+=GRAM_LENGTH)
+      grams.add(SearchIndex.getGram(part, i));
+    if(length>GRAM_LENGTH && length%GRAM_LENGTH!=0)
+      grams.add(SearchIndex.getGram(part, length-GRAM_LENGTH));
+    return grams;
+  }
+
+  private static String getGram(String part, int index)
+  {
+    final int begin = part.offsetByCodePoints(0, index);
+    return part.substring(begin, part.offsetByCodePoints(begin, GRAM_LENGTH));
+  }
+
+  /**
+   * SQLite lower() and LIKE only fold ASCII letters.
+   */
+  private static String toLowerAscii(String text)
+  {
+    char[] chars = text.toCharArray();
+    for(int i=0; i<chars.length; i++)
+    {
+      if(chars[i]>='A' && chars[i]<='Z')
+        chars[i] = (char)(chars[i]+('a'-'A'));
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,64 @@
+package net.xngo.fileshub.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import net.xngo.fileshub.Main;
+import net.xngo.utils.java.db.DbUtils;
+
+/**
+ * Values kept in Setting table, keyed by name.
+ * @author Xuan Ngo
+ *
+ */
+class Setting
+{
+  static final String WORD_LIST_CHECKSUM = "word_list_checksum"; // Checksum of the terms used to compute Shelf.clean_filename.
+
+  /**
+   * @return Value of the setting or null if it was never set.
+   */
+  static String get(String name)
+  {
+    final String query = "SELECT value FROM Setting WHERE name = ?";
+    String value = null;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setString(1, name);
+      ResultSet resultSet = Main.connection.executeQuery();
+      if(resultSet.next())
+        value = resultSet.getString(1);
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      throw new RuntimeException(String.format("Can't read setting %s.", name), e);
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return value;
+  }
+
+  static void set(String name, String value)
+  {
+    final String query = "INSERT OR REPLACE INTO Setting(name, value) VALUES(?, ?)";
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setString(1, name);
+      Main.connection.setString(2, value);
+      Main.connection.executeUpdate();
+    }
+    catch(SQLException e)
+    {
+      throw new RuntimeException(String.format("Can't save setting %s.", name), e);
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+}
@@ -3,13 +3,17 @@ package net.xngo.fileshub.db;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.xngo.fileshub.Config;
 import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.similar.CommonTerms;
 import net.xngo.fileshub.struct.Document;
 import net.xngo.utils.java.db.DbUtils;
 
@@ -23,6 +27,7 @@ public class Shelf
   final static Logger log = LoggerFactory.getLogger(Shelf.class);
   
   protected final String tablename  = "Shelf";
+  private static final InsertBatch.Listener SEARCH_INDEX = SearchIndex.getInserter("Shelf", 1, 2); // Index of filename and link_filename in the insert query.
   
   /**
    * @param uid
@@ -40,7 +45,12 @@ public class Shelf
    */
   public Document getDocByCanonicalPath(final String canonicalPath)
   {
-    return this.getDocBy("canonical_path", canonicalPath);
+    if(!this.mightContainPath(canonicalPath))
+      return null;
+    final Integer dirId = Directory.findDirId(canonicalPath);
+    if(dirId==null)
+      return null; // No document was ever in this directory.
+    return this.getOneDoc(this.getDocsBy("filename", Directory.getName(canonicalPath), "dir_id", dirId));
   }
   
   /**
@@ -50,14 +60,80 @@ public class Shelf
    */
   public Document getDocByHash(final String hash)
   {
-    return this.getDocBy("hash", hash);
+    return this.getOneDoc(this.getDocsByHash(hash));
   }
 
   public List<Document> getDocsByHash(String hash)
   {
-    return this.getDocsBy("hash", hash);
+    final Object dbHash = Document.toDbHash(hash);
+    if(!this.mightContainHash(dbHash))
+      return new ArrayList<Document>();
+    return this.getDocsBy("hash", dbHash);
   } 
   
+  /**
+   * Only compare hashes computed the same way.
+   * @param hash
+   * @param hashAlgo See {@link net.xngo.fileshub.Utils#getHashAlgo(long)}.
+   * @return {@link Document}
+   */
+  public Document getDocByHash(final String hash, final String hashAlgo)
+  {
+    return this.getOneDoc(this.getDocsByHash(hash, hashAlgo));
+  }
+  
+  /**
+   * Only compare hashes computed the same way.
+   * @param hash
+   * @param hashAlgo See {@link net.xngo.fileshub.Utils#getHashAlgo(long)}.
+   * @return All documents having the same hash and hash algorithm.
+   */
+  public List<Document> getDocsByHash(String hash, String hashAlgo)
+  {
+    final Object dbHash = Document.toDbHash(hash);
+    if(!this.mightContainHash(dbHash))
+      return new ArrayList<Document>();
+    return this.getDocsBy("hash", dbHash, "hash_algo", hashAlgo);
+  }
+  
+  /**
+   * @param size
+   * @return All documents having the same size.
+   */
+  public List<Document> getDocsBySize(long size)
+  {
+    return this.getDocsBy("size", size+"");
+  }
+  
+  /**
+   * @return true if a document has a deferred hash or a hash of another algorithm than {@link Utils#getHashAlgo(long)}.
+   */
+  public boolean hasHashesToResolve()
+  {
+    final String query = "SELECT 1 FROM "+this.tablename+" WHERE hash IS NULL"
+                            + " OR hash_algo IS NOT (CASE WHEN size > ? THEN ? ELSE ? END) LIMIT 1";
+    boolean found = false;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setLong(1, Utils.SPOT_HASH_MIN_SIZE);
+      Main.connection.setString(2, Utils.getHashAlgo(Long.MAX_VALUE));
+      Main.connection.setString(3, Utils.getHashAlgo(0));
+      ResultSet resultSet = Main.connection.executeQuery();
+      found = resultSet.next();
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return found;
+  }
+  
   /**
    * 
    * @param filename
@@ -87,6 +163,29 @@ public class Shelf
     return this.insertDoc(doc);
   }
   
+  /**
+   * Same as {@link #addDoc(Document)} but the document is inserted by JDBC batch.
+   *  See {@link Connection#batchInsert(String, Object...)}.
+   *  Use it when the generated key is not needed: it is only known once the batch is inserted.
+   * @param doc
+   */
+  public void addDocInBatch(Document doc)
+  {
+    doc.sanityCheck();
+    
+    try
+    {
+      Main.connection.batchInsert(this.getInsertQuery(), SEARCH_INDEX, Directory.getDirId(doc.canonical_path), Directory.getName(doc.canonical_path), Directory.getLinkFilename(doc), doc.last_modified, doc.size, 
+                                                         Document.toDbHash(doc.hash), doc.comment, Document.toDbHash(doc.quick_hash), Document.toDbHashAlgo(doc.hash_algo),
+                                                         CommonTerms.get().clean(doc.filename));
+      this.index(doc);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+  }
+  
   public int saveDoc(Document doc)
   {
     final int rowsAffected = this.updateDoc(doc);
@@ -129,13 +228,147 @@ public class Shelf
   
   /**
    * Return all documents from Shelf table.
-   * Warning: Big table = big memory usage.
+   * Warning: Big table = big memory usage. Use {@link #openDocs()} to read them one at a time.
    * @return all documents from Shelf table.
    */
   public List<Document> getDocs()
   {
     return this.getDocsBy(null, null);
   }
+  
+  /**
+   * Read all documents from Shelf table one at a time. Memory usage doesn't depend on the size of the table.
+   * @return {@link DocumentCursor} to close after use.
+   */
+  public DocumentCursor openDocs()
+  {
+    return this.openDocsBy("");
+  }
+  
+  /**
+   * Same as {@link #getDocsWithMissingFileSize()} but documents are read one at a time.
+   * @return {@link DocumentCursor} to close after use.
+   */
+  public DocumentCursor openDocsWithMissingFileSize()
+  {
+    return this.openDocsBy("size < ?", 1);
+  }
+  
+  /**
+   * Same as {@link #openDocs()} but filename is the one compared by search --similar. See {@link CommonTerms}.
+   *  Run {@link #updateCleanFilenames()} first.
+   * @return {@link DocumentCursor} to close after use.
+   */
+  public DocumentCursor openDocsWithCleanFilename()
+  {
+    final String columns = String.format("uid, %s, clean_filename, last_modified, size, hash, comment, quick_hash, hash_algo", Directory.getPathColumn(this.tablename));
+    return new DocumentCursor(columns, this.tablename, "");
+  }
+  
+  /**
+   * Compute clean_filename of all documents again if words.lst changed since they were computed.
+   *  Documents added or saved compute it with the terms of words.lst read by this process.
+   * @return Number of documents updated.
+   */
+  public int updateCleanFilenames()
+  {
+    CommonTerms commonTerms = CommonTerms.get();
+    if(commonTerms.getChecksum().equals(Setting.get(Setting.WORD_LIST_CHECKSUM)))
+      return 0;
+    
+    int updated = 0;
+    DocumentCursor docCursor = this.openDocs();
+    try
+    {
+      for(Document doc: docCursor)
+        updated += this.update("uid", doc.uid, "clean_filename", commonTerms.clean(doc.filename));
+    }
+    finally
+    {
+      docCursor.close();
+    }
+    Setting.set(Setting.WORD_LIST_CHECKSUM, commonTerms.getChecksum());
+    return updated;
+  }
+  
+  /**
+   * Lighter than {@link #getDocByUid(int)}: only clean_filename is read.
+   * @param uid
+   * @return clean_filename of the document or null if it is not found.
+   */
+  public String getCleanFilename(final int uid)
+  {
+    final String query = "SELECT clean_filename FROM "+this.tablename+" WHERE uid=?";
+    String cleanFilename = null;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setInt(1, uid);
+      ResultSet resultSet = Main.connection.executeQuery();
+      if(resultSet.next())
+        cleanFilename = resultSet.getString(1);
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return cleanFilename;
+  }
+  
+  /**
+   * Lighter than {@link #getDocByUid(int)} for each document: canonical paths of all documents are read by 1 query.
+   *  uids are integers: they are written in the query, without the limit of SQLite on the number of variables.
+   * @param uids
+   * @return Canonical path of each document found, by uid.
+   */
+  public Map<Integer, String> getCanonicalPaths(final int[] uids)
+  {
+    StringBuilder uidList = new StringBuilder();
+    for(int uid: uids)
+    {
+      if(uidList.length()>0)
+        uidList.append(", ");
+      uidList.append(uid);
+    }
+    final String query = String.format("SELECT uid, %s FROM %s WHERE uid IN (%s)", Directory.getPathColumn(this.tablename), this.tablename, uidList);
+    
+    Map<Integer, String> canonicalPaths = new HashMap<Integer, String>(uids.length*2);
+    try
+    {
+      Main.connection.prepareStatement(query);
+      ResultSet resultSet = Main.connection.executeQuery();
+      while(resultSet.next())
+        canonicalPaths.put(resultSet.getInt(1), resultSet.getString(2));
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return canonicalPaths;
+  }
+  
+  /**
+   * @return Total number of documents in Shelf table.
+   */
+  public int getTotalDocs()
+  {
+    return this.getTotalDocsBy("");
+  }
+  
+  public int getTotalDocsWithMissingFileSize()
+  {
+    return this.getTotalDocsBy("size < ?", 1);
+  }
 
   public List<Document> searchDocsByFilename(String filename)
   {
@@ -161,7 +394,7 @@ public class Shelf
     int rowsAffected = 0;
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       rowsAffected = Main.connection.executeUpdate();
 
@@ -197,7 +430,7 @@ public class Shelf
   public int getTotalDuplicateHash()
   {
     // COUNT(*) will not give the total number of rows when using with GROUP BY.
-    final String query = String.format("SELECT hash FROM Shelf GROUP BY hash HAVING COUNT(*) > 1");
+    final String query = String.format("SELECT hash FROM Shelf WHERE hash IS NOT NULL GROUP BY hash HAVING COUNT(*) > 1");
     int found = 0;    
     try
     {
@@ -209,29 +442,34 @@ public class Shelf
       {
         found++;
       }      
+      DbUtils.close(resultSet);
     }
     catch(SQLException e)
     {
       e.printStackTrace();
     }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
     
     return found;
   }
   
   public List<String> getDuplicateHashes()
   {
-    final String query = String.format("SELECT hash FROM Shelf GROUP BY hash HAVING COUNT(*) > 1");
+    final String query = String.format("SELECT hash FROM Shelf WHERE hash IS NOT NULL GROUP BY hash HAVING COUNT(*) > 1");
     
     // Get the documents.
     List<String> hashList = new ArrayList<String>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       ResultSet resultSet =  Main.connection.executeQuery();
 
       while(resultSet.next())
       {
-        hashList.add(resultSet.getString(1));
+        hashList.add(Document.fromDbHash(resultSet.getObject(1)));
       }
       DbUtils.close(resultSet);
       Main.connection.closePreparedStatement();
@@ -256,7 +494,7 @@ public class Shelf
     int rowsAffected = 0;
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       Main.connection.setInt(1, duid);
       
@@ -270,6 +508,66 @@ public class Shelf
     return rowsAffected;    
   }
   
+  /**
+   * @return false if {@link DocIndex} tells that no document has this path.
+   */
+  private boolean mightContainPath(String canonicalPath)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    return docIndex==null || docIndex.mightContainPath(this.tablename, canonicalPath);
+  }
+  
+  /**
+   * @return false if {@link DocIndex} tells that no document has this hash.
+   */
+  private boolean mightContainHash(Object dbHash)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    return docIndex==null || docIndex.mightContainHash(this.tablename, dbHash);
+  }
+  
+  /**
+   * Keep {@link DocIndex} and {@link HashFilter} up to date with the path and hash written.
+   */
+  private void index(Document doc)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    if(docIndex!=null)
+      docIndex.add(this.tablename, doc.canonical_path, Document.toDbHash(doc.hash));
+    
+    HashFilter hashFilter = Main.connection.getHashFilter();
+    if(hashFilter!=null)
+      hashFilter.add(Document.toDbHash(doc.hash));
+    else
+      HashFilter.invalidate();
+  }
+  
+  private String getInsertQuery()
+  {
+    return "INSERT INTO "+this.tablename+  "(dir_id, filename, link_filename, last_modified, size, hash, comment, quick_hash, hash_algo, clean_filename) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  }
+  
+  /**
+   * @return Columns read into {@link Document}: canonical_path is rebuilt from Directory table.
+   */
+  private String getColumns()
+  {
+    return String.format("uid, %s, %s, last_modified, size, hash, comment, quick_hash, hash_algo", Directory.getPathColumn(this.tablename), Directory.getFilenameColumn(this.tablename));
+  }
+  
+  /**
+   * @param column Column of {@link Document}.
+   * @return SQL expression of the column.
+   */
+  private String getColumn(String column)
+  {
+    if("canonical_path".equals(column))
+      return Directory.getPathColumn(this.tablename);
+    if("filename".equals(column))
+      return Directory.getFilenameColumn(this.tablename);
+    return column;
+  }
+  
   /**
    * Insert document in Shelf table.
    * Note: Never add uid. Let's the database engine generated a new ID.
@@ -281,25 +579,31 @@ public class Shelf
   {
     doc.sanityCheck();
 
-    final String query = "INSERT INTO "+this.tablename+  "(canonical_path, filename, last_modified, size, hash, comment) VALUES(?, ?, ?, ?, ?, ?)";
+    final String query = this.getInsertQuery();
+    final int dirId = Directory.getDirId(doc.canonical_path); // Before the query is prepared: it might insert the directory.
     
     int generatedKey = 0;
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
-      Main.connection.setString (i++, doc.canonical_path);
-      Main.connection.setString (i++, doc.filename);
+      Main.connection.setInt    (i++, dirId);
+      Main.connection.setString (i++, Directory.getName(doc.canonical_path));
+      Main.connection.setString (i++, Directory.getLinkFilename(doc));
       Main.connection.setLong   (i++, doc.last_modified);
       Main.connection.setLong   (i++, doc.size);
-      Main.connection.setString (i++, doc.hash);
+      Main.connection.setObject (i++, Document.toDbHash(doc.hash));
       Main.connection.setString (i++, doc.comment);
+      Main.connection.setObject (i++, Document.toDbHash(doc.quick_hash));
+      Main.connection.setString (i++, Document.toDbHashAlgo(doc.hash_algo));
+      Main.connection.setString (i++, CommonTerms.get().clean(doc.filename));
       
       // Insert row.
       Main.connection.executeUpdate();
+      this.index(doc);
       ResultSet resultSet =  Main.connection.getGeneratedKeys();
       if(resultSet.next())
       {
@@ -307,6 +611,7 @@ public class Shelf
       }
       
       DbUtils.close(resultSet);
+      SearchIndex.insert(this.tablename, generatedKey, Directory.getName(doc.canonical_path), Directory.getLinkFilename(doc));
     }
     catch(SQLException e)
     {
@@ -331,26 +636,32 @@ public class Shelf
     doc.sanityCheck();
     doc.checkUid();
     
-    final String query = "UPDATE "+this.tablename+  " SET canonical_path = ?, filename = ?, last_modified = ?, size = ?, hash = ?, comment = ? WHERE uid = ?";
+    final String query = "UPDATE "+this.tablename+  " SET dir_id = ?, filename = ?, link_filename = ?, last_modified = ?, size = ?, hash = ?, comment = ?, quick_hash = ?, hash_algo = ?, clean_filename = ? WHERE uid = ?";
+    final int dirId = Directory.getDirId(doc.canonical_path); // Before the query is prepared: it might insert the directory.
     
     int rowAffected = 0;
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
-      Main.connection.setString(i++, doc.canonical_path  );
-      Main.connection.setString(i++, doc.filename        );
-      Main.connection.setLong  (i++, doc.last_modified   );
-      Main.connection.setLong  (i++, doc.size            );
-      Main.connection.setString(i++, doc.hash            );
-      Main.connection.setString(i++, doc.comment         );      
-      Main.connection.setInt   (i++, doc.uid             );
+      Main.connection.setInt   (i++, dirId                           );
+      Main.connection.setString(i++, Directory.getName(doc.canonical_path));
+      Main.connection.setString(i++, Directory.getLinkFilename(doc)    );
+      Main.connection.setLong  (i++, doc.last_modified                 );
+      Main.connection.setLong  (i++, doc.size                          );
+      Main.connection.setObject(i++, Document.toDbHash(doc.hash)       );
+      Main.connection.setString(i++, doc.comment                       );      
+      Main.connection.setObject(i++, Document.toDbHash(doc.quick_hash) );
+      Main.connection.setString(i++, Document.toDbHashAlgo(doc.hash_algo)  );
+      Main.connection.setString(i++, CommonTerms.get().clean(doc.filename) );
+      Main.connection.setInt   (i++, doc.uid                           );
       
       // update row.
       rowAffected = Main.connection.executeUpdate();
+      this.index(doc);
          
     }
     catch(SQLException e)
@@ -373,7 +684,7 @@ public class Shelf
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
@@ -404,7 +715,7 @@ public class Shelf
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
@@ -435,7 +746,7 @@ public class Shelf
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
@@ -464,9 +775,17 @@ public class Shelf
    * @param value
    * @return {@link Document}
    */
-  private Document getDocBy(String column, String value)
+  private Document getDocBy(String column, Object value)
+  {
+    return this.getOneDoc(this.getDocsBy(column, value));
+  }
+  
+  /**
+   * @param docs Documents returned by the last query.
+   * @return {@link Document}
+   */
+  private Document getOneDoc(List<Document> docs)
   {
-    List<Document> docs = this.getDocsBy(column, value);
     if(docs.size()==0)
     {
       return null;
@@ -490,15 +809,15 @@ public class Shelf
   
   private List<Document> getDocsBy(String column, String operator, Object value)
   {
-    final String query = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment"
+    final String query = String.format("SELECT %s"
                                         + " FROM %s"
-                                        + " WHERE %s %s ?", this.tablename, column, operator);
+                                        + " WHERE %s %s ?", this.getColumns(), this.tablename, this.getColumn(column), operator);
     
     // Get the documents.
     List<Document> docList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       Main.connection.setObject(1, value);
       ResultSet resultSet =  Main.connection.executeQuery();
 
@@ -511,8 +830,10 @@ public class Shelf
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docList.add(doc);
       }
@@ -528,30 +849,78 @@ public class Shelf
   }  
     
   
-  private List<Document> getDocsBy(String column, String value)
+  private List<Document> getDocsBy(String column, Object value, String column2, Object value2)
+  {
+    final String query = String.format("SELECT %s"
+                                        + " FROM %s"
+                                        + " WHERE %s = ? AND %s = ?", this.getColumns(), this.tablename, column, column2);
+    
+    // Get the documents.
+    List<Document> docsList = new ArrayList<Document>();
+    try
+    {
+      Main.connection.prepareLookup(query, column, value);
+      
+      int i=1;
+      Main.connection.setObject(i++, value);
+      Main.connection.setObject(i++, value2);
+      
+      ResultSet resultSet =  Main.connection.executeQuery();
+
+      while(resultSet.next())
+      {
+        Document doc = new Document();
+        int j=1;
+        doc.uid             = resultSet.getInt(j++);
+        doc.canonical_path  = resultSet.getString(j++);
+        doc.filename        = resultSet.getString(j++);
+        doc.last_modified   = resultSet.getLong(j++);
+        doc.size            = resultSet.getLong(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
+        doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
+        
+        docsList.add(doc);
+      }
+      DbUtils.close(resultSet);
+      Main.connection.closePreparedStatement();
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    
+    return docsList;
+  }
+  
+  private List<Document> getDocsBy(String column, Object value)
   {
     // Construct sql query.
     String where = "";
     if(column!=null)
     {
       if(!column.isEmpty())
-        where = String.format("WHERE %s = ?", column);
+        where = String.format("WHERE %s = ?", this.getColumn(column));
     }
     
-    final String query = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment"
+    final String query = String.format("SELECT %s"
                                         + " FROM %s"
-                                        + " %s", this.tablename, where);
+                                        + " %s", this.getColumns(), this.tablename, where);
     
     // Get the documents.
     List<Document> docList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      if(where.isEmpty())
+        Main.connection.prepareCachedStatement(query);
+      else
+        Main.connection.prepareLookup(query, this.getColumn(column), value);
       
       if(!where.isEmpty())
       {
         int i=1;
-        Main.connection.setString(i++, value);
+        Main.connection.setObject(i++, value);
       }
     
       ResultSet resultSet =  Main.connection.executeQuery();
@@ -565,8 +934,10 @@ public class Shelf
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docList.add(doc);
       }
@@ -581,6 +952,46 @@ public class Shelf
     return docList;
   }  
   
+  /**
+   * @param where Condition without WHERE or empty.
+   * @param values Values bound to the condition.
+   * @return {@link DocumentCursor}
+   */
+  private DocumentCursor openDocsBy(String where, Object... values)
+  {
+    return new DocumentCursor(this.getColumns(), this.tablename, where, values);
+  }
+  
+  private int getTotalDocsBy(String where, Object... values)
+  {
+    final String query = String.format("SELECT COUNT(*) FROM %s%s", this.tablename, where.isEmpty()? "" : " WHERE "+where);
+    
+    int total = 0;
+    try
+    {
+      Main.connection.prepareStatement(query);
+      for(int i=0; i<values.length; i++)
+        Main.connection.setObject(i+1, values[i]);
+      
+      ResultSet resultSet =  Main.connection.executeQuery();
+      if(resultSet.next())
+      {
+        total = resultSet.getInt(1);
+      }
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    
+    return total;
+  }
+  
   private List<Document> searchLikeDocsBy(String column, String value)
   {
     // Input validations.
@@ -601,18 +1012,37 @@ public class Shelf
     String likeValue = value.replaceAll("[\\*\\*]+", "*"); // Clean duplicate adjacent wildcard.
     likeValue = likeValue.replace('*', '%');
     
+    // Candidates from the full-text index and Directory table: LIKE can't use B-tree indexes. See SearchIndex.
+    List<Object> values = new ArrayList<Object>();
+    String candidates = "";
+    if(column.compareTo("canonical_path")==0)
+    {
+      if(likeOrEqual.compareTo("=")==0)
+      {// Same as getDocByCanonicalPath(): filename in its directory.
+        final Integer dirId = Directory.findDirId(likeValue);
+        if(dirId==null)
+          return new ArrayList<Document>();
+        return this.getDocsBy("filename", Directory.getName(likeValue), "dir_id", dirId);
+      }
+      candidates = SearchIndex.getPathCondition(this.tablename, likeValue, values);
+    }
+    else if(column.compareTo("filename")==0)
+      candidates = SearchIndex.getFilenameCondition(this.tablename, likeValue, values);
+    values.add(likeValue);
+    
     // Construct the query.
-    final String query = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment"
+    final String query = String.format("SELECT %s"
                                         + " FROM %s"
-                                        + " WHERE %s %s ?", this.tablename, column, likeOrEqual);
+                                        + " WHERE %s%s %s ?", this.getColumns(), this.tablename, candidates, this.getColumn(column), likeOrEqual);
     
     
     List<Document> docsList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
-      Main.connection.setString(1, likeValue);
+      for(int i=0; i<values.size(); i++)
+        Main.connection.setObject(i+1, values.get(i));
 
       ResultSet resultSet =  Main.connection.executeQuery();
 
@@ -625,8 +1055,10 @@ public class Shelf
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docsList.add(doc);
       }
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
 import net.xngo.fileshub.struct.Document;
 import net.xngo.utils.java.db.DbUtils;
 
@@ -25,6 +26,7 @@ public class Trash
   final static Logger log = LoggerFactory.getLogger(Trash.class);
   
   protected final String tablename  = "Trash";
+  private static final InsertBatch.Listener SEARCH_INDEX = SearchIndex.getInserter("Trash", 2, 3); // Index of filename and link_filename in the insert query.
  
   /**
    * @deprecated Duplicate CanonicalPaths are allowed.
@@ -33,14 +35,83 @@ public class Trash
    */
   public Document getDocByCanonicalPath(final String canonicalPath)
   {
-    return this.getDocBy("canonical_path", canonicalPath);
+    return this.getOneDoc(this.getDocsByCanonicalPath(canonicalPath));
+  }
+  
+  /**
+   * @param canonicalPath
+   * @return All documents having this path.
+   */
+  public List<Document> getDocsByCanonicalPath(final String canonicalPath)
+  {
+    if(!this.mightContainPath(canonicalPath))
+      return new ArrayList<Document>();
+    final Integer dirId = Directory.findDirId(canonicalPath);
+    if(dirId==null)
+      return new ArrayList<Document>(); // No document was ever in this directory.
+    return this.getDocsBy("filename", Directory.getName(canonicalPath), "dir_id", dirId);
   }
   
   public List<Document> getDocsByHash(String hash)
   {
-    return this.getDocsBy("hash", hash);
+    final Object dbHash = Document.toDbHash(hash);
+    if(!this.mightContainHash(dbHash))
+      return new ArrayList<Document>();
+    return this.getDocsBy("hash", dbHash);
   }    
   
+  /**
+   * Only compare hashes computed the same way.
+   * @param hash
+   * @param hashAlgo See {@link net.xngo.fileshub.Utils#getHashAlgo(long)}.
+   * @return All documents having the same hash and hash algorithm.
+   */
+  public List<Document> getDocsByHash(String hash, String hashAlgo)
+  {
+    final Object dbHash = Document.toDbHash(hash);
+    if(!this.mightContainHash(dbHash))
+      return new ArrayList<Document>();
+    return this.getDocsBy("hash", dbHash, "hash_algo", hashAlgo);
+  }
+  
+  /**
+   * @param size
+   * @return All documents having the same size.
+   */
+  public List<Document> getDocsBySize(long size)
+  {
+    return this.getDocsBy("size", size+"");
+  }
+  
+  /**
+   * @return true if a document has a deferred hash or a hash of another algorithm than {@link Utils#getHashAlgo(long)}.
+   */
+  public boolean hasHashesToResolve()
+  {
+    final String query = "SELECT 1 FROM "+this.tablename+" WHERE hash IS NULL"
+                            + " OR hash_algo IS NOT (CASE WHEN size > ? THEN ? ELSE ? END) LIMIT 1";
+    boolean found = false;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      Main.connection.setLong(1, Utils.SPOT_HASH_MIN_SIZE);
+      Main.connection.setString(2, Utils.getHashAlgo(Long.MAX_VALUE));
+      Main.connection.setString(3, Utils.getHashAlgo(0));
+      ResultSet resultSet = Main.connection.executeQuery();
+      found = resultSet.next();
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    return found;
+  }
+  
   /**
    * @deprecated Duplicate filename are allowed.
    * @param filename
@@ -61,12 +132,73 @@ public class Trash
     return this.getDocsBy("size", "<", "1");
   }
   
+  /**
+   * Same as {@link #getDocsWithMissingFileSize()} but documents are read one at a time.
+   * @return {@link DocumentCursor} to close after use.
+   */
+  public DocumentCursor openDocsWithMissingFileSize()
+  {
+    return new DocumentCursor(this.getColumns(), this.tablename, "size < ?", 1);
+  }
+  
+  public int getTotalDocsWithMissingFileSize()
+  {
+    final String query = String.format("SELECT COUNT(*) FROM %s WHERE size < ?", this.tablename);
+    
+    int total = 0;
+    try
+    {
+      Main.connection.prepareStatement(query);
+      Main.connection.setInt(1, 1);
+      
+      ResultSet resultSet =  Main.connection.executeQuery();
+      if(resultSet.next())
+      {
+        total = resultSet.getInt(1);
+      }
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    
+    return total;
+  }
+  
   
   public int addDoc(Document doc)
   {
     return this.insertDoc(doc);
   }
   
+  /**
+   * Same as {@link #addDoc(Document)} but the document is inserted by JDBC batch.
+   *  See {@link Connection#batchInsert(String, Object...)}.
+   *  Use it when the generated key is not needed: it is only known once the batch is inserted.
+   * @param doc
+   */
+  public void addDocInBatch(Document doc)
+  {
+    doc.checkUid();
+    doc.sanityCheck();
+    
+    try
+    {
+      Main.connection.batchInsert(this.getInsertQuery(), SEARCH_INDEX, doc.uid, Directory.getDirId(doc.canonical_path), Directory.getName(doc.canonical_path), Directory.getLinkFilename(doc), doc.last_modified, doc.size, 
+                                                         Document.toDbHash(doc.hash), doc.comment, Document.toDbHash(doc.quick_hash), Document.toDbHashAlgo(doc.hash_algo));
+      this.index(doc);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+  }
+  
   public int removeDoc(Document doc)
   {
     int rowsAffected = this.deleteDoc(doc);
@@ -93,7 +225,29 @@ public class Trash
   
   public int changeDuid(String fromCanonicalPath, int toDuid)
   {
-    final int rowsAffected = this.update("canonical_path", fromCanonicalPath, "duid", toDuid);
+    final String query = String.format("UPDATE %s SET duid=? WHERE dir_id=? AND filename=?", this.tablename);
+    final Integer dirId = Directory.findDirId(fromCanonicalPath); // NULL matches nothing.
+    
+    int rowsAffected = 0;
+    try
+    {
+      Main.connection.prepareCachedStatement(query);
+      
+      int i=1; // Order must match with query.
+      Main.connection.setInt   (i++, toDuid);
+      Main.connection.setObject(i++, dirId);
+      Main.connection.setString(i++, Directory.getName(fromCanonicalPath));
+      
+      rowsAffected = Main.connection.executeUpdate();
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
     
     if (rowsAffected==0)
       throw new RuntimeException(String.format("No duid has been changed: %s", Main.connection.getQueryString()));
@@ -118,7 +272,51 @@ public class Trash
     if(size<0)
       throw new RuntimeException(String.format("Size can't be negative: hash=%s, size=%d", hash, size));
     
-    return this.update("hash", hash, "size", size);
+    return this.update("hash", Document.toDbHash(hash), "size", size);
+  }
+  
+  /**
+   * Save the hash, the quick hash and the hash algorithm of a document that had its hashes deferred or rehashed.
+   *  Only entries of the same version of the file are updated: same size and last modified time.
+   * @param doc
+   * @return Number of rows affected.
+   */
+  public int saveHashes(Document doc)
+  {
+    final String query = String.format("UPDATE %s SET hash=?, quick_hash=?, hash_algo=? WHERE duid=? AND dir_id=? AND filename=? AND size=? AND last_modified=?", this.tablename);
+    final Integer dirId = Directory.findDirId(doc.canonical_path); // NULL matches nothing.
+    
+    int rowAffected = 0;
+    try
+    {
+      // Prepare the query.
+      Main.connection.prepareCachedStatement(query);
+      
+      // Set the data.
+      int i=1; // Order must match with query.
+      Main.connection.setObject(i++, Document.toDbHash(doc.hash));
+      Main.connection.setObject(i++, Document.toDbHash(doc.quick_hash));
+      Main.connection.setString(i++, Document.toDbHashAlgo(doc.hash_algo));
+      Main.connection.setInt   (i++, doc.uid);
+      Main.connection.setObject(i++, dirId);
+      Main.connection.setString(i++, Directory.getName(doc.canonical_path));
+      Main.connection.setLong  (i++, doc.size);
+      Main.connection.setLong  (i++, doc.last_modified);
+      
+      // update row.
+      rowAffected = Main.connection.executeUpdate();
+      this.index(doc);
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+    
+    return rowAffected;
   }
   
   /**
@@ -127,15 +325,15 @@ public class Trash
    */
   public List<Document> getOrphans()
   {
-    final String query = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment "
+    final String query = String.format("SELECT %s "
                                       + "FROM %s "
-                                      + "LEFT JOIN Shelf ON Trash.duid=Shelf.uid WHERE Shelf.uid IS NULL", this.tablename);
+                                      + "LEFT JOIN Shelf ON Trash.duid=Shelf.uid WHERE Shelf.uid IS NULL", this.getColumns(), this.tablename);
     
     // Get the documents.
     ArrayList<Document> docsList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       ResultSet resultSet =  Main.connection.executeQuery();
 
       while(resultSet.next())
@@ -147,8 +345,10 @@ public class Trash
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docsList.add(doc);
         
@@ -173,6 +373,7 @@ public class Trash
                                       + "FROM Trash "
                                       + "LEFT JOIN Shelf ON Trash.duid=Shelf.uid WHERE Shelf.uid IS NULL");
     
+    int total = 0;
     try
     {
       Main.connection.prepareStatement(query);
@@ -180,15 +381,20 @@ public class Trash
       ResultSet resultSet =  Main.connection.executeQuery();
       if(resultSet.next())
       {
-        return resultSet.getInt(1);
+        total = resultSet.getInt(1);
       }
+      DbUtils.close(resultSet);
     }
     catch(SQLException e)
     {
       e.printStackTrace();
     }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
     
-    return 0;
+    return total;
   }
   
   /**
@@ -204,7 +410,7 @@ public class Trash
     int rowsAffected = 0;
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       rowsAffected = Main.connection.executeUpdate();
 
@@ -225,7 +431,7 @@ public class Trash
     int rowsAffected = 0;
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       int i=1; // Order must match with query.
       Main.connection.setInt   (i++, duid);
@@ -263,7 +469,7 @@ public class Trash
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
@@ -294,7 +500,7 @@ public class Trash
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1;
@@ -320,16 +526,18 @@ public class Trash
   private int deleteDoc(Document doc)
   {
     // Add conditions that make Document unique.
-    final String query = "DELETE FROM "+this.tablename+" WHERE duid=? AND hash=? and canonical_path=?";
+    final String query = "DELETE FROM "+this.tablename+" WHERE duid=? AND hash IS ? and dir_id=? AND filename=?"; // IS: hash can be NULL when it is deferred.
+    final Integer dirId = Directory.findDirId(doc.canonical_path); // NULL matches nothing.
     int rowsAffected = 0;
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       int i=1; // Order must match with query.
       Main.connection.setInt   (i++, doc.uid);
-      Main.connection.setString(i++, doc.hash);
-      Main.connection.setString(i++, doc.canonical_path);
+      Main.connection.setObject(i++, Document.toDbHash(doc.hash));
+      Main.connection.setObject(i++, dirId);
+      Main.connection.setString(i++, Directory.getName(doc.canonical_path));
       
       rowsAffected = Main.connection.executeUpdate();
 
@@ -362,16 +570,35 @@ public class Trash
     String likeValue = value.replaceAll("[\\*\\*]+", "*"); // Clean duplicate adjacent wildcard.
     likeValue = likeValue.replace('*', '%');
     
-    final String query = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment"
+    // Candidates from the full-text index and Directory table: LIKE can't use B-tree indexes. See SearchIndex.
+    List<Object> values = new ArrayList<Object>();
+    String candidates = "";
+    if(column.compareTo("canonical_path")==0)
+    {
+      if(likeOrEqual.compareTo("=")==0)
+      {// Same as getDocByCanonicalPath(): filename in its directory.
+        final Integer dirId = Directory.findDirId(likeValue);
+        if(dirId==null)
+          return new ArrayList<Document>();
+        return this.getDocsBy("filename", Directory.getName(likeValue), "dir_id", dirId);
+      }
+      candidates = SearchIndex.getPathCondition(this.tablename, likeValue, values);
+    }
+    else if(column.compareTo("filename")==0)
+      candidates = SearchIndex.getFilenameCondition(this.tablename, likeValue, values);
+    values.add(likeValue);
+    
+    final String query = String.format("SELECT %s"
                                         + " FROM %s"
-                                        + " WHERE %s %s ?", this.tablename, column, likeOrEqual);
+                                        + " WHERE %s%s %s ?", this.getColumns(), this.tablename, candidates, this.getColumn(column), likeOrEqual);
     
     List<Document> docsList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
-      Main.connection.setString(1, likeValue);
+      for(int i=0; i<values.size(); i++)
+        Main.connection.setObject(i+1, values.get(i));
       
       ResultSet resultSet =  Main.connection.executeQuery();
 
@@ -384,8 +611,10 @@ public class Trash
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docsList.add(doc);
       }
@@ -408,9 +637,17 @@ public class Trash
    * @param value
    * @return {@link Document}
    */
-  private Document getDocBy(String column, String value)
+  private Document getDocBy(String column, Object value)
+  {
+    return this.getOneDoc(this.getDocsBy(column, value));
+  }
+  
+  /**
+   * @param docs Documents returned by the last query.
+   * @return {@link Document}
+   */
+  private Document getOneDoc(List<Document> docs)
   {
-    List<Document> docs = this.getDocsBy(column, value);
     if(docs.size()==0)
     {
       return null;
@@ -435,15 +672,15 @@ public class Trash
   private List<Document> getDocsBy(String column, String operator, Object value)
   {
     
-    final String query = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment"
+    final String query = String.format("SELECT %s"
                                       + " FROM %s"
-                                      + " WHERE %s %s ?", this.tablename, column, operator);
+                                      + " WHERE %s %s ?", this.getColumns(), this.tablename, this.getColumn(column), operator);
     
     // Get the documents.
     ArrayList<Document> docsList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       Main.connection.setObject(1, value);
       ResultSet resultSet =  Main.connection.executeQuery();
 
@@ -456,8 +693,10 @@ public class Trash
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docsList.add(doc);
         
@@ -473,26 +712,74 @@ public class Trash
     return docsList;
   }  
   
-  private List<Document> getDocsBy(String column, String value)
+  private List<Document> getDocsBy(String column, Object value, String column2, Object value2)
+  {
+    final String query = String.format("SELECT %s"
+                                        + " FROM %s"
+                                        + " WHERE %s = ? AND %s = ?", this.getColumns(), this.tablename, column, column2);
+    
+    // Get the documents.
+    List<Document> docsList = new ArrayList<Document>();
+    try
+    {
+      Main.connection.prepareLookup(query, column, value);
+      
+      int i=1;
+      Main.connection.setObject(i++, value);
+      Main.connection.setObject(i++, value2);
+      
+      ResultSet resultSet =  Main.connection.executeQuery();
+
+      while(resultSet.next())
+      {
+        Document doc = new Document();
+        int j=1;
+        doc.uid             = resultSet.getInt(j++); // Shelf.uid is equal to Trash.duid.
+        doc.canonical_path  = resultSet.getString(j++);
+        doc.filename        = resultSet.getString(j++);
+        doc.last_modified   = resultSet.getLong(j++);
+        doc.size            = resultSet.getLong(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
+        doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
+        
+        docsList.add(doc);
+      }
+      DbUtils.close(resultSet);
+      Main.connection.closePreparedStatement();
+    }
+    catch(SQLException e)
+    {
+      e.printStackTrace();
+    }
+    
+    return docsList;
+  }
+  
+  private List<Document> getDocsBy(String column, Object value)
   {
     // Construct sql query.
     String where = "";
     if(column!=null)
     {
       if(!column.isEmpty())
-        where = String.format("WHERE %s = ?", column);
+        where = String.format("WHERE %s = ?", this.getColumn(column));
     }    
     
-    final String query = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment "
+    final String query = String.format("SELECT %s "
                                       + " FROM %s"
-                                      + " %s", this.tablename, where);
+                                      + " %s", this.getColumns(), this.tablename, where);
     
     // Get the documents.
     ArrayList<Document> docsList = new ArrayList<Document>();
     try
     {
-      Main.connection.prepareStatement(query);
-      Main.connection.setString(1, value);
+      if(where.isEmpty())
+        Main.connection.prepareCachedStatement(query);
+      else
+        Main.connection.prepareLookup(query, this.getColumn(column), value);
+      Main.connection.setObject(1, value);
       ResultSet resultSet =  Main.connection.executeQuery();
 
       while(resultSet.next())
@@ -504,8 +791,10 @@ public class Trash
         doc.filename        = resultSet.getString(j++);
         doc.last_modified   = resultSet.getLong(j++);
         doc.size            = resultSet.getLong(j++);
-        doc.hash            = resultSet.getString(j++);
+        doc.hash            = Document.fromDbHash(resultSet.getObject(j++));
         doc.comment         = resultSet.getString(j++);
+        doc.quick_hash      = Document.fromDbHash(resultSet.getObject(j++));
+        doc.hash_algo       = Document.fromDbHashAlgo(resultSet.getString(j++));
         
         docsList.add(doc);
         
@@ -521,6 +810,66 @@ public class Trash
     return docsList;
   }
   
+  /**
+   * @return false if {@link DocIndex} tells that no document has this path.
+   */
+  private boolean mightContainPath(String canonicalPath)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    return docIndex==null || docIndex.mightContainPath(this.tablename, canonicalPath);
+  }
+  
+  /**
+   * @return false if {@link DocIndex} tells that no document has this hash.
+   */
+  private boolean mightContainHash(Object dbHash)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    return docIndex==null || docIndex.mightContainHash(this.tablename, dbHash);
+  }
+  
+  /**
+   * Keep {@link DocIndex} and {@link HashFilter} up to date with the path and hash written.
+   */
+  private void index(Document doc)
+  {
+    DocIndex docIndex = Main.connection.getDocIndex();
+    if(docIndex!=null)
+      docIndex.add(this.tablename, doc.canonical_path, Document.toDbHash(doc.hash));
+    
+    HashFilter hashFilter = Main.connection.getHashFilter();
+    if(hashFilter!=null)
+      hashFilter.add(Document.toDbHash(doc.hash));
+    else
+      HashFilter.invalidate();
+  }
+  
+  private String getInsertQuery()
+  {
+    return "INSERT INTO "+this.tablename+  "(duid, dir_id, filename, link_filename, last_modified, size, hash, comment, quick_hash, hash_algo) VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+  }
+  
+  /**
+   * @return Columns read into {@link Document}: canonical_path is rebuilt from Directory table.
+   */
+  private String getColumns()
+  {
+    return String.format("duid, %s, %s, last_modified, size, hash, comment, quick_hash, hash_algo", Directory.getPathColumn(this.tablename), Directory.getFilenameColumn(this.tablename));
+  }
+  
+  /**
+   * @param column Column of {@link Document}.
+   * @return SQL expression of the column.
+   */
+  private String getColumn(String column)
+  {
+    if("canonical_path".equals(column))
+      return Directory.getPathColumn(this.tablename);
+    if("filename".equals(column))
+      return Directory.getFilenameColumn(this.tablename);
+    return column;
+  }
+  
   /**
    * Insert a document.
    * @param doc
@@ -531,26 +880,31 @@ public class Trash
     doc.checkUid();
     doc.sanityCheck();
     
-    final String query = "INSERT INTO "+this.tablename+  "(duid, canonical_path, filename, last_modified, size, hash, comment) VALUES(?, ?, ?, ?, ?, ?, ?)";
+    final String query = this.getInsertQuery();
+    final int dirId = Directory.getDirId(doc.canonical_path); // Before the query is prepared: it might insert the directory.
     
     int generatedKey = 0;
     try
     {
       // Prepare the query.
-      Main.connection.prepareStatement(query);
+      Main.connection.prepareCachedStatement(query);
       
       // Set the data.
       int i=1; // Order must match with query.
       Main.connection.setInt   (i++, doc.uid);
-      Main.connection.setString(i++, doc.canonical_path);
-      Main.connection.setString(i++, doc.filename);
+      Main.connection.setInt   (i++, dirId);
+      Main.connection.setString(i++, Directory.getName(doc.canonical_path));
+      Main.connection.setString(i++, Directory.getLinkFilename(doc));
       Main.connection.setLong  (i++, doc.last_modified);
       Main.connection.setLong  (i++, doc.size);
-      Main.connection.setString(i++, doc.hash);
+      Main.connection.setObject(i++, Document.toDbHash(doc.hash));
       Main.connection.setString(i++, doc.comment);
+      Main.connection.setObject(i++, Document.toDbHash(doc.quick_hash));
+      Main.connection.setString(i++, Document.toDbHashAlgo(doc.hash_algo));
 
       // Insert row.
       Main.connection.executeUpdate();
+      this.index(doc);
       ResultSet resultSet =  Main.connection.getGeneratedKeys();
       if(resultSet.next())
       {
@@ -559,6 +913,7 @@ public class Trash
       }
 
       DbUtils.close(resultSet);
+      SearchIndex.insert(this.tablename, generatedKey, Directory.getName(doc.canonical_path), Directory.getLinkFilename(doc));
 
     }
     catch(SQLException e)
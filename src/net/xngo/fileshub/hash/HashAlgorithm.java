@@ -0,0 +1,74 @@
+package net.xngo.fileshub.hash;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hash algorithms that can be used to identify a file.
+ *  The name is stored in the hash_algo column of Shelf and Trash tables.
+ *  Therefore, never rename an existing algorithm.
+ * @author Xuan Ngo
+ *
+ */
+public enum HashAlgorithm
+{
+  MD5      ("md5",      "MD5"),
+  SHA256   ("sha256",   "SHA-256"),
+  XXHASH64 ("xxhash64", null)     // Not cryptographic. Much faster than md5 but only 64 bits.
+  {
+    @Override
+    public MessageDigest newMessageDigest()
+    {
+      return new XxHash64();
+    }
+  };
+
+  private final String name;
+  private final String jcaName; // Name used by MessageDigest.getInstance().
+
+  private HashAlgorithm(String name, String jcaName)
+  {
+    this.name    = name;
+    this.jcaName = jcaName;
+  }
+
+  /**
+   * @return Name of the algorithm as stored in the database.
+   */
+  public String getName()
+  {
+    return this.name;
+  }
+
+  /**
+   * @return A new MessageDigest computing this algorithm.
+   */
+  public MessageDigest newMessageDigest()
+  {
+    try
+    {
+      return MessageDigest.getInstance(this.jcaName);
+    }
+    catch(NoSuchAlgorithmException ex)
+    {
+      RuntimeException rException = new RuntimeException(ex.getMessage());
+      rException.setStackTrace(ex.getStackTrace());
+      throw rException;
+    }
+  }
+
+  /**
+   * @param name Name of the algorithm, e.g. md5, sha256 or xxhash64.
+   * @return HashAlgorithm matching the name.
+   */
+  public static HashAlgorithm get(String name)
+  {
+    for(HashAlgorithm hashAlgorithm: HashAlgorithm.values())
+    {
+      if(hashAlgorithm.name.compareToIgnoreCase(name)==0)
+        return hashAlgorithm;
+    }
+
+    throw new RuntimeException(String.format("Unknown hash algorithm: %s. Valid values are md5, sha256 and xxhash64.", name));
+  }
+}
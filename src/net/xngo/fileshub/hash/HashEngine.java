@@ -0,0 +1,268 @@
+package net.xngo.fileshub.hash;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.EnumMap;
+import java.util.Map;
+
+import net.xngo.fileshub.Utils;
+
+/**
+ * Hash files using FileChannel instead of streams.
+ *  -Each thread reuses its own direct ByteBuffers and MessageDigest. Nothing is allocated per file.
+ *  -Big files are read in a bigger buffer. They are not memory mapped: mappings stay until they are garbage collected
+ *    and, on Windows, the file can't be renamed or moved while they do.
+ * Any {@link HashAlgorithm} can be used. With md5, hashes are exactly the same
+ *  as the ones returned by net.xngo.utils.java.math.Hash.
+ * @author Xuan Ngo
+ *
+ */
+public class HashEngine
+{
+  public static final int BUFFER_SIZE       = 65536;    // 64KB: Buffer used to read small files.
+  public static final int LARGE_FILE_SIZE   = 16777216; // 16MB: Files bigger than this are read in the large buffer.
+  public static final int LARGE_BUFFER_SIZE = 1048576;  // 1MB: Buffer used to read large files.
+  public static final int FINGERPRINT_SIZE = 8192;     // 8KB: Size of each spot hashed. Same as Hash.md5FingerPrint().
+
+  private static final ThreadLocal<Map<HashAlgorithm, MessageDigest>> digests = new ThreadLocal<Map<HashAlgorithm, MessageDigest>>()
+                                                                          {
+                                                                            @Override
+                                                                            protected Map<HashAlgorithm, MessageDigest> initialValue()
+                                                                            {
+                                                                              return new EnumMap<HashAlgorithm, MessageDigest>(HashAlgorithm.class);
+                                                                            }
+                                                                          };
+
+  private static final ThreadLocal<ByteBuffer> buffer = new ThreadLocal<ByteBuffer>()
+                                                        {
+                                                          @Override
+                                                          protected ByteBuffer initialValue()
+                                                          {
+                                                            return ByteBuffer.allocateDirect(HashEngine.BUFFER_SIZE);
+                                                          }
+                                                        };
+
+  private static final ThreadLocal<ByteBuffer> largeBuffer = new ThreadLocal<ByteBuffer>()
+                                                              {
+                                                                @Override
+                                                                protected ByteBuffer initialValue()
+                                                                {
+                                                                  return ByteBuffer.allocateDirect(HashEngine.LARGE_BUFFER_SIZE);
+                                                                }
+                                                              };
+
+  /**
+   * Same as Hash.md5(): md5 of the whole file.
+   * @param file
+   * @return the hash as string
+   */
+  public static String md5(File file)
+  {
+    return HashEngine.hash(file, HashAlgorithm.MD5);
+  }
+
+  /**
+   * Hash the whole file.
+   * @param file
+   * @param hashAlgorithm
+   * @return the hash as string
+   */
+  public static String hash(File file, HashAlgorithm hashAlgorithm)
+  {
+    MessageDigest md = HashEngine.getMessageDigest(hashAlgorithm);
+
+    FileInputStream fileInputStream = null;
+    try
+    {
+      fileInputStream = new FileInputStream(file);
+      FileChannel channel = fileInputStream.getChannel();
+      ByteBuffer buffer = (channel.size()>HashEngine.LARGE_FILE_SIZE)? HashEngine.largeBuffer.get() : HashEngine.buffer.get();
+      buffer.clear();
+      while(channel.read(buffer)!=-1)
+      {
+        buffer.flip();
+        md.update(buffer);
+        buffer.clear();
+      }
+
+      return Utils.toHex(md.digest());
+    }
+    catch(IOException ex)
+    {
+      md.reset();
+      throw HashEngine.toRuntimeException(ex);
+    }
+    finally
+    {
+      HashEngine.close(fileInputStream);
+    }
+  }
+
+  /**
+   * Same as Hash.md5FingerPrint(): md5 of spots evenly distributed in the file.
+   *  The file is split in frequency chunks. The first 8KB of each chunk and the last 8KB of the file are hashed.
+   *  Like Hash.md5FingerPrint(), only the first 2GB(Integer.MAX_VALUE) of the file are considered.
+   * @param file
+   * @param frequency Number of spots to hash.
+   * @return the hash as string
+   */
+  public static String md5FingerPrint(File file, int frequency)
+  {
+    return HashEngine.fingerPrint(file, HashAlgorithm.MD5, frequency);
+  }
+
+  /**
+   * Hash spots evenly distributed in the file. Spots are the same as {@link #md5FingerPrint(File, int)}.
+   * @param file
+   * @param hashAlgorithm
+   * @param frequency Number of spots to hash.
+   * @return the hash as string
+   */
+  public static String fingerPrint(File file, HashAlgorithm hashAlgorithm, int frequency)
+  {
+    MessageDigest md = HashEngine.getMessageDigest(hashAlgorithm);
+
+    FileInputStream fileInputStream = null;
+    try
+    {
+      fileInputStream = new FileInputStream(file);
+      FileChannel channel = fileInputStream.getChannel();
+      ByteBuffer buffer = HashEngine.buffer.get();
+
+      // Compute the positions exactly like Hash.md5FingerPrint() does with FileInputStream.available() and skip().
+      final int available = (int)Math.min(channel.size(), Integer.MAX_VALUE);
+      final int skip = available/frequency - HashEngine.FINGERPRINT_SIZE;
+
+      long position = 0; // Position in the file.
+      int  offset   = 0; // Offset as computed by Hash.md5FingerPrint().
+      for(int i=0; i<frequency-1; i++)
+      {
+        position += HashEngine.update(md, channel, buffer, position, HashEngine.FINGERPRINT_SIZE);
+        offset   += HashEngine.FINGERPRINT_SIZE + skip;
+        position += skip;
+      }
+
+      // Last spot.
+      final int lastSkip = available - HashEngine.FINGERPRINT_SIZE - offset;
+      if(lastSkip>0)
+        position += lastSkip;
+      HashEngine.update(md, channel, buffer, position, HashEngine.FINGERPRINT_SIZE);
+
+      return Utils.toHex(md.digest());
+    }
+    catch(IOException ex)
+    {
+      md.reset();
+      throw HashEngine.toRuntimeException(ex);
+    }
+    finally
+    {
+      HashEngine.close(fileInputStream);
+    }
+  }
+
+  /**
+   * md5 of the first and last blockSize bytes of the file. They never overlap.
+   *  If the file is smaller than 2 x blockSize, then the whole file is hashed.
+   * @param file
+   * @param blockSize
+   * @return the hash as string
+   */
+  public static String md5HeadTail(File file, int blockSize)
+  {
+    MessageDigest md5 = HashEngine.getMessageDigest(HashAlgorithm.MD5);
+
+    FileInputStream fileInputStream = null;
+    try
+    {
+      fileInputStream = new FileInputStream(file);
+      FileChannel channel = fileInputStream.getChannel();
+      ByteBuffer buffer = HashEngine.buffer.get();
+      final long size = channel.size();
+
+      // Head.
+      final long headLength = Math.min(blockSize, size);
+      HashEngine.update(md5, channel, buffer, 0, headLength);
+
+      // Tail: Don't overlap the head.
+      final long tailLength = Math.min(blockSize, size-headLength);
+      if(tailLength>0)
+        HashEngine.update(md5, channel, buffer, size-tailLength, tailLength);
+
+      return Utils.toHex(md5.digest());
+    }
+    catch(IOException ex)
+    {
+      md5.reset();
+      throw HashEngine.toRuntimeException(ex);
+    }
+    finally
+    {
+      HashEngine.close(fileInputStream);
+    }
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * Hash length bytes of the channel starting at position.
+   * @return Number of bytes hashed. Less than length if the end of the file is reached.
+   */
+  private static int update(MessageDigest md, FileChannel channel, ByteBuffer buffer, long position, long length) throws IOException
+  {
+    int total = 0;
+    while(total<length)
+    {
+      buffer.clear();
+      buffer.limit((int)Math.min(buffer.capacity(), length-total));
+      int read = channel.read(buffer, position+total);
+      if(read==-1)
+        break; // End of file.
+
+      buffer.flip();
+      md.update(buffer);
+      total += read;
+    }
+    return total;
+  }
+
+  /**
+   * @return MessageDigest of the current thread, ready to be used.
+   */
+  private static MessageDigest getMessageDigest(HashAlgorithm hashAlgorithm)
+  {
+    Map<HashAlgorithm, MessageDigest> threadDigests = HashEngine.digests.get();
+    MessageDigest md = threadDigests.get(hashAlgorithm);
+    if(md==null)
+    {
+      md = hashAlgorithm.newMessageDigest();
+      threadDigests.put(hashAlgorithm, md);
+    }
+    md.reset();
+    return md;
+  }
+
+  private static RuntimeException toRuntimeException(Exception ex)
+  {
+    RuntimeException rException = new RuntimeException(ex.getMessage());
+    rException.setStackTrace(ex.getStackTrace());
+    return rException;
+  }
+
+  private static void close(FileInputStream fileInputStream)
+  {
+    if(fileInputStream!=null)
+    {
+      try { fileInputStream.close(); }
+      catch(IOException ex) { ex.printStackTrace(); }
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package net.xngo.fileshub.hash;
+
+import java.security.MessageDigest;
+
+/**
+ * Pure Java implementation of xxHash64 with seed=0.
+ *  It is wrapped in a MessageDigest so that HashEngine can use it like md5.
+ *  The digest is the 64 bits hash in big-endian: its hexadecimal string
+ *    is the same as the one returned by the reference implementation.
+ * @author Xuan Ngo
+ *
+ */
+public class XxHash64 extends MessageDigest
+{
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  private static final int  STRIPE_SIZE = 32;
+
+  private long v1, v2, v3, v4;
+  private long totalLength;
+
+  private final byte[] stripe = new byte[STRIPE_SIZE]; // Bytes not processed yet.
+  private int  stripeLength;
+
+  public XxHash64()
+  {
+    super("xxhash64");
+    this.engineReset();
+  }
+
+  @Override
+  protected void engineReset()
+  {
+    this.v1 = PRIME1 + PRIME2;
+    this.v2 = PRIME2;
+    this.v3 = 0;
+    this.v4 = -PRIME1;
+    this.totalLength  = 0;
+    this.stripeLength = 0;
+  }
+
+  @Override
+  protected int engineGetDigestLength()
+  {
+    return 8;
+  }
+
+  @Override
+  protected void engineUpdate(byte input)
+  {
+    this.engineUpdate(new byte[] { input }, 0, 1);
+  }
+
+  @Override
+  protected void engineUpdate(byte[] input, int offset, int length)
+  {
+    this.totalLength += length;
+    final int end = offset + length;
+
+    // Complete the pending stripe first.
+    if(this.stripeLength>0)
+    {
+      final int fill = Math.min(STRIPE_SIZE-this.stripeLength, length);
+      System.arraycopy(input, offset, this.stripe, this.stripeLength, fill);
+      this.stripeLength += fill;
+      offset += fill;
+      if(this.stripeLength<STRIPE_SIZE)
+        return;
+
+      this.processStripe(this.stripe, 0);
+      this.stripeLength = 0;
+    }
+
+    // Process full stripes directly from the input.
+    while(offset+STRIPE_SIZE<=end)
+    {
+      this.processStripe(input, offset);
+      offset += STRIPE_SIZE;
+    }
+
+    // Keep the rest for the next update.
+    this.stripeLength = end - offset;
+    System.arraycopy(input, offset, this.stripe, 0, this.stripeLength);
+  }
+
+  @Override
+  protected byte[] engineDigest()
+  {
+    long hash;
+    if(this.totalLength>=STRIPE_SIZE)
+    {
+      hash = Long.rotateLeft(this.v1, 1) + Long.rotateLeft(this.v2, 7) + Long.rotateLeft(this.v3, 12) + Long.rotateLeft(this.v4, 18);
+      hash = XxHash64.mergeRound(hash, this.v1);
+      hash = XxHash64.mergeRound(hash, this.v2);
+      hash = XxHash64.mergeRound(hash, this.v3);
+      hash = XxHash64.mergeRound(hash, this.v4);
+    }
+    else
+      hash = PRIME5;
+
+    hash += this.totalLength;
+
+    // Remaining bytes.
+    int i = 0;
+    for(; i+8<=this.stripeLength; i+=8)
+    {
+      hash ^= XxHash64.round(0, XxHash64.getLong(this.stripe, i));
+      hash  = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+    }
+    if(i+4<=this.stripeLength)
+    {
+      hash ^= (XxHash64.getInt(this.stripe, i) & 0xFFFFFFFFL) * PRIME1;
+      hash  = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+      i += 4;
+    }
+    for(; i<this.stripeLength; i++)
+    {
+      hash ^= (this.stripe[i] & 0xFF) * PRIME5;
+      hash  = Long.rotateLeft(hash, 11) * PRIME1;
+    }
+
+    // Avalanche.
+    hash ^= hash >>> 33;
+    hash *= PRIME2;
+    hash ^= hash >>> 29;
+    hash *= PRIME3;
+    hash ^= hash >>> 32;
+
+    this.engineReset();
+
+    byte[] digest = new byte[8];
+    for(int j=7; j>=0; j--)
+    {
+      digest[j] = (byte)hash;
+      hash >>>= 8;
+    }
+    return digest;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private void processStripe(byte[] input, int offset)
+  {
+    this.v1 = XxHash64.round(this.v1, XxHash64.getLong(input, offset));
+    this.v2 = XxHash64.round(this.v2, XxHash64.getLong(input, offset+8));
+    this.v3 = XxHash64.round(this.v3, XxHash64.getLong(input, offset+16));
+    this.v4 = XxHash64.round(this.v4, XxHash64.getLong(input, offset+24));
+  }
+
+  private static long round(long accumulator, long input)
+  {
+    accumulator += input * PRIME2;
+    accumulator  = Long.rotateLeft(accumulator, 31);
+    return accumulator * PRIME1;
+  }
+
+  private static long mergeRound(long accumulator, long value)
+  {
+    accumulator ^= XxHash64.round(0, value);
+    return accumulator * PRIME1 + PRIME4;
+  }
+
+  /**
+   * @return Little-endian long at offset.
+   */
+  private static long getLong(byte[] bytes, int offset)
+  {
+    return   (bytes[offset  ] & 0xFFL)
+          | ((bytes[offset+1] & 0xFFL) <<  8)
+          | ((bytes[offset+2] & 0xFFL) << 16)
+          | ((bytes[offset+3] & 0xFFL) << 24)
+          | ((bytes[offset+4] & 0xFFL) << 32)
+          | ((bytes[offset+5] & 0xFFL) << 40)
+          | ((bytes[offset+6] & 0xFFL) << 48)
+          | ((bytes[offset+7] & 0xFFL) << 56);
+  }
+
+  /**
+   * @return Little-endian int at offset.
+   */
+  private static int getInt(byte[] bytes, int offset)
+  {
+    return   (bytes[offset  ] & 0xFF)
+          | ((bytes[offset+1] & 0xFF) <<  8)
+          | ((bytes[offset+2] & 0xFF) << 16)
+          | ((bytes[offset+3] & 0xFF) << 24);
+  }
+}
@@ -23,7 +23,14 @@ public class Difference
 
   public Difference(String left, String right)
   {
-    diff_match_patch diffMatchPatch = new diff_match_patch();
+    this(new diff_match_patch(), left, right);
+  }
+  
+  /**
+   * @param diffMatchPatch Reused from one difference to the next. Not thread safe: 1 per thread.
+   */
+  public Difference(diff_match_patch diffMatchPatch, String left, String right)
+  {
     this.deltas = diffMatchPatch.diff_main(left, right);
     diffMatchPatch.diff_cleanupSemantic(this.deltas);
     
@@ -105,6 +105,9 @@ public class ReportDuplicate extends Report
     // Display memory usage.
     super.addSummary(String.format("\t%s\n", Utils.getRAMUsage()));
     
+    // Display reuse of compiled statements.
+    super.addSummary(String.format("\tPrepared statements: %,d reused, %,d compiled.\n", Main.connection.getStatementHits(), Main.connection.getStatementMisses()));
+    
   }
   
   private long getTotalDuplicateFileSize()
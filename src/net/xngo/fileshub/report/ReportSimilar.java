@@ -12,6 +12,8 @@ public class ReportSimilar extends Report
 {
   private String combinationsInfo = "";
   private List<PairFile> pairFileList;
+  private StringBuilder groupLines = new StringBuilder(); // Lines of the groups added, written by generate().
+  private int groups = 0;
   
   public ReportSimilar(File file)
   {
@@ -21,6 +23,20 @@ public class ReportSimilar extends Report
   {
     this.pairFileList = pairFileList;
   }
+  
+  /**
+   * Add the lines of a group of similar files now: groups don't have to be kept until generate().
+   *  All lines of a group have the same color, alternating from one group to the next.
+   * @param group Pairs of files of the group.
+   */
+  public void addGroup(List<PairFile> group)
+  {
+    final String cssClass = (this.groups%2==0)? "line-even" : "line-odd";
+    for(PairFile pairFile: group)
+      this.groupLines.append(this.getLine(pairFile, cssClass));
+    this.groups++;
+  }
+  
   public void generate()
   {
 
@@ -40,30 +56,39 @@ public class ReportSimilar extends Report
   private String generateBody()
   {
     StringBuilder divLines = new StringBuilder();
-    for(int i=0; i<this.pairFileList.size(); i++)
+    if(this.pairFileList!=null)
     {
-      // Add double quote so that it is easier to manipulate on command line.
-      String left = super.doubleQuote(this.pairFileList.get(i).fileA);
-      String right= super.doubleQuote(this.pairFileList.get(i).fileB);
-      long fileASize = new File(this.pairFileList.get(i).fileA).length();
-      long fileBSize = new File(this.pairFileList.get(i).fileB).length();
-      
-      // Construct the difference with HTML elements.
-      Difference difference = new Difference(left, right);
-      difference.compute();
-      String leftSpan = super.printDelete(difference.getLeftSpan()); // Not elegant.
-      String rightSpan= difference.getRightSpan();
-      String fileASizeSpan = String.format("<span class=\"size\">%s</span>", FileUtils.readableSize(fileASize));
-      String fileBSizeSpan = String.format("<span class=\"size\">%s</span>", FileUtils.readableSize(fileBSize));
-      if(i%2==0)
-        divLines.append(String.format("<div class=\"line-even\">[%3d%%] %s %s<br/>%s %s</div>\n", this.pairFileList.get(i).similarRate, leftSpan, fileASizeSpan, rightSpan, fileBSizeSpan)); // Add \n so that user can process the HTML output.
-      else
-        divLines.append(String.format("<div class=\"line-odd\">[%3d%%] %s %s<br/>%s %s</div>\n", this.pairFileList.get(i).similarRate, leftSpan, fileASizeSpan, rightSpan, fileBSizeSpan));  // Add \n so that user can process the HTML output.
+      for(int i=0; i<this.pairFileList.size(); i++)
+      {
+        if(i%2==0)
+          divLines.append(this.getLine(this.pairFileList.get(i), "line-even"));
+        else
+          divLines.append(this.getLine(this.pairFileList.get(i), "line-odd"));
+      }
     }
+    divLines.append(this.groupLines);
     
     return divLines.toString();
   }
   
+  private String getLine(PairFile pairFile, String cssClass)
+  {
+    // Add double quote so that it is easier to manipulate on command line.
+    String left = super.doubleQuote(pairFile.fileA);
+    String right= super.doubleQuote(pairFile.fileB);
+    long fileASize = new File(pairFile.fileA).length();
+    long fileBSize = new File(pairFile.fileB).length();
+    
+    // Construct the difference with HTML elements.
+    Difference difference = new Difference(left, right);
+    difference.compute();
+    String leftSpan = super.printDelete(difference.getLeftSpan()); // Not elegant.
+    String rightSpan= difference.getRightSpan();
+    String fileASizeSpan = String.format("<span class=\"size\">%s</span>", FileUtils.readableSize(fileASize));
+    String fileBSizeSpan = String.format("<span class=\"size\">%s</span>", FileUtils.readableSize(fileBSize));
+    return String.format("<div class=\"%s\">[%3d%%] %s %s<br/>%s %s</div>\n", cssClass, pairFile.similarRate, leftSpan, fileASizeSpan, rightSpan, fileBSizeSpan); // Add \n so that user can process the HTML output.
+  }
+  
   protected void constructSummary()
   {
     /** Construct summary details **/
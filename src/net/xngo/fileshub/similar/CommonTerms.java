@@ -0,0 +1,273 @@
+package net.xngo.fileshub.similar;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.xngo.fileshub.Config;
+
+/**
+ * Terms of words.lst removed from filenames before they are compared by search --similar, e.g. extensions.
+ *  Terms are compiled once into an Aho-Corasick automaton: all occurrences of all terms are found in 1 pass over the filename.
+ * A filename is cleaned in lowercase. Each term is removed once, at its first occurrence not overlapping
+ *  a term removed before it in words.lst. Same as removing the first occurrence of each term one after the other,
+ *  except that occurrences formed by 2 parts joined by a removal are not removed.
+ * Thread safe.
+ * @author Xuan Ngo
+ *
+ */
+public class CommonTerms
+{
+  final static Logger log = LoggerFactory.getLogger(CommonTerms.class);
+
+  private static CommonTerms wordList = null; // Terms of Config.WORD_LIST, read once.
+
+  private final String[] terms;
+  private final String checksum;
+
+  // Automaton compiled into a table: state 0 is the root. Characters of no term share the symbol 0.
+  private final char[] symbols = new char[Character.MAX_VALUE+1];
+  private final int alphabetSize;
+  private final int[] transitions; // Next state = transitions[state*alphabetSize+symbol], failure links included.
+  private final int[][] outputs;   // Terms ending at each state, including those of its failure states.
+
+  /**
+   * @param terms Terms in order of priority. Empty terms are ignored.
+   */
+  public CommonTerms(List<String> terms)
+  {
+    List<String> lowerTerms = new ArrayList<String>(terms.size());
+    for(String term: terms)
+    {
+      if(!term.isEmpty())
+        lowerTerms.add(term.toLowerCase());
+    }
+    this.terms = lowerTerms.toArray(new String[lowerTerms.size()]);
+    this.checksum = CommonTerms.getChecksum(this.terms);
+
+    int symbolCount = 1;
+    for(String term: this.terms)
+    {
+      for(int c=0; c<term.length(); c++)
+      {
+        if(this.symbols[term.charAt(c)]==0)
+          this.symbols[term.charAt(c)] = (char)symbolCount++;
+      }
+    }
+    this.alphabetSize = symbolCount;
+
+    // Trie of the terms: -1 is no child.
+    List<int[]> children = new ArrayList<int[]>();
+    List<List<Integer>> stateOutputs = new ArrayList<List<Integer>>();
+    children.add(CommonTerms.newChildren(this.alphabetSize));
+    stateOutputs.add(new ArrayList<Integer>());
+    for(int t=0; t<this.terms.length; t++)
+    {
+      int state = 0;
+      for(int c=0; c<this.terms[t].length(); c++)
+      {
+        final int symbol = this.symbols[this.terms[t].charAt(c)];
+        if(children.get(state)[symbol]==-1)
+        {
+          children.get(state)[symbol] = children.size();
+          children.add(CommonTerms.newChildren(this.alphabetSize));
+          stateOutputs.add(new ArrayList<Integer>());
+        }
+        state = children.get(state)[symbol];
+      }
+      stateOutputs.get(state).add(t);
+    }
+
+    // Transitions, breadth first: a missing child is the transition of the failure state, i.e. the longest suffix
+    //  of the path of the state that is also in the trie.
+    this.transitions = new int[children.size()*this.alphabetSize];
+    int[] failures = new int[children.size()];
+    Deque<Integer> queue = new ArrayDeque<Integer>();
+    queue.add(0);
+    while(!queue.isEmpty())
+    {
+      final int state = queue.remove();
+      for(int symbol=0; symbol<this.alphabetSize; symbol++)
+      {
+        final int child = children.get(state)[symbol];
+        final int failureNext = (state==0)? 0 : this.transitions[failures[state]*this.alphabetSize+symbol];
+        if(child==-1)
+        {
+          this.transitions[state*this.alphabetSize+symbol] = failureNext;
+        }
+        else
+        {
+          this.transitions[state*this.alphabetSize+symbol] = child;
+          failures[child] = failureNext;
+          stateOutputs.get(child).addAll(stateOutputs.get(failureNext));
+          queue.add(child);
+        }
+      }
+    }
+
+    this.outputs = new int[stateOutputs.size()][];
+    for(int s=0; s<this.outputs.length; s++)
+    {
+      this.outputs[s] = new int[stateOutputs.get(s).size()];
+      for(int o=0; o<this.outputs[s].length; o++)
+        this.outputs[s][o] = stateOutputs.get(s).get(o);
+    }
+  }
+
+  /**
+   * @return Terms of {@link Config#WORD_LIST}, read the first time. No term if it is missing.
+   */
+  public static synchronized CommonTerms get()
+  {
+    if(CommonTerms.wordList==null)
+      CommonTerms.wordList = new CommonTerms(CommonTerms.read(new File(Config.WORD_LIST)));
+    return CommonTerms.wordList;
+  }
+
+  /**
+   * @return Filename in lowercase without the terms.
+   */
+  public String clean(String filename)
+  {
+    final String lowerFilename = filename.toLowerCase();
+    if(this.terms.length==0)
+      return lowerFilename;
+
+    // All occurrences: term index in the high bits, start in the low bits. Sorted by term, then start.
+    long[] occurrences = null; // Most filenames have few or no terms.
+    int size = 0;
+    int state = 0;
+    for(int i=0; i<lowerFilename.length(); i++)
+    {
+      state = this.transitions[state*this.alphabetSize+this.symbols[lowerFilename.charAt(i)]];
+      for(int t: this.outputs[state])
+      {
+        if(occurrences==null)
+          occurrences = new long[8];
+        else if(size==occurrences.length)
+          occurrences = Arrays.copyOf(occurrences, size*2);
+        occurrences[size++] = ((long)t<<32) | (i+1-this.terms[t].length());
+      }
+    }
+    if(size==0)
+      return lowerFilename;
+    Arrays.sort(occurrences, 0, size);
+
+    // First occurrence of each term, in order of the terms, not overlapping the ones removed before.
+    boolean[] removed = new boolean[lowerFilename.length()];
+    int o = 0;
+    while(o<size)
+    {
+      final int t = (int)(occurrences[o]>>>32);
+      for(; o<size && (int)(occurrences[o]>>>32)==t; o++)
+      {
+        final int start = (int)occurrences[o];
+        if(!CommonTerms.isRemoved(removed, start, this.terms[t].length()))
+        {
+          Arrays.fill(removed, start, start+this.terms[t].length(), true);
+          break;
+        }
+      }
+      while(o<size && (int)(occurrences[o]>>>32)==t)
+        o++; // Other occurrences of the same term are kept.
+    }
+
+    StringBuilder cleanFilename = new StringBuilder(lowerFilename.length());
+    for(int i=0; i<lowerFilename.length(); i++)
+    {
+      if(!removed[i])
+        cleanFilename.append(lowerFilename.charAt(i));
+    }
+    return cleanFilename.toString();
+  }
+
+  /**
+   * @return Checksum of the terms: it changes when words.lst is edited.
+   */
+  public String getChecksum()
+  {
+    return this.checksum;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private static int[] newChildren(int alphabetSize)
+  {
+    int[] children = new int[alphabetSize];
+    Arrays.fill(children, -1);
+    return children;
+  }
+
+  private static boolean isRemoved(boolean[] removed, int start, int length)
+  {
+    for(int i=start; i<start+length; i++)
+    {
+      if(removed[i])
+        return true;
+    }
+    return false;
+  }
+
+  private static String getChecksum(String[] terms)
+  {
+    CRC32 crc = new CRC32();
+    for(String term: terms)
+    {
+      for(int i=0; i<term.length(); i++)
+      {
+        crc.update(term.charAt(i)>>8);
+        crc.update(term.charAt(i));
+      }
+      crc.update('\n');
+    }
+    return String.format("%08x", crc.getValue());
+  }
+
+  /**
+   * @return Lines of the file. Empty if it is missing.
+   */
+  private static List<String> read(File wordList)
+  {
+    List<String> terms = new ArrayList<String>();
+    if(!wordList.exists())
+    {
+      log.warn("{} is missing: no term is removed from filenames.", wordList.getAbsolutePath());
+      return terms;
+    }
+
+    try
+    {
+      BufferedReader in = new BufferedReader(new FileReader(wordList));
+      try
+      {
+        String line;
+        while((line = in.readLine())!=null)
+          terms.add(line);
+      }
+      finally
+      {
+        in.close();
+      }
+    }
+    catch(IOException ex)
+    {
+      log.error("Can't read {}.", wordList.getAbsolutePath(), ex);
+      ex.printStackTrace();
+    }
+    return terms;
+  }
+}
@@ -0,0 +1,81 @@
+package net.xngo.fileshub.similar;
+
+/**
+ * Levenshtein distance bounded by a maximum: only the diagonals within the maximum are computed(Ukkonen's band),
+ *  and the computation stops as soon as a whole row exceeds it. Rejecting strings is O(length*maxDistance).
+ * Rows are reused from one call to the next: no allocation once they are long enough.
+ * Not thread safe: 1 instance per thread.
+ * @author Xuan Ngo
+ *
+ */
+public class EditDistance
+{
+  private int[] previous = new int[64];
+  private int[] current  = new int[64];
+
+  /**
+   * The similar rate of {@link net.xngo.fileshub.report.Difference} is ceil((maxLength-distance)/maxLength*100),
+   *  with the distance of a diff: never less than the Levenshtein distance. It is more than fuzzyRate only if
+   *  distance < maxLength*(100-fuzzyRate)/100. Distance equal to the bound is kept against rounding errors of double.
+   * @param maxLength Length of the longest string.
+   * @return Maximum Levenshtein distance of strings having a similar rate more than fuzzyRate.
+   */
+  public static int getMaxDistance(int maxLength, int fuzzyRate)
+  {
+    return maxLength*(100-fuzzyRate)/100;
+  }
+
+  /**
+   * @return Levenshtein distance of the strings if it is maxDistance or less. Otherwise, maxDistance+1.
+   */
+  public int getDistance(String left, String right, int maxDistance)
+  {
+    final int outside = maxDistance+1; // Any distance more than maxDistance.
+    final int leftLength = left.length();
+    final int rightLength = right.length();
+    if(maxDistance<0 || Math.abs(leftLength-rightLength)>maxDistance)
+      return outside;
+
+    if(this.previous.length<rightLength+2)
+    {
+      this.previous = new int[rightLength+2];
+      this.current  = new int[rightLength+2];
+    }
+    int[] previous = this.previous;
+    int[] current  = this.current;
+
+    // Row 0: distance from the empty string.
+    final int firstHigh = Math.min(rightLength, maxDistance);
+    for(int j=0; j<=firstHigh; j++)
+      previous[j] = j;
+    previous[firstHigh+1] = outside;
+
+    for(int i=1; i<=leftLength; i++)
+    {
+      final int low  = Math.max(1, i-maxDistance);
+      final int high = Math.min(rightLength, i+maxDistance);
+      final char c = left.charAt(i-1);
+
+      current[low-1] = (low==1 && i<=maxDistance)? i : outside;
+      int rowMin = current[low-1];
+      for(int j=low; j<=high; j++)
+      {
+        int distance = previous[j-1]+((c==right.charAt(j-1))? 0 : 1);
+        distance = Math.min(distance, previous[j]+1);
+        distance = Math.min(distance, current[j-1]+1);
+        distance = Math.min(distance, outside);
+        current[j] = distance;
+        rowMin = Math.min(rowMin, distance);
+      }
+      current[high+1] = outside; // Right of the band, read by the next row.
+
+      if(rowMin>maxDistance)
+        return outside; // Every alignment goes through this row.
+
+      int[] swap = previous;
+      previous = current;
+      current = swap;
+    }
+    return previous[rightLength];
+  }
+}
@@ -0,0 +1,315 @@
+package net.xngo.fileshub.similar;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import name.fraser.neil.plaintext.diff_match_patch;
+import net.xngo.fileshub.report.Difference;
+
+/**
+ * Groups of documents having similar filenames anywhere in the catalog, without comparing all pairs.
+ *  Each filename is reduced to a MinHash signature of its shingles(trigrams): 2 filenames have the same minimum
+ *  of a hash function with a probability equal to the Jaccard similarity of their shingles.
+ *  The signature is split in BANDS bands of ROWS minimums(LSH): documents having the same band are candidates.
+ *  Candidates are verified with the similar rate of {@link Difference}, after the bound of {@link EditDistance}.
+ * A group is a leader and the documents similar to it: a document not in a group yet is compared with the leaders
+ *  of the groups of its bucket, at most MAX_GROUPS_PER_BUCKET of them, and joins the first similar one. Otherwise, it
+ *  becomes the leader of the next documents of its bucket. Groups are never joined: no chain of similar documents
+ *  where the last one has nothing in common with the first one. The rate is not symmetric: the leader is on the left.
+ * Only the bands of each document are kept: memory is about (BANDS+2)*4+1 bytes per document.
+ *  The similar rate of each document with its leader is kept from the verification: it is not computed again.
+ *  Filenames are read again from {@link Filenames} for verification.
+ * Groups are approximate: similar documents that never share a band with a leader are missed.
+ * @author Xuan Ngo
+ *
+ */
+public class SimilarClusters
+{
+  public static final int BANDS = 16;
+  private static final int ROWS = 2;  // Candidates with a probability of 1-(1-J^ROWS)^BANDS, for a Jaccard similarity J.
+  private static final int MAX_GROUPS_PER_BUCKET = 16; // Bounds the comparisons of a bucket of filenames sharing a band but not similar.
+  private static final int GRAM_LENGTH = 3;
+
+  private static final long[] SEEDS = SimilarClusters.getSeeds(BANDS*ROWS);
+
+  /**
+   * Source of the clean filenames, read again to verify candidates.
+   */
+  public interface Filenames
+  {
+    String get(int uid);
+  }
+
+  /**
+   * Receives the groups one at a time.
+   */
+  public interface GroupListener
+  {
+    /**
+     * @param uids Leader of the group first, then the documents similar to it in the order they were added. At least 2.
+     * @param similarRates Similar rate of each document with the leader, in the same order. 100 for the leader.
+     */
+    void onGroup(int[] uids, int[] similarRates);
+  }
+
+  private final int fuzzyRate;
+  private final diff_match_patch diffMatchPatch = new diff_match_patch();
+  private final EditDistance editDistance = new EditDistance();
+
+  private int size = 0;
+  private int[] uids = new int[1024];
+  private int[] bands = new int[1024*BANDS]; // Bands of document i: bands[i*BANDS] to bands[i*BANDS+BANDS-1].
+  private int[] leaders = null;              // Leader of each document: itself when it is not in a group or is the leader.
+  private BitSet grouped = null;             // Documents in a group, including leaders.
+  private byte[] similarRates = null;        // Similar rate of each document with its leader, once it is in a group.
+  private long comparisons = 0;
+
+  /**
+   * @param fuzzyRate Documents of a group have a similar rate more than fuzzyRate with the leader of the group.
+   */
+  public SimilarClusters(int fuzzyRate)
+  {
+    this.fuzzyRate = fuzzyRate;
+  }
+
+  /**
+   * @param uid Document.
+   * @param cleanFilename Filename of the document, cleaned. Empty filenames are never similar: they are ignored.
+   */
+  public void add(int uid, String cleanFilename)
+  {
+    if(cleanFilename==null || cleanFilename.isEmpty())
+      return;
+
+    if(this.size==this.uids.length)
+    {
+      this.uids = Arrays.copyOf(this.uids, this.size*2);
+      this.bands = Arrays.copyOf(this.bands, this.size*2*BANDS);
+    }
+    this.uids[this.size] = uid;
+
+    long[] minimums = SimilarClusters.getMinHashes(cleanFilename);
+    for(int b=0; b<BANDS; b++)
+    {
+      long band = b;
+      for(int r=0; r<ROWS; r++)
+        band = SimilarClusters.mix(band*31+minimums[b*ROWS+r]);
+      this.bands[this.size*BANDS+b] = (int)band;
+    }
+    this.size++;
+  }
+
+  /**
+   * @return Number of documents added.
+   */
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * @return Number of pairs compared with {@link Difference} or {@link EditDistance}.
+   */
+  public long getComparisons()
+  {
+    return this.comparisons;
+  }
+
+  /**
+   * Join similar documents in groups, band by band.
+   * @param filenames Clean filenames of the documents added.
+   * @param band Called after each band, e.g. to display progress. Can be null.
+   */
+  public void group(Filenames filenames, Runnable band)
+  {
+    this.leaders = new int[this.size];
+    for(int i=0; i<this.size; i++)
+      this.leaders[i] = i;
+    this.grouped = new BitSet(this.size);
+    this.similarRates = new byte[this.size];
+
+    long[] keys = new long[this.size]; // Band in the high bits, document in the low bits: sorted by band.
+    String[] leaderFilenames = new String[MAX_GROUPS_PER_BUCKET];
+    int[] bucketLeaders = new int[MAX_GROUPS_PER_BUCKET];
+    for(int b=0; b<BANDS; b++)
+    {
+      for(int i=0; i<this.size; i++)
+        keys[i] = ((long)this.bands[i*BANDS+b]<<32) | i;
+      Arrays.sort(keys);
+
+      int start = 0;
+      while(start<this.size)
+      {
+        int end = start+1;
+        while(end<this.size && (keys[end]>>>32)==(keys[start]>>>32))
+          end++;
+        if(end-start>1)
+          this.groupBucket(keys, start, end, filenames, leaderFilenames, bucketLeaders);
+        start = end;
+      }
+
+      if(band!=null)
+        band.run();
+    }
+  }
+
+  /**
+   * @param listener Receives each group of at least 2 documents. Call {@link #group(Filenames, Runnable)} first.
+   */
+  public void forEachGroup(GroupListener listener)
+  {
+    long[] keys = new long[this.grouped.cardinality()]; // Leader in the high bits, document in the low bits: sorted by leader.
+    int size = 0;
+    for(int i=this.grouped.nextSetBit(0); i>=0; i=this.grouped.nextSetBit(i+1))
+      keys[size++] = ((long)this.leaders[i]<<32) | i;
+    Arrays.sort(keys);
+
+    int start = 0;
+    while(start<size)
+    {
+      final int leader = (int)(keys[start]>>>32);
+      int end = start+1;
+      while(end<size && (int)(keys[end]>>>32)==leader)
+        end++;
+      int[] group = new int[end-start];
+      int[] similarRates = new int[end-start];
+      group[0] = this.uids[leader];
+      similarRates[0] = 100;
+      int g = 1;
+      for(int k=start; k<end; k++)
+      {
+        final int i = (int)keys[k];
+        if(i!=leader)
+        {
+          group[g] = this.uids[i];
+          similarRates[g++] = this.similarRates[i];
+        }
+      }
+      listener.onGroup(group, similarRates);
+      start = end;
+    }
+  }
+
+  /**
+   * @param leaderFilename Filename of the leader.
+   * @param filename
+   * @return Similar rate of the filenames. 0 if their edit distance is too big for a similar rate more than fuzzyRate.
+   */
+  private int getSimilarRate(String leaderFilename, String filename)
+  {
+    this.comparisons++;
+    final int maxDistance = EditDistance.getMaxDistance(Math.max(leaderFilename.length(), filename.length()), this.fuzzyRate);
+    if(this.editDistance.getDistance(leaderFilename, filename, maxDistance)>maxDistance)
+      return 0;
+    return new Difference(this.diffMatchPatch, leaderFilename, filename).getSimilarRate();
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * Compare each document of the bucket not in a group yet with the leaders met in the bucket, in the order the documents were added.
+   *  Buckets without any such document are skipped without reading any filename.
+   */
+  private void groupBucket(long[] keys, int start, int end, Filenames filenames, String[] leaderFilenames, int[] bucketLeaders)
+  {
+    boolean ungrouped = false;
+    for(int k=start; k<end && !ungrouped; k++)
+      ungrouped = !this.grouped.get((int)keys[k]);
+    if(!ungrouped)
+      return;
+
+    int leaders = 0;
+    for(int k=start; k<end; k++)
+    {
+      final int i = (int)keys[k];
+      if(this.grouped.get(i))
+      {
+        // Leader of its group, met for the first time in this bucket.
+        final int leader = this.leaders[i];
+        if(leaders<MAX_GROUPS_PER_BUCKET && !SimilarClusters.contains(bucketLeaders, leaders, leader))
+        {
+          leaderFilenames[leaders] = filenames.get(this.uids[leader]);
+          bucketLeaders[leaders++] = leader;
+        }
+        continue;
+      }
+
+      final String filename = filenames.get(this.uids[i]);
+      boolean joined = false;
+      for(int l=0; l<leaders && !joined; l++)
+      {
+        final int similarRate = this.getSimilarRate(leaderFilenames[l], filename);
+        if(similarRate>this.fuzzyRate)
+        {
+          this.leaders[i] = bucketLeaders[l];
+          this.similarRates[i] = (byte)similarRate;
+          this.grouped.set(i);
+          this.grouped.set(bucketLeaders[l]);
+          joined = true;
+        }
+      }
+      if(!joined && leaders<MAX_GROUPS_PER_BUCKET)
+      {
+        leaderFilenames[leaders] = filename;
+        bucketLeaders[leaders++] = i;
+      }
+    }
+  }
+
+  private static boolean contains(int[] values, int size, int value)
+  {
+    for(int i=0; i<size; i++)
+    {
+      if(values[i]==value)
+        return true;
+    }
+    return false;
+  }
+
+  /**
+   * @return Minimum of each hash function over the shingles of the filename. Filenames shorter than a shingle are their only shingle.
+   */
+  private static long[] getMinHashes(String filename)
+  {
+    long[] minimums = new long[SEEDS.length];
+    Arrays.fill(minimums, Long.MAX_VALUE);
+    final int shingles = Math.max(1, filename.length()-GRAM_LENGTH+1);
+    for(int s=0; s<shingles; s++)
+    {
+      long shingle = 0;
+      for(int c=s; c<Math.min(filename.length(), s+GRAM_LENGTH); c++)
+        shingle = (shingle<<16) | filename.charAt(c);
+      for(int h=0; h<SEEDS.length; h++)
+        minimums[h] = Math.min(minimums[h], SimilarClusters.mix(shingle^SEEDS[h]));
+    }
+    return minimums;
+  }
+
+  /**
+   * Finalizer of MurmurHash3: each bit of the input changes half of the bits of the output.
+   */
+  private static long mix(long value)
+  {
+    value ^= value>>>33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value>>>33;
+    value *= 0xc4ceb9fe1a85ec53L;
+    value ^= value>>>33;
+    return value;
+  }
+
+  /**
+   * @return Fixed seeds: same groups from one run to the next.
+   */
+  private static long[] getSeeds(int count)
+  {
+    long[] seeds = new long[count];
+    for(int i=0; i<count; i++)
+      seeds[i] = SimilarClusters.mix(0x9e3779b97f4a7c15L*(i+1));
+    return seeds;
+  }
+}
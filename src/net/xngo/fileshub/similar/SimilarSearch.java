@@ -0,0 +1,209 @@
+package net.xngo.fileshub.similar;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import name.fraser.neil.plaintext.diff_match_patch;
+import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.struct.PairFile;
+
+/**
+ * Compare documents, added one at a time, against files with a similar filename.
+ * Documents are compared by batches. With more than 1 thread, batches are compared concurrently by a ForkJoinPool
+ *  while the next documents are added: each batch keeps its own PairFile results, merged in the order of the batches.
+ *  They are then sorted by file, like comparing each file against all documents: same order as before documents were
+ *  streamed, whatever the number of threads. Hub sorts pairs by rate only, so this is the order of pairs with the same rate.
+ * Each thread reuses its own diff_match_patch and EditDistance. Only the candidates of {@link TrigramIndex} are compared:
+ *  their Levenshtein distance is bounded first. Difference is only computed if the distance allows a similar rate
+ *  more than fuzzyRate. It gives the similar rate, and later the HTML spans of the report.
+ * @author Xuan Ngo
+ *
+ */
+public class SimilarSearch
+{
+  private static final int BATCH_SIZE = 256; // Documents compared by a task.
+  private static final int TASKS_PER_THREAD = 4; // Maximum number of batches waiting per thread: documents added ahead are bounded.
+
+  private static final ThreadLocal<diff_match_patch> DIFF_MATCH_PATCH = new ThreadLocal<diff_match_patch>()
+                                                                        {
+                                                                          protected diff_match_patch initialValue()
+                                                                          {
+                                                                            return new diff_match_patch();
+                                                                          }
+                                                                        };
+  private static final ThreadLocal<EditDistance> EDIT_DISTANCE = new ThreadLocal<EditDistance>()
+                                                                 {
+                                                                   protected EditDistance initialValue()
+                                                                   {
+                                                                     return new EditDistance();
+                                                                   }
+                                                                 };
+
+  private final List<String> paths;
+  private final List<String> cleanFilenames;
+  private final int fuzzyRate;
+  private final TrigramIndex trigramIndex;
+  private final ForkJoinPool pool; // Null if documents are compared by the thread adding them.
+  private final int maxTasks;
+
+  private final AtomicLong processed = new AtomicLong(0);
+  private final Deque<ForkJoinTask<List<PairFile>>> tasks = new ArrayDeque<ForkJoinTask<List<PairFile>>>();
+  private final ArrayList<PairFile> pairFiles = new ArrayList<PairFile>();
+
+  private List<String> batchPaths = new ArrayList<String>(BATCH_SIZE);
+  private List<String> batchFilenames = new ArrayList<String>(BATCH_SIZE);
+
+  /**
+   * @param paths Absolute paths of the files.
+   * @param cleanFilenames Filenames of the files, cleaned. Same order as paths.
+   * @param fuzzyRate Pairs have a similar rate more than fuzzyRate.
+   * @param threads Number of threads comparing documents.
+   */
+  public SimilarSearch(List<String> paths, List<String> cleanFilenames, int fuzzyRate, int threads)
+  {
+    this.paths = paths;
+    this.cleanFilenames = cleanFilenames;
+    this.fuzzyRate = fuzzyRate;
+    this.trigramIndex = new TrigramIndex(cleanFilenames, fuzzyRate);
+    this.pool = (threads>1)? new ForkJoinPool(threads) : null;
+    this.maxTasks = threads*TASKS_PER_THREAD;
+  }
+
+  /**
+   * Compare a document against all files, now or later.
+   * @param canonicalPath Canonical path of the document. A file is not compared with itself.
+   * @param cleanFilename Filename of the document, cleaned.
+   */
+  public void add(String canonicalPath, String cleanFilename)
+  {
+    this.batchPaths.add(canonicalPath);
+    this.batchFilenames.add(cleanFilename);
+    if(this.batchPaths.size()==BATCH_SIZE)
+      this.submit();
+  }
+
+  /**
+   * Lock-free: it can be called while documents are compared.
+   * @return Number of combinations of files and documents processed so far.
+   */
+  public long getProcessed()
+  {
+    return this.processed.get();
+  }
+
+  /**
+   * Wait for all documents added to be compared.
+   * @return Pairs of similar files: in the order of the files, then in the order of the documents added.
+   */
+  public ArrayList<PairFile> getPairFiles()
+  {
+    this.submit();
+    while(!this.tasks.isEmpty())
+      this.pairFiles.addAll(this.tasks.removeFirst().join());
+
+    // Pairs are found document by document. Collections.sort() is stable: documents keep their order for each file.
+    final Map<String, Integer> fileIndexes = new HashMap<String, Integer>(this.paths.size()*2);
+    for(int i=0; i<this.paths.size(); i++)
+      fileIndexes.put(this.paths.get(i), i);
+    Collections.sort(this.pairFiles, new Comparator<PairFile>()
+                                      {
+                                        @Override
+                                        public int compare(PairFile pairFileA, PairFile pairFileB)
+                                        {
+                                          return Integer.compare(fileIndexes.get(pairFileA.fileA), fileIndexes.get(pairFileB.fileA));
+                                        }
+                                      });
+    return this.pairFiles;
+  }
+
+  /**
+   * Stop the threads. Documents not compared yet are discarded.
+   */
+  public void close()
+  {
+    if(this.pool!=null)
+      this.pool.shutdownNow();
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * Compare the batch of documents, or queue it in the pool. Results of the oldest batches are collected
+   *  when too many batches are waiting.
+   */
+  private void submit()
+  {
+    if(this.batchPaths.isEmpty())
+      return;
+
+    final List<String> docPaths = this.batchPaths;
+    final List<String> docFilenames = this.batchFilenames;
+    this.batchPaths = new ArrayList<String>(BATCH_SIZE);
+    this.batchFilenames = new ArrayList<String>(BATCH_SIZE);
+
+    if(this.pool==null)
+    {
+      this.pairFiles.addAll(this.compare(docPaths, docFilenames));
+    }
+    else
+    {
+      this.tasks.addLast(this.pool.submit(new Callable<List<PairFile>>()
+                                          {
+                                            public List<PairFile> call()
+                                            {
+                                              return SimilarSearch.this.compare(docPaths, docFilenames);
+                                            }
+                                          }));
+      while(this.tasks.size()>this.maxTasks)
+        this.pairFiles.addAll(this.tasks.removeFirst().join());
+    }
+  }
+
+  /**
+   * @return Pairs of similar files of the documents.
+   */
+  private List<PairFile> compare(List<String> docPaths, List<String> docFilenames)
+  {
+    final diff_match_patch diffMatchPatch = DIFF_MATCH_PATCH.get();
+    final EditDistance editDistance = EDIT_DISTANCE.get();
+    List<PairFile> pairFiles = new ArrayList<PairFile>();
+    for(int d=0; d<docPaths.size(); d++)
+    {
+      final String docPath = docPaths.get(d);
+      final String docFilename = docFilenames.get(d);
+      for(int i: this.trigramIndex.getCandidates(docFilename))
+      {
+        final String filename = this.cleanFilenames.get(i);
+        final int maxDistance = EditDistance.getMaxDistance(Math.max(filename.length(), docFilename.length()), this.fuzzyRate);
+        if(!this.paths.get(i).equals(docPath) && editDistance.getDistance(filename, docFilename, maxDistance)<=maxDistance)
+        {
+          Difference diff = new Difference(diffMatchPatch, filename, docFilename);
+          if(diff.getSimilarRate()>this.fuzzyRate)
+          {
+            PairFile pairFile = new PairFile();
+            pairFile.similarRate = diff.getSimilarRate();
+            pairFile.fileA = this.paths.get(i);
+            pairFile.fileB = docPath;
+            pairFiles.add(pairFile);
+          }
+        }
+      }
+      this.processed.addAndGet(this.paths.size()); // Files that are not candidates are processed too.
+    }
+    return pairFiles;
+  }
+}
@@ -0,0 +1,205 @@
+package net.xngo.fileshub.similar;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index of the trigrams of strings, to find the strings that can be similar to another one.
+ *  A similar rate more than fuzzyRate gives a maximum Levenshtein distance. See {@link EditDistance#getMaxDistance(int, int)}.
+ *  Each edit changes at most 3 trigrams: strings sharing fewer trigrams than the distance allows can't be similar(q-gram lemma).
+ *  Strings too short to share any trigram are always candidates, if their lengths are close enough.
+ * Candidates are a superset of the similar strings: their similar rate still has to be computed.
+ * Thread safe: each thread counts shared trigrams in its own counters, reused from one call to the next.
+ * @author Xuan Ngo
+ *
+ */
+public class TrigramIndex
+{
+  private static final int GRAM_LENGTH = 3;
+
+  private final int fuzzyRate;
+  private final int[] lengths;
+  private final Map<Long, IntList> postings = new HashMap<Long, IntList>(); // Trigram -> index and count of the strings having it.
+  private final IntList[] byLength;
+
+  private final ThreadLocal<Counters> counters = new ThreadLocal<Counters>()
+                                                {
+                                                  protected Counters initialValue()
+                                                  {
+                                                    return new Counters(TrigramIndex.this.lengths.length);
+                                                  }
+                                                };
+
+  /**
+   * @param strings Strings to index. Candidates are their indexes in this list.
+   * @param fuzzyRate Similar rate that candidates can exceed.
+   */
+  public TrigramIndex(List<String> strings, int fuzzyRate)
+  {
+    this.fuzzyRate = fuzzyRate;
+    this.lengths = new int[strings.size()];
+
+    int maxLength = 0;
+    for(String string: strings)
+      maxLength = Math.max(maxLength, string.length());
+    this.byLength = new IntList[maxLength+1];
+
+    for(int i=0; i<strings.size(); i++)
+    {
+      final String string = strings.get(i);
+      this.lengths[i] = string.length();
+      if(this.byLength[string.length()]==null)
+        this.byLength[string.length()] = new IntList();
+      this.byLength[string.length()].add(i);
+
+      long[] grams = TrigramIndex.getGrams(string);
+      for(int g=0; g<grams.length; )
+      {
+        final int count = TrigramIndex.countGram(grams, g);
+        IntList list = this.postings.get(grams[g]);
+        if(list==null)
+        {
+          list = new IntList();
+          this.postings.put(grams[g], list);
+        }
+        list.add(i);
+        list.add(count);
+        g += count;
+      }
+    }
+  }
+
+  /**
+   * @param string String compared with the indexed strings.
+   * @return Indexes of the strings that can have a similar rate more than fuzzyRate with the string, in ascending order.
+   */
+  public int[] getCandidates(String string)
+  {
+    final int length = string.length();
+    final int[] shared = this.counters.get().shared;
+    final IntList touched = this.counters.get().touched;
+
+    // Count the trigrams shared with each indexed string. Trigrams repeated are counted as many times as in both strings.
+    long[] grams = TrigramIndex.getGrams(string);
+    for(int g=0; g<grams.length; )
+    {
+      final int count = TrigramIndex.countGram(grams, g);
+      IntList list = this.postings.get(grams[g]);
+      if(list!=null)
+      {
+        for(int p=0; p<list.size; p+=2)
+        {
+          final int i = list.values[p];
+          if(shared[i]==0)
+            touched.add(i);
+          shared[i] += Math.min(count, list.values[p+1]);
+        }
+      }
+      g += count;
+    }
+
+    // Strings of lengths that don't require any shared trigram.
+    IntList candidates = new IntList();
+    for(int otherLength=0; otherLength<this.byLength.length; otherLength++)
+    {
+      if(this.byLength[otherLength]!=null && this.getMinShared(length, otherLength)<=0)
+      {
+        for(int c=0; c<this.byLength[otherLength].size; c++)
+          candidates.add(this.byLength[otherLength].values[c]);
+      }
+    }
+
+    // Strings sharing enough trigrams.
+    for(int t=0; t<touched.size; t++)
+    {
+      final int i = touched.values[t];
+      final int minShared = this.getMinShared(length, this.lengths[i]);
+      if(minShared>0 && shared[i]>=minShared)
+        candidates.add(i);
+      shared[i] = 0;
+    }
+    touched.size = 0;
+
+    int[] indexes = Arrays.copyOf(candidates.values, candidates.size);
+    Arrays.sort(indexes);
+    return indexes;
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  /**
+   * @return Minimum number of trigrams shared by strings of these lengths to have a similar rate more than fuzzyRate.
+   *          0 or less if no trigram is required. Integer.MAX_VALUE if their lengths are too different.
+   */
+  private int getMinShared(int length, int otherLength)
+  {
+    final int maxLength = Math.max(length, otherLength);
+    final int maxDistance = EditDistance.getMaxDistance(maxLength, this.fuzzyRate);
+    if(Math.abs(length-otherLength)>maxDistance)
+      return Integer.MAX_VALUE; // Each extra character is an edit.
+    return maxLength-GRAM_LENGTH+1-maxDistance*GRAM_LENGTH;
+  }
+
+  /**
+   * @return Trigrams of the string, sorted: 3 characters in a long.
+   */
+  private static long[] getGrams(String string)
+  {
+    final int count = string.length()-GRAM_LENGTH+1;
+    if(count<=0)
+      return new long[0];
+
+    long[] grams = new long[count];
+    for(int i=0; i<count; i++)
+      grams[i] = ((long)string.charAt(i)<<32) | ((long)string.charAt(i+1)<<16) | string.charAt(i+2);
+    Arrays.sort(grams);
+    return grams;
+  }
+
+  /**
+   * @return Number of times the trigram at index is repeated in the sorted trigrams, from index.
+   */
+  private static int countGram(long[] grams, int index)
+  {
+    int end = index+1;
+    while(end<grams.length && grams[end]==grams[index])
+      end++;
+    return end-index;
+  }
+
+  /**
+   * Trigrams shared with each indexed string, and the strings having at least 1.
+   */
+  private static final class Counters
+  {
+    private final int[] shared;
+    private final IntList touched = new IntList();
+
+    private Counters(int strings)
+    {
+      this.shared = new int[strings];
+    }
+  }
+
+  /**
+   * Growable int[], without boxing.
+   */
+  private static final class IntList
+  {
+    private int[] values = new int[4];
+    private int size = 0;
+
+    private void add(int value)
+    {
+      if(this.size==this.values.length)
+        this.values = Arrays.copyOf(this.values, this.size*2);
+      this.values[this.size++] = value;
+    }
+  }
+}
@@ -18,6 +18,10 @@ public class Document
   public long   size            = 0;
   public String hash            = "";
   public String comment         = "";
+  public String quick_hash      = Document.HASH_DEFERRED; // Hash of the first and last 64KB. See Utils.getQuickHash().
+  public String hash_algo       = Document.HASH_DEFERRED; // How hash is computed. See Utils.getHashAlgo().
+  
+  public static final String HASH_DEFERRED = "<deferred>"; // Hash not computed yet. It is stored as NULL in the database.
   
   public Document()
   {}
@@ -36,6 +40,8 @@ public class Document
     this.size           = doc.size;
     this.hash           = doc.hash;
     this.comment        = doc.comment;
+    this.quick_hash     = doc.quick_hash;
+    this.hash_algo      = doc.hash_algo;
   }
   
   /**
@@ -48,6 +54,88 @@ public class Document
     this.filename       = file.getName();
     this.last_modified  = file.lastModified();
     this.size           = file.length();    
+    this.quick_hash     = Document.HASH_DEFERRED; // File might have changed.
+    this.hash_algo      = Utils.getHashAlgo(this.size); // Hash is always recomputed with the current algorithm.
+  }
+  
+  /**
+   * @return true if the hash is not computed yet. See size-first lazy hashing in {@link net.xngo.fileshub.db.Manager}.
+   */
+  public boolean isHashDeferred()
+  {
+    return Document.HASH_DEFERRED.equals(this.hash);
+  }
+  
+  /**
+   * @return true if the quick hash is not computed yet.
+   */
+  public boolean isQuickHashDeferred()
+  {
+    return Document.HASH_DEFERRED.equals(this.quick_hash);
+  }
+  
+  /**
+   * @return true if the hash can be compared with hashes computed now, i.e. with {@link Utils#getHashAlgo(long)}.
+   */
+  public boolean isHashAlgoCurrent()
+  {
+    return Utils.getHashAlgo(this.size).compareTo(this.hash_algo)==0;
+  }
+  
+  /**
+   * Hashes are stored as BLOB: half the size of their hexadecimal string.
+   *  Hashes that are not hexadecimal are stored as they are, e.g. xxhash32 of old Trash entries.
+   * @param hash
+   * @return Value of the hash column in the database: NULL for a deferred hash.
+   */
+  public static Object toDbHash(String hash)
+  {
+    if(Document.HASH_DEFERRED.equals(hash))
+      return null;
+    
+    byte[] bytes = Utils.fromHex(hash);
+    if(bytes==null)
+      return hash;
+    else
+      return bytes;
+  }
+  
+  /**
+   * @param dbHash Value of the hash column in the database.
+   * @return Hash of the document as hexadecimal string: {@link #HASH_DEFERRED} for NULL.
+   */
+  public static String fromDbHash(Object dbHash)
+  {
+    if(dbHash==null)
+      return Document.HASH_DEFERRED;
+    else if(dbHash instanceof byte[])
+      return Utils.toHex((byte[])dbHash);
+    else
+      return dbHash.toString();
+  }
+  
+  /**
+   * @param hashAlgo
+   * @return Value of the hash_algo column in the database: NULL if unknown.
+   */
+  public static String toDbHashAlgo(String hashAlgo)
+  {
+    if(Document.HASH_DEFERRED.equals(hashAlgo))
+      return null;
+    else
+      return hashAlgo;
+  }
+  
+  /**
+   * @param dbHashAlgo Value of the hash_algo column in the database.
+   * @return Hash algorithm of the document: {@link #HASH_DEFERRED} for NULL.
+   */
+  public static String fromDbHashAlgo(String dbHashAlgo)
+  {
+    if(dbHashAlgo==null)
+      return Document.HASH_DEFERRED;
+    else
+      return dbHashAlgo;
   }
   
   /**
@@ -101,12 +189,13 @@ public class Document
         + "\tlast_modified  = %d\n"
         + "\tsize           = %d\n"
         + "\thash           = %s\n"
+        + "\thash_algo      = %s\n"
         + "\tfilename       = %s\n"
         + "\tcanonical_path = %s\n"
         + "\tcomment        = %s\n"
           , title 
           , this.uid, this.last_modified
-          , this.size, this.nullOrEmpty(this.hash)
+          , this.size, this.nullOrEmpty(this.hash), this.nullOrEmpty(this.hash_algo)
           , this.nullOrEmpty(this.filename), this.nullOrEmpty(this.canonical_path)
           , this.nullOrEmpty(this.comment));    
   }
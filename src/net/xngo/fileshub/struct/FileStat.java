@@ -0,0 +1,43 @@
+package net.xngo.fileshub.struct;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import net.xngo.fileshub.Utils;
+
+/**
+ * FileStat identifies a version of a file without reading its content.
+ *  If the key, the size and the last modified time are the same, the content is assumed to be the same.
+ * @author Xuan Ngo
+ *
+ */
+public class FileStat
+{
+  public String file_key      = ""; // Device and inode on Unix, e.g. (dev=803,ino=1234). Canonical path if the file system doesn't have one.
+  public long   size          = 0;
+  public long   last_modified = 0;
+  
+  public FileStat(final File file)
+  {
+    try
+    {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      Object fileKey = attributes.fileKey();
+      
+      this.file_key      = (fileKey==null)? Utils.getCanonicalPath(file) : fileKey.toString();
+      this.size          = attributes.size();
+      this.last_modified = attributes.lastModifiedTime().toMillis();
+    }
+    catch(IOException ex)
+    {
+      RuntimeException rException = new RuntimeException(String.format("Can't read attributes of %s.", file.getAbsolutePath()));
+      rException.setStackTrace(ex.getStackTrace());
+      throw rException;
+    }
+    
+    if(this.file_key==null)
+      throw new RuntimeException(String.format("Can't get the key of %s.", file.getAbsolutePath()));
+  }
+}
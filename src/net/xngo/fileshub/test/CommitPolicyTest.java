@@ -0,0 +1,124 @@
+package net.xngo.fileshub.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.sql.SQLException;
+
+import net.xngo.fileshub.CommitPolicy;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Manager;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CommitPolicyTest
+{
+  private static final long HOUR = 3600*1000L;
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    new Manager().createDbStructure();
+  }
+
+  @BeforeMethod
+  public void disableAutoCommit() throws SQLException
+  {
+    Main.connection.setAutoCommit(false);
+  }
+
+  @AfterMethod
+  public void enableAutoCommit() throws SQLException
+  {
+    Main.connection.commit();
+    Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+  }
+
+  @Test(description="Commit is due when the number of files reaches the maximum.")
+  public void isCommitDueMaxFiles()
+  {
+    CommitPolicy commitPolicy = new CommitPolicy(HOUR, HOUR, Long.MAX_VALUE, 3);
+
+    commitPolicy.add(1);
+    commitPolicy.add(1);
+    assertFalse(commitPolicy.isCommitDue());
+    commitPolicy.add(1);
+    assertTrue(commitPolicy.isCommitDue());
+    assertEquals(commitPolicy.getUncommittedFiles(), 3);
+  }
+
+  @Test(description="Commit is due when the uncommitted bytes reach the maximum.")
+  public void isCommitDueMaxBytes()
+  {
+    CommitPolicy commitPolicy = new CommitPolicy(HOUR, HOUR, 100, 10000);
+
+    commitPolicy.add(60);
+    assertFalse(commitPolicy.isCommitDue());
+    commitPolicy.add(60);
+    assertTrue(commitPolicy.isCommitDue());
+    assertEquals(commitPolicy.getUncommittedBytes(), 120);
+  }
+
+  @Test(description="Commit is due when the uncommitted work reaches the maximum time.")
+  public void isCommitDueMaxTime()
+  {
+    CommitPolicy commitPolicy = new CommitPolicy(HOUR, 0, Long.MAX_VALUE, 10000);
+
+    assertFalse(commitPolicy.isCommitDue(), "Nothing to commit.");
+    commitPolicy.add(1);
+    assertTrue(commitPolicy.isCommitDue());
+  }
+
+  @Test(description="Batch faster than the targeted latency: Batch size grows.")
+  public void commitGrowBatchSize() throws SQLException
+  {
+    //*** Prepare data: Fill the initial batch.
+    CommitPolicy commitPolicy = new CommitPolicy(HOUR, HOUR, Long.MAX_VALUE, 10000);
+    final int initialBatchSize = commitPolicy.getBatchSize();
+    for(int i=0; i<initialBatchSize; i++)
+      commitPolicy.add(1);
+    assertTrue(commitPolicy.isCommitDue());
+
+    //*** Main test: Commit.
+    commitPolicy.commit();
+
+    //*** Validation: Batch size grows and nothing is left uncommitted.
+    assertTrue(commitPolicy.getBatchSize()>initialBatchSize, String.format("Batch size should be greater than %d: %d.", initialBatchSize, commitPolicy.getBatchSize()));
+    assertEquals(commitPolicy.getUncommittedFiles(), 0);
+    assertEquals(commitPolicy.getCommits(), 1);
+    assertEquals(commitPolicy.getSummary(), String.format("1 commits of %d to %d files, %d on average", initialBatchSize, initialBatchSize, initialBatchSize));
+  }
+
+  @Test(description="Batch slower than the targeted latency: Batch size shrinks.")
+  public void commitShrinkBatchSize() throws SQLException, InterruptedException
+  {
+    //*** Prepare data: Fill the initial batch slowly.
+    CommitPolicy commitPolicy = new CommitPolicy(1, HOUR, Long.MAX_VALUE, 10000);
+    final int initialBatchSize = commitPolicy.getBatchSize();
+    for(int i=0; i<initialBatchSize; i++)
+      commitPolicy.add(1);
+    Thread.sleep(50);
+
+    //*** Main test: Commit.
+    commitPolicy.commit();
+
+    //*** Validation: Batch size shrinks.
+    assertTrue(commitPolicy.getBatchSize()<initialBatchSize, String.format("Batch size should be less than %d: %d.", initialBatchSize, commitPolicy.getBatchSize()));
+  }
+
+  @Test(description="Commit without new file: Not counted in the batch sizes.")
+  public void commitNothing() throws SQLException
+  {
+    CommitPolicy commitPolicy = new CommitPolicy();
+
+    commitPolicy.commit();
+
+    assertEquals(commitPolicy.getCommits(), 0);
+    assertEquals(commitPolicy.getSummary(), "0 commit");
+  }
+}
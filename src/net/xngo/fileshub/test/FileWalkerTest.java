@@ -0,0 +1,177 @@
+package net.xngo.fileshub.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.xngo.fileshub.FileWalker;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.Test;
+
+public class FileWalkerTest
+{
+  @Test(description="All files of nested directories are streamed.")
+  public void walkNestedDirectories() throws IOException
+  {
+    //*** Prepare data: Create files in a directory and its subdirectory.
+    File rootDir = Data.createTempDir("walkNestedDirectories_").toFile();
+    File subDir = new File(rootDir, "sub");
+    subDir.mkdir();
+    Set<File> expectedFiles = new HashSet<File>();
+    for(int i=0; i<5; i++)
+    {
+      File fileA = Data.createTempFile("walkNestedDirectories_A"+i, rootDir);
+      File fileB = Data.createTempFile("walkNestedDirectories_B"+i, subDir);
+      expectedFiles.add(fileA.getCanonicalFile());
+      expectedFiles.add(fileB.getCanonicalFile());
+    }
+
+    //*** Main test: Consume the walker.
+    List<File> paths = new ArrayList<File>();
+    paths.add(rootDir);
+    Set<File> actualFiles = this.consume(new FileWalker(paths));
+
+    //*** Validation: All files are found.
+    assertEquals(actualFiles, expectedFiles);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(rootDir);
+  }
+
+  @Test(description="Totals are final once all files are consumed.")
+  public void walkTotals() throws IOException
+  {
+    //*** Prepare data: Create files in a directory.
+    File rootDir = Data.createTempDir("walkTotals_").toFile();
+    long expectedSize = 0;
+    for(int i=0; i<7; i++)
+      expectedSize += Data.createTempFile("walkTotals_"+i, rootDir).length();
+
+    //*** Main test: Consume the walker.
+    List<File> paths = new ArrayList<File>();
+    paths.add(rootDir);
+    FileWalker fileWalker = new FileWalker(paths);
+    this.consume(fileWalker);
+
+    //*** Validation: Totals match the files.
+    assertTrue(fileWalker.isDone(), "Walk should be done.");
+    assertEquals(fileWalker.getTotalFiles(), 7);
+    assertEquals(fileWalker.getTotalSize(), expectedSize);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(rootDir);
+  }
+
+  @Test(description="Overlapping paths: Files are only streamed once.")
+  public void walkOverlappingPaths() throws IOException
+  {
+    //*** Prepare data: Create a file in a subdirectory.
+    File rootDir = Data.createTempDir("walkOverlappingPaths_").toFile();
+    File subDir = new File(rootDir, "sub");
+    subDir.mkdir();
+    Data.createTempFile("walkOverlappingPaths", subDir);
+
+    //*** Main test: Add the directory and its subdirectory.
+    List<File> paths = new ArrayList<File>();
+    paths.add(rootDir);
+    paths.add(subDir);
+    FileWalker fileWalker = new FileWalker(paths);
+    this.consume(fileWalker);
+
+    //*** Validation: Only 1 file is found.
+    assertEquals(fileWalker.getTotalFiles(), 1);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(rootDir);
+  }
+
+  @Test(description="Missing path is ignored.")
+  public void walkMissingPath()
+  {
+    //*** Prepare data: Create a file and delete it.
+    File uniqueFile = Data.createTempFile("walkMissingPath");
+    uniqueFile.delete();
+
+    //*** Main test: Walk the deleted file.
+    List<File> paths = new ArrayList<File>();
+    paths.add(uniqueFile);
+    FileWalker fileWalker = new FileWalker(paths);
+
+    //*** Validation: Nothing is found.
+    assertFalse(fileWalker.hasNext(), "Deleted file should not be found.");
+    assertEquals(fileWalker.getTotalFiles(), 0);
+  }
+
+  @Test(description="Parallel walk: Same files and totals as the walk with 1 thread.")
+  public void walkParallel() throws IOException
+  {
+    //*** Prepare data: Create a tree of directories.
+    File rootDir = Data.createTempDir("walkParallel_").toFile();
+    for(int i=0; i<4; i++)
+    {
+      File subDir = new File(rootDir, "sub"+i);
+      File subSubDir = new File(subDir, "subsub");
+      subSubDir.mkdirs();
+      Data.createTempFile("walkParallel_"+i, subDir);
+      Data.createTempFile("walkParallel_"+i, subSubDir);
+    }
+    Data.createTempFile("walkParallel", rootDir);
+    List<File> paths = new ArrayList<File>();
+    paths.add(rootDir);
+    FileWalker expectedFileWalker = new FileWalker(paths, 1);
+    Set<File> expectedFiles = this.consume(expectedFileWalker);
+
+    //*** Main test: Walk with 4 threads.
+    FileWalker fileWalker = new FileWalker(paths, 4);
+    Set<File> actualFiles = this.consume(fileWalker);
+
+    //*** Validation: Same files and totals.
+    assertEquals(actualFiles.size(), 9);
+    assertEquals(actualFiles, expectedFiles);
+    assertEquals(fileWalker.getTotalSize(), expectedFileWalker.getTotalSize());
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(rootDir);
+  }
+
+  @Test(description="listFiles(): Files are sorted.")
+  public void listFilesSorted() throws IOException
+  {
+    //*** Prepare data: Create files in a directory.
+    File rootDir = Data.createTempDir("listFilesSorted_").toFile();
+    for(int i=0; i<10; i++)
+      Data.createTempFile("listFilesSorted_"+i, rootDir);
+    List<File> paths = new ArrayList<File>();
+    paths.add(rootDir);
+
+    //*** Main test: List files.
+    List<File> actualFiles = new ArrayList<File>(FileWalker.listFiles(paths));
+
+    //*** Validation: Files are sorted by path.
+    List<File> expectedFiles = new ArrayList<File>(actualFiles);
+    Collections.sort(expectedFiles);
+    assertEquals(actualFiles.size(), 10);
+    assertEquals(actualFiles, expectedFiles);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(rootDir);
+  }
+
+  private Set<File> consume(FileWalker fileWalker)
+  {
+    Set<File> files = new HashSet<File>();
+    while(fileWalker.hasNext())
+      assertTrue(files.add(fileWalker.next()), "File should only be found once.");
+    return files;
+  }
+}
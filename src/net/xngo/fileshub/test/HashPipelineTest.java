@@ -0,0 +1,145 @@
+package net.xngo.fileshub.test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import net.xngo.fileshub.HashPipeline;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.Test;
+
+public class HashPipelineTest
+{
+  @Test(description="Files are returned in the same order with the same hash as Utils.getHash().")
+  public void hashAheadOrderAndHash() throws Exception
+  {
+    //*** Prepare data: Create more files than the hashing window.
+    List<File> files = new ArrayList<File>();
+    for(int i=0; i<50; i++)
+      files.add(Data.createTempFile("hashAheadOrderAndHash_"+i));
+
+    //*** Main test: Consume the pipeline.
+    HashPipeline hashPipeline = new HashPipeline(files.iterator(), 4);
+    List<File> actualFiles = new ArrayList<File>();
+    try
+    {
+      while(hashPipeline.hasNext())
+      {
+        File file = hashPipeline.next();
+        actualFiles.add(file);
+
+        //*** Validation: Hash computed ahead is the same.
+        assertNotNull(hashPipeline.getHash(), String.format("Hash of %s should be computed ahead.", file.getAbsolutePath()));
+        assertEquals(hashPipeline.getHash().get(), Utils.getHash(file), String.format("Hash is different for %s.", file.getAbsolutePath()));
+      }
+    }
+    finally
+    {
+      hashPipeline.close();
+    }
+
+    //*** Validation: Order is kept.
+    assertEquals(actualFiles, files);
+
+    //*** Clean up.
+    for(File file: files)
+      file.delete();
+  }
+
+  @Test(description="Files that the filter doesn't need hashed are not hashed ahead.")
+  public void hashAheadFilter() throws Exception
+  {
+    //*** Prepare data: Create files. Files ending with an even number don't need their hash.
+    final List<File> skippedFiles = new ArrayList<File>();
+    List<File> files = new ArrayList<File>();
+    for(int i=0; i<20; i++)
+    {
+      File file = Data.createTempFile("hashAheadFilter_"+i);
+      files.add(file);
+      if(i%2==0)
+        skippedFiles.add(file);
+    }
+
+    //*** Main test: Consume the pipeline.
+    HashPipeline hashPipeline = new HashPipeline(files.iterator(), 4, null, new HashPipeline.Filter()
+                                                                            {
+                                                                              public boolean isHashNeeded(File file)
+                                                                              {
+                                                                                return !skippedFiles.contains(file);
+                                                                              }
+                                                                            });
+    List<File> actualFiles = new ArrayList<File>();
+    try
+    {
+      while(hashPipeline.hasNext())
+      {
+        File file = hashPipeline.next();
+        actualFiles.add(file);
+
+        //*** Validation: Only files needing their hash are hashed ahead.
+        if(skippedFiles.contains(file))
+          assertNull(hashPipeline.getHash(), String.format("Hash of %s should not be computed ahead.", file.getAbsolutePath()));
+        else
+          assertEquals(hashPipeline.getHash().get(), Utils.getHash(file), String.format("Hash is different for %s.", file.getAbsolutePath()));
+      }
+    }
+    finally
+    {
+      hashPipeline.close();
+    }
+
+    //*** Validation: Order is kept.
+    assertEquals(actualFiles, files);
+
+    //*** Clean up.
+    for(File file: files)
+      file.delete();
+  }
+
+  @Test(description="With 1 thread, files are not hashed ahead.")
+  public void hashAheadSingleThread()
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("hashAheadSingleThread");
+    List<File> files = new ArrayList<File>();
+    files.add(uniqueFile);
+
+    //*** Main test: Hash is left to the caller.
+    HashPipeline hashPipeline = new HashPipeline(files.iterator(), 1);
+    assertEquals(hashPipeline.next(), uniqueFile);
+    assertNull(hashPipeline.getHash(), "Hash should not be computed ahead with 1 thread.");
+    hashPipeline.close();
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Hashing a deleted file fails when the hash is consumed.", expectedExceptions={ExecutionException.class})
+  public void hashAheadDeletedFile() throws Exception
+  {
+    //*** Prepare data: Create a file and delete it.
+    File uniqueFile = Data.createTempFile("hashAheadDeletedFile");
+    uniqueFile.delete();
+    List<File> files = new ArrayList<File>();
+    files.add(uniqueFile);
+
+    //*** Main test: Exception is kept until the hash is consumed.
+    HashPipeline hashPipeline = new HashPipeline(files.iterator(), 2);
+    try
+    {
+      hashPipeline.next();
+      hashPipeline.getHash().get();
+    }
+    finally
+    {
+      hashPipeline.close();
+    }
+  }
+}
@@ -55,6 +55,45 @@ public class UtilsTest
     //uniqueFile.delete();    
   }
   
+  @Test(description="getQuickHash(): Small file, less than 128KB.")
+  public void getQuickHashSmallFile()
+  {
+    //*** Prepare data: Create a small file, less than 128KB.
+    File uniqueFile = Data.createTempFile("getQuickHashSmallFile");
+    
+    //*** Test: Whole file is hashed. Utils.getQuickHash() should return the same hash as Hash.md5().
+    String actualHash = Utils.getQuickHash(uniqueFile);
+    String expectedHash = Hash.md5(uniqueFile);
+    assertEquals(actualHash, expectedHash, String.format("Quick hash is different for %s.", uniqueFile.getAbsolutePath()));
+    
+    //*** Clean up.
+    uniqueFile.delete();    
+  }
+  
+  @Test(description="getQuickHash(): Only the first and last 64KB are hashed.")
+  public void getQuickHashMiddleChanged()
+  {
+    //*** Prepare data: Create 2 files that only differ in the middle.
+    byte[] content = Data.getRandomBytes(256*1024);
+    File fileA = Data.createTempFileWithByte("getQuickHashMiddleChanged_fileA", content);
+    content[content.length/2]++;
+    File fileB = Data.createTempFileWithByte("getQuickHashMiddleChanged_fileB", content);
+    
+    //*** Test: Quick hashes are the same but hashes are different.
+    assertEquals(Utils.getQuickHash(fileA), Utils.getQuickHash(fileB), "Quick hash should not read the middle of the file.");
+    assertNotEquals(Utils.getHash(fileA), Utils.getHash(fileB));
+    
+    //*** Test: Quick hashes are different when the last byte is different.
+    content[content.length-1]++;
+    File fileC = Data.createTempFileWithByte("getQuickHashMiddleChanged_fileC", content);
+    assertNotEquals(Utils.getQuickHash(fileB), Utils.getQuickHash(fileC), "Quick hash should read the end of the file.");
+    
+    //*** Clean up.
+    fileA.delete();
+    fileB.delete();
+    fileC.delete();
+  }
+  
   @Test(description="getDirsAsString(): Test a file.")
   public void getDirsAsStringFile()
   {
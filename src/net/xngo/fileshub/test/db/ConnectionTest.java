@@ -0,0 +1,354 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.xngo.fileshub.Config;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DbProfile;
+import net.xngo.fileshub.db.DocumentCursor;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test batched inserts, cached statements, profiles, RAM mode and cursors of net.xngo.fileshub.db.Connection.
+ *  Rows are only batched when auto-commit is off.
+ * @author Xuan Ngo
+ *
+ */
+public class ConnectionTest
+{
+  private Manager manager = new Manager();
+  private Shelf shelf = new Shelf();
+  private Trash trash = new Trash();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+  }
+
+  @BeforeMethod
+  public void disableAutoCommit() throws SQLException
+  {
+    Main.connection.setAutoCommit(false);
+  }
+
+  @AfterMethod
+  public void enableAutoCommit() throws SQLException
+  {
+    Main.connection.commit();
+    Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+  }
+
+  @Test(description="Batched document is inserted on commit.")
+  public void batchInsertOnCommit() throws SQLException
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("batchInsertOnCommit");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+
+    //*** Main test: Add in batch and commit.
+    this.shelf.addDocInBatch(doc);
+    assertEquals(Main.connection.getBatchedRows(), 1);
+    Main.connection.commit();
+
+    //*** Validation: Document is inserted.
+    assertEquals(Main.connection.getBatchedRows(), 0);
+    assertNotNull(this.shelf.getDocByCanonicalPath(doc.canonical_path), "Document should be inserted on commit.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Lookup of a batched document: Batch is inserted first.")
+  public void batchInsertBeforeLookup()
+  {
+    //*** Prepare data: Add a file in batch.
+    File uniqueFile = Data.createTempFile("batchInsertBeforeLookup");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    this.shelf.addDocInBatch(doc);
+
+    //*** Main test: Look it up by path.
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+
+    //*** Validation: Document is found.
+    assertNotNull(shelfDoc, "Batched document should be found.");
+    assertEquals(Main.connection.getBatchedRows(), 0);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Lookup of another document: Batch keeps waiting.")
+  public void batchInsertNotNeededByLookup()
+  {
+    //*** Prepare data: Add a file in batch.
+    File uniqueFile = Data.createTempFile("batchInsertNotNeededByLookup");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    this.shelf.addDocInBatch(doc);
+
+    //*** Main test: Look up another path and another hash.
+    assertNull(this.shelf.getDocByCanonicalPath(doc.canonical_path+".other"));
+    assertNull(this.shelf.getDocByHash("0123456789abcdef", doc.hash_algo));
+
+    //*** Validation: Document is still waiting.
+    assertEquals(Main.connection.getBatchedRows(), 1);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Rollback discards the batch.")
+  public void batchInsertRollback() throws SQLException
+  {
+    //*** Prepare data: Add a file in batch.
+    File uniqueFile = Data.createTempFile("batchInsertRollback");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = 1;
+    this.trash.addDocInBatch(doc);
+
+    //*** Main test: Rollback.
+    Main.connection.rollback();
+
+    //*** Validation: Document is not inserted.
+    assertEquals(Main.connection.getBatchedRows(), 0);
+    assertTrue(this.trash.getDocsByCanonicalPath(doc.canonical_path).isEmpty(), "Document should be discarded.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Add duplicate of a file added in the same batch: It is found.")
+  public void addFileDuplicateInSameBatch()
+  {
+    //*** Prepare data: Create 2 files with the same content.
+    File uniqueFile = Data.createTempFile("addFileDuplicateInSameBatch");
+    File duplicateFile = Data.createTempFile("addFileDuplicateInSameBatch_duplicate");
+    Data.copyFile(uniqueFile, duplicateFile);
+
+    //*** Main test: Add both files without committing.
+    assertNull(this.manager.addFile(uniqueFile), "First file should be new.");
+    Document conflictDoc = this.manager.addFile(duplicateFile);
+
+    //*** Validation: Duplicate is found and added in Trash.
+    assertNotNull(conflictDoc, "Duplicate should be found even if the first file is not inserted yet.");
+    assertEquals(conflictDoc.canonical_path, Utils.getCanonicalPath(uniqueFile));
+    assertFalse(this.trash.getDocsByCanonicalPath(Utils.getCanonicalPath(duplicateFile)).isEmpty(), "Duplicate should be in Trash.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+    duplicateFile.delete();
+  }
+
+  @Test(description="Same query twice: Compiled statement is reused.")
+  public void cachedStatementReused()
+  {
+    //*** Prepare data: Run the query once.
+    this.shelf.getDocByFilename("cachedStatementReused_1"); // A single statement: canonical path also looks up its directory.
+    final int expectedMisses = Main.connection.getStatementMisses();
+    final int expectedHits   = Main.connection.getStatementHits()+1;
+
+    //*** Main test: Run the same query with another value.
+    this.shelf.getDocByFilename("cachedStatementReused_2");
+
+    //*** Validation: Statement is reused and only the new value is bound.
+    assertEquals(Main.connection.getStatementMisses(), expectedMisses);
+    assertEquals(Main.connection.getStatementHits(), expectedHits);
+    assertTrue(Main.connection.getQueryString().endsWith(" : cachedStatementReused_2"), Main.connection.getQueryString());
+  }
+
+  @Test(description="Cached statement returns rows inserted after it is compiled.")
+  public void cachedStatementSeesNewRows()
+  {
+    //*** Prepare data: Compile the query and create a file.
+    File uniqueFile = Data.createTempFile("cachedStatementSeesNewRows");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    assertNull(this.shelf.getDocByCanonicalPath(doc.canonical_path));
+
+    //*** Main test: Add the file and run the same query.
+    this.shelf.addDoc(doc);
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+
+    //*** Validation: Document is found.
+    assertNotNull(shelfDoc, "Document added after the statement is compiled should be found.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Apply fast profile: PRAGMAs are changed.")
+  public void applyProfileFast() throws SQLException
+  {
+    try
+    {
+      //*** Main test: Apply fast profile.
+      Main.connection.applyProfile(DbProfile.FAST);
+
+      //*** Validation: Write-ahead log and normal synchronous.
+      String pragmas = Main.connection.getPragmas();
+      assertTrue(pragmas.contains("journal_mode=wal"), pragmas);
+      assertTrue(pragmas.contains("synchronous=1"), pragmas);
+      assertEquals(Main.connection.getProfile(), DbProfile.FAST);
+    }
+    finally
+    {
+      //*** Clean up.
+      Main.connection.applyProfile(Config.DB_PROFILE);
+    }
+  }
+
+  @Test(description="Profile names are case insensitive.", expectedExceptions=RuntimeException.class)
+  public void getProfileUnknown()
+  {
+    assertEquals(DbProfile.get("BULK-IMPORT"), DbProfile.BULK_IMPORT);
+    DbProfile.get("unknown");
+  }
+
+  @Test(description="RAM mode: Committed documents are saved to disk at checkpoint.")
+  public void inMemoryCheckpoint() throws SQLException
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("inMemoryCheckpoint");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+
+    try
+    {
+      //*** Main test: Add the file in RAM and checkpoint.
+      Main.connection.commit();
+      this.reconnect(true);
+      assertTrue(Main.connection.isInMemory(), "Database should be in RAM.");
+      this.shelf.addDoc(doc);
+      Main.connection.commit();
+      Main.connection.checkpoint();
+      assertEquals(Main.connection.getCheckpoints(), 1);
+
+      //*** Validation: Document is in the database on disk.
+      this.reconnect(false);
+      assertFalse(Main.connection.isInMemory(), "Database should be on disk.");
+      assertNotNull(this.shelf.getDocByCanonicalPath(doc.canonical_path), "Document should be saved to disk.");
+    }
+    finally
+    {
+      //*** Clean up.
+      this.reconnect(false);
+      uniqueFile.delete();
+    }
+  }
+
+  @Test(description="RAM mode: Committed documents are saved to disk at close but not the uncommitted ones.")
+  public void inMemoryClose() throws SQLException
+  {
+    //*** Prepare data: Create 2 files.
+    File committedFile = Data.createTempFile("inMemoryClose_committed");
+    Document committedDoc = new Document(committedFile);
+    committedDoc.hash = Utils.getHash(committedFile);
+    File uncommittedFile = Data.createTempFile("inMemoryClose_uncommitted");
+    Document uncommittedDoc = new Document(uncommittedFile);
+    uncommittedDoc.hash = Utils.getHash(uncommittedFile);
+
+    try
+    {
+      //*** Main test: Add both files in RAM, only commit the 1st one and close.
+      Main.connection.commit();
+      this.reconnect(true);
+      this.shelf.addDoc(committedDoc);
+      Main.connection.commit();
+      this.shelf.addDoc(uncommittedDoc);
+      this.reconnect(false);
+
+      //*** Validation: Only the committed document is on disk.
+      assertNotNull(this.shelf.getDocByCanonicalPath(committedDoc.canonical_path), "Committed document should be saved to disk.");
+      assertNull(this.shelf.getDocByCanonicalPath(uncommittedDoc.canonical_path), "Uncommitted document should be discarded.");
+    }
+    finally
+    {
+      //*** Clean up.
+      this.reconnect(false);
+      committedFile.delete();
+      uncommittedFile.delete();
+    }
+  }
+
+  @Test(description="Rollback while documents are read one at a time: Cursor reads the remaining documents.")
+  public void cursorRollback() throws SQLException
+  {
+    //*** Prepare data: Add 3 files with a zero size.
+    List<File> uniqueFiles = new ArrayList<File>();
+    for(int i=0; i<3; i++)
+    {
+      File uniqueFile = Data.createTempFile("cursorRollback_"+i);
+      Document doc = new Document(uniqueFile);
+      doc.hash = Utils.getHash(uniqueFile);
+      doc.uid = this.shelf.addDoc(doc);
+      this.shelf.saveSize(doc.uid, 0);
+      uniqueFiles.add(uniqueFile);
+    }
+    Main.connection.commit();
+    final int expectedTotal = this.shelf.getTotalDocsWithMissingFileSize();
+
+    //*** Main test: Roll back the change of the 1st document read.
+    int actualTotal = 0;
+    DocumentCursor docCursor = this.shelf.openDocsWithMissingFileSize();
+    try
+    {
+      for(Document doc: docCursor)
+      {
+        this.shelf.saveSize(doc.uid, 1);
+        if(actualTotal==0)
+          Main.connection.rollback();
+        actualTotal++;
+      }
+    }
+    finally
+    {
+      docCursor.close();
+    }
+
+    //*** Validation: All documents are read once. Only the rolled back one is left.
+    assertEquals(actualTotal, expectedTotal);
+    Main.connection.commit();
+    assertEquals(this.shelf.getTotalDocsWithMissingFileSize(), 1);
+
+    //*** Clean up.
+    for(File uniqueFile: uniqueFiles)
+      uniqueFile.delete();
+  }
+
+  /**
+   * Replace Main.connection by a new connection, in RAM or on disk.
+   *  Changes not committed are discarded.
+   */
+  private void reconnect(boolean inMemory) throws SQLException
+  {
+    Main.connection.close();
+    Connection.setDefaultInMemory(inMemory);
+    Main.connection = new Connection();
+    Main.connection.setAutoCommit(false); // Same as @BeforeMethod.
+  }
+}
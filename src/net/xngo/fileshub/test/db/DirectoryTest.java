@@ -0,0 +1,190 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test that canonical paths stored as Directory.path and filename are read back as they were written.
+ * @author Xuan Ngo
+ *
+ */
+public class DirectoryTest
+{
+  private Manager manager = new Manager();
+  private Shelf shelf = new Shelf();
+  private Trash trash = new Trash();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+  }
+
+  @Test(description="Canonical path and filename are read back from Shelf and Trash.")
+  public void addDoc()
+  {
+    //*** Prepare data: Create a unique file.
+    File uniqueFile = Data.createTempFile("DirectoryTest_addDoc");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+
+    //*** Main test: Add the file in Shelf and Trash.
+    doc.uid = this.shelf.addDoc(doc);
+    this.trash.addDoc(doc);
+
+    //*** Validation: Both documents are found by their canonical path.
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+    List<Document> trashDocs = this.trash.getDocsByCanonicalPath(doc.canonical_path);
+    assertNotNull(shelfDoc);
+    assertEquals(trashDocs.size(), 1);
+    Document trashDoc = trashDocs.get(0);
+    assertEquals(shelfDoc.canonical_path, doc.canonical_path);
+    assertEquals(shelfDoc.filename, doc.filename);
+    assertEquals(trashDoc.canonical_path, doc.canonical_path);
+    assertEquals(trashDoc.filename, doc.filename);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Filename that is not the last name of the canonical path is kept, e.g. symbolic link.")
+  public void addDocWithLinkFilename()
+  {
+    //*** Prepare data: Create a unique file with another filename.
+    File uniqueFile = Data.createTempFile("DirectoryTest_addDocWithLinkFilename");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.filename = "link_"+doc.filename;
+
+    //*** Main test: Add the file in Shelf.
+    this.shelf.addDoc(doc);
+
+    //*** Validation: Filename is the one added. Canonical path doesn't change.
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+    assertNotNull(shelfDoc);
+    assertEquals(shelfDoc.canonical_path, doc.canonical_path);
+    assertEquals(shelfDoc.filename, doc.filename);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Files of the same directory share the same Directory row.")
+  public void addDocsInSameDirectory() throws IOException, SQLException
+  {
+    //*** Prepare data: Create 2 files in a new directory.
+    File directory = Data.createTempDir("DirectoryTest_addDocsInSameDirectory").toFile();
+    File file1 = Data.createTempFile("DirectoryTest_addDocsInSameDirectory_1", directory);
+    File file2 = Data.createTempFile("DirectoryTest_addDocsInSameDirectory_2", directory);
+
+    //*** Main test: Add both files in Shelf.
+    Document doc1 = new Document(file1);
+    Document doc2 = new Document(file2);
+    doc1.hash = Utils.getHash(file1);
+    doc2.hash = Utils.getHash(file2);
+    this.shelf.addDoc(doc1);
+    this.shelf.addDoc(doc2);
+
+    //*** Validation: Only 1 row for the directory. Both files are found.
+    final String canonicalPath = Utils.getCanonicalPath(file1);
+    final String path = canonicalPath.substring(0, canonicalPath.length()-file1.getName().length());
+    assertEquals(this.countDirectories(path), 1);
+    assertNotNull(this.shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file1)));
+    assertNotNull(this.shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file2)));
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test(description="Path in a directory never added is not found and doesn't add the directory.")
+  public void getDocByCanonicalPathUnknownDirectory() throws IOException, SQLException
+  {
+    //*** Prepare data: Create a file in a new directory that is not added.
+    File directory = Data.createTempDir("DirectoryTest_getDocByCanonicalPathUnknownDirectory").toFile();
+    File uniqueFile = Data.createTempFile("DirectoryTest_getDocByCanonicalPathUnknownDirectory", directory);
+    final String canonicalPath = Utils.getCanonicalPath(uniqueFile);
+
+    //*** Main test: Look up the file.
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(canonicalPath);
+    List<Document> trashDocs = this.trash.getDocsByCanonicalPath(canonicalPath);
+
+    //*** Validation: Nothing is found or added.
+    assertNull(shelfDoc);
+    assertEquals(trashDocs.size(), 0);
+    assertEquals(this.countDirectories(Utils.getCanonicalPath(directory)+File.separator), 0);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(directory);
+  }
+
+  @Test(description="Directory added in a transaction rolled back is added again.")
+  public void rollback() throws IOException, SQLException
+  {
+    //*** Prepare data: Create a file in a new directory.
+    File directory = Data.createTempDir("DirectoryTest_rollback").toFile();
+    File uniqueFile = Data.createTempFile("DirectoryTest_rollback", directory);
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+
+    //*** Main test: Add the file in batch, roll back, then add it again.
+    Main.connection.setAutoCommit(false);
+    try
+    {
+      this.shelf.addDocInBatch(doc);
+      assertNotNull(this.shelf.getDocByCanonicalPath(doc.canonical_path), "Document in batch should be found.");
+      Main.connection.rollback();
+      assertNull(this.shelf.getDocByCanonicalPath(doc.canonical_path), "Document rolled back should be gone.");
+      this.shelf.addDocInBatch(doc);
+      Main.connection.commit();
+    }
+    finally
+    {
+      Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+    }
+
+    //*** Validation: Document and its directory are in the database.
+    Document shelfDoc = this.shelf.getDocByCanonicalPath(doc.canonical_path);
+    assertNotNull(shelfDoc);
+    assertEquals(shelfDoc.canonical_path, doc.canonical_path);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private int countDirectories(String path) throws SQLException
+  {
+    ResultSet resultSet = Main.connection.executeForwardQuery("SELECT COUNT(*) FROM Directory WHERE path = ?", path);
+    try
+    {
+      resultSet.next();
+      return resultSet.getInt(1);
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+  }
+}
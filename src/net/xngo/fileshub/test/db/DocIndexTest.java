@@ -0,0 +1,174 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.SQLException;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.DocIndex;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test that DocIndex never hides a document written through Shelf and Trash.
+ * @author Xuan Ngo
+ *
+ */
+public class DocIndexTest
+{
+  private Manager manager = new Manager();
+  private Shelf shelf = new Shelf();
+  private Trash trash = new Trash();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+  }
+
+  @BeforeMethod
+  public void loadDocIndex() throws SQLException
+  {
+    Main.connection.setAutoCommit(false);
+    Main.connection.setDocIndex(DocIndex.load());
+  }
+
+  @AfterMethod
+  public void removeDocIndex() throws SQLException
+  {
+    Main.connection.setDocIndex(null);
+    Main.connection.commit();
+    Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+  }
+
+  @Test(description="Documents in the database when the index is loaded are found. Unknown path and hash are not looked up.")
+  public void load()
+  {
+    //*** Prepare data: Add a file without index.
+    File uniqueFile = Data.createTempFile("DocIndexTest_load");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    Main.connection.setDocIndex(null);
+    this.shelf.addDoc(doc);
+
+    //*** Main test: Load the index.
+    DocIndex docIndex = DocIndex.load();
+    Main.connection.setDocIndex(docIndex);
+
+    //*** Validation: Document is found. Others are answered by the index.
+    assertTrue(docIndex.getRows()>0);
+    assertTrue(docIndex.getMemoryUsage()>0);
+    assertNotNull(this.shelf.getDocByCanonicalPath(doc.canonical_path));
+    assertNotNull(this.shelf.getDocByHash(doc.hash, doc.hash_algo));
+    assertNull(this.shelf.getDocByCanonicalPath(doc.canonical_path+".unknown"));
+    assertEquals(this.trash.getDocsByHash("0123456789abcdef0123456789abcdef", doc.hash_algo).size(), 0);
+    assertEquals(docIndex.getSkippedQueries(), 2);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Document added while the index is set is found.")
+  public void addDoc()
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("DocIndexTest_addDoc");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    assertNull(this.shelf.getDocByCanonicalPath(doc.canonical_path));
+
+    //*** Main test: Add the file.
+    doc.uid = this.shelf.addDoc(doc);
+
+    //*** Validation: Document is found by path and by hash.
+    assertFalse(Main.connection.getDocIndex().mightContainPath("Shelf", doc.canonical_path+".unknown"));
+    assertNotNull(this.shelf.getDocByCanonicalPath(doc.canonical_path));
+    assertNotNull(this.shelf.getDocByHash(doc.hash, doc.hash_algo));
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Document added in batch while the index is set is found.")
+  public void addDocInBatch()
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("DocIndexTest_addDocInBatch");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = 1;
+
+    //*** Main test: Add the file in batch in Trash.
+    this.trash.addDocInBatch(doc);
+
+    //*** Validation: Document is found by path and by hash.
+    assertFalse(this.trash.getDocsByCanonicalPath(doc.canonical_path).isEmpty());
+    assertEquals(this.trash.getDocsByHash(doc.hash, doc.hash_algo).size(), 1);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Document saved with another path and hash is found by the new ones.")
+  public void saveDoc()
+  {
+    //*** Prepare data: Add a file.
+    File uniqueFile = Data.createTempFile("DocIndexTest_saveDoc");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = this.shelf.addDoc(doc);
+
+    //*** Main test: Save another file in the same document.
+    File otherFile = Data.createTempFile("DocIndexTest_saveDoc_other");
+    Data.writeStringToFile(otherFile, "saveDoc");
+    Document otherDoc = new Document(otherFile);
+    otherDoc.hash = Utils.getHash(otherFile);
+    otherDoc.uid = doc.uid;
+    this.shelf.saveDoc(otherDoc);
+
+    //*** Validation: Document is found by the new path and hash.
+    assertNotNull(this.shelf.getDocByCanonicalPath(otherDoc.canonical_path));
+    assertNotNull(this.shelf.getDocByHash(otherDoc.hash, otherDoc.hash_algo));
+
+    //*** Clean up.
+    uniqueFile.delete();
+    otherFile.delete();
+  }
+
+  @Test(description="Add duplicate of a file added with the index: It is found.")
+  public void addFileDuplicate()
+  {
+    //*** Prepare data: Create 2 files with the same content.
+    File uniqueFile = Data.createTempFile("DocIndexTest_addFileDuplicate");
+    File duplicateFile = Data.createTempFile("DocIndexTest_addFileDuplicate_duplicate");
+    Data.copyFile(uniqueFile, duplicateFile);
+
+    //*** Main test: Add both files.
+    assertNull(this.manager.addFile(uniqueFile), "First file should be new.");
+    Document conflictDoc = this.manager.addFile(duplicateFile);
+
+    //*** Validation: Duplicate is found and added in Trash.
+    assertNotNull(conflictDoc, "Duplicate should be found.");
+    assertEquals(conflictDoc.canonical_path, Utils.getCanonicalPath(uniqueFile));
+    assertFalse(this.trash.getDocsByCanonicalPath(Utils.getCanonicalPath(duplicateFile)).isEmpty(), "Duplicate should be in Trash.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+    duplicateFile.delete();
+  }
+}
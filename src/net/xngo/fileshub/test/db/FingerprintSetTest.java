@@ -0,0 +1,39 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import net.xngo.fileshub.db.FingerprintSet;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test that FingerprintSet is sized for the values expected, including large catalogs.
+ * @author Xuan Ngo
+ *
+ */
+public class FingerprintSetTest
+{
+  @Test(description="Capacity is the smallest power of 2 holding the values expected under 75% load.")
+  public void getCapacity()
+  {
+    assertEquals(FingerprintSet.getCapacity(0), 1024);
+    assertEquals(FingerprintSet.getCapacity(768), 1024);
+    assertEquals(FingerprintSet.getCapacity(769), 2048);
+    assertEquals(FingerprintSet.getCapacity(13000000), 1<<25, "capacity*75 doesn't fit in an int from 2^25.");
+    assertEquals(FingerprintSet.getCapacity(Integer.MAX_VALUE), 1<<30);
+  }
+
+  @Test(description="Values added are found. Set grows past the size expected.")
+  public void add()
+  {
+    FingerprintSet fingerprintSet = new FingerprintSet(10);
+    for(int i=0; i<5000; i++)
+      fingerprintSet.add("/path/"+i);
+
+    assertEquals(fingerprintSet.size(), 5000);
+    for(int i=0; i<5000; i++)
+      assertTrue(fingerprintSet.contains("/path/"+i));
+    assertEquals(fingerprintSet.getMemoryUsage(), 8192*8L);
+  }
+}
@@ -0,0 +1,188 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.xngo.fileshub.HashPipeline;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.HashCache;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.struct.FileStat;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+public class HashCacheTest
+{
+  private static final boolean DEBUG = true;
+
+  private HashCache hashCache = new HashCache();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    Manager manager = new Manager();
+    manager.createDbStructure();
+
+    // If DEBUG is true, then commit every single transaction.
+    if(HashCacheTest.DEBUG)
+    {
+      try
+      {
+        Main.connection.setAutoCommit(true);
+      }
+      catch(SQLException ex) { ex.printStackTrace(); }
+    }
+  }
+
+  @Test(description="Hash of a file is cached.")
+  public void getHashCached()
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("getHashCached");
+
+    //*** Main test: Hash the file.
+    String hash = this.hashCache.getHash(uniqueFile);
+
+    //*** Validation: Same hash as Utils.getHash() and it is cached.
+    assertEquals(hash, Utils.getHash(uniqueFile));
+    assertEquals(this.hashCache.getHash(new FileStat(uniqueFile)), hash);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Unchanged size and last modified time: File is not read again.")
+  public void getHashNotRehashed() throws IOException
+  {
+    //*** Prepare data: Cache the hash of a file and change its content without changing its size and last modified time.
+    File uniqueFile = Data.createTempFile("getHashNotRehashed", null, "aaaa");
+    final long lastModified = uniqueFile.lastModified();
+    String hash = this.hashCache.getHash(uniqueFile);
+    Files.write(uniqueFile.toPath(), "bbbb".getBytes());
+    uniqueFile.setLastModified(lastModified);
+
+    //*** Main test: Hash the file again.
+    String cachedHash = this.hashCache.getHash(uniqueFile);
+
+    //*** Validation: The cached hash is returned.
+    assertEquals(cachedHash, hash, "Hash should come from the cache.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Changed last modified time: File is hashed again.")
+  public void getHashChangedFile()
+  {
+    //*** Prepare data: Cache the hash of a file and change it.
+    File uniqueFile = Data.createTempFile("getHashChangedFile", null, "aaaa");
+    final long lastModified = uniqueFile.lastModified();
+    String hash = this.hashCache.getHash(uniqueFile);
+    Data.writeStringToFile(uniqueFile, "bbbb");
+    uniqueFile.setLastModified(lastModified+10000);
+
+    //*** Main test: Hash the file again.
+    assertNull(this.hashCache.getHash(new FileStat(uniqueFile)), "Changed file should not be in the cache.");
+    String newHash = this.hashCache.getHash(uniqueFile);
+
+    //*** Validation: The new hash is computed and cached.
+    assertNotEquals(newHash, hash);
+    assertEquals(newHash, Utils.getHash(uniqueFile));
+    assertEquals(this.hashCache.getHash(new FileStat(uniqueFile)), newHash);
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Evict the oldest entries above the maximum size.")
+  public void evict()
+  {
+    //*** Prepare data: Cache more hashes than the maximum size.
+    final int maxSize = 3;
+    HashCache smallHashCache = new HashCache(maxSize);
+    List<File> files = new ArrayList<File>();
+    for(int i=0; i<5; i++)
+    {
+      File uniqueFile = Data.createTempFile("evict_"+i);
+      smallHashCache.getHash(uniqueFile);
+      files.add(uniqueFile);
+    }
+
+    //*** Main test: Evict.
+    smallHashCache.evict();
+
+    //*** Validation: Only the newest entries are kept.
+    assertEquals(smallHashCache.getTotalHashes(), maxSize);
+    assertNull(smallHashCache.getHash(new FileStat(files.get(0))), "Oldest entry should be evicted.");
+    assertNull(smallHashCache.getHash(new FileStat(files.get(1))), "Oldest entry should be evicted.");
+    for(int i=2; i<files.size(); i++)
+      assertEquals(smallHashCache.getHash(new FileStat(files.get(i))), Utils.getHash(files.get(i)));
+
+    //*** Clean up.
+    for(File file: files)
+      file.delete();
+  }
+
+  @Test(description="Disabled cache: Files are hashed and nothing is cached.")
+  public void disabled()
+  {
+    //*** Prepare data: Create a file.
+    File uniqueFile = Data.createTempFile("disabled");
+    HashCache disabledHashCache = new HashCache(0);
+
+    //*** Main test: Hash the file.
+    String hash = disabledHashCache.getHash(uniqueFile);
+
+    //*** Validation: Hash is computed but not cached.
+    assertEquals(hash, Utils.getHash(uniqueFile));
+    assertNull(this.hashCache.getHash(new FileStat(uniqueFile)), "Hash should not be cached.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="HashPipeline caches hashes computed ahead and reuses cached hashes.")
+  public void hashPipelineCache() throws Exception
+  {
+    //*** Prepare data: Create files. Only cache the first one.
+    List<File> files = new ArrayList<File>();
+    for(int i=0; i<10; i++)
+      files.add(Data.createTempFile("hashPipelineCache_"+i));
+    this.hashCache.getHash(files.get(0));
+
+    //*** Main test: Consume the pipeline.
+    HashPipeline hashPipeline = new HashPipeline(files.iterator(), 2, this.hashCache);
+    try
+    {
+      while(hashPipeline.hasNext())
+      {
+        File file = hashPipeline.next();
+        assertEquals(hashPipeline.getHash().get(), Utils.getHash(file), String.format("Hash is different for %s.", file.getAbsolutePath()));
+      }
+    }
+    finally
+    {
+      hashPipeline.close();
+    }
+
+    //*** Validation: All hashes are cached.
+    for(File file: files)
+      assertEquals(this.hashCache.getHash(new FileStat(file)), Utils.getHash(file), String.format("Hash of %s should be cached.", file.getAbsolutePath()));
+
+    //*** Clean up.
+    for(File file: files)
+      file.delete();
+  }
+}
@@ -0,0 +1,188 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.Random;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.HashFilter;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test that HashFilter never hides a hash written through Shelf and Trash, even after it is saved and read again.
+ * @author Xuan Ngo
+ *
+ */
+public class HashFilterTest
+{
+  private Manager manager = new Manager();
+  private Shelf shelf = new Shelf();
+  private Trash trash = new Trash();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+  }
+
+  @BeforeMethod
+  public void loadHashFilter() throws SQLException
+  {
+    Main.connection.setAutoCommit(false);
+    Main.connection.setHashFilter(HashFilter.load());
+  }
+
+  @AfterMethod
+  public void removeHashFilter() throws SQLException
+  {
+    Main.connection.setHashFilter(null);
+    Main.connection.commit();
+    Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+  }
+
+  @Test(description="No false negative. False positive rate is about the one expected.")
+  public void mightContain()
+  {
+    //*** Prepare data: Add 10,000 random MD5.
+    HashFilter hashFilter = new HashFilter(10000, 0.01);
+    Random random = new Random(10000);
+    byte[][] hashes = new byte[10000][16];
+    for(byte[] hash: hashes)
+    {
+      random.nextBytes(hash);
+      hashFilter.add(hash);
+    }
+
+    //*** Main test: Check added and other hashes.
+    for(byte[] hash: hashes)
+      assertTrue(hashFilter.mightContain(hash));
+    byte[] otherHash = new byte[16];
+    int falsePositives = 0;
+    for(int i=0; i<10000; i++)
+    {
+      random.nextBytes(otherHash);
+      if(hashFilter.mightContain(otherHash))
+        falsePositives++;
+    }
+
+    //*** Validation: About 1% of false positives.
+    assertTrue(falsePositives<300, String.format("%d false positives out of 10000.", falsePositives));
+    assertTrue(hashFilter.getExpectedFalsePositiveRate()<0.02, hashFilter.getSummary());
+    assertEquals(hashFilter.getSkippedLookups(), 10000-falsePositives);
+    assertFalse(hashFilter.mightContain("0123456789abcdef0123456789abcdef"), "String and bytes are different hashes.");
+  }
+
+  @Test(description="Filter saved is read again with the hashes added before.")
+  public void save()
+  {
+    //*** Prepare data: Add a file with the filter.
+    File uniqueFile = Data.createTempFile("HashFilterTest_save");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    this.shelf.addDoc(doc);
+
+    //*** Main test: Save and load the filter.
+    Main.connection.getHashFilter().save();
+    HashFilter hashFilter = HashFilter.load();
+
+    //*** Validation: Filter is read from the file with the hash. File is deleted until the next save().
+    assertFalse(hashFilter.isRebuilt(), "Filter should be read from the file.");
+    assertTrue(hashFilter.mightContain(Document.toDbHash(doc.hash)));
+    assertFalse(HashFilter.getFile().exists(), "Filter handed out should not be read again before save().");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Hash rewritten in place, then save() is skipped, e.g. the run stopped: filter is built again with the new hash.")
+  public void saveSkipped()
+  {
+    //*** Prepare data: Add a file and save the filter.
+    File uniqueFile = Data.createTempFile("HashFilterTest_saveSkipped");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = this.shelf.addDoc(doc);
+    Main.connection.getHashFilter().save();
+
+    //*** Main test: Rewrite the hash in place with the filter read from the file. Don't save it.
+    Main.connection.setHashFilter(HashFilter.load());
+    Data.writeStringToFile(uniqueFile, "content changed");
+    doc.hash = Utils.getHash(uniqueFile);
+    this.shelf.saveDoc(doc);
+
+    //*** Validation: Same rows, but the filter isn't read from the stale file. It has the new hash.
+    HashFilter hashFilter = HashFilter.load();
+    assertTrue(hashFilter.isRebuilt(), "Filter saved before the hash was rewritten should not be read.");
+    assertTrue(hashFilter.mightContain(Document.toDbHash(doc.hash)));
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Hash written without the filter deletes the saved filter: it is built again with the hash.")
+  public void invalidate()
+  {
+    //*** Prepare data: Save the filter.
+    Main.connection.getHashFilter().save();
+    assertTrue(HashFilter.getFile().exists());
+
+    //*** Main test: Add a file in Trash without the filter.
+    File uniqueFile = Data.createTempFile("HashFilterTest_invalidate");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = 1;
+    Main.connection.setHashFilter(null);
+    this.trash.addDoc(doc);
+
+    //*** Validation: File is deleted. Filter built again has the hash.
+    assertFalse(HashFilter.getFile().exists(), "Saved filter doesn't have the hash added.");
+    HashFilter hashFilter = HashFilter.load();
+    assertTrue(hashFilter.isRebuilt());
+    assertTrue(hashFilter.mightContain(Document.toDbHash(doc.hash)));
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Add duplicate of a file added with the filter: It is found.")
+  public void addFileDuplicate()
+  {
+    //*** Prepare data: Create 2 files with the same content.
+    File uniqueFile = Data.createTempFile("HashFilterTest_addFileDuplicate");
+    File duplicateFile = Data.createTempFile("HashFilterTest_addFileDuplicate_duplicate");
+    Data.copyFile(uniqueFile, duplicateFile);
+    HashFilter hashFilter = Main.connection.getHashFilter();
+
+    //*** Main test: Add both files.
+    assertNull(this.manager.addFile(uniqueFile), "First file should be new.");
+    final long skippedLookups = hashFilter.getSkippedLookups();
+    Document conflictDoc = this.manager.addFile(duplicateFile);
+
+    //*** Validation: Duplicate is found and added in Trash.
+    assertNotNull(conflictDoc, "Duplicate should be found.");
+    assertEquals(conflictDoc.canonical_path, Utils.getCanonicalPath(uniqueFile));
+    assertEquals(hashFilter.getSkippedLookups(), skippedLookups, "Hash of the duplicate should be looked up.");
+    assertFalse(this.trash.getDocsByCanonicalPath(Utils.getCanonicalPath(duplicateFile)).isEmpty(), "Duplicate should be in Trash.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+    duplicateFile.delete();
+  }
+}
@@ -21,11 +21,14 @@ import java.util.Calendar;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import net.xngo.fileshub.Config;
 import net.xngo.fileshub.Main;
 import net.xngo.fileshub.Utils;
 import net.xngo.fileshub.db.Manager;
 import net.xngo.fileshub.db.Shelf;
 import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.hash.HashAlgorithm;
+import net.xngo.fileshub.hash.HashEngine;
 import net.xngo.fileshub.struct.Document;
 // FilesHub test helper classes.
 import net.xngo.fileshub.test.helpers.Data;
@@ -1078,4 +1081,212 @@ public class ManagerAddFileTest
     duplicateFile.delete();
  
   }
+  
+  @Test(description="Lazy hashing: Add file with unique size.")
+  public void addFileLazyHashUniqueSize()
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Manager lazyManager = new Manager();
+    lazyManager.setLazyHash(true);
+    
+    //*** Main test: Add a file having a size that no other file has.
+    File uniqueFile = Data.createTempFileWithByte("addFileLazyHashUniqueSize", this.getBytesOfUniqueSize());
+    lazyManager.addFile(uniqueFile);
+    
+    //*** Validation: Hash is deferred.
+    Document shelfDoc = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(uniqueFile));
+    assertNotNull(shelfDoc, String.format("Expected [%s] to be added in Shelf table but it is not.", uniqueFile.getName()));
+    assertTrue(shelfDoc.isHashDeferred(), String.format("Hash of [%s] should be deferred: %s", uniqueFile.getName(), shelfDoc.hash));
+    
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+  
+  @Test(description="Lazy hashing: Add 2 different files with the same size.")
+  public void addFileLazyHashSameSize()
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Manager lazyManager = new Manager();
+    lazyManager.setLazyHash(true);
+    
+    //*** Prepare data: Add a file with unique size.
+    byte[] content = this.getBytesOfUniqueSize();
+    File fileA = Data.createTempFileWithByte("addFileLazyHashSameSize_fileA", content);
+    lazyManager.addFile(fileA);
+    
+    //*** Main test: Add a different file with the same size.
+    content[0]++;
+    File fileB = Data.createTempFileWithByte("addFileLazyHashSameSize_fileB", content);
+    Document conflictDoc = lazyManager.addFile(fileB);
+    
+    //*** Validations: Files are different by quick hash. Hashes are still deferred.
+    assertNull(conflictDoc, String.format("[%s] is not a duplicate of [%s].", fileB.getName(), fileA.getName()));
+    Document shelfDocA = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(fileA));
+    Document shelfDocB = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(fileB));
+    assertEquals(shelfDocA.quick_hash, Utils.getQuickHash(fileA));
+    assertEquals(shelfDocB.quick_hash, Utils.getQuickHash(fileB));
+    assertTrue(shelfDocA.isHashDeferred(), String.format("Hash of [%s] should be deferred: %s", fileA.getName(), shelfDocA.hash));
+    assertTrue(shelfDocB.isHashDeferred(), String.format("Hash of [%s] should be deferred: %s", fileB.getName(), shelfDocB.hash));
+    
+    //*** Clean up.
+    fileA.delete();
+    fileB.delete();
+  }
+  
+  @Test(description="Lazy hashing: Add 2 different files with the same size and the same quick hash.")
+  public void addFileLazyHashSameQuickHash()
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Manager lazyManager = new Manager();
+    lazyManager.setLazyHash(true);
+    
+    //*** Prepare data: Add a file with unique size.
+    byte[] content = this.getBytesOfUniqueSize();
+    File fileA = Data.createTempFileWithByte("addFileLazyHashSameQuickHash_fileA", content);
+    lazyManager.addFile(fileA);
+    
+    //*** Main test: Add a different file with the same size. Only the middle is different.
+    content[content.length/2]++;
+    File fileB = Data.createTempFileWithByte("addFileLazyHashSameQuickHash_fileB", content);
+    Document conflictDoc = lazyManager.addFile(fileB);
+    
+    //*** Validations: Both files are hashed and they are not duplicates.
+    assertNull(conflictDoc, String.format("[%s] is not a duplicate of [%s].", fileB.getName(), fileA.getName()));
+    Document shelfDocA = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(fileA));
+    Document shelfDocB = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(fileB));
+    assertEquals(shelfDocA.quick_hash, shelfDocB.quick_hash);
+    assertEquals(shelfDocA.hash, Utils.getHash(fileA));
+    assertEquals(shelfDocB.hash, Utils.getHash(fileB));
+    
+    //*** Clean up.
+    fileA.delete();
+    fileB.delete();
+  }
+  
+  @Test(description="Lazy hashing: Add duplicate of a file having a deferred hash.")
+  public void addFileLazyHashDuplicate()
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Trash trash = new Trash();
+    Manager lazyManager = new Manager();
+    lazyManager.setLazyHash(true);
+    
+    //*** Prepare data: Add a file with unique size.
+    File file = Data.createTempFileWithByte("addFileLazyHashDuplicate", this.getBytesOfUniqueSize());
+    lazyManager.addFile(file);
+    
+    //*** Main test: Add a copy of the file.
+    File duplicateFile = Data.createTempFile("addFileLazyHashDuplicate_copy");
+    Data.copyFile(file, duplicateFile);
+    Document conflictDoc = lazyManager.addFile(duplicateFile);
+    
+    //*** Validations: Duplicate is detected.
+    Document shelfDoc = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file));
+    assertNotNull(conflictDoc, String.format("[%s] should be a duplicate of [%s].", duplicateFile.getName(), file.getName()));
+    assertEquals(conflictDoc.uid, shelfDoc.uid);
+    assertEquals(shelfDoc.hash, Utils.getHash(file));
+    
+    Document trashDoc = trash.getDocByCanonicalPath(Utils.getCanonicalPath(duplicateFile));
+    assertEquals(trashDoc.uid, shelfDoc.uid);
+    
+    //*** Clean up.
+    file.delete();
+    duplicateFile.delete();
+  }
+  
+  @Test(description="Add duplicate without lazy hashing of a file having a deferred hash.")
+  public void addFileDuplicateOfLazyHash()
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Trash trash = new Trash();
+    Manager lazyManager = new Manager();
+    lazyManager.setLazyHash(true);
+    Manager manager = new Manager();
+    manager.setLazyHash(false);
+    
+    //*** Prepare data: Add a file with unique size: its hash is deferred.
+    File file = Data.createTempFileWithByte("addFileDuplicateOfLazyHash", this.getBytesOfUniqueSize());
+    lazyManager.addFile(file);
+    assertTrue(shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file)).isHashDeferred());
+    
+    //*** Main test: Add a copy of the file without lazy hashing.
+    File duplicateFile = Data.createTempFile("addFileDuplicateOfLazyHash_copy");
+    Data.copyFile(file, duplicateFile);
+    Document conflictDoc = manager.addFile(duplicateFile);
+    
+    //*** Validations: Duplicate is detected and the deferred hash is computed.
+    Document shelfDoc = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file));
+    assertNotNull(conflictDoc, String.format("[%s] should be a duplicate of [%s].", duplicateFile.getName(), file.getName()));
+    assertEquals(conflictDoc.uid, shelfDoc.uid);
+    assertEquals(shelfDoc.hash, Utils.getHash(file));
+    assertNull(shelf.getDocByCanonicalPath(Utils.getCanonicalPath(duplicateFile)));
+    assertEquals(trash.getDocByCanonicalPath(Utils.getCanonicalPath(duplicateFile)).uid, shelfDoc.uid);
+    
+    //*** Clean up.
+    file.delete();
+    duplicateFile.delete();
+  }
+  
+  @Test(description="Add duplicate of a file hashed with another algorithm.")
+  public void addFileDuplicateOfOtherHashAlgo()
+  {
+    this.addFileDuplicateOfOtherHashAlgo(false);
+  }
+  
+  @Test(description="Lazy hashing: Add duplicate of a file hashed with another algorithm.")
+  public void addFileLazyHashDuplicateOfOtherHashAlgo()
+  {
+    this.addFileDuplicateOfOtherHashAlgo(true);
+  }
+  
+  private void addFileDuplicateOfOtherHashAlgo(boolean lazyHash)
+  {
+    //*** Main variables:
+    Shelf shelf = new Shelf();
+    Manager manager = new Manager();
+    manager.setLazyHash(lazyHash);
+    
+    //*** Prepare data: Add a file and pretend that it was hashed with another algorithm.
+    File file = Data.createTempFileWithByte("addFileDuplicateOfOtherHashAlgo", this.getBytesOfUniqueSize());
+    manager.addFile(file);
+    Document shelfDoc = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file));
+    HashAlgorithm otherHashAlgorithm = (Config.HASH_ALGORITHM==HashAlgorithm.SHA256)? HashAlgorithm.XXHASH64 : HashAlgorithm.SHA256;
+    shelfDoc.hash      = HashEngine.hash(file, otherHashAlgorithm);
+    shelfDoc.hash_algo = otherHashAlgorithm.getName();
+    shelf.saveDoc(shelfDoc);
+    manager = new Manager(); // Next run: stale hashes are looked for once per run.
+    manager.setLazyHash(lazyHash);
+    
+    //*** Main test: Add a copy of the file.
+    File duplicateFile = Data.createTempFile("addFileDuplicateOfOtherHashAlgo_copy");
+    Data.copyFile(file, duplicateFile);
+    Document conflictDoc = manager.addFile(duplicateFile);
+    
+    //*** Validations: Duplicate is detected and the old hash is migrated to the current algorithm.
+    assertNotNull(conflictDoc, String.format("[%s] should be a duplicate of [%s].", duplicateFile.getName(), file.getName()));
+    assertEquals(conflictDoc.uid, shelfDoc.uid);
+    shelfDoc = shelf.getDocByCanonicalPath(Utils.getCanonicalPath(file));
+    assertEquals(shelfDoc.hash, Utils.getHash(file));
+    assertEquals(shelfDoc.hash_algo, Utils.getHashAlgo(file.length()));
+    
+    //*** Clean up.
+    file.delete();
+    duplicateFile.delete();
+  }
+  
+  /**
+   * @return Random bytes with a size that is very unlikely used by other test files.
+   */
+  private byte[] getBytesOfUniqueSize()
+  {
+    java.util.Random random = new java.util.Random();
+    byte[] bytes = new byte[200000+random.nextInt(800000)]; // Bigger than the first and last 64KB of the quick hash.
+    random.nextBytes(bytes);
+    return bytes;
+  }
 }
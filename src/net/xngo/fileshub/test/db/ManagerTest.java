@@ -193,6 +193,29 @@ public class ManagerTest
     catch(IOException ex){ ex.printStackTrace(); }
   }  
   
+  @Test(description="Hash is only needed for new files and files changed since they were added.")
+  public void isHashNeeded()
+  {
+    // Add a file.
+    File uniqueFile = Data.createTempFile("isHashNeeded");
+    assertTrue(this.manager.isHashNeeded(uniqueFile), "New file needs its hash.");
+    this.manager.addFile(uniqueFile);
+    
+    // Validate: File already added doesn't need its hash until it changes.
+    assertFalse(this.manager.isHashNeeded(uniqueFile), "Unchanged file doesn't need its hash.");
+    Data.writeStringToFile(uniqueFile, "new content");
+    assertTrue(this.manager.isHashNeeded(uniqueFile), "Changed file needs its hash.");
+    
+    // Validate: Adding the changed file with the lookups of isHashNeeded() updates its document.
+    this.manager.addFile(uniqueFile);
+    Document shelfDoc = new Shelf().getDocByCanonicalPath(Utils.getCanonicalPath(uniqueFile));
+    assertEquals(shelfDoc.size, uniqueFile.length(), "Size of the changed file is not updated.");
+    assertFalse(this.manager.isHashNeeded(uniqueFile), "Updated file doesn't need its hash.");
+    
+    // Clean up.
+    uniqueFile.delete();
+  }
+  
   @Test(description="File A is a duplicate of File B and File B exists in database.")
   public void markDuplicateFileBExistInDb()
   {
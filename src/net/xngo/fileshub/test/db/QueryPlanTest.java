@@ -0,0 +1,105 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertFalse;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Manager;
+
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test that the queries run for every file added or removed use an index: EXPLAIN QUERY PLAN doesn't scan Shelf or Trash.
+ *  Scanning a covering index is fine: only the indexed column is read, e.g. to count orphans.
+ *  Queries are the same as the ones of Shelf and Trash. Add the new ones here.
+ * @author Xuan Ngo
+ *
+ */
+public class QueryPlanTest
+{
+  private Manager manager = new Manager();
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+  }
+
+  @DataProvider(name = "hotQueries")
+  public Object[][] hotQueries()
+  {
+    final String shelfColumns = "SELECT uid, (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename, IFNULL(Shelf.link_filename, Shelf.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Shelf";
+    final String trashColumns = "SELECT duid, (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename, IFNULL(Trash.link_filename, Trash.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Trash";
+    return new Object[][]
+    {
+      // Directory.findDirId().
+      { "SELECT dir_id FROM Directory WHERE path = ?" },
+      // Shelf.getDocByCanonicalPath(), getDocsByHash(), getDocByUid(), getDocsBySize(), Manager.deferHash().
+      { shelfColumns+" WHERE filename = ? AND dir_id = ?" },
+      { shelfColumns+" WHERE hash = ? AND hash_algo = ?" },
+      { shelfColumns+" WHERE uid = ?" },
+      { shelfColumns+" WHERE size = ?" },
+      { shelfColumns+" WHERE size = ? AND quick_hash = ?" },
+      // Shelf.saveDoc(), removeDoc().
+      { "UPDATE Shelf SET dir_id = ?, filename = ?, link_filename = ?, last_modified = ?, size = ?, hash = ?, comment = ?, quick_hash = ?, hash_algo = ? WHERE uid = ?" },
+      { "DELETE FROM Shelf WHERE uid=?" },
+
+      // Trash.getDocByCanonicalPath(), getDocsByHash(), getDocsByUid(), getDocsBySize().
+      { trashColumns+" WHERE filename = ? AND dir_id = ?" },
+      { trashColumns+" WHERE hash = ? AND hash_algo = ?" },
+      { trashColumns+" WHERE duid = ?" },
+      { trashColumns+" WHERE size = ? AND quick_hash = ?" },
+      // Trash.changeDuid(), removeDocByDuid(), removeDoc(), saveHashes().
+      { "UPDATE Trash SET duid=? WHERE duid=?" },
+      { "UPDATE Trash SET duid=? WHERE dir_id=? AND filename=?" },
+      { "DELETE FROM Trash WHERE duid=?" },
+      { "DELETE FROM Trash WHERE duid=? AND hash IS ? and dir_id=? AND filename=?" },
+      { "UPDATE Trash SET hash=?, quick_hash=?, hash_algo=? WHERE duid=? AND dir_id=? AND filename=? AND size=? AND last_modified=?" },
+      // Shelf.searchDocsByFilename(), searchDocsByFilepath(): see SearchIndex.
+      { shelfColumns+" WHERE Shelf.uid IN (SELECT docid FROM ShelfSearch WHERE ShelfSearch MATCH ?) AND IFNULL(Shelf.link_filename, Shelf.filename) like ?" },
+      { shelfColumns+" WHERE Shelf.dir_id IN (SELECT dir_id FROM Directory WHERE path LIKE ?) AND (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename like ?" },
+      { shelfColumns+" WHERE (Shelf.dir_id IN (SELECT dir_id FROM Directory WHERE path LIKE ?) OR Shelf.uid IN (SELECT docid FROM ShelfSearch WHERE ShelfSearch MATCH ?)) AND (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename like ?" },
+      { trashColumns+" WHERE Trash.uid IN (SELECT docid FROM TrashSearch WHERE TrashSearch MATCH ?) AND IFNULL(Trash.link_filename, Trash.filename) like ?" },
+      { trashColumns+" WHERE (Trash.dir_id IN (SELECT dir_id FROM Directory WHERE path LIKE ?) OR Trash.uid IN (SELECT docid FROM TrashSearch WHERE TrashSearch MATCH ?)) AND (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename like ?" },
+
+      // Trash.getTotalOrphans(), removeOrphans().
+      { "SELECT COUNT(*) FROM Trash LEFT JOIN Shelf ON Trash.duid=Shelf.uid WHERE Shelf.uid IS NULL" },
+      { "DELETE FROM Trash WHERE duid IN (SELECT Trash.duid FROM Trash LEFT JOIN Shelf ON Trash.duid=Shelf.uid WHERE Shelf.uid IS NULL)" },
+    };
+  }
+
+  @Test(description="Hot query doesn't scan Shelf or Trash.", dataProvider="hotQueries")
+  public void noTableScan(String query) throws SQLException
+  {
+    //*** Main test: Get the query plan.
+    StringBuilder plan = new StringBuilder();
+    boolean tableScan = false;
+    Object[] values = new Object[query.length()-query.replace("?", "").length()]; // NULL: values don't change the plan.
+    ResultSet resultSet = Main.connection.executeForwardQuery("EXPLAIN QUERY PLAN "+query, values);
+    try
+    {
+      while(resultSet.next())
+      {
+        final String detail = resultSet.getString(4); // SQLite 3.8: SCAN TABLE Trash, SEARCH TABLE Trash USING INDEX trash_duid (duid=?).
+        plan.append(detail).append("; ");
+        if(detail.matches("SCAN (TABLE )?(Shelf|Trash)\\b.*") && !detail.contains("COVERING INDEX"))
+          tableScan = true;
+      }
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+
+    //*** Validation: Every table is searched by index.
+    assertFalse(tableScan, String.format("%s => %s", query, plan));
+  }
+}
@@ -0,0 +1,230 @@
+package net.xngo.fileshub.test.db;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Manager;
+import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.db.Trash;
+import net.xngo.fileshub.struct.Document;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.apache.commons.io.FileUtils;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test that searches using the full-text index return the same documents as LIKE on all rows.
+ * @author Xuan Ngo
+ *
+ */
+public class SearchIndexTest
+{
+  private static final String[] FILENAMES = { "Summer Holiday 2014.JPG", "summer_holiday.jpg", "\u00e9t\u00e9 \u00e0 Paris.png", "ab.txt", "WINTER-2015.jpeg", "50% off.pdf" };
+
+  private Manager manager = new Manager();
+  private Shelf shelf = new Shelf();
+  private Trash trash = new Trash();
+  private File directory = null;
+
+  @BeforeClass
+  public void DatabaseCreation()
+  {
+    // Make sure that the database file is created.
+    this.manager.createDbStructure();
+
+    // Add the same files in Shelf and Trash. The last one has another filename, e.g. symbolic link.
+    this.directory = Data.createTempDir("SearchIndexTest").toFile();
+    for(int i=0; i<FILENAMES.length; i++)
+    {
+      File file = new File(this.directory, FILENAMES[i]);
+      Data.writeStringToFile(file, FILENAMES[i]);
+      Document doc = new Document(file);
+      doc.hash = Utils.getHash(file);
+      if(i==FILENAMES.length-1)
+        doc.filename = "linked "+doc.filename;
+      doc.uid = this.shelf.addDoc(doc);
+      this.trash.addDoc(doc);
+    }
+  }
+
+  @AfterClass
+  public void deleteFiles() throws IOException
+  {
+    FileUtils.deleteDirectory(this.directory);
+  }
+
+  @DataProvider(name = "filenames")
+  public Object[][] filenames()
+  {
+    return new Object[][]
+    {
+      { "*ummer*" },          // Infix.
+      { "Summer*" },          // Prefix.
+      { "*summer*2014*" },    // Multiple parts, case insensitive.
+      { "*Holiday 20*" },     // Across words.
+      { "*\u00e9t\u00e9*" },      // UTF-8.
+      { "*_holiday*" },       // _ matches any character.
+      { "*.jp*g" },
+      { "*ab*" },             // Too short for trigrams: table is scanned.
+      { "*0% *" },            // % is a wildcard too.
+      { "*linked 50*" },      // Filename that is not the last name of the path.
+      { "summer_holiday.jpg" },
+      { "SUMMER_HOLIDAY.JPG" }, // = is case sensitive.
+    };
+  }
+
+  @DataProvider(name = "paths")
+  public Object[][] paths()
+  {
+    final String separator = File.separator;
+    return new Object[][]
+    {
+      { "*SearchIndexTest*" },                                // Directory only.
+      { "*SearchIndexTest*"+separator+"summer*" },            // Directory then filename.
+      { "*"+separator+"Summer*" },
+      { "*ummer*" },                                          // Filename only.
+      { "*Index*Holiday*" },                                  // Directory and filename.
+      { "*"+separator+"50% off.pdf" },
+      { "*linked*" },                                         // Not in the path.
+      { Utils.getCanonicalPath(new File(this.directory, FILENAMES[0])) },
+      { Utils.getCanonicalPath(this.directory)+separator+"missing.txt" },
+    };
+  }
+
+  @Test(description="Search Shelf and Trash by filename: same documents as LIKE or =.", dataProvider="filenames")
+  public void searchDocsByFilename(String filename) throws SQLException
+  {
+    //*** Main test: Search with the index.
+    Set<Integer> shelfUids = this.getUids(this.shelf.searchDocsByFilename(filename));
+    Set<Integer> trashUids = this.getUids(this.trash.searchDocsByFilename(filename));
+
+    //*** Validation: Same as the scan of all rows.
+    assertEquals(shelfUids, this.scan("uid", "Shelf", "IFNULL(link_filename, filename)", filename), filename);
+    assertEquals(trashUids, this.scan("duid", "Trash", "IFNULL(link_filename, filename)", filename), filename);
+  }
+
+  @Test(description="Search Shelf and Trash by path: same documents as LIKE or =.", dataProvider="paths")
+  public void searchDocsByFilepath(String filepath) throws SQLException
+  {
+    //*** Main test: Search with the index.
+    Set<Integer> shelfUids = this.getUids(this.shelf.searchDocsByFilepath(filepath));
+    Set<Integer> trashUids = this.getUids(this.trash.searchDocsByFilepath(filepath));
+
+    //*** Validation: Same as the scan of all rows.
+    final String canonicalPath = "(SELECT path FROM Directory WHERE Directory.dir_id=%s.dir_id)||filename";
+    assertEquals(shelfUids, this.scan("uid", "Shelf", String.format(canonicalPath, "Shelf"), filepath), filepath);
+    assertEquals(trashUids, this.scan("duid", "Trash", String.format(canonicalPath, "Trash"), filepath), filepath);
+  }
+
+  @Test(description="Renamed and removed documents are updated in the index.")
+  public void saveDoc()
+  {
+    //*** Prepare data: Add a unique file.
+    File uniqueFile = Data.createTempFile("SearchIndexTest_saveDoc");
+    Document doc = new Document(uniqueFile);
+    doc.hash = Utils.getHash(uniqueFile);
+    doc.uid = this.shelf.addDoc(doc);
+    final String oldFilename = doc.filename;
+
+    //*** Main test: Rename it.
+    doc.filename = "SearchIndexTest_saveDoc_renamed_"+doc.uid;
+    doc.canonical_path = Utils.getCanonicalPath(uniqueFile.getParentFile())+File.separator+doc.filename;
+    this.shelf.saveDoc(doc);
+
+    //*** Validation: Only the new filename is found, until the document is removed.
+    assertTrue(this.shelf.searchDocsByFilename("*"+oldFilename.substring(1)).isEmpty(), "Old filename should not be found.");
+    assertEquals(this.shelf.searchDocsByFilename("*saveDoc_renamed_"+doc.uid).size(), 1);
+    this.shelf.removeDoc(doc.uid);
+    assertTrue(this.shelf.searchDocsByFilename("*saveDoc_renamed_"+doc.uid).isEmpty(), "Removed document should not be found.");
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Trigrams inserted with the rows, by batch or one at a time, are the ones of the views: integrity-check compares them.")
+  public void addDocInBatch() throws SQLException, IOException
+  {
+    //*** Prepare data: Files with the filenames of the class, in another directory.
+    File directory = Data.createTempDir("SearchIndexTest_addDocInBatch").toFile();
+    Main.connection.setAutoCommit(false);
+    try
+    {
+      //*** Main test: Add them in batches in Shelf and Trash.
+      for(int i=0; i<FILENAMES.length; i++)
+      {
+        File file = new File(directory, FILENAMES[i]);
+        Data.writeStringToFile(file, "batch "+FILENAMES[i]);
+        Document doc = new Document(file);
+        doc.hash = Utils.getHash(file);
+        doc.canonical_path = Utils.getCanonicalPath(directory)+File.separator+FILENAMES[i]; // UTF-8 even if the file system can't encode it.
+        doc.filename = FILENAMES[i];
+        if(i==FILENAMES.length-1)
+          doc.filename = "linked "+doc.filename;
+        this.shelf.addDocInBatch(doc);
+        doc.uid = 1;
+        this.trash.addDocInBatch(doc);
+      }
+      Main.connection.commit();
+    }
+    finally
+    {
+      Main.connection.setAutoCommit(true); // Other tests commit every single transaction.
+    }
+
+    //*** Validation: Index has the same trigrams as the views. Batched documents are found.
+    Main.connection.prepareStatement("INSERT INTO ShelfSearch(ShelfSearch) VALUES('integrity-check')").execute();
+    Main.connection.prepareStatement("INSERT INTO TrashSearch(TrashSearch) VALUES('integrity-check')").execute();
+    Main.connection.closePreparedStatement();
+    final String path = Utils.getCanonicalPath(directory)+File.separator;
+    assertEquals(this.shelf.searchDocsByFilepath(path+"*").size(), FILENAMES.length);
+    assertEquals(this.trash.searchDocsByFilepath(path+"*").size(), FILENAMES.length);
+    assertEquals(this.shelf.searchDocsByFilepath(path+"*\u00e9t\u00e9*").get(0).canonical_path, path+FILENAMES[2]);
+
+    //*** Clean up.
+    FileUtils.deleteDirectory(directory);
+  }
+
+  private Set<Integer> getUids(List<Document> docs)
+  {
+    Set<Integer> uids = new TreeSet<Integer>();
+    for(Document doc: docs)
+      uids.add(doc.uid);
+    return uids;
+  }
+
+  /**
+   * @return uid of all rows matching the value, without the index.
+   */
+  private Set<Integer> scan(String uid, String tablename, String column, String value) throws SQLException
+  {
+    final String operator = (value.indexOf('*')==-1)? "=" : "LIKE";
+    Set<Integer> uids = new TreeSet<Integer>();
+    ResultSet resultSet = Main.connection.executeForwardQuery(String.format("SELECT %s FROM %s WHERE %s %s ?", uid, tablename, column, operator), value.replace('*', '%'));
+    try
+    {
+      while(resultSet.next())
+        uids.add(resultSet.getInt(1));
+    }
+    finally
+    {
+      Statement statement = resultSet.getStatement();
+      resultSet.close();
+      statement.close();
+    }
+    return uids;
+  }
+}
@@ -1,18 +1,23 @@
 package net.xngo.fileshub.test.db;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import net.xngo.fileshub.Main;
 import net.xngo.fileshub.Utils;
 import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DocumentCursor;
 import net.xngo.fileshub.db.Manager;
 import net.xngo.fileshub.db.Shelf;
+import net.xngo.fileshub.similar.CommonTerms;
 import net.xngo.fileshub.struct.Document;
 import net.xngo.fileshub.test.helpers.Data;
 
@@ -58,8 +63,10 @@ public class ShelfTest
     
     //*** Validations: Check the sql query has equal sign.
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment FROM Shelf WHERE filename = ? : %s", uniqueFile.getName());
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT uid, (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename, IFNULL(Shelf.link_filename, Shelf.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Shelf WHERE Shelf.uid IN (SELECT docid FROM ShelfSearch WHERE ShelfSearch MATCH ?) AND IFNULL(Shelf.link_filename, Shelf.filename) = ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+uniqueFile.getName()), queryString);
     
     //*** Clean up.
     uniqueFile.delete();    
@@ -82,8 +89,10 @@ public class ShelfTest
     
     //*** Validations: Check the sql query has the LIKE
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment FROM Shelf WHERE filename like ? : %s", expectedFilenameWildcard);
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT uid, (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename, IFNULL(Shelf.link_filename, Shelf.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Shelf WHERE Shelf.uid IN (SELECT docid FROM ShelfSearch WHERE ShelfSearch MATCH ?) AND IFNULL(Shelf.link_filename, Shelf.filename) like ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+expectedFilenameWildcard), queryString);
     
     //*** Clean up.
     uniqueFile.delete();    
@@ -106,8 +115,10 @@ public class ShelfTest
     
     //*** Validations: Check the sql query has not adjacent %.
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT uid, canonical_path, filename, last_modified, size, hash, comment FROM Shelf WHERE filename like ? : %s", expectedFilenameWildcard);
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT uid, (SELECT path FROM Directory WHERE Directory.dir_id=Shelf.dir_id)||Shelf.filename, IFNULL(Shelf.link_filename, Shelf.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Shelf WHERE Shelf.uid IN (SELECT docid FROM ShelfSearch WHERE ShelfSearch MATCH ?) AND IFNULL(Shelf.link_filename, Shelf.filename) like ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+expectedFilenameWildcard), queryString);
 
     //*** Clean up.
     uniqueFile.delete();    
@@ -254,4 +265,153 @@ public class ShelfTest
     }
   }
   
+  @Test(description="Read documents one at a time: Same documents as getDocs().")
+  public void openDocs()
+  {
+    //*** Prepare data: Add unique files in Shelf table.
+    List<File> uniqueFiles = new ArrayList<File>();
+    for(int i=0; i<3; i++)
+    {
+      File uniqueFile = Data.createTempFile("openDocs_"+i);
+      Document shelfDoc = new Document(uniqueFile);
+      shelfDoc.hash = Utils.getHash(uniqueFile);
+      this.shelf.addDoc(shelfDoc);
+      uniqueFiles.add(uniqueFile);
+    }
+    
+    //*** Main test: Read all documents through a cursor.
+    List<Integer> actualUids = new ArrayList<Integer>();
+    DocumentCursor docCursor = this.shelf.openDocs();
+    try
+    {
+      for(Document doc: docCursor)
+        actualUids.add(doc.uid);
+    }
+    finally
+    {
+      docCursor.close();
+    }
+    
+    //*** Validation: Same documents in the same order.
+    List<Integer> expectedUids = new ArrayList<Integer>();
+    for(Document doc: this.shelf.getDocs())
+      expectedUids.add(doc.uid);
+    assertEquals(actualUids, expectedUids);
+    assertEquals(this.shelf.getTotalDocs(), expectedUids.size());
+    assertFalse(docCursor.hasNext(), "Closed cursor should be at the end.");
+    
+    //*** Clean up
+    for(File uniqueFile: uniqueFiles)
+      uniqueFile.delete();
+  }
+  
+  @Test(description="Clean filename is computed on insert and update, and only computed again for all documents when the terms change.")
+  public void openDocsWithCleanFilename()
+  {
+    //*** Prepare data: Add a unique file with a filename having common terms.
+    File uniqueFile = Data.createTempFile("openDocsWithCleanFilename");
+    Document shelfDoc = new Document(uniqueFile);
+    shelfDoc.hash = Utils.getHash(uniqueFile);
+    shelfDoc.filename = "The openDocsWithCleanFilename.TXT";
+    shelfDoc.uid = this.shelf.addDoc(shelfDoc);
+    this.shelf.updateCleanFilenames();
+    
+    //*** Main test: Rename it.
+    shelfDoc.filename = "The renamed openDocsWithCleanFilename.HTML";
+    this.shelf.saveDoc(shelfDoc);
+    
+    //*** Validation: Clean filename is the one of the new filename. Terms didn't change: nothing is computed again.
+    assertEquals(this.shelf.updateCleanFilenames(), 0);
+    String cleanFilename = null;
+    DocumentCursor docCursor = this.shelf.openDocsWithCleanFilename();
+    try
+    {
+      for(Document doc: docCursor)
+      {
+        if(doc.uid==shelfDoc.uid)
+          cleanFilename = doc.filename;
+      }
+    }
+    finally
+    {
+      docCursor.close();
+    }
+    assertEquals(cleanFilename, CommonTerms.get().clean(shelfDoc.filename));
+    assertEquals(this.shelf.getCleanFilename(shelfDoc.uid), cleanFilename);
+    
+    //*** Clean up
+    uniqueFile.delete();
+  }
+  
+  @Test(description="Read the canonical paths of documents by 1 query: same as getDocByUid(). Missing uids are ignored.")
+  public void getCanonicalPaths()
+  {
+    //*** Prepare data: Add unique files in Shelf table.
+    List<File> uniqueFiles = new ArrayList<File>();
+    int[] uids = new int[4];
+    for(int i=0; i<3; i++)
+    {
+      File uniqueFile = Data.createTempFile("getCanonicalPaths_"+i);
+      Document shelfDoc = new Document(uniqueFile);
+      shelfDoc.hash = Utils.getHash(uniqueFile);
+      uids[i] = this.shelf.addDoc(shelfDoc);
+      uniqueFiles.add(uniqueFile);
+    }
+    uids[3] = Integer.MAX_VALUE; // Not in Shelf.
+    
+    //*** Main test: Read the canonical paths of all of them.
+    Map<Integer, String> canonicalPaths = this.shelf.getCanonicalPaths(uids);
+    
+    //*** Validation: Paths of the documents found.
+    assertEquals(canonicalPaths.size(), 3);
+    for(int i=0; i<3; i++)
+      assertEquals(canonicalPaths.get(uids[i]), this.shelf.getDocByUid(uids[i]).canonical_path);
+    
+    //*** Clean up
+    for(File uniqueFile: uniqueFiles)
+      uniqueFile.delete();
+  }
+  
+  @Test(description="Update documents while they are read one at a time: Cursor keeps reading.")
+  public void openDocsWithMissingFileSizeUpdate() throws SQLException
+  {
+    //*** Prepare data: Add unique files in Shelf table with a zero size.
+    List<File> uniqueFiles = new ArrayList<File>();
+    for(int i=0; i<3; i++)
+    {
+      File uniqueFile = Data.createTempFile("openDocsWithMissingFileSizeUpdate_"+i);
+      Document shelfDoc = new Document(uniqueFile);
+      shelfDoc.hash = Utils.getHash(uniqueFile);
+      shelfDoc.uid = this.shelf.addDoc(shelfDoc);
+      this.shelf.saveSize(shelfDoc.uid, 0);
+      uniqueFiles.add(uniqueFile);
+    }
+    final int expectedTotal = this.shelf.getTotalDocsWithMissingFileSize();
+    
+    //*** Main test: Save the size of each document read, with other queries in between.
+    int actualTotal = 0;
+    DocumentCursor docCursor = this.shelf.openDocsWithMissingFileSize();
+    try
+    {
+      for(Document doc: docCursor)
+      {
+        this.shelf.getDocByCanonicalPath(doc.canonical_path);
+        this.shelf.saveSize(doc.uid, 1);
+        actualTotal++;
+      }
+    }
+    finally
+    {
+      docCursor.close();
+    }
+    
+    //*** Validation: All documents are read and updated.
+    assertEquals(actualTotal, expectedTotal);
+    assertEquals(this.shelf.getTotalDocsWithMissingFileSize(), 0);
+    
+    //*** Clean up
+    for(File uniqueFile: uniqueFiles)
+      uniqueFile.delete();
+  }
+  
 }
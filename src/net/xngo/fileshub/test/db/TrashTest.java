@@ -2,6 +2,7 @@ package net.xngo.fileshub.test.db;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
 
 import java.io.File;
 import java.sql.SQLException;
@@ -54,8 +55,10 @@ public class TrashTest
     
     //*** Validations: Check the sql query has equal sign.
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment FROM Trash WHERE filename = ? : %s", uniqueFile.getName());
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT duid, (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename, IFNULL(Trash.link_filename, Trash.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Trash WHERE Trash.uid IN (SELECT docid FROM TrashSearch WHERE TrashSearch MATCH ?) AND IFNULL(Trash.link_filename, Trash.filename) = ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+uniqueFile.getName()), queryString);
     
     //*** Clean up.
     uniqueFile.delete();    
@@ -79,8 +82,10 @@ public class TrashTest
     
     //*** Validations: Check the sql query has the LIKE
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment FROM Trash WHERE filename like ? : %s", expectedFilenameWildcard);
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT duid, (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename, IFNULL(Trash.link_filename, Trash.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Trash WHERE Trash.uid IN (SELECT docid FROM TrashSearch WHERE TrashSearch MATCH ?) AND IFNULL(Trash.link_filename, Trash.filename) like ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+expectedFilenameWildcard), queryString);
     
     //*** Clean up.
     uniqueFile.delete();    
@@ -104,8 +109,10 @@ public class TrashTest
     
     //*** Validations: Check the sql query has not adjacent %.
     Connection connection = Main.connection;
-    String expectedSQLquery = String.format("SELECT duid, canonical_path, filename, last_modified, size, hash, comment FROM Trash WHERE filename like ? : %s", expectedFilenameWildcard);
-    assertEquals(connection.getQueryString(), expectedSQLquery);
+    String expectedSQLquery = "SELECT duid, (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename, IFNULL(Trash.link_filename, Trash.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Trash WHERE Trash.uid IN (SELECT docid FROM TrashSearch WHERE TrashSearch MATCH ?) AND IFNULL(Trash.link_filename, Trash.filename) like ?";
+    String queryString = connection.getQueryString(); // Values: MATCH of the trigrams, then the filename.
+    assertEquals(queryString.substring(0, queryString.indexOf(" : ")), expectedSQLquery);
+    assertTrue(queryString.endsWith(", "+expectedFilenameWildcard), queryString);
 
     //*** Clean up.
     uniqueFile.delete();    
@@ -292,7 +299,7 @@ public class TrashTest
     String actualQuery = Main.connection.getQueryString();
     System.out.println(actualQuery);
     
-    String expectedQuery = "SELECT duid, canonical_path, filename, last_modified, size, hash, comment FROM Trash WHERE size < ? : 1";
+    String expectedQuery = "SELECT duid, (SELECT path FROM Directory WHERE Directory.dir_id=Trash.dir_id)||Trash.filename, IFNULL(Trash.link_filename, Trash.filename), last_modified, size, hash, comment, quick_hash, hash_algo FROM Trash WHERE size < ? : 1";
     assertEquals(actualQuery, expectedQuery);
   }
 }
@@ -0,0 +1,87 @@
+package net.xngo.fileshub.test.hash;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.hash.HashAlgorithm;
+import net.xngo.fileshub.hash.HashEngine;
+import net.xngo.fileshub.test.helpers.Data;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test net.xngo.fileshub.hash.HashAlgorithm and net.xngo.fileshub.hash.XxHash64 classes.
+ * @author Xuan Ngo
+ *
+ */
+public class HashAlgorithmTest
+{
+  @DataProvider(name = "xxhash64Vectors")
+  public static Object[][] xxhash64Vectors()
+  {
+    return new Object[][] {
+              { "",                                        "ef46db3751d8e999" },
+              { "a",                                       "d24ec4f1a98c6e5b" },
+              { "abc",                                     "44bc2cf5ad770999" },
+              { "Nobody inspects the spammish repetition", "fbcea83c8a378bf1" }, // Longer than 32 bytes.
+            };
+  }
+
+  @Test(description="xxhash64: Same hash as the reference implementation.", dataProvider="xxhash64Vectors")
+  public void xxhash64Vectors(String input, String expectedHash)
+  {
+    MessageDigest md = HashAlgorithm.XXHASH64.newMessageDigest();
+    assertEquals(Utils.toHex(md.digest(input.getBytes(StandardCharsets.US_ASCII))), expectedHash);
+  }
+
+  @Test(description="xxhash64: Hashing in chunks of any size gives the same hash as hashing all at once.")
+  public void xxhash64Chunks()
+  {
+    byte[] bytes = Data.getRandomBytes(1000);
+    MessageDigest md = HashAlgorithm.XXHASH64.newMessageDigest();
+    final String expectedHash = Utils.toHex(md.digest(bytes));
+
+    for(int chunkSize=1; chunkSize<=67; chunkSize++)
+    {
+      for(int offset=0; offset<bytes.length; offset+=chunkSize)
+        md.update(bytes, offset, Math.min(chunkSize, bytes.length-offset));
+      assertEquals(Utils.toHex(md.digest()), expectedHash, String.format("Hash is different with chunks of %d bytes.", chunkSize));
+    }
+  }
+
+  @Test(description="HashEngine.hash(): Same hash as MessageDigest for all algorithms.")
+  public void hashSameAsMessageDigest()
+  {
+    //*** Prepare data: Create a file bigger than the read buffer.
+    byte[] bytes = Data.getRandomBytes(HashEngine.BUFFER_SIZE*2+7);
+    File uniqueFile = Data.createTempFileWithByte("hashSameAsMessageDigest", bytes);
+
+    //*** Test: Hash of the file is the same as the hash of its content.
+    for(HashAlgorithm hashAlgorithm: HashAlgorithm.values())
+    {
+      String expectedHash = Utils.toHex(hashAlgorithm.newMessageDigest().digest(bytes));
+      assertEquals(HashEngine.hash(uniqueFile, hashAlgorithm), expectedHash, String.format("Hash is different for %s.", hashAlgorithm.getName()));
+    }
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Get algorithm by its name stored in the database.")
+  public void getByName()
+  {
+    for(HashAlgorithm hashAlgorithm: HashAlgorithm.values())
+      assertEquals(HashAlgorithm.get(hashAlgorithm.getName()), hashAlgorithm);
+  }
+
+  @Test(description="Unknown algorithm name.", expectedExceptions={RuntimeException.class})
+  public void getUnknownName()
+  {
+    HashAlgorithm.get("blake");
+  }
+}
@@ -0,0 +1,117 @@
+package net.xngo.fileshub.test.hash;
+
+import static org.testng.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.xngo.fileshub.hash.HashEngine;
+import net.xngo.fileshub.test.helpers.Data;
+import net.xngo.utils.java.math.Hash;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test net.xngo.fileshub.hash.HashEngine class.
+ * @author Xuan Ngo
+ *
+ */
+public class HashEngineTest
+{
+  @DataProvider(name = "fileSizes")
+  public static Object[][] fileSizes()
+  {
+    return new Object[][] {
+              { 0                           },
+              { 1                           },
+              { HashEngine.FINGERPRINT_SIZE },
+              { HashEngine.BUFFER_SIZE+1    },
+              { 4*1024*1024+1               },
+              { HashEngine.LARGE_FILE_SIZE+1 }, // Large buffer.
+            };
+  }
+
+  @Test(description="md5(): Same hash as Hash.md5().", dataProvider="fileSizes")
+  public void md5SameAsHash(int size)
+  {
+    //*** Prepare data: Create a file of the given size.
+    File uniqueFile = this.createFile("md5SameAsHash_"+size, size);
+
+    //*** Test: HashEngine.md5() should return the same hash as Hash.md5().
+    assertEquals(HashEngine.md5(uniqueFile), Hash.md5(uniqueFile), String.format("Hash is different for %s.", uniqueFile.getAbsolutePath()));
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @DataProvider(name = "frequencies")
+  public static Object[][] frequencies()
+  {
+    return new Object[][] {
+              { 4*1024*1024+1,              1  },
+              { 4*1024*1024+1,              13 },
+              { 4*1024*1024+1,              97 },
+              { HashEngine.LARGE_FILE_SIZE+1, 13 },
+            };
+  }
+
+  @Test(description="md5FingerPrint(): Same hash as Hash.md5FingerPrint().", dataProvider="frequencies")
+  public void md5FingerPrintSameAsHash(int size, int frequency)
+  {
+    //*** Prepare data: Create a file of the given size.
+    File uniqueFile = this.createFile("md5FingerPrintSameAsHash_"+size, size);
+
+    //*** Test: HashEngine.md5FingerPrint() should return the same hash as Hash.md5FingerPrint().
+    assertEquals(HashEngine.md5FingerPrint(uniqueFile, frequency), Hash.md5FingerPrint(uniqueFile, frequency),
+                    String.format("Hash is different for %s with frequency=%d.", uniqueFile.getAbsolutePath(), frequency));
+
+    //*** Clean up.
+    uniqueFile.delete();
+  }
+
+  @Test(description="Hash the same file twice: MessageDigest is reset between files.")
+  public void md5ResetBetweenFiles()
+  {
+    //*** Prepare data: Create 2 files.
+    File fileA = this.createFile("md5ResetBetweenFiles_fileA", 1000);
+    File fileB = this.createFile("md5ResetBetweenFiles_fileB", 4*1024*1024+1);
+
+    //*** Test: Hashing fileB in between doesn't change the hash of fileA.
+    String expectedHash = HashEngine.md5(fileA);
+    HashEngine.md5(fileB);
+    HashEngine.md5FingerPrint(fileB, 13);
+    assertEquals(HashEngine.md5(fileA), expectedHash);
+
+    //*** Clean up.
+    fileA.delete();
+    fileB.delete();
+  }
+
+  @Test(description="Hash a file that doesn't exist.", expectedExceptions={RuntimeException.class})
+  public void md5FileNotFound()
+  {
+    //*** Prepare data: Create a file and delete it.
+    File uniqueFile = Data.createTempFile("md5FileNotFound");
+    uniqueFile.delete();
+
+    //*** Test: RuntimeException is thrown.
+    HashEngine.md5(uniqueFile);
+  }
+
+  private File createFile(String affix, int size)
+  {
+    if(size>0)
+      return Data.createTempFileWithByte(affix, Data.getRandomBytes(size));
+
+    // Empty file: Data.createTempFileWithByte() writes the filename when content is empty.
+    try
+    {
+      return File.createTempFile(String.format("FHTest_%s_", affix), ".tmp");
+    }
+    catch(IOException ex)
+    {
+      throw new RuntimeException(ex.getMessage());
+    }
+  }
+}
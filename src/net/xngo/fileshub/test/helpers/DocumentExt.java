@@ -13,6 +13,8 @@ public class DocumentExt extends Document
     super.size           = doc.size;
     super.hash           = doc.hash;
     super.comment        = doc.comment;    
+    super.quick_hash     = doc.quick_hash;
+    super.hash_algo      = doc.hash_algo;
   }
   
   /**
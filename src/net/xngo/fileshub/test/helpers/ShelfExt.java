@@ -5,6 +5,7 @@ import java.sql.SQLException;
 
 import net.xngo.fileshub.Main;
 import net.xngo.fileshub.db.Shelf;
+import net.xngo.utils.java.db.DbUtils;
 
 /**
  * Extend the original class to help testing.
@@ -21,6 +22,7 @@ public class ShelfExt extends Shelf
   {
     final String query = "SELECT COUNT(*) FROM " + super.tablename;
     
+    int total = 0;
     try
     {
       Main.connection.prepareStatement(query);
@@ -28,14 +30,19 @@ public class ShelfExt extends Shelf
       ResultSet resultSet =  Main.connection.executeQuery();
       if(resultSet.next())
       {
-        return resultSet.getInt(1);
+        total = resultSet.getInt(1);
       }
+      DbUtils.close(resultSet);
     }
     catch(SQLException e)
     {
       e.printStackTrace();
     }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
     
-    return 0;
+    return total;
   }  
 }
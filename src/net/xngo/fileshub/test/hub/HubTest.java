@@ -8,7 +8,6 @@ import static org.testng.Assert.assertNull;
 import java.io.File;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashSet;
 
 import net.xngo.fileshub.Hub;
 import net.xngo.fileshub.Main;
@@ -34,15 +33,13 @@ public class HubTest
     //*** Prepare data: Create 2 files. ***
     File fileA = Data.createTempFile("addFilesDeleted_A_del");
     File fileB = Data.createTempFile("addFilesDeleted_B");
-    HashSet<File> files = new HashSet<File>();
-      files.add(fileA);
-      files.add(fileB);
     ArrayList<File> addPaths = new ArrayList<File>();
-    addPaths.addAll(files);
+    addPaths.add(fileA);
+    addPaths.add(fileB);
 
     //*** Main test: Delete 1 file and process all files. ***
     fileA.delete();
-    this.hub.addFiles(files, addPaths);
+    this.hub.addFiles(addPaths);
     Main.connection.close();
     
     //*** Validation: Deleted file is not added in the database.
@@ -66,16 +63,14 @@ public class HubTest
     File fileA = Data.createTempFile("addFilesUniqueMiddleFileDeleted_A");
     File fileB = Data.createTempFile("addFilesUniqueMiddleFileDeleted_B_del");
     File fileC = Data.createTempFile("addFilesUniqueMiddleFileDeleted_C");
-    HashSet<File> files = new HashSet<File>();
-        files.add(fileA);
-        files.add(fileB);
-        files.add(fileC);
     ArrayList<File> addPaths = new ArrayList<File>();
-    addPaths.addAll(files);
+    addPaths.add(fileA);
+    addPaths.add(fileB);
+    addPaths.add(fileC);
     
     //*** Main test: Delete the middle file and process all files. ***
     fileB.delete();
-    this.hub.addFiles(files, addPaths);
+    this.hub.addFiles(addPaths);
     Main.connection.close();
     
     //*** Validation: Deleted file is not added in the database.
@@ -100,13 +95,11 @@ public class HubTest
     //*** Prepare data: Create a empty file. 
     File uniqueFile = Data.createTempFile("addFileEmpty", null, "");
     assertEquals(uniqueFile.length(), 0, "File size should be zero."); // Guarantee that it is an empty file.
-    HashSet<File> files = new HashSet<File>();
-      files.add(uniqueFile);
     ArrayList<File> addPaths = new ArrayList<File>();
-    addPaths.addAll(files);
+    addPaths.add(uniqueFile);
 
     //*** Main test: Add an empty file. ***
-    this.hub.addFiles(files, addPaths);
+    this.hub.addFiles(addPaths);
     Main.connection.close();
     
     //*** Validation: Empty file should be added in Shelf table..
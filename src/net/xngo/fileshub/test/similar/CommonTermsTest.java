@@ -0,0 +1,87 @@
+package net.xngo.fileshub.test.similar;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.xngo.fileshub.similar.CommonTerms;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test that common terms are removed from filenames the same way as removing the first occurrence of each term, one after the other.
+ * @author Xuan Ngo
+ *
+ */
+public class CommonTermsTest
+{
+  private static final List<String> TERMS = Arrays.asList(".txt", ".exe", ".bat", ".sh", ".jar", ".csv", ".cvs", ".db", ".ppt", ".doc", ".xls", ".html", ".htm", ".js", "the", "");
+
+  @DataProvider(name = "filenames")
+  public Object[][] filenames()
+  {
+    return new Object[][]
+    {
+      { "The Mother of the Bride.TXT" },   // Same term more than once: only the first one is removed.
+      { "index.html" },                    // Longer term first in the list.
+      { "index.htm.html" },
+      { "report.htm" },
+      { "photo.jpg" },                     // No term.
+      { "" },
+      { "script.js.sh.bat" },
+      { "theme.docx" },                    // Terms inside words.
+      { "athens.db.txt.doc" },
+      { "ÉTÉ THE.TXT" },
+    };
+  }
+
+  @Test(description="Same as removing the first occurrence of each term one after the other.", dataProvider="filenames")
+  public void clean(String filename)
+  {
+    assertEquals(new CommonTerms(TERMS).clean(filename), this.removeTerms(filename, TERMS));
+  }
+
+  @Test(description="Term overlapping a term removed before it is removed at its next occurrence.")
+  public void cleanOverlappingTerms()
+  {
+    CommonTerms commonTerms = new CommonTerms(Arrays.asList("abc", "bcd"));
+    assertEquals(commonTerms.clean("abcd-bcd"), "d-");
+    assertEquals(commonTerms.clean("abcd-bcd"), this.removeTerms("abcd-bcd", Arrays.asList("abc", "bcd")));
+  }
+
+  @Test(description="Occurrence formed by a removal is not removed.")
+  public void cleanOccurrenceFormedByRemoval()
+  {
+    assertEquals(new CommonTerms(Arrays.asList("x", "ab")).clean("axb"), "ab");
+  }
+
+  @Test(description="Checksum only changes with the terms.")
+  public void getChecksum()
+  {
+    List<String> terms = new ArrayList<String>(TERMS);
+    final String checksum = new CommonTerms(terms).getChecksum();
+    assertEquals(new CommonTerms(terms).getChecksum(), checksum);
+
+    terms.add(".mp3");
+    assertNotEquals(new CommonTerms(terms).getChecksum(), checksum);
+  }
+
+  /**
+   * Terms removed one after the other, at their first occurrence.
+   */
+  private String removeTerms(String filename, List<String> terms)
+  {
+    StringBuilder cleanFilename = new StringBuilder(filename.toLowerCase());
+    for(String term: terms)
+    {
+      int start = cleanFilename.indexOf(term.toLowerCase());
+      if(start!=-1 && !term.isEmpty())
+        cleanFilename.replace(start, start+term.length(), "");
+    }
+    return cleanFilename.toString();
+  }
+}
@@ -0,0 +1,113 @@
+package net.xngo.fileshub.test.similar;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Random;
+
+import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.similar.EditDistance;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test that the bounded Levenshtein distance is the same as the full one within its bound,
+ *  and that it never rejects strings having a similar rate more than fuzzyRate.
+ * @author Xuan Ngo
+ *
+ */
+public class EditDistanceTest
+{
+  @Test(description="Distance within the bound is exact. Otherwise, it is more than the bound.")
+  public void getDistance()
+  {
+    //*** Prepare data: Random strings of a small alphabet, some of them close to each other.
+    Random random = new Random(1);
+    EditDistance editDistance = new EditDistance();
+    for(int n=0; n<2000; n++)
+    {
+      final String left = this.getString(random, random.nextInt(12));
+      final String right = random.nextBoolean()? this.getString(random, random.nextInt(12)) : this.edit(random, left);
+
+      //*** Main test: Bound from none to more than the lengths.
+      final int distance = this.getFullDistance(left, right);
+      for(int maxDistance=-1; maxDistance<=Math.max(left.length(), right.length())+1; maxDistance++)
+      {
+        //*** Validation: Same instance reused for all strings.
+        assertEquals(editDistance.getDistance(left, right, maxDistance), Math.min(distance, maxDistance+1), String.format("[%s] [%s] maxDistance=%d", left, right, maxDistance));
+      }
+    }
+  }
+
+  @Test(description="Strings having a similar rate more than fuzzyRate are within the maximum distance.")
+  public void getMaxDistance()
+  {
+    Random random = new Random(2);
+    EditDistance editDistance = new EditDistance();
+    for(int n=0; n<3000; n++)
+    {
+      //*** Prepare data: Random strings and a copy with a few edits.
+      final String left = this.getString(random, random.nextInt(30));
+      final String right = this.edit(random, left);
+      final int similarRate = new Difference(left, right).getSimilarRate();
+
+      //*** Main test: Distance bounded by each fuzzyRate below the similar rate.
+      for(int fuzzyRate=0; fuzzyRate<similarRate; fuzzyRate+=5)
+      {
+        final int maxDistance = EditDistance.getMaxDistance(Math.max(left.length(), right.length()), fuzzyRate);
+
+        //*** Validation: Never rejected.
+        assertTrue(editDistance.getDistance(left, right, maxDistance)<=maxDistance, String.format("[%s] [%s] similarRate=%d, fuzzyRate=%d", left, right, similarRate, fuzzyRate));
+      }
+    }
+  }
+
+  private String getString(Random random, int length)
+  {
+    StringBuilder string = new StringBuilder();
+    for(int i=0; i<length; i++)
+      string.append((char)('a'+random.nextInt(4)));
+    return string.toString();
+  }
+
+  /**
+   * @return Copy of the string with up to 4 characters inserted, deleted or replaced.
+   */
+  private String edit(Random random, String string)
+  {
+    StringBuilder edited = new StringBuilder(string);
+    final int edits = random.nextInt(5);
+    for(int e=0; e<edits; e++)
+    {
+      final int position = random.nextInt(edited.length()+1);
+      if(position==edited.length() || random.nextInt(3)==0)
+        edited.insert(position, (char)('a'+random.nextInt(4)));
+      else if(random.nextBoolean())
+        edited.deleteCharAt(position);
+      else
+        edited.setCharAt(position, (char)('a'+random.nextInt(4)));
+    }
+    return edited.toString();
+  }
+
+  /**
+   * @return Levenshtein distance computed on the whole matrix.
+   */
+  private int getFullDistance(String left, String right)
+  {
+    int[][] distances = new int[left.length()+1][right.length()+1];
+    for(int i=0; i<=left.length(); i++)
+      distances[i][0] = i;
+    for(int j=0; j<=right.length(); j++)
+      distances[0][j] = j;
+    for(int i=1; i<=left.length(); i++)
+    {
+      for(int j=1; j<=right.length(); j++)
+      {
+        final int cost = (left.charAt(i-1)==right.charAt(j-1))? 0 : 1;
+        distances[i][j] = Math.min(Math.min(distances[i-1][j], distances[i][j-1])+1, distances[i-1][j-1]+cost);
+      }
+    }
+    return distances[left.length()][right.length()];
+  }
+}
@@ -0,0 +1,161 @@
+package net.xngo.fileshub.test.similar;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.similar.SimilarClusters;
+
+import org.testng.annotations.Test;
+
+/**
+ * Test that groups of similar filenames only join verified pairs and find clear near-duplicates.
+ * @author Xuan Ngo
+ *
+ */
+public class SimilarClustersTest
+{
+  private static final int FUZZY_RATE = 80;
+
+  @Test(description="Each document of a group is similar to the leader of the group, and in only 1 group. Its similar rate is the one with the leader.")
+  public void groupVerified()
+  {
+    final Map<Integer, String> filenames = this.getFilenames(2000, 300);
+    List<int[]> similarRates = new ArrayList<int[]>();
+    List<int[]> groups = this.group(filenames, similarRates);
+
+    assertTrue(groups.size()>0);
+    Set<Integer> grouped = new HashSet<Integer>();
+    for(int g=0; g<groups.size(); g++)
+    {
+      final int[] group = groups.get(g);
+      assertEquals(similarRates.get(g)[0], 100);
+      for(int i=0; i<group.length; i++)
+      {
+        assertTrue(grouped.add(group[i]), filenames.get(group[i]));
+        if(i>0)
+        {
+          final int similarRate = new Difference(filenames.get(group[0]), filenames.get(group[i])).getSimilarRate();
+          assertTrue(similarRate>FUZZY_RATE, String.format("%s and %s", filenames.get(group[0]), filenames.get(group[i])));
+          assertEquals(similarRates.get(g)[i], similarRate, String.format("%s and %s", filenames.get(group[0]), filenames.get(group[i])));
+        }
+      }
+    }
+  }
+
+  @Test(description="Near-duplicates differing by 1 character are in the same group, except when a leader took one of them first.")
+  public void groupNearDuplicates()
+  {
+    final Map<Integer, String> filenames = this.getFilenames(2000, 300);
+    Map<Integer, Integer> groupOf = new HashMap<Integer, Integer>();
+    List<int[]> groups = this.group(filenames);
+    for(int g=0; g<groups.size(); g++)
+    {
+      for(int uid: groups.get(g))
+        groupOf.put(uid, g);
+    }
+
+    // Near-duplicate of uid is uid+1 for the first uids: see getFilenames().
+    int sameGroup = 0;
+    for(int uid=0; uid<2*300; uid+=2)
+    {
+      assertTrue(groupOf.containsKey(uid) || groupOf.containsKey(uid+1), filenames.get(uid));
+      if(groupOf.containsKey(uid) && groupOf.get(uid).equals(groupOf.get(uid+1)))
+        sameGroup++;
+    }
+    assertTrue(sameGroup>=300*95/100, String.format("%d / 300 in the same group.", sameGroup));
+  }
+
+  @Test(description="Identical and empty filenames.")
+  public void groupIdentical()
+  {
+    Map<Integer, String> filenames = new HashMap<Integer, String>();
+    for(int uid=1; uid<=5000; uid++)
+      filenames.put(uid, (uid%2==0)? "holiday_photo_0001" : "");
+    filenames.put(9999, "unrelated_document");
+
+    List<int[]> groups = this.group(filenames);
+    assertEquals(groups.size(), 1);
+    assertEquals(groups.get(0).length, 2500);
+    assertEquals(groups.get(0)[0], 2); // Leader is the first document added.
+  }
+
+  /****************************************************************************
+   *
+   *                             PRIVATE FUNCTIONS
+   *
+   ****************************************************************************/
+
+  private List<int[]> group(final Map<Integer, String> filenames)
+  {
+    return this.group(filenames, new ArrayList<int[]>());
+  }
+
+  /**
+   * @param similarRates Similar rates of each group are added to it, in the order of the groups.
+   */
+  private List<int[]> group(final Map<Integer, String> filenames, final List<int[]> similarRates)
+  {
+    SimilarClusters similarClusters = new SimilarClusters(FUZZY_RATE);
+    List<Integer> uids = new ArrayList<Integer>(filenames.keySet());
+    Collections.sort(uids);
+    for(int uid: uids)
+      similarClusters.add(uid, filenames.get(uid));
+    similarClusters.group(new SimilarClusters.Filenames()
+                            {
+                              @Override public String get(int uid)
+                              {
+                                return filenames.get(uid);
+                              }
+                            }, null);
+
+    final List<int[]> groups = new ArrayList<int[]>();
+    similarClusters.forEachGroup(new SimilarClusters.GroupListener()
+                                  {
+                                    @Override public void onGroup(int[] uids, int[] rates)
+                                    {
+                                      groups.add(Arrays.copyOf(uids, uids.length));
+                                      similarRates.add(Arrays.copyOf(rates, rates.length));
+                                    }
+                                  });
+    return groups;
+  }
+
+  /**
+   * @return Random filenames made of common words. The first pairs of uids(0 and 1, 2 and 3, ...) differ by 1 character.
+   */
+  private Map<Integer, String> getFilenames(int total, int nearDuplicates)
+  {
+    final String[] words = { "holiday", "photo", "beach", "family", "report", "invoice", "music", "album", "live", "remix", "draft", "final" };
+    Random random = new Random(7);
+    Map<Integer, String> filenames = new HashMap<Integer, String>();
+    for(int uid=0; uid<total; uid++)
+    {
+      if(uid<2*nearDuplicates && uid%2==1)
+      {
+        StringBuilder nearDuplicate = new StringBuilder(filenames.get(uid-1));
+        nearDuplicate.setCharAt(random.nextInt(nearDuplicate.length()), (char)('0'+random.nextInt(10)));
+        filenames.put(uid, nearDuplicate.toString());
+      }
+      else
+      {
+        StringBuilder filename = new StringBuilder();
+        for(int w=0; w<3; w++)
+          filename.append(words[random.nextInt(words.length)]).append('_');
+        filename.append(random.nextInt(100000));
+        filenames.put(uid, filename.toString());
+      }
+    }
+    return filenames;
+  }
+}
@@ -0,0 +1,93 @@
+package net.xngo.fileshub.test.similar;
+
+import static org.testng.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.similar.SimilarSearch;
+import net.xngo.fileshub.struct.PairFile;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test that documents compared by 1 or more threads give the same pairs, in the same order, as comparing all of them.
+ * @author Xuan Ngo
+ *
+ */
+public class SimilarSearchTest
+{
+  private static final String[] WORDS = { "summer", "holiday", "paris", "beach", "family", "2014", "img", "dsc", "final", "v2" };
+
+  @DataProvider(name = "threads")
+  public Object[][] threads()
+  {
+    return new Object[][]
+    {
+      { 1 }, { 3 },
+    };
+  }
+
+  @Test(description="Same pairs in the same order, file by file, whatever the number of threads.", dataProvider="threads")
+  public void getPairFiles(int threads)
+  {
+    //*** Prepare data: Files and documents with random filenames. Some documents are the files themselves.
+    Random random = new Random(threads);
+    List<String> paths = new ArrayList<String>();
+    List<String> filenames = new ArrayList<String>();
+    for(int i=0; i<100; i++)
+    {
+      paths.add("/files/"+i);
+      filenames.add(this.getFilename(random));
+    }
+    List<String> docPaths = new ArrayList<String>();
+    List<String> docFilenames = new ArrayList<String>();
+    for(int i=0; i<1000; i++)
+    {
+      final int file = random.nextInt(paths.size());
+      docPaths.add((i%10==0)? paths.get(file) : "/docs/"+i);
+      docFilenames.add((i%2==0)? filenames.get(file)+random.nextInt(10) : this.getFilename(random));
+    }
+
+    //*** Main test: Add all documents.
+    SimilarSearch similarSearch = new SimilarSearch(paths, filenames, 80, threads);
+    List<String> found = new ArrayList<String>();
+    try
+    {
+      for(int d=0; d<docPaths.size(); d++)
+        similarSearch.add(docPaths.get(d), docFilenames.get(d));
+      for(PairFile pairFile: similarSearch.getPairFiles())
+        found.add(pairFile.fileA+" "+pairFile.fileB+" "+pairFile.similarRate);
+    }
+    finally
+    {
+      similarSearch.close();
+    }
+
+    //*** Validation: Same as comparing each file against all documents, except itself.
+    List<String> expected = new ArrayList<String>();
+    for(int i=0; i<paths.size(); i++)
+    {
+      for(int d=0; d<docPaths.size(); d++)
+      {
+        final int similarRate = new Difference(filenames.get(i), docFilenames.get(d)).getSimilarRate();
+        if(!paths.get(i).equals(docPaths.get(d)) && similarRate>80)
+          expected.add(paths.get(i)+" "+docPaths.get(d)+" "+similarRate);
+      }
+    }
+    assertEquals(found, expected);
+    assertEquals(similarSearch.getProcessed(), (long)paths.size()*docPaths.size());
+  }
+
+  private String getFilename(Random random)
+  {
+    StringBuilder filename = new StringBuilder();
+    final int words = 1+random.nextInt(4);
+    for(int w=0; w<words; w++)
+      filename.append(WORDS[random.nextInt(WORDS.length)]).append('_');
+    return filename.toString();
+  }
+}
@@ -0,0 +1,122 @@
+package net.xngo.fileshub.test.similar;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.xngo.fileshub.report.Difference;
+import net.xngo.fileshub.similar.TrigramIndex;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test that similar strings found from the candidates of the trigram index are the same as comparing all strings.
+ * @author Xuan Ngo
+ *
+ */
+public class TrigramIndexTest
+{
+  private static final String[] WORDS = { "summer", "holiday", "paris", "beach", "family", "2014", "img", "dsc", "final", "v2", "a", "" };
+
+  @DataProvider(name = "fuzzyRates")
+  public Object[][] fuzzyRates()
+  {
+    return new Object[][]
+    {
+      { 0 }, { 30 }, { 50 }, { 70 }, { 80 }, { 90 }, { 95 }, { 99 }, { 100 },
+    };
+  }
+
+  @Test(description="Similar strings found from the candidates are the same as comparing all strings.", dataProvider="fuzzyRates")
+  public void getCandidates(int fuzzyRate)
+  {
+    //*** Prepare data: Filenames made of words, and their copies with a few edits.
+    Random random = new Random(fuzzyRate);
+    List<String> strings = this.getCorpus(random, 150);
+    List<String> others = this.getCorpus(random, 150);
+
+    //*** Main test: Compare only the candidates.
+    TrigramIndex trigramIndex = new TrigramIndex(strings, fuzzyRate);
+    List<String> found = new ArrayList<String>();
+    int compared = 0;
+    for(String other: others)
+    {
+      for(int i: trigramIndex.getCandidates(other))
+      {
+        if(new Difference(strings.get(i), other).getSimilarRate()>fuzzyRate)
+          found.add(i+":"+other);
+        compared++;
+      }
+    }
+
+    //*** Validation: Same pairs, in the same order, as comparing all strings.
+    List<String> expected = new ArrayList<String>();
+    for(String other: others)
+    {
+      for(int i=0; i<strings.size(); i++)
+      {
+        if(new Difference(strings.get(i), other).getSimilarRate()>fuzzyRate)
+          expected.add(i+":"+other);
+      }
+    }
+    assertEquals(found, expected);
+    if(fuzzyRate>=70)
+      assertTrue(compared<strings.size()*others.size()/2, String.format("Only %d of %d comparisons should be needed.", compared, strings.size()*others.size()));
+  }
+
+  @Test(description="Strings too short to have trigrams are still candidates.")
+  public void getCandidatesShortStrings()
+  {
+    //*** Prepare data: Strings with less than 3 characters.
+    List<String> strings = new ArrayList<String>();
+    strings.add("");
+    strings.add("ab");
+    strings.add("abc");
+    strings.add("abcdefghij");
+
+    //*** Main test: Get the candidates of another short string.
+    int[] candidates = new TrigramIndex(strings, 40).getCandidates("ac");
+
+    //*** Validation: Short strings are candidates. Empty and long ones are too different in length.
+    assertEquals(candidates, new int[] { 1, 2 });
+  }
+
+  /**
+   * @return Random filenames. Half of them are copies of a previous one with a few characters changed.
+   */
+  private List<String> getCorpus(Random random, int size)
+  {
+    List<String> strings = new ArrayList<String>();
+    for(int i=0; i<size; i++)
+    {
+      StringBuilder string = new StringBuilder();
+      if(i>0 && random.nextBoolean())
+      {
+        string.append(strings.get(random.nextInt(i)));
+        final int edits = random.nextInt(4);
+        for(int e=0; e<edits && string.length()>0; e++)
+        {
+          final int position = random.nextInt(string.length());
+          switch(random.nextInt(3))
+          {
+            case 0:  string.setCharAt(position, (char)('a'+random.nextInt(26))); break;
+            case 1:  string.insert(position, (char)('a'+random.nextInt(26))); break;
+            default: string.deleteCharAt(position); break;
+          }
+        }
+      }
+      else
+      {
+        final int words = random.nextInt(5);
+        for(int w=0; w<words; w++)
+          string.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextBoolean()? " " : "_");
+      }
+      strings.add(string.toString());
+    }
+    return strings;
+  }
+}
@@ -1,6 +1,8 @@
 package net.xngo.fileshub.upgrade;
 
 import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.flywaydb.core.api.MigrationInfo;
 import org.flywaydb.core.api.callback.FlywayCallback;
@@ -14,6 +16,8 @@ import org.flywaydb.core.api.callback.FlywayCallback;
  */
 public class FileshubCallback  implements FlywayCallback
 {
+  private List<String> migratedVersions = new ArrayList<String>();
+  
   public void afterBaseline(Connection connection)
   {}
   public void afterClean(Connection connection)
@@ -22,23 +26,9 @@ public class FileshubCallback  implements FlywayCallback
   {
     String version = info.getVersion().toString();
     
-    // Version 2: Add file size column.
-    if(version.compareTo("2")==0)
-    {
-      // Update file size.
-      Version0002 version2 = new Version0002();
-      version2.run();
-    }
-    
-    // Version 3: Rehash all files. Change from xxhash32 to md5
-    //              because xxhash32 have a very high probability of collision: 1/4 billions
-    //              whereas md5 have 1/2^128.
-    if(version.compareTo("3")==0)
-    {
-      // Update file size.
-      Version0003 version3 = new Version0003();
-      version3.run();
-    }    
+    // Java migrations use the Shelf and Trash classes. They expect all columns to exist.
+    //  Therefore, run them after the last SQL migration. See afterMigrate().
+    this.migratedVersions.add(version);
     
     Upgrade.chrono.stop("Migrate to version "+version);
   }
@@ -47,7 +37,55 @@ public class FileshubCallback  implements FlywayCallback
   public void afterInit(Connection connection)
   {}
   public void afterMigrate(Connection connection)
-  {}
+  {
+    for(String version: this.migratedVersions)
+    {
+      // Version 2: Add file size column.
+      if(version.compareTo("2")==0)
+      {
+        // Update file size.
+        Version0002 version2 = new Version0002();
+        version2.run();
+        Upgrade.chrono.stop("Run Java migration of version "+version);
+      }
+      
+      // Version 3: Rehash all files. Change from xxhash32 to md5
+      //              because xxhash32 have a very high probability of collision: 1/4 billions
+      //              whereas md5 have 1/2^128.
+      if(version.compareTo("3")==0)
+      {
+        // Update file size.
+        Version0003 version3 = new Version0003();
+        version3.run();
+        Upgrade.chrono.stop("Run Java migration of version "+version);
+      }
+      
+      // Version 6: Add hash_algo column. Existing hashes are md5.
+      if(version.compareTo("6")==0)
+      {
+        Version0006 version6 = new Version0006();
+        version6.run();
+        Upgrade.chrono.stop("Run Java migration of version "+version);
+      }
+      
+      // Version 7: Store hashes as BLOB instead of hexadecimal TEXT.
+      if(version.compareTo("7")==0)
+      {
+        Version0007 version7 = new Version0007();
+        version7.run();
+        Upgrade.chrono.stop("Run Java migration of version "+version);
+      }
+      
+      // Version 10: Store parent directories once in Directory table.
+      if(version.compareTo("10")==0)
+      {
+        Version0010 version10 = new Version0010();
+        version10.run();
+        Upgrade.chrono.stop("Run Java migration of version "+version);
+      }
+    }
+    this.migratedVersions.clear();
+  }
   public void afterRepair(Connection connection)
   {}
   public void afterValidate(Connection connection)
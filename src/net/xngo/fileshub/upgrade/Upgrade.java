@@ -4,6 +4,8 @@ import java.io.File;
 
 import net.xngo.fileshub.Config;
 import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.HashFilter;
 import net.xngo.utils.java.io.FileUtils;
 import net.xngo.utils.java.time.CalUtils;
 import net.xngo.utils.java.time.Chronometer;
@@ -38,8 +40,8 @@ public class Upgrade
     
     Main.connection.close(); 
     
-    // Set your datasource.
-    this.flyway.setDataSource(this.dbUrl, null, null);
+    // Set your datasource. page_size only applies if the database is created.
+    this.flyway.setDataSource(this.dbUrl, null, null, "PRAGMA page_size="+Connection.getDefaultProfile().getPageSize());
     
     // Set the location of all your SQL files: V?__*.sql
     this.flyway.setLocations("filesystem:"+this.sqlDir);
@@ -63,7 +65,19 @@ public class Upgrade
                                     Upgrade.chrono.start();
       this.backupBeforeUpgrade(); // Backup database file before migration.
                                     Upgrade.chrono.stop("Backup database file");
-      this.flyway.migrate();
+      
+      // Flyway works on the file: migrations can't work on a copy in RAM.
+      final boolean inMemory = Connection.isDefaultInMemory();
+      Connection.setDefaultInMemory(false);
+      try
+      {
+        this.flyway.migrate();
+      }
+      finally
+      {
+        Connection.setDefaultInMemory(inMemory);
+      }
+      HashFilter.invalidate(); // Migrations can rewrite hashes.
                                     Upgrade.chrono.display("Migration Runtime");
     }
     else
@@ -2,11 +2,11 @@ package net.xngo.fileshub.upgrade;
 
 import java.io.File;
 import java.sql.SQLException;
-import java.util.List;
 
 import net.xngo.fileshub.Main;
 import net.xngo.fileshub.Utils;
 import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.db.DocumentCursor;
 import net.xngo.fileshub.db.Shelf;
 import net.xngo.fileshub.struct.Document;
 import net.xngo.utils.java.math.Math;
@@ -43,60 +43,67 @@ public class Version0003
   
   private void rehashShelfFiles()
   {
-    List<Document> shelfDocs = this.shelf.getDocs();
-    final int total = shelfDocs.size();
+    final int total = this.shelf.getTotalDocs();
     final int updateFrequency = Utils.getUpdateFrequency(total);
     int i = 0;
-    for(Document shelfDoc: shelfDocs)
+    DocumentCursor shelfDocs = this.shelf.openDocs(); // Documents are read one at a time: memory usage doesn't grow with Shelf table.
+    try
     {
-      File file = new File(shelfDoc.canonical_path);
-      if(file.exists())
+      for(Document shelfDoc: shelfDocs)
       {
-        try
+        File file = new File(shelfDoc.canonical_path);
+        if(file.exists())
         {
-          // Note: Don't keep the old entry by moving it to the Trash table.
-          //    Waste of space. Let's be forward compatible only.
+          try
+          {
+            // Note: Don't keep the old entry by moving it to the Trash table.
+            //    Waste of space. Let's be forward compatible only.
           
-          shelfDoc.update(file);
-          shelfDoc.hash = Utils.getHash(file);
-          this.shelf.saveDoc(shelfDoc);
+            shelfDoc.update(file);
+            shelfDoc.hash = Utils.getHash(file);
+            this.shelf.saveDoc(shelfDoc);
 
-          // Display progress.
-          i++;
-          if( (i%updateFrequency)==0 )
-          {
-            Main.connection.commit();            
-            Main.console.printProgress(String.format("Migrating Shelf table: %s [%d/%d] %s", Math.getReadablePercentage(i, total), 
-                                                                              i,
-                                                                              total,
-                                                                              Utils.getRAMUsage()));
-          }
+            // Display progress.
+            i++;
+            if( (i%updateFrequency)==0 )
+            {
+              Main.connection.commit();            
+              Main.console.printProgress(String.format("Migrating Shelf table: %s [%d/%d] %s", Math.getReadablePercentage(i, total), 
+                                                                                i,
+                                                                                total,
+                                                                                Utils.getRAMUsage()));
+            }
           
-        }
-        catch(Exception ex)
-        {
-          String shelfEntryInfo = shelfDoc.getInfo("Entry info in Shelf:");
+          }
+          catch(Exception ex)
+          {
+            String shelfEntryInfo = shelfDoc.getInfo("Entry info in Shelf:");
           
-          // Log
-          log.error("Rollback up to the last {} potential commits. Issue is in {}.\n{}", updateFrequency, shelfDoc.canonical_path, shelfEntryInfo, ex);
+            // Log
+            log.error("Rollback up to the last {} potential commits. Issue is in {}.\n{}", updateFrequency, shelfDoc.canonical_path, shelfEntryInfo, ex);
           
-          // Output to user.
-          System.out.println(String.format("Rollback up to the last %d potential commits. Issue is in %s.", updateFrequency, shelfDoc.canonical_path));
-          System.out.println(shelfEntryInfo);
-          ex.printStackTrace();
-          try
-          {
-            Main.connection.rollback();
-          }
-          catch(SQLException sqlEx) 
-          { 
-            log.error("Can't rollback up to the last {} potential commits.", updateFrequency, sqlEx);
-            sqlEx.printStackTrace(); 
+            // Output to user.
+            System.out.println(String.format("Rollback up to the last %d potential commits. Issue is in %s.", updateFrequency, shelfDoc.canonical_path));
+            System.out.println(shelfEntryInfo);
+            ex.printStackTrace();
+            try
+            {
+              Main.connection.rollback();
+            }
+            catch(SQLException sqlEx) 
+            { 
+              log.error("Can't rollback up to the last {} potential commits.", updateFrequency, sqlEx);
+              sqlEx.printStackTrace(); 
+            }
           }
         }
+        else
+          log.warn("Skip MD5 hashing. File doesn't exist: {}.", shelfDoc.canonical_path);
       }
-      else
-        log.warn("Skip MD5 hashing. File doesn't exist: {}.", shelfDoc.canonical_path);
+    }
+    finally
+    {
+      shelfDocs.close();
     }
     try{ Main.connection.commit(); } catch(SQLException ex) { log.error("Can't commit", ex); ex.printStackTrace(); }
     Main.console.printProgress(String.format("Migrating Shelf table: %s [%d/%d] %s", 
@@ -0,0 +1,84 @@
+package net.xngo.fileshub.upgrade;
+
+import java.sql.SQLException;
+
+import net.xngo.fileshub.Config;
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.fileshub.hash.HashAlgorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Label existing hashes in the new hash_algo column.
+ *  All existing hashes are md5. Files bigger than 4MB are spot hashed
+ *  with Config.HASH_FREQUENCY, the same way as Utils.getHash() does.
+ * Nothing is rehashed here. Rows hashed with another algorithm than
+ *  Config.HASH_ALGORITHM are rehashed lazily by Manager.
+ *
+ * @author Xuan Ngo
+ *
+ */
+public class Version0006
+{
+  final static Logger log = LoggerFactory.getLogger(Version0006.class);
+
+  private static final long FILE_SIZE_THRESHOLD = 4194304; // 4MB=4*1024*1024: Same as Utils.getHash().
+
+  public void run()
+  {
+    Main.connection = new Connection();
+
+    this.labelHashes("Shelf");
+    this.labelHashes("Trash");
+
+    try{ Main.connection.commit(); } catch(SQLException ex) { log.error("Can't commit", ex); ex.printStackTrace(); }
+    Main.connection.close();
+  }
+
+  private void labelHashes(String tablename)
+  {
+    final String md5 = HashAlgorithm.MD5.getName();
+    if(Config.HASH_FREQUENCY==0)
+    {
+      this.update(tablename, md5, 0, Long.MAX_VALUE);
+    }
+    else
+    {
+      this.update(tablename, md5, 0, FILE_SIZE_THRESHOLD);
+      this.update(tablename, md5+":"+Config.HASH_FREQUENCY, FILE_SIZE_THRESHOLD+1, Long.MAX_VALUE);
+    }
+  }
+
+  /**
+   * Set hash_algo of all hashed rows having minSize <= size <= maxSize.
+   */
+  private void update(String tablename, String hashAlgo, long minSize, long maxSize)
+  {
+    final String query = String.format("UPDATE %s SET hash_algo=? WHERE hash IS NOT NULL AND size BETWEEN ? AND ?", tablename);
+    try
+    {
+      Main.connection.prepareStatement(query);
+
+      int i=1;
+      Main.connection.setString(i++, hashAlgo);
+      Main.connection.setLong  (i++, minSize);
+      Main.connection.setLong  (i++, maxSize);
+
+      int rowsAffected = Main.connection.executeUpdate();
+      System.out.println(String.format("Migrating %s table: %,d hashes are %s.", tablename, rowsAffected, hashAlgo));
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't set hash_algo: {}", Main.connection.getQueryString(), ex);
+      ex.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+}
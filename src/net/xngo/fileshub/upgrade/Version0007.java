@@ -0,0 +1,158 @@
+package net.xngo.fileshub.upgrade;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.Utils;
+import net.xngo.fileshub.db.Connection;
+import net.xngo.utils.java.db.DbUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Convert hexadecimal hashes to BLOB: hash and quick_hash columns of Shelf and Trash tables.
+ *  SQLite 3.8 doesn't have unhex(). Therefore, it is done here.
+ *  Hashes that are not hexadecimal are kept as TEXT, e.g. xxhash32 of old Trash entries.
+ * Rows are converted by batches to use a fixed amount of heap memory.
+ * Free pages are reclaimed at the end with VACUUM.
+ *
+ * @author Xuan Ngo
+ *
+ */
+public class Version0007
+{
+  final static Logger log = LoggerFactory.getLogger(Version0007.class);
+
+  private static final int BATCH_SIZE = 10000;
+
+  public void run()
+  {
+    Main.connection = new Connection();
+
+    this.convertHashes("Shelf", "hash");
+    this.convertHashes("Shelf", "quick_hash");
+    this.convertHashes("Trash", "hash");
+    this.convertHashes("Trash", "quick_hash");
+    this.vacuum();
+
+    Main.connection.close();
+  }
+
+  private void convertHashes(String tablename, String column)
+  {
+    int  total     = 0;
+    long lastRowid = 0;
+    List<Long>   rowids = new ArrayList<Long>();
+    List<String> hashes = new ArrayList<String>();
+    do
+    {
+      rowids.clear();
+      hashes.clear();
+      this.getHexHashes(tablename, column, lastRowid, rowids, hashes);
+      if(rowids.isEmpty())
+        break;
+
+      for(int i=0; i<rowids.size(); i++)
+        this.saveHash(tablename, column, rowids.get(i), Utils.fromHex(hashes.get(i)));
+
+      try
+      {
+        Main.connection.commit();
+      }
+      catch(SQLException ex)
+      {
+        log.error("Can't commit.", ex);
+        ex.printStackTrace();
+      }
+
+      lastRowid = rowids.get(rowids.size()-1);
+      total += rowids.size();
+      Main.console.printProgress(String.format("Migrating %s table: %,d %s converted to BLOB. %s", tablename, total, column, Utils.getRAMUsage()));
+    }
+    while(rowids.size()==BATCH_SIZE);
+    System.out.println();
+  }
+
+  /**
+   * Get the next batch of hexadecimal hashes stored as TEXT, after lastRowid.
+   */
+  private void getHexHashes(String tablename, String column, long lastRowid, List<Long> rowids, List<String> hashes)
+  {
+    final String query = String.format("SELECT rowid, %2$s FROM %1$s"
+                                        + " WHERE rowid>? AND typeof(%2$s)='text' AND length(%2$s)>0 AND length(%2$s)%%2=0 AND %2$s NOT GLOB '*[^0-9a-fA-F]*'"
+                                        + " ORDER BY rowid LIMIT %3$d", tablename, column, BATCH_SIZE);
+    try
+    {
+      Main.connection.prepareStatement(query);
+      Main.connection.setLong(1, lastRowid);
+      ResultSet resultSet = Main.connection.executeQuery();
+      while(resultSet.next())
+      {
+        rowids.add(resultSet.getLong(1));
+        hashes.add(resultSet.getString(2));
+      }
+      DbUtils.close(resultSet);
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't get hashes: {}", query, ex);
+      ex.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+  private void saveHash(String tablename, String column, long rowid, byte[] hash)
+  {
+    final String query = String.format("UPDATE %s SET %s=? WHERE rowid=?", tablename, column);
+    try
+    {
+      Main.connection.prepareStatement(query);
+
+      int i=1;
+      Main.connection.setObject(i++, hash);
+      Main.connection.setLong  (i++, rowid);
+
+      Main.connection.executeUpdate();
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't convert hash of rowid={}: {}", rowid, query, ex);
+      ex.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+  /**
+   * Hashes take half the space. Give the free pages back to the file system.
+   */
+  private void vacuum()
+  {
+    try
+    {
+      Main.connection.setAutoCommit(true); // VACUUM can't run inside a transaction.
+      Main.connection.prepareStatement("VACUUM");
+      Main.connection.executeUpdate();
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't vacuum.", ex);
+      ex.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+}
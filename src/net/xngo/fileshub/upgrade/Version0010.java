@@ -0,0 +1,51 @@
+package net.xngo.fileshub.upgrade;
+
+import java.sql.SQLException;
+
+import net.xngo.fileshub.Main;
+import net.xngo.fileshub.db.Connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Shelf and Trash tables were rebuilt without the full canonical path by V10__NormalizePaths.sql.
+ *  Give the pages of the old tables back to the file system with VACUUM.
+ *
+ * @author Xuan Ngo
+ *
+ */
+public class Version0010
+{
+  final static Logger log = LoggerFactory.getLogger(Version0010.class);
+
+  public void run()
+  {
+    Main.connection = new Connection();
+
+    this.vacuum();
+
+    Main.connection.close();
+  }
+
+  private void vacuum()
+  {
+    try
+    {
+      Main.connection.setAutoCommit(true); // VACUUM can't run inside a transaction.
+      Main.connection.prepareStatement("VACUUM");
+      Main.connection.executeUpdate();
+    }
+    catch(SQLException ex)
+    {
+      log.error("Can't vacuum.", ex);
+      ex.printStackTrace();
+    }
+    finally
+    {
+      Main.connection.closePreparedStatement();
+    }
+  }
+
+}